@@ -0,0 +1,368 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+
+/**
+ * Una prova di Merkle in forma compatta, equivalente a una {@link MerkleProof}
+ * ma senza un oggetto per ogni passo: la direzione di ciascun passo è un bit
+ * di una maschera, e i digest dei nodi fratelli sono memorizzati uno dopo
+ * l'altro in un unico array di byte. I passi senza fratello, che in una
+ * {@link MerkleProof} sono rappresentati dalla stringa vuota, sono segnati da
+ * una seconda maschera e non occupano spazio nell'array dei digest.
+ *
+ * <p>
+ * La prova può essere trasmessa con {@link #encode()} e ricostruita con
+ * {@link #decode(byte[], HashFunction, Funnel)}. La codifica contiene, nell'ordine:
+ *
+ * <ul>
+ * <li>il numero di passi, come intero senza segno di lunghezza variabile (7
+ * bit per byte, a partire dai meno significativi);</li>
+ * <li>il digest della radice;</li>
+ * <li>la maschera delle direzioni e quella dei passi senza fratello, ciascuna
+ * di {@code ceil(passi / 8)} byte, con il passo {@code i} nel bit
+ * {@code i % 8} del byte {@code i / 8};</li>
+ * <li>i digest dei fratelli presenti, nell'ordine dei passi.</li>
+ * </ul>
+ *
+ * La funzione di hash e il funnel non fanno parte della codifica: chi verifica
+ * la prova deve conoscerli.
+ */
+public final class CompactMerkleProof {
+
+    private final HashFunction hashFunction;
+
+    private final Funnel<?> funnel;
+
+    private final Digest root;
+
+    /**
+     * Numero di passi della prova.
+     */
+    private final int length;
+
+    /**
+     * Bit {@code i} a 1 se il fratello del passo {@code i} va concatenato a
+     * sinistra.
+     */
+    private final long[] left;
+
+    /**
+     * Bit {@code i} a 1 se il passo {@code i} non ha un fratello.
+     */
+    private final long[] absent;
+
+    /**
+     * Digest dei fratelli presenti, uno dopo l'altro.
+     */
+    private final byte[] siblings;
+
+    /**
+     * Costruisce una prova a partire dalle sue parti, senza copiarle né
+     * verificarne la coerenza.
+     */
+    CompactMerkleProof(HashFunction hashFunction, Funnel<?> funnel, Digest root, int length, long[] left,
+            long[] absent, byte[] siblings) {
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
+        this.root = root;
+        this.length = length;
+        this.left = left;
+        this.absent = absent;
+        this.siblings = siblings;
+    }
+
+    /**
+     * Ricostruisce una prova dalla sua codifica.
+     *
+     * @param encoded
+     *                         la codifica prodotta da {@link #encode()}.
+     * @param hashFunction
+     *                         la funzione di hash dell'albero.
+     * @param funnel
+     *                         il funnel dei dati dell'albero.
+     * @return la prova decodificata.
+     * @throws IllegalArgumentException
+     *                                      se uno degli argomenti è null o se
+     *                                      la codifica non è valida.
+     */
+    public static CompactMerkleProof decode(byte[] encoded, HashFunction hashFunction, Funnel<?> funnel) {
+        if (encoded == null || hashFunction == null || funnel == null)
+            throw new IllegalArgumentException("The encoding, the hash function and the funnel cannot be null");
+        int position = 0;
+        long length = 0;
+        for (int shift = 0;; shift += 7) {
+            if (position == encoded.length || shift > 28)
+                throw new IllegalArgumentException("Malformed proof length");
+            byte b = encoded[position++];
+            length |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Malformed proof length");
+
+        int digestLength = hashFunction.getDigestLength();
+        int maskBytes = (int) ((length + 7) >>> 3);
+        if (encoded.length - position < digestLength + 2L * maskBytes)
+            throw new IllegalArgumentException("Truncated proof encoding");
+        Digest root = Digest.of(encoded, position, digestLength);
+        position += digestLength;
+        long[] left = readMask(encoded, position, (int) length);
+        position += maskBytes;
+        long[] absent = readMask(encoded, position, (int) length);
+        position += maskBytes;
+
+        int present = (int) length;
+        for (int i = 0; i < left.length; i++) {
+            if ((left[i] & absent[i]) != 0)
+                throw new IllegalArgumentException("A step without sibling cannot have a direction");
+            present -= Long.bitCount(absent[i]);
+        }
+        if (encoded.length - position != (long) present * digestLength)
+            throw new IllegalArgumentException("The number of siblings does not match the proof length");
+        byte[] siblings = Arrays.copyOfRange(encoded, position, encoded.length);
+        return new CompactMerkleProof(hashFunction, funnel, root, (int) length, left, absent, siblings);
+    }
+
+    /**
+     * Codifica la prova in un array di byte, nel formato descritto nella
+     * documentazione della classe.
+     *
+     * @return la codifica della prova.
+     */
+    public byte[] encode() {
+        int digestLength = root.length();
+        int maskBytes = (length + 7) >>> 3;
+        int varintBytes = 1;
+        for (int v = length >>> 7; v != 0; v >>>= 7) {
+            varintBytes++;
+        }
+        byte[] encoded = new byte[varintBytes + digestLength + 2 * maskBytes + siblings.length];
+        int position = 0;
+        int v = length;
+        while ((v & ~0x7f) != 0) {
+            encoded[position++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        encoded[position++] = (byte) v;
+        root.copyTo(encoded, position);
+        position += digestLength;
+        writeMask(left, encoded, position, length);
+        position += maskBytes;
+        writeMask(absent, encoded, position, length);
+        position += maskBytes;
+        System.arraycopy(siblings, 0, encoded, position, siblings.length);
+        return encoded;
+    }
+
+    /**
+     * Restituisce il numero di passi della prova.
+     *
+     * @return il numero di passi.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Restituisce la funzione di hash con cui vengono combinati gli hash della
+     * prova.
+     *
+     * @return la funzione di hash della prova.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce il digest della radice per cui la prova è stata costruita.
+     *
+     * @return il digest della radice.
+     */
+    public Digest getRootDigest() {
+        return root;
+    }
+
+    /**
+     * Indica se il fratello del passo indicato va concatenato a sinistra.
+     *
+     * @param step
+     *                 l'indice del passo.
+     * @return true se il fratello va concatenato a sinistra, false se va
+     *         concatenato a destra o se manca.
+     * @throws IllegalArgumentException
+     *                                      se l'indice non è valido.
+     */
+    public boolean isLeft(int step) {
+        checkStep(step);
+        return bit(left, step);
+    }
+
+    /**
+     * Restituisce il digest del fratello del passo indicato.
+     *
+     * @param step
+     *                 l'indice del passo.
+     * @return il digest del fratello, oppure null se il passo non ha un
+     *         fratello.
+     * @throws IllegalArgumentException
+     *                                      se l'indice non è valido.
+     */
+    public Digest getSibling(int step) {
+        checkStep(step);
+        if (bit(absent, step)) {
+            return null;
+        }
+        // i fratelli che precedono sono i passi precedenti con un fratello
+        int preceding = step;
+        for (int i = 0; i < (step >>> 6); i++) {
+            preceding -= Long.bitCount(absent[i]);
+        }
+        preceding -= Long.bitCount(absent[step >>> 6] & ((1L << (step & 63)) - 1));
+        return Digest.of(siblings, preceding * root.length(), root.length());
+    }
+
+    /**
+     * Valida un dato elemento per questa prova, come
+     * {@link MerkleProof#proveValidityOfData(Object)}.
+     *
+     * @param data
+     *                 l'elemento da validare.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     * @throws ClassCastException
+     *                                      se il dato non è del tipo descritto
+     *                                      dal funnel della prova.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean proveValidityOfData(Object data) {
+        if (data == null)
+            throw new IllegalArgumentException("The data cannot be null");
+        byte[] current = new byte[root.length()];
+        HashUtil.hash(data, (Funnel<Object>) funnel, hashFunction, current, 0);
+        return climb(current);
+    }
+
+    /**
+     * Valida un dato branch per questa prova, come
+     * {@link MerkleProof#proveValidityOfBranch(MerkleNode)}.
+     *
+     * @param branch
+     *                   il branch da validare.
+     * @return true se il branch è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il branch è null.
+     */
+    public boolean proveValidityOfBranch(MerkleNode branch) {
+        if (branch == null)
+            throw new IllegalArgumentException("The branch cannot be null");
+        Digest digest = branch.getDigest();
+        return digest != null && verify(digest);
+    }
+
+    /**
+     * Verifica che il nodo con il digest indicato sia parte dell'albero
+     * secondo questa prova.
+     *
+     * @param digest
+     *                   il digest del dato o del branch.
+     * @return true se il digest è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il digest è null.
+     */
+    public boolean verify(Digest digest) {
+        if (digest == null)
+            throw new IllegalArgumentException("The digest cannot be null");
+        if (digest.length() != root.length())
+            return false;
+        return climb(digest.toByteArray());
+    }
+
+    /**
+     * Converte la prova in una {@link MerkleProof} equivalente.
+     *
+     * @return la prova di Merkle equivalente.
+     */
+    public MerkleProof toMerkleProof() {
+        MerkleProof proof = new MerkleProof(root.toString(), length, hashFunction, funnel);
+        for (int step = 0; step < length; step++) {
+            Digest sibling = getSibling(step);
+            proof.addHash(sibling == null ? "" : sibling.toString(), bit(left, step));
+        }
+        return proof;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompactMerkleProof)) {
+            return false;
+        }
+        CompactMerkleProof other = (CompactMerkleProof) obj;
+        return hashFunction.equals(other.hashFunction) && funnel.equals(other.funnel) && root.equals(other.root)
+                && length == other.length && Arrays.equals(left, other.left) && Arrays.equals(absent, other.absent)
+                && Arrays.equals(siblings, other.siblings);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * root.hashCode() + length) + Arrays.hashCode(siblings);
+    }
+
+    @Override
+    public String toString() {
+        return "CompactMerkleProof [" + length + " steps, root " + root + "]";
+    }
+
+    /**
+     * Combina il digest contenuto in {@code current} con i fratelli di tutti i
+     * passi e lo confronta con la radice.
+     */
+    private boolean climb(byte[] current) {
+        int digestLength = root.length();
+        int offset = 0;
+        for (int step = 0; step < length; step++) {
+            if (bit(absent, step)) {
+                hashFunction.combine(current, 0, null, 0, current, 0);
+            } else {
+                if (bit(left, step)) {
+                    hashFunction.combine(siblings, offset, current, 0, current, 0);
+                } else {
+                    hashFunction.combine(current, 0, siblings, offset, current, 0);
+                }
+                offset += digestLength;
+            }
+        }
+        return root.matches(current, 0);
+    }
+
+    private void checkStep(int step) {
+        if (step < 0 || step >= length)
+            throw new IllegalArgumentException("Invalid step: " + step);
+    }
+
+    private static boolean bit(long[] mask, int index) {
+        return (mask[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+
+    private static long[] readMask(byte[] src, int offset, int bits) {
+        long[] mask = new long[(bits + 63) >>> 6];
+        for (int i = 0; i < (bits + 7) >>> 3; i++) {
+            mask[i >>> 3] |= (long) (src[offset + i] & 0xff) << ((i & 7) << 3);
+        }
+        // i bit oltre la lunghezza della prova devono essere a 0
+        if ((bits & 63) != 0 && (mask[mask.length - 1] >>> (bits & 63)) != 0)
+            throw new IllegalArgumentException("Malformed proof mask");
+        return mask;
+    }
+
+    private static void writeMask(long[] mask, byte[] dst, int offset, int bits) {
+        for (int i = 0; i < (bits + 7) >>> 3; i++) {
+            dst[offset + i] = (byte) (mask[i >>> 3] >>> ((i & 7) << 3));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static it.unicam.cs.asdl2425.mp1.TestTrees.treeOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link CompactMerkleProof}. Questa classe
+ * verifica la costruzione, la verifica e la codifica delle prove compatte.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testDataProofMatchesMerkleProof()}: Verifica che per ogni dato
+ * di un albero la prova compatta coincida con la conversione della prova di
+ * Merkle e ne abbia la stessa lunghezza.</li>
+ *
+ * <li>{@link #testBranchProofMatchesMerkleProof()}: Verifica che la prova
+ * compatta di un branch coincida con la conversione della prova di
+ * Merkle.</li>
+ *
+ * <li>{@link #testToMerkleProof()}: Verifica che la conversione di una prova
+ * compatta in una prova di Merkle sia valida.</li>
+ *
+ * <li>{@link #testLastLeafWithoutSibling()}: Verifica che l'ultima foglia di
+ * un albero dispari non abbia fratello né direzione.</li>
+ *
+ * <li>{@link #testVerifyData()}: Verifica che le prove compatte validino i
+ * dati e i digest corretti.</li>
+ *
+ * <li>{@link #testRejectOtherData()}: Verifica che le prove compatte
+ * respingano gli altri dati.</li>
+ *
+ * <li>{@link #testVerifyBranch()}: Verifica che la prova di un branch lo
+ * validi e respinga gli altri branch.</li>
+ *
+ * <li>{@link #testRejectWrongDigestLength()}: Verifica che un digest di
+ * lunghezza diversa venga respinto.</li>
+ *
+ * <li>{@link #testEncodeDecode()}: Verifica che una prova codificata e
+ * decodificata sia identica all'originale.</li>
+ *
+ * <li>{@link #testEmptyHashesNotEncoded()}: Verifica che gli hash vuoti non
+ * occupino spazio nella codifica.</li>
+ *
+ * <li>{@link #testLongProofEncoding()}: Verifica la codifica di una prova con
+ * più di 127 passi, la cui lunghezza occupa due byte.</li>
+ *
+ * <li>{@link #testInvalidMerkleProof()}: Verifica che la conversione di una
+ * prova con hash non esadecimali lanci un'eccezione.</li>
+ *
+ * <li>{@link #testInvalidEncoding()}: Verifica che la decodifica di una
+ * codifica non valida lanci un'eccezione.</li>
+ *
+ * <li>{@link #testInvalidStep()}: Verifica che la richiesta di un passo non
+ * valido lanci un'eccezione.</li>
+ * </ul>
+ */
+class CompactMerkleProofTest {
+
+    @Test
+    void testDataProofMatchesMerkleProof() {
+        MerkleTree<Integer> tree = treeOf(13);
+        for (int i = 0; i < 13; i++) {
+            CompactMerkleProof compact = tree.getCompactMerkleProof(Integer.valueOf(i));
+            MerkleProof proof = tree.getMerkleProof(Integer.valueOf(i));
+            assertEquals(proof.toCompactProof(), compact, "La prova compatta del dato " + i + " non corrisponde.");
+            assertEquals(proof.getLength(), compact.getLength(), "La lunghezza della prova non corrisponde.");
+        }
+    }
+
+    @Test
+    void testBranchProofMatchesMerkleProof() {
+        MerkleTree<Integer> tree = treeOf(13);
+        MerkleNode branch = tree.getRoot().getRight().getLeft();
+        assertEquals(tree.getMerkleProof(branch).toCompactProof(), tree.getCompactMerkleProof(branch),
+                "La prova compatta del branch non corrisponde.");
+    }
+
+    @Test
+    void testToMerkleProof() {
+        MerkleTree<Integer> tree = treeOf(13);
+        for (int i = 0; i < 13; i++) {
+            assertTrue(tree.getCompactMerkleProof(Integer.valueOf(i)).toMerkleProof().proveValidityOfData(i),
+                    "La conversione della prova compatta del dato " + i + " dovrebbe essere valida.");
+        }
+    }
+
+    @Test
+    void testLastLeafWithoutSibling() {
+        // l'ultima foglia non ha fratelli fino al livello della radice
+        CompactMerkleProof last = treeOf(13).getCompactMerkleProof(Integer.valueOf(12));
+        assertNull(last.getSibling(0), "L'ultima foglia non dovrebbe avere un fratello.");
+        assertFalse(last.isLeft(0), "Un passo senza fratello non dovrebbe avere direzione.");
+    }
+
+    @Test
+    void testVerifyData() {
+        MerkleTree<Integer> tree = treeOf(13, HashFunction.SHA256);
+        for (int i = 0; i < 13; i++) {
+            CompactMerkleProof proof = tree.getCompactMerkleProof(Integer.valueOf(i));
+            assertTrue(proof.proveValidityOfData(i), "La prova del dato " + i + " dovrebbe essere valida.");
+            assertTrue(proof.verify(HashUtil.dataToDigest(i, HashFunction.SHA256)),
+                    "Il digest del dato " + i + " dovrebbe essere valido.");
+        }
+    }
+
+    @Test
+    void testRejectOtherData() {
+        MerkleTree<Integer> tree = treeOf(13, HashFunction.SHA256);
+        for (int i = 0; i < 13; i++) {
+            assertFalse(tree.getCompactMerkleProof(Integer.valueOf(i)).proveValidityOfData(i + 1),
+                    "La prova del dato " + i + " non dovrebbe validare altri dati.");
+        }
+    }
+
+    @Test
+    void testVerifyBranch() {
+        MerkleTree<Integer> tree = treeOf(13, HashFunction.SHA256);
+        MerkleNode branch = tree.getRoot().getLeft().getRight();
+        CompactMerkleProof branchProof = tree.getCompactMerkleProof(branch);
+        assertTrue(branchProof.proveValidityOfBranch(branch), "La prova del branch dovrebbe essere valida.");
+        assertFalse(branchProof.proveValidityOfBranch(tree.getRoot().getLeft().getLeft()),
+                "La prova non dovrebbe validare un altro branch.");
+    }
+
+    @Test
+    void testRejectWrongDigestLength() {
+        MerkleTree<Integer> tree = treeOf(13, HashFunction.SHA256);
+        CompactMerkleProof proof = tree.getCompactMerkleProof(tree.getRoot().getLeft().getRight());
+        assertFalse(proof.verify(HashUtil.dataToDigest(0)), "Un digest di lunghezza diversa non è valido.");
+    }
+
+    @Test
+    void testEncodeDecode() {
+        MerkleTree<Integer> tree = treeOf(13);
+        for (int i = 0; i < 13; i++) {
+            CompactMerkleProof proof = tree.getCompactMerkleProof(Integer.valueOf(i));
+            CompactMerkleProof decoded = CompactMerkleProof.decode(proof.encode(), HashFunction.MD5, Funnels.object());
+            assertEquals(proof, decoded, "La prova decodificata dovrebbe coincidere.");
+            assertTrue(decoded.proveValidityOfData(i), "La prova decodificata dovrebbe essere valida.");
+        }
+    }
+
+    @Test
+    void testEmptyHashesNotEncoded() {
+        MerkleTree<Integer> tree = treeOf(13);
+        for (int i = 0; i < 13; i++) {
+            CompactMerkleProof proof = tree.getCompactMerkleProof(Integer.valueOf(i));
+            int present = 0;
+            for (int step = 0; step < proof.getLength(); step++) {
+                if (proof.getSibling(step) != null) {
+                    present++;
+                }
+            }
+            // lunghezza, radice, due maschere da un byte e i fratelli presenti
+            assertEquals(1 + 16 + 2 + present * 16, proof.encode().length,
+                    "La codifica del dato " + i + " non è compatta.");
+        }
+    }
+
+    @Test
+    void testLongProofEncoding() {
+        // una prova con più di 127 passi richiede due byte per la lunghezza
+        MerkleProof longProof = new MerkleProof(HashUtil.dataToHash("radice"), 200);
+        for (int step = 0; step < 200; step++) {
+            longProof.addHash(step % 3 == 0 ? "" : HashUtil.dataToHash(step), step % 3 == 1);
+        }
+        CompactMerkleProof compact = longProof.toCompactProof();
+        byte[] encoded = compact.encode();
+        assertEquals(2 + 16 + 2 * 25 + 133 * 16, encoded.length, "La codifica della prova lunga non corrisponde.");
+        assertEquals(compact, CompactMerkleProof.decode(encoded, HashFunction.MD5, Funnels.object()),
+                "La prova lunga decodificata dovrebbe coincidere.");
+        assertEquals(HashUtil.dataToDigest(199), compact.getSibling(199), "Il fratello dell'ultimo passo non corrisponde.");
+    }
+
+    @Test
+    void testInvalidMerkleProof() {
+        MerkleProof proof = new MerkleProof(HashUtil.dataToHash("radice"), 1);
+        proof.addHash("Hash non valido", true);
+        assertThrows(IllegalArgumentException.class, proof::toCompactProof,
+                "Un hash non esadecimale dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> new MerkleProof("radice", 0).toCompactProof(),
+                "Una radice non esadecimale dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidEncoding() {
+        byte[] encoded = treeOf(5).getCompactMerkleProof(Integer.valueOf(0)).encode();
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactMerkleProof.decode(Arrays.copyOf(encoded, encoded.length - 1), HashFunction.MD5,
+                        Funnels.object()),
+                "Una codifica troncata dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactMerkleProof.decode(encoded, HashFunction.SHA256, Funnels.object()),
+                "Una funzione di hash diversa dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactMerkleProof.decode(new byte[] { (byte) 0x80 }, HashFunction.MD5, Funnels.object()),
+                "Una lunghezza incompleta dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidStep() {
+        CompactMerkleProof compact = treeOf(5).getCompactMerkleProof(Integer.valueOf(0));
+        assertThrows(IllegalArgumentException.class, () -> compact.getSibling(compact.getLength()),
+                "Un passo non valido dovrebbe lanciare IllegalArgumentException.");
+    }
+}
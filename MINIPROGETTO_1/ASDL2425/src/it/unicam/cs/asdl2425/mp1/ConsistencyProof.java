@@ -0,0 +1,174 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Prova di consistenza tra due versioni di un albero di Merkle: dimostra che
+ * l'albero più recente, con {@code newWidth} foglie, si ottiene da quello più
+ * vecchio, con {@code oldWidth} foglie, solo aggiungendo dati in fondo,
+ * conoscendo soltanto le due radici. Segue l'idea delle prove di consistenza
+ * di RFC 6962, adattata alla forma degli alberi di {@link MerkleTree}.
+ *
+ * <p>
+ * Le prime {@code oldWidth} foglie si scompongono in sottoalberi completi, uno
+ * per ogni bit a 1 di {@code oldWidth}: questi sottoalberi sono identici nei
+ * due alberi e da essi si ricalcola la vecchia radice. La prova contiene i
+ * loro digest (tranne quando {@code oldWidth} è una potenza di due e l'unico
+ * sottoalbero è la vecchia radice), seguiti dai digest dei nodi fratelli
+ * necessari a ricalcolare la nuova radice, al più uno per livello. La
+ * dimensione della prova è quindi logaritmica nel numero di foglie.
+ */
+public class ConsistencyProof {
+
+    private final int oldWidth;
+
+    private final int newWidth;
+
+    private final HashFunction hashFunction;
+
+    /**
+     * Digest della prova: prima i sottoalberi completi del vecchio albero,
+     * poi i fratelli nell'ordine in cui vengono richiesti.
+     */
+    private final List<Digest> path;
+
+    /**
+     * Costruisce una prova di consistenza a partire dai suoi digest, ad
+     * esempio dopo averla ricevuta da un altro nodo.
+     *
+     * @param oldWidth
+     *                         il numero di foglie del vecchio albero.
+     * @param newWidth
+     *                         il numero di foglie del nuovo albero.
+     * @param hashFunction
+     *                         la funzione di hash degli alberi.
+     * @param path
+     *                         i digest della prova.
+     * @throws IllegalArgumentException
+     *                                      se le larghezze non sono valide, se
+     *                                      la funzione di hash o i digest sono
+     *                                      null o se un digest ha una
+     *                                      lunghezza diversa da quella della
+     *                                      funzione di hash.
+     */
+    public ConsistencyProof(int oldWidth, int newWidth, HashFunction hashFunction, List<Digest> path) {
+        if (oldWidth < 1 || newWidth < oldWidth)
+            throw new IllegalArgumentException("Invalid widths: " + oldWidth + ", " + newWidth);
+        if (hashFunction == null || path == null)
+            throw new IllegalArgumentException("The hash function and the path cannot be null");
+        for (Digest digest : path) {
+            if (digest == null || digest.length() != hashFunction.getDigestLength())
+                throw new IllegalArgumentException("The path contains an invalid digest");
+        }
+        this.oldWidth = oldWidth;
+        this.newWidth = newWidth;
+        this.hashFunction = hashFunction;
+        this.path = Collections.unmodifiableList(new ArrayList<>(path));
+    }
+
+    /**
+     * Restituisce il numero di foglie del vecchio albero.
+     *
+     * @return il numero di foglie del vecchio albero.
+     */
+    public int getOldWidth() {
+        return oldWidth;
+    }
+
+    /**
+     * Restituisce il numero di foglie del nuovo albero.
+     *
+     * @return il numero di foglie del nuovo albero.
+     */
+    public int getNewWidth() {
+        return newWidth;
+    }
+
+    /**
+     * Restituisce la funzione di hash degli alberi.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce i digest della prova, in una lista non modificabile.
+     *
+     * @return i digest della prova.
+     */
+    public List<Digest> getPath() {
+        return path;
+    }
+
+    /**
+     * Verifica che l'albero con radice {@code newRoot} estenda quello con
+     * radice {@code oldRoot}.
+     *
+     * @param oldRoot
+     *                    l'hash della radice del vecchio albero.
+     * @param newRoot
+     *                    l'hash della radice del nuovo albero.
+     * @return true se la prova è valida per le due radici, false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se una delle radici è null.
+     */
+    public boolean verify(String oldRoot, String newRoot) {
+        if (oldRoot == null || newRoot == null)
+            throw new IllegalArgumentException("The roots cannot be null");
+        Digest oldDigest = Digest.tryFromHex(oldRoot);
+        Digest newDigest = Digest.tryFromHex(newRoot);
+        return oldDigest != null && newDigest != null && verify(oldDigest, newDigest);
+    }
+
+    /**
+     * Verifica che l'albero con radice {@code newRoot} estenda quello con
+     * radice {@code oldRoot}.
+     *
+     * @param oldRoot
+     *                    il digest della radice del vecchio albero.
+     * @param newRoot
+     *                    il digest della radice del nuovo albero.
+     * @return true se la prova è valida per le due radici, false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se una delle radici è null.
+     */
+    public boolean verify(Digest oldRoot, Digest newRoot) {
+        if (oldRoot == null || newRoot == null)
+            throw new IllegalArgumentException("The roots cannot be null");
+        int digestLength = hashFunction.getDigestLength();
+        if (oldRoot.length() != digestLength || newRoot.length() != digestLength)
+            return false;
+
+        List<long[]> peaks = MerkleWalk.peaks(oldWidth);
+        Iterator<Digest> digests = path.iterator();
+        List<MerkleWalk.Node> known = new ArrayList<>();
+        if (peaks.size() == 1) {
+            // l'unico sottoalbero completo è la vecchia radice
+            known.add(new MerkleWalk.Node((int) peaks.get(0)[0], peaks.get(0)[1], oldRoot));
+        } else {
+            for (long[] peak : peaks) {
+                if (!digests.hasNext())
+                    return false;
+                known.add(new MerkleWalk.Node((int) peak[0], peak[1], digests.next()));
+            }
+            Digest computedOld = MerkleWalk.computeRoot(oldWidth, known, hashFunction, (level, position) -> null);
+            if (!oldRoot.equals(computedOld))
+                return false;
+        }
+
+        Digest computedNew = MerkleWalk.computeRoot(newWidth, known, hashFunction,
+                (level, position) -> digests.hasNext() ? digests.next() : null);
+        // tutti i digest della prova devono essere stati usati
+        return !digests.hasNext() && newRoot.equals(computedNew);
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistencyProof [" + oldWidth + " -> " + newWidth + ", " + path + "]";
+    }
+}
@@ -0,0 +1,144 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static it.unicam.cs.asdl2425.mp1.TestTrees.treeOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link ConsistencyProof}. Questa classe
+ * verifica la generazione e la verifica delle prove di consistenza tra due
+ * versioni di un {@link MerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testAllWidths()}: Verifica che la prova sia valida per ogni
+ * coppia di larghezze fino a 40 foglie.</li>
+ *
+ * <li>{@link #testLogarithmicSize()}: Verifica che la dimensione della prova
+ * sia logaritmica nel numero di foglie.</li>
+ *
+ * <li>{@link #testModifiedHistory()}: Verifica che la prova venga respinta se
+ * il vecchio albero non è un prefisso di quello nuovo.</li>
+ *
+ * <li>{@link #testTamperedDigest()}: Verifica che una prova con un digest
+ * alterato venga respinta.</li>
+ *
+ * <li>{@link #testTruncatedProof()}: Verifica che una prova troncata venga
+ * respinta.</li>
+ *
+ * <li>{@link #testExtendedProof()}: Verifica che una prova con digest in più
+ * venga respinta.</li>
+ *
+ * <li>{@link #testWrongRoots()}: Verifica che la prova venga respinta con le
+ * radici scambiate o con una radice non esadecimale.</li>
+ *
+ * <li>{@link #testInvalidOldWidth()}: Verifica che venga lanciata
+ * un'eccezione se la vecchia larghezza non è valida per l'albero.</li>
+ *
+ * <li>{@link #testInvalidProofParts()}: Verifica che venga lanciata
+ * un'eccezione se la prova viene costruita da parti non valide.</li>
+ * </ul>
+ */
+class ConsistencyProofTest {
+
+    @Test
+    void testAllWidths() {
+        for (int newWidth = 1; newWidth <= 40; newWidth++) {
+            MerkleTree<Integer> newTree = treeOf(newWidth);
+            for (int oldWidth = 1; oldWidth <= newWidth; oldWidth++) {
+                MerkleTree<Integer> oldTree = treeOf(oldWidth);
+                ConsistencyProof proof = newTree.getConsistencyProof(oldTree);
+                assertTrue(proof.verify(oldTree.getRoot().getHash(), newTree.getRoot().getHash()),
+                        "La prova tra " + oldWidth + " e " + newWidth + " foglie dovrebbe essere valida.");
+            }
+        }
+    }
+
+    @Test
+    void testLogarithmicSize() {
+        for (int newWidth = 1; newWidth <= 40; newWidth++) {
+            MerkleTree<Integer> newTree = treeOf(newWidth);
+            for (int oldWidth = 1; oldWidth <= newWidth; oldWidth++) {
+                assertTrue(newTree.getConsistencyProof(oldWidth).getPath().size() <= 2 * newTree.getHeight() + 1,
+                        "La prova tra " + oldWidth + " e " + newWidth + " foglie è troppo lunga.");
+            }
+        }
+    }
+
+    @Test
+    void testModifiedHistory() {
+        MerkleTree<Integer> newTree = treeOf(20);
+        for (int oldWidth : new int[] { 1, 6, 8, 13 }) {
+            MerkleTree<Integer> forged = treeOf(oldWidth);
+            forged.updateLeaf(oldWidth - 1, -1);
+            ConsistencyProof proof = newTree.getConsistencyProof(oldWidth);
+            assertFalse(proof.verify(forged.getRoot().getHash(), newTree.getRoot().getHash()),
+                    "Un vecchio albero con un dato diverso non dovrebbe essere consistente.");
+        }
+    }
+
+    @Test
+    void testTamperedDigest() {
+        List<Digest> path = treeOf(19).getConsistencyProof(6).getPath();
+        for (int i = 0; i < path.size(); i++) {
+            List<Digest> tampered = new ArrayList<>(path);
+            tampered.set(i, HashUtil.dataToDigest("falso"));
+            assertFalse(verify(tampered), "Una prova con il digest " + i + " alterato non dovrebbe essere valida.");
+        }
+    }
+
+    @Test
+    void testTruncatedProof() {
+        List<Digest> path = treeOf(19).getConsistencyProof(6).getPath();
+        assertFalse(verify(path.subList(0, path.size() - 1)), "Una prova troncata non dovrebbe essere valida.");
+    }
+
+    @Test
+    void testExtendedProof() {
+        List<Digest> path = new ArrayList<>(treeOf(19).getConsistencyProof(6).getPath());
+        path.add(HashUtil.dataToDigest("extra"));
+        assertFalse(verify(path), "Una prova con digest in più non dovrebbe essere valida.");
+    }
+
+    @Test
+    void testWrongRoots() {
+        MerkleTree<Integer> newTree = treeOf(19);
+        ConsistencyProof proof = newTree.getConsistencyProof(6);
+        String oldRoot = treeOf(6).getRoot().getHash();
+        String newRoot = newTree.getRoot().getHash();
+        assertFalse(proof.verify(newRoot, oldRoot), "Le radici scambiate non dovrebbero essere valide.");
+        assertFalse(proof.verify("HashNonValido", newRoot), "Una radice non esadecimale non dovrebbe essere valida.");
+    }
+
+    @Test
+    void testInvalidOldWidth() {
+        MerkleTree<Integer> tree = treeOf(5);
+        assertThrows(IllegalArgumentException.class, () -> tree.getConsistencyProof(0),
+                "Una larghezza nulla dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> tree.getConsistencyProof(6),
+                "Una larghezza maggiore dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidProofParts() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ConsistencyProof(3, 2, HashFunction.MD5, new ArrayList<>()),
+                "Larghezze decrescenti dovrebbero lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class,
+                () -> new ConsistencyProof(1, 2, HashFunction.MD5, List.of(HashUtil.dataToDigest(1, HashFunction.SHA256))),
+                "Un digest di lunghezza diversa dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    /**
+     * Verifica tra gli alberi di 6 e 19 foglie una prova con il percorso
+     * indicato.
+     */
+    private static boolean verify(List<Digest> path) {
+        return new ConsistencyProof(6, 19, HashFunction.MD5, path).verify(treeOf(6).getRoot().getHash(),
+                treeOf(19).getRoot().getHash());
+    }
+}
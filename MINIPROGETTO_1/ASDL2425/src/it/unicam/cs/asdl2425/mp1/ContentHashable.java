@@ -0,0 +1,20 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Un oggetto in grado di descrivere il proprio contenuto a un {@link Hasher}.
+ * Il {@link Funnels#object() funnel di default} usa questo metodo al posto
+ * di leggere i campi dell'oggetto per riflessione, quindi è il modo più
+ * semplice per scegliere quali campi di un tipo di dato definito dall'utente
+ * vengono hashati, compresi quelli annidati (che possono essere descritti con
+ * {@code Funnels.object().funnel(campo, into)}).
+ */
+public interface ContentHashable {
+
+    /**
+     * Aggiunge il contenuto di questo oggetto all'input del calcolatore.
+     *
+     * @param into
+     *                 il calcolatore in cui riversare il contenuto.
+     */
+    void hashContent(Hasher into);
+}
@@ -0,0 +1,209 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+
+/**
+ * Rappresenta il valore grezzo di un hash (digest) di lunghezza fissa, ad
+ * esempio i 16 byte di un hash MD5. A differenza della rappresentazione come
+ * stringa esadecimale, un digest occupa esattamente il numero di byte prodotti
+ * dalla funzione di hash e può essere confrontato e copiato senza formattazioni
+ * intermedie. La stringa esadecimale viene prodotta solo quando richiesta, ad
+ * esempio da {@link #toString()}.
+ *
+ * <p>
+ * Gli oggetti di questa classe sono immutabili.
+ */
+public final class Digest {
+
+    /**
+     * I byte del digest. L'array non viene mai esposto all'esterno.
+     */
+    private final byte[] bytes;
+
+    /**
+     * Rappresentazione esadecimale del digest, calcolata solo se richiesta.
+     */
+    private String hex;
+
+    private Digest(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Crea un digest copiando i byte forniti.
+     *
+     * @param bytes
+     *                  i byte del digest.
+     * @return il digest corrispondente.
+     * @throws IllegalArgumentException
+     *                                      se l'array è null o vuoto.
+     */
+    public static Digest of(byte[] bytes) {
+        if (bytes == null || bytes.length == 0)
+            throw new IllegalArgumentException("The digest bytes cannot be null or empty");
+        return new Digest(bytes.clone());
+    }
+
+    /**
+     * Crea un digest che usa direttamente l'array fornito, senza copiarlo. Il
+     * chiamante non deve più modificare l'array.
+     *
+     * @param bytes
+     *                  i byte del digest.
+     * @return il digest corrispondente.
+     */
+    static Digest wrap(byte[] bytes) {
+        return new Digest(bytes);
+    }
+
+    /**
+     * Crea un digest copiando {@code length} byte dall'array fornito a partire
+     * dalla posizione {@code offset}.
+     *
+     * @param bytes
+     *                   l'array sorgente.
+     * @param offset
+     *                   la posizione del primo byte del digest.
+     * @param length
+     *                   la lunghezza del digest in byte.
+     * @return il digest corrispondente.
+     * @throws IllegalArgumentException
+     *                                      se l'array è null o la lunghezza non
+     *                                      è positiva.
+     */
+    public static Digest of(byte[] bytes, int offset, int length) {
+        if (bytes == null || length <= 0)
+            throw new IllegalArgumentException("The digest bytes cannot be null or empty");
+        return new Digest(Arrays.copyOfRange(bytes, offset, offset + length));
+    }
+
+    /**
+     * Crea un digest a partire dalla sua rappresentazione esadecimale.
+     *
+     * @param hex
+     *                la stringa esadecimale, di lunghezza pari e non vuota.
+     * @return il digest corrispondente.
+     * @throws IllegalArgumentException
+     *                                      se la stringa è null o non è una
+     *                                      stringa esadecimale valida.
+     */
+    public static Digest fromHex(String hex) {
+        Digest digest = tryFromHex(hex);
+        if (digest == null)
+            throw new IllegalArgumentException("Not a valid hexadecimal digest: " + hex);
+        return digest;
+    }
+
+    /**
+     * Come {@link #fromHex(String)}, ma restituisce null invece di lanciare
+     * un'eccezione se la stringa non è un digest esadecimale valido.
+     *
+     * @param hex
+     *                la stringa esadecimale.
+     * @return il digest corrispondente, oppure null.
+     */
+    public static Digest tryFromHex(String hex) {
+        if (hex == null || hex.isEmpty() || (hex.length() & 1) != 0)
+            return null;
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0)
+                return null;
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        Digest digest = new Digest(bytes);
+        // La forma canonica è minuscola: la riusiamo solo se coincide
+        if (hex.equals(HashUtil.toHex(bytes)))
+            digest.hex = hex;
+        return digest;
+    }
+
+    /**
+     * Restituisce la lunghezza del digest in byte.
+     *
+     * @return la lunghezza del digest in byte.
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * Restituisce il byte in posizione {@code index}.
+     *
+     * @param index
+     *                  la posizione del byte.
+     * @return il byte richiesto.
+     */
+    public byte getByte(int index) {
+        return bytes[index];
+    }
+
+    /**
+     * Copia i byte del digest nell'array fornito a partire dalla posizione
+     * {@code offset}, senza allocare memoria.
+     *
+     * @param dst
+     *                   l'array di destinazione.
+     * @param offset
+     *                   la posizione di partenza nell'array di destinazione.
+     */
+    public void copyTo(byte[] dst, int offset) {
+        System.arraycopy(bytes, 0, dst, offset, bytes.length);
+    }
+
+    /**
+     * Restituisce una copia dei byte del digest.
+     *
+     * @return una copia dei byte del digest.
+     */
+    public byte[] toByteArray() {
+        return bytes.clone();
+    }
+
+    /**
+     * Verifica se il digest coincide con i byte contenuti nell'array fornito a
+     * partire dalla posizione {@code offset}.
+     *
+     * @param other
+     *                   l'array con cui confrontare il digest.
+     * @param offset
+     *                   la posizione di partenza nell'array.
+     * @return true se i byte coincidono, false altrimenti.
+     */
+    public boolean matches(byte[] other, int offset) {
+        return Arrays.equals(bytes, 0, bytes.length, other, offset, offset + bytes.length);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Digest)) {
+            return false;
+        }
+        // Due digest sono uguali se contengono gli stessi byte
+        return Arrays.equals(bytes, ((Digest) obj).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    /**
+     * Restituisce la rappresentazione esadecimale minuscola del digest, la
+     * stessa prodotta da {@link HashUtil#computeMD5(byte[])}.
+     *
+     * @return la rappresentazione esadecimale del digest.
+     */
+    @Override
+    public String toString() {
+        if (hex == null) {
+            hex = HashUtil.toHex(bytes);
+        }
+        return hex;
+    }
+}
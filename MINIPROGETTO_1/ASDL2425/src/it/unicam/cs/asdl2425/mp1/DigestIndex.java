@@ -0,0 +1,290 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+
+/**
+ * Indice che associa il digest di ciascuna foglia di un albero di Merkle alla
+ * sua posizione, per trovare un dato in tempo costante invece di scorrere
+ * tutte le foglie.
+ *
+ * <p>
+ * L'indice è una tabella ad indirizzamento aperto con scansione lineare,
+ * basata su array di interi: per ogni digest distinto memorizza un'impronta di
+ * 32 bit e la posizione della prima foglia con quel digest. I digest non
+ * vengono copiati: in caso di impronte uguali il confronto completo viene
+ * delegato a un {@link LeafMatcher}, che li legge dalla memoria dell'albero.
+ * Le foglie con lo stesso digest formano una catena in ordine crescente di
+ * posizione, memorizzata in un ulteriore array; per ogni catena è noto anche
+ * l'ultimo elemento, così che aggiungere foglie in ordine crescente costi
+ * tempo costante anche quando molte foglie hanno lo stesso digest.
+ *
+ * <p>
+ * Lo stesso indice può associare digest a qualsiasi insieme di nodi numerati
+ * consecutivamente, ad esempio i nodi interni di un albero.
+ */
+final class DigestIndex {
+
+    /**
+     * Confronta il digest di una foglia con un digest dato.
+     */
+    @FunctionalInterface
+    interface LeafMatcher {
+        /**
+         * Verifica se la foglia in posizione {@code leaf} ha il digest
+         * indicato.
+         *
+         * @param leaf
+         *                   la posizione della foglia.
+         * @param digest
+         *                   il digest da confrontare.
+         * @return true se i digest coincidono, false altrimenti.
+         */
+        boolean matches(int leaf, Digest digest);
+    }
+
+    private static final int EMPTY = -1;
+
+    private final LeafMatcher matcher;
+
+    /**
+     * Impronte dei digest presenti, per posizione della tabella.
+     */
+    private int[] fingerprints;
+
+    /**
+     * Prima foglia con il digest della posizione, oppure {@link #EMPTY}.
+     */
+    private int[] heads;
+
+    /**
+     * Ultima foglia con il digest della posizione, significativa solo se la
+     * posizione è occupata.
+     */
+    private int[] tails;
+
+    /**
+     * Per ogni foglia, la foglia successiva con lo stesso digest, oppure
+     * {@link #EMPTY}.
+     */
+    private int[] next;
+
+    /**
+     * Numero di digest distinti presenti.
+     */
+    private int size;
+
+    /**
+     * Costruisce un indice vuoto dimensionato per il numero di foglie
+     * indicato.
+     *
+     * @param expectedLeaves
+     *                           il numero di foglie previsto.
+     * @param matcher
+     *                           il confronto tra foglie e digest.
+     */
+    DigestIndex(int expectedLeaves, LeafMatcher matcher) {
+        this.matcher = matcher;
+        int capacity = 8;
+        while (capacity < 2L * expectedLeaves && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        this.fingerprints = new int[capacity];
+        this.heads = new int[capacity];
+        Arrays.fill(heads, EMPTY);
+        this.tails = new int[capacity];
+        this.next = new int[Math.max(1, expectedLeaves)];
+        Arrays.fill(next, EMPTY);
+    }
+
+    /**
+     * Restituisce la prima foglia con il digest indicato.
+     *
+     * @param digest
+     *                   il digest da cercare.
+     * @return la posizione della prima foglia, oppure -1 se nessuna foglia ha
+     *         quel digest.
+     */
+    int first(Digest digest) {
+        int slot = find(digest, fingerprint(digest));
+        return slot < 0 ? -1 : heads[slot];
+    }
+
+    /**
+     * Restituisce la foglia successiva a quella indicata con lo stesso digest.
+     *
+     * @param leaf
+     *                 la posizione di una foglia presente nell'indice.
+     * @return la posizione della foglia successiva, oppure -1.
+     */
+    int next(int leaf) {
+        return next[leaf];
+    }
+
+    /**
+     * Aggiunge all'indice una foglia con il digest indicato.
+     *
+     * @param leaf
+     *                   la posizione della foglia.
+     * @param digest
+     *                   il digest della foglia.
+     */
+    void add(int leaf, Digest digest) {
+        if (leaf >= next.length) {
+            int oldLength = next.length;
+            next = Arrays.copyOf(next, Math.max(leaf + 1, oldLength * 2));
+            Arrays.fill(next, oldLength, next.length, EMPTY);
+        }
+        int fingerprint = fingerprint(digest);
+        int slot = find(digest, fingerprint);
+        if (slot >= 0) {
+            int head = heads[slot];
+            if (leaf > tails[slot]) {
+                // caso tipico della costruzione: la foglia va in fondo
+                next[tails[slot]] = leaf;
+                next[leaf] = EMPTY;
+                tails[slot] = leaf;
+            } else if (leaf < head) {
+                next[leaf] = head;
+                heads[slot] = leaf;
+            } else {
+                // la catena resta ordinata per posizione
+                int previous = head;
+                while (next[previous] != EMPTY && next[previous] < leaf) {
+                    previous = next[previous];
+                }
+                next[leaf] = next[previous];
+                next[previous] = leaf;
+            }
+            return;
+        }
+        if (2 * (size + 1) > heads.length) {
+            resize(heads.length * 2);
+        }
+        insert(fingerprint, leaf, leaf);
+        next[leaf] = EMPTY;
+        size++;
+    }
+
+    /**
+     * Rimuove dall'indice una foglia con il digest indicato.
+     *
+     * @param leaf
+     *                   la posizione della foglia.
+     * @param digest
+     *                   il digest della foglia.
+     */
+    void remove(int leaf, Digest digest) {
+        int slot = find(digest, fingerprint(digest));
+        if (slot < 0) {
+            return;
+        }
+        int head = heads[slot];
+        if (head == leaf) {
+            if (next[leaf] == EMPTY) {
+                delete(slot);
+                size--;
+            } else {
+                heads[slot] = next[leaf];
+            }
+        } else {
+            int previous = head;
+            while (previous != EMPTY && next[previous] != leaf) {
+                previous = next[previous];
+            }
+            if (previous == EMPTY) {
+                return;
+            }
+            next[previous] = next[leaf];
+            if (tails[slot] == leaf) {
+                tails[slot] = previous;
+            }
+        }
+        next[leaf] = EMPTY;
+    }
+
+    /**
+     * Cerca la posizione della tabella del digest indicato.
+     *
+     * @return la posizione, oppure -1 se il digest non è presente.
+     */
+    private int find(Digest digest, int fingerprint) {
+        int mask = heads.length - 1;
+        for (int slot = mix(fingerprint) & mask; heads[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (fingerprints[slot] == fingerprint && matcher.matches(heads[slot], digest)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int fingerprint, int head, int tail) {
+        int mask = heads.length - 1;
+        int slot = mix(fingerprint) & mask;
+        while (heads[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        fingerprints[slot] = fingerprint;
+        heads[slot] = head;
+        tails[slot] = tail;
+    }
+
+    /**
+     * Svuota la posizione indicata spostando all'indietro gli elementi
+     * successivi della stessa sequenza, così che le ricerche non si
+     * interrompano prima del tempo.
+     */
+    private void delete(int slot) {
+        int mask = heads.length - 1;
+        int hole = slot;
+        for (int current = (slot + 1) & mask; heads[current] != EMPTY; current = (current + 1) & mask) {
+            int home = mix(fingerprints[current]) & mask;
+            // l'elemento può occupare il buco se la sua posizione naturale
+            // non si trova tra il buco (escluso) e la posizione attuale
+            if (((current - home) & mask) >= ((current - hole) & mask)) {
+                fingerprints[hole] = fingerprints[current];
+                heads[hole] = heads[current];
+                tails[hole] = tails[current];
+                hole = current;
+            }
+        }
+        heads[hole] = EMPTY;
+    }
+
+    private void resize(int capacity) {
+        int[] oldFingerprints = fingerprints;
+        int[] oldHeads = heads;
+        int[] oldTails = tails;
+        fingerprints = new int[capacity];
+        heads = new int[capacity];
+        Arrays.fill(heads, EMPTY);
+        tails = new int[capacity];
+        for (int i = 0; i < oldHeads.length; i++) {
+            if (oldHeads[i] != EMPTY) {
+                insert(oldFingerprints[i], oldHeads[i], oldTails[i]);
+            }
+        }
+    }
+
+    /**
+     * Calcola l'impronta di un digest dai suoi primi quattro byte.
+     */
+    private static int fingerprint(Digest digest) {
+        int fingerprint = 0;
+        for (int i = 0; i < Math.min(4, digest.length()); i++) {
+            fingerprint = (fingerprint << 8) | (digest.getByte(i) & 0xff);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Mescola i bit dell'impronta, per distribuire bene anche digest non
+     * crittografici.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,145 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link DigestIndex}. Questa classe verifica la
+ * ricerca delle foglie a partire dal loro digest.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testFirstAndNext()}: Verifica che le foglie con lo stesso
+ * digest vengano restituite in ordine crescente di posizione.</li>
+ *
+ * <li>{@link #testRemove()}: Verifica la rimozione di foglie in testa e in
+ * mezzo a una catena di duplicati.</li>
+ *
+ * <li>{@link #testRandomOperations()}: Confronta l'indice con una mappa della
+ * libreria standard su una sequenza casuale di inserimenti e rimozioni, che
+ * provoca anche ridimensionamenti della tabella.</li>
+ *
+ * <li>{@link #testManyEqualDigests()}: Verifica che aggiungere in ordine
+ * crescente molte foglie con lo stesso digest richieda tempo lineare e che
+ * la catena resti ordinata anche dopo la rimozione dell'ultima foglia.</li>
+ * </ul>
+ */
+class DigestIndexTest {
+
+    /**
+     * Digest delle foglie, indicizzati per posizione.
+     */
+    private final List<Digest> leaves = new ArrayList<>();
+
+    private DigestIndex newIndex(int expectedLeaves) {
+        return new DigestIndex(expectedLeaves, (leaf, digest) -> leaves.get(leaf).equals(digest));
+    }
+
+    private void setLeaf(int leaf, Digest digest) {
+        while (leaves.size() <= leaf) leaves.add(null);
+        leaves.set(leaf, digest);
+    }
+
+    @Test
+    void testFirstAndNext() {
+        DigestIndex index = newIndex(4);
+        Digest a = HashUtil.dataToDigest("a");
+        Digest b = HashUtil.dataToDigest("b");
+        // inserimenti non in ordine
+        int[] positions = { 3, 0, 2, 1 };
+        Digest[] digests = { a, b, a, a };
+        for (int i = 0; i < positions.length; i++) {
+            setLeaf(positions[i], digests[i]);
+            index.add(positions[i], digests[i]);
+        }
+
+        assertEquals(1, index.first(a), "La prima foglia con il digest dovrebbe essere 1.");
+        assertEquals(2, index.next(1), "La foglia successiva dovrebbe essere 2.");
+        assertEquals(3, index.next(2), "La foglia successiva dovrebbe essere 3.");
+        assertEquals(-1, index.next(3), "Non dovrebbero esserci altre foglie.");
+        assertEquals(0, index.first(b), "La foglia con il digest dovrebbe essere 0.");
+        assertEquals(-1, index.first(HashUtil.dataToDigest("c")), "Il digest non dovrebbe essere presente.");
+    }
+
+    @Test
+    void testRemove() {
+        DigestIndex index = newIndex(3);
+        Digest a = HashUtil.dataToDigest("a");
+        for (int i = 0; i < 3; i++) {
+            setLeaf(i, a);
+            index.add(i, a);
+        }
+        index.remove(1, a);
+        assertEquals(0, index.first(a), "La prima foglia dovrebbe essere ancora 0.");
+        assertEquals(2, index.next(0), "La foglia rimossa non dovrebbe essere nella catena.");
+        index.remove(0, a);
+        assertEquals(2, index.first(a), "La prima foglia dovrebbe diventare 2.");
+        index.remove(2, a);
+        assertEquals(-1, index.first(a), "Il digest non dovrebbe essere più presente.");
+    }
+
+    @Test
+    void testRandomOperations() {
+        DigestIndex index = newIndex(1);
+        Map<Digest, TreeSet<Integer>> expected = new HashMap<>();
+        Random random = new Random(1);
+        int leafCount = 2000;
+        for (int step = 0; step < 20000; step++) {
+            int leaf = random.nextInt(leafCount);
+            Digest current = leaf < leaves.size() ? leaves.get(leaf) : null;
+            if (current != null) {
+                index.remove(leaf, current);
+                expected.get(current).remove(leaf);
+                setLeaf(leaf, null);
+            } else {
+                Digest digest = HashUtil.dataToDigest(random.nextInt(500));
+                setLeaf(leaf, digest);
+                index.add(leaf, digest);
+                expected.computeIfAbsent(digest, d -> new TreeSet<>()).add(leaf);
+            }
+        }
+        for (Map.Entry<Digest, TreeSet<Integer>> entry : expected.entrySet()) {
+            List<Integer> actual = new ArrayList<>();
+            for (int i = index.first(entry.getKey()); i >= 0; i = index.next(i)) actual.add(i);
+            assertEquals(new ArrayList<>(entry.getValue()), actual,
+                    "Le foglie del digest " + entry.getKey() + " non corrispondono.");
+        }
+    }
+
+    @Test
+    void testManyEqualDigests() {
+        Digest digest = HashUtil.dataToDigest("uguale");
+        int count = 200000;
+        for (int i = 0; i < count; i++) {
+            setLeaf(i, digest);
+        }
+        DigestIndex index = newIndex(count);
+        // con una catena percorsa a ogni inserimento servirebbero minuti
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < count; i++) {
+                index.add(i, digest);
+            }
+        }, "Le foglie uguali dovrebbero essere aggiunte in tempo costante.");
+        index.remove(count - 1, digest);
+        index.add(count + 10, digest);
+        setLeaf(count + 10, digest);
+        int expected = 0;
+        int last = -1;
+        for (int i = index.first(digest); i >= 0; i = index.next(i)) {
+            assertTrue(i > last, "La catena dovrebbe essere in ordine crescente.");
+            last = i;
+            expected++;
+        }
+        assertEquals(count, expected, "La catena dovrebbe contenere tutte le foglie.");
+        assertEquals(count + 10, last, "L'ultima foglia aggiunta dovrebbe essere in fondo.");
+    }
+}
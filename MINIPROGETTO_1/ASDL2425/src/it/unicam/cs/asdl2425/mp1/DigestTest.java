@@ -0,0 +1,92 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link Digest}. Questa classe verifica la
+ * conversione tra digest grezzi e rappresentazione esadecimale e il confronto
+ * tra digest. Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testToStringMatchesComputeMD5()}: Verifica che la
+ * rappresentazione esadecimale di un digest coincida con quella prodotta da
+ * {@code computeMD5}.</li>
+ *
+ * <li>{@link #testFromHex()}: Verifica che un digest ricostruito dalla sua
+ * rappresentazione esadecimale sia uguale all'originale.</li>
+ *
+ * <li>{@link #testTryFromHexInvalid()}: Verifica che una stringa non
+ * esadecimale non venga convertita in un digest.</li>
+ *
+ * <li>{@link #testEqualsAndHashCode()}: Verifica che due digest con gli stessi
+ * byte siano uguali e abbiano lo stesso {@code hashCode}.</li>
+ *
+ * <li>{@link #testCopyToAndMatches()}: Verifica la copia dei byte di un digest
+ * in un array e il confronto con una porzione di array.</li>
+ *
+ * <li>{@link #testImmutability()}: Verifica che modificare l'array usato per
+ * costruire un digest non modifichi il digest.</li>
+ * </ul>
+ */
+class DigestTest {
+
+    @Test
+    void testToStringMatchesComputeMD5() {
+        byte[] input = "Hello, World!".getBytes();
+        Digest digest = HashUtil.computeMD5Digest(input);
+        assertEquals(HashUtil.computeMD5(input), digest.toString(),
+                "La rappresentazione esadecimale dovrebbe coincidere con computeMD5.");
+        assertEquals(HashUtil.MD5_LENGTH, digest.length(),
+                "Un digest MD5 dovrebbe essere lungo 16 byte.");
+    }
+
+    @Test
+    void testFromHex() {
+        Digest digest = HashUtil.computeMD5Digest("Alice paga Bob".getBytes());
+        assertEquals(digest, Digest.fromHex(digest.toString()),
+                "Il digest ricostruito dovrebbe essere uguale all'originale.");
+    }
+
+    @Test
+    void testTryFromHexInvalid() {
+        assertNull(Digest.tryFromHex("HashNonValido"),
+                "Una stringa non esadecimale non dovrebbe essere convertita.");
+        assertNull(Digest.tryFromHex(""),
+                "Una stringa vuota non dovrebbe essere convertita.");
+        assertThrows(IllegalArgumentException.class, () -> Digest.fromHex("abc"),
+                "Dovrebbe lanciare IllegalArgumentException per una stringa non valida.");
+    }
+
+    @Test
+    void testEqualsAndHashCode() {
+        Digest digest1 = HashUtil.dataToDigest("Alice paga Bob");
+        Digest digest2 = HashUtil.dataToDigest("Alice paga Bob");
+        Digest digest3 = HashUtil.dataToDigest("Bob paga Charlie");
+        assertEquals(digest1, digest2, "Digest con gli stessi byte dovrebbero essere uguali.");
+        assertEquals(digest1.hashCode(), digest2.hashCode(),
+                "Digest uguali dovrebbero avere lo stesso hashCode.");
+        assertNotEquals(digest1, digest3, "Digest diversi non dovrebbero essere uguali.");
+    }
+
+    @Test
+    void testCopyToAndMatches() {
+        Digest digest = HashUtil.dataToDigest(42);
+        byte[] buffer = new byte[HashUtil.MD5_LENGTH + 3];
+        digest.copyTo(buffer, 3);
+        assertTrue(digest.matches(buffer, 3), "Il digest copiato dovrebbe coincidere.");
+        assertFalse(digest.matches(buffer, 0), "Una porzione diversa non dovrebbe coincidere.");
+        assertEquals(digest, Digest.of(buffer, 3, HashUtil.MD5_LENGTH),
+                "Il digest letto dal buffer dovrebbe essere uguale all'originale.");
+    }
+
+    @Test
+    void testImmutability() {
+        byte[] bytes = HashUtil.computeMD5Digest(new byte[0]).toByteArray();
+        Digest digest = Digest.of(bytes);
+        String hex = digest.toString();
+        bytes[0] ^= 1;
+        assertEquals(hex, digest.toString(), "Il digest non dovrebbe cambiare.");
+    }
+}
@@ -0,0 +1,24 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Descrive come riversare il contenuto di un oggetto di tipo {@code T} in un
+ * {@link Hasher}, campo per campo, senza costruire un array di byte
+ * intermedio. Due oggetti con lo stesso contenuto devono produrre la stessa
+ * sequenza di byte.
+ *
+ * @param <T>
+ *                il tipo degli oggetti descritti.
+ */
+@FunctionalInterface
+public interface Funnel<T> {
+
+    /**
+     * Aggiunge il contenuto dell'oggetto fornito all'input del calcolatore.
+     *
+     * @param from
+     *                 l'oggetto da descrivere.
+     * @param into
+     *                 il calcolatore in cui riversare il contenuto.
+     */
+    void funnel(T from, Hasher into);
+}
@@ -0,0 +1,431 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implementazioni di {@link Funnel} di uso comune.
+ *
+ * <p>
+ * Il funnel restituito da {@link #object()} descrive il contenuto reale di un
+ * oggetto: ogni valore è preceduto da un byte che ne identifica il tipo e le
+ * sequenze di lunghezza variabile sono precedute dalla loro lunghezza o
+ * seguite da un terminatore, così che contenuti diversi non producano la
+ * stessa sequenza di byte. Sono supportati:
+ *
+ * <ul>
+ * <li>i tipi primitivi incapsulati e le stringhe (in UTF-8);</li>
+ * <li>gli array di tipi primitivi e gli array di oggetti;</li>
+ * <li>gli {@link Iterable}, nell'ordine di iterazione;</li>
+ * <li>i {@link Set} e le {@link Map}, indipendentemente dall'ordine di
+ * iterazione: insiemi o mappe uguali secondo {@code equals} hanno quindi lo
+ * stesso hash anche se le loro implementazioni li visitano in ordini
+ * diversi;</li>
+ * <li>le costanti enumerative, tramite il loro nome;</li>
+ * <li>gli oggetti {@link ContentHashable};</li>
+ * <li>i record, campo per campo;</li>
+ * <li>gli altri oggetti, tramite il nome della classe e i loro campi di
+ * istanza non {@code transient}, dalla superclasse più generale e per nome
+ * all'interno di ogni classe.</li>
+ * </ul>
+ *
+ * I campi di un oggetto vengono letti per riflessione, quindi solo se tutti i
+ * campi di istanza della classe sono accessibili: è il caso delle classi
+ * dell'applicazione, ma non di quelle della JDK con uno stato interno, come
+ * {@link java.util.Date}, che vengono descritte dal loro {@code hashCode()}.
+ * Le strutture cicliche non sono supportate. Per controllare come viene
+ * descritto un tipo si può implementare {@link ContentHashable} oppure
+ * fornire un funnel esplicito.
+ */
+public final class Funnels {
+
+    private static final byte NULL = 0;
+
+    private static final byte BOOLEAN = 1;
+
+    private static final byte BYTE = 2;
+
+    private static final byte SHORT = 3;
+
+    private static final byte CHAR = 4;
+
+    private static final byte INT = 5;
+
+    private static final byte LONG = 6;
+
+    private static final byte FLOAT = 7;
+
+    private static final byte DOUBLE = 8;
+
+    private static final byte STRING = 9;
+
+    private static final byte BYTE_ARRAY = 10;
+
+    private static final byte INT_ARRAY = 11;
+
+    private static final byte LONG_ARRAY = 12;
+
+    private static final byte CHAR_ARRAY = 13;
+
+    private static final byte DOUBLE_ARRAY = 14;
+
+    private static final byte OBJECT_ARRAY = 15;
+
+    private static final byte ITERABLE = 16;
+
+    private static final byte MAP = 17;
+
+    private static final byte ENUM = 18;
+
+    private static final byte CONTENT = 19;
+
+    private static final byte RECORD = 20;
+
+    private static final byte SET = 21;
+
+    private static final byte FIELDS = 22;
+
+    private static final byte HASH_CODE = 23;
+
+    /**
+     * Terminatore delle sequenze di lunghezza non nota a priori; non coincide
+     * con nessun byte di tipo.
+     */
+    private static final byte END = (byte) 0xff;
+
+    /**
+     * Funzione di hash con cui vengono calcolati i digest degli elementi di
+     * insiemi e mappe prima di ordinarli; è fissa perché l'hash di un dato non
+     * dipenda dal calcolatore in cui viene riversato. Ogni collezione usa un
+     * solo calcolatore, quello del thread corrente, per tutti i suoi
+     * elementi.
+     */
+    private static final HashFunction ELEMENT_HASH = HashFunction.SHA256;
+
+    private static final Funnel<Object> OBJECT = Funnels::funnelObject;
+
+    private static final Funnel<Object> HASH_CODE_FUNNEL = (from, into) -> into
+            .putInt(from.hashCode());
+
+    private static final Funnel<Path> FILE_CONTENT = Funnels::funnelFileContent;
+
+    /**
+     * Metodi di accesso dei componenti di ciascun tipo record, calcolati una
+     * sola volta per classe.
+     */
+    private static final ClassValue<Method[]> RECORD_ACCESSORS = new ClassValue<>() {
+        @Override
+        protected Method[] computeValue(Class<?> type) {
+            RecordComponent[] components = type.getRecordComponents();
+            Method[] accessors = new Method[components.length];
+            for (int i = 0; i < components.length; i++) {
+                accessors[i] = components[i].getAccessor();
+                accessors[i].setAccessible(true);
+            }
+            return accessors;
+        }
+    };
+
+    /**
+     * Valore di {@link #OBJECT_FIELDS} per le classi i cui campi non sono
+     * accessibili.
+     */
+    private static final Field[] INACCESSIBLE = new Field[0];
+
+    /**
+     * Campi di istanza descritti per ciascuna classe ordinaria, calcolati una
+     * sola volta per classe, oppure {@link #INACCESSIBLE}.
+     */
+    private static final ClassValue<Field[]> OBJECT_FIELDS = new ClassValue<>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                hierarchy.add(0, c);
+            }
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c : hierarchy) {
+                Field[] declared = c.getDeclaredFields();
+                Arrays.sort(declared, Comparator.comparing(Field::getName));
+                for (Field field : declared) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    // anche i campi transient devono essere accessibili: spesso
+                    // contengono lo stato vero e proprio, come in java.util.Date
+                    if (!field.trySetAccessible()) {
+                        return INACCESSIBLE;
+                    }
+                    if (!Modifier.isTransient(modifiers)) {
+                        fields.add(field);
+                    }
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    private Funnels() {
+    }
+
+    /**
+     * Restituisce il funnel che descrive il contenuto reale di un oggetto. È il
+     * funnel usato per default da {@link HashLinkedList}, {@link MerkleTree},
+     * {@link MerkleProof} e {@link HashUtil#dataToHash(Object)}.
+     *
+     * @return il funnel di default.
+     */
+    public static Funnel<Object> object() {
+        return OBJECT;
+    }
+
+    /**
+     * Restituisce il funnel che descrive un oggetto con i soli quattro byte del
+     * suo {@code hashCode()}, come faceva in origine
+     * {@link HashUtil#dataToHash(Object)}. Utile per riprodurre hash calcolati
+     * con le versioni precedenti.
+     *
+     * @return il funnel basato su {@code hashCode()}.
+     */
+    public static Funnel<Object> hashCodeFunnel() {
+        return HASH_CODE_FUNNEL;
+    }
+
+    /**
+     * Restituisce il funnel che descrive un file con il suo contenuto, letto
+     * mappando il file in memoria come fa
+     * {@link HashUtil#hash(Path, HashFunction)}, di cui produce lo stesso hash.
+     * Permette di costruire una {@link HashLinkedList} di percorsi, e quindi un
+     * {@link MerkleTree}, su file di grandi dimensioni senza caricarli nello
+     * heap.
+     *
+     * @return il funnel basato sul contenuto dei file.
+     */
+    public static Funnel<Path> fileContent() {
+        return FILE_CONTENT;
+    }
+
+    private static void funnelFileContent(Path file, Hasher into) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            HashUtil.update(into, channel, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void funnelObject(Object from, Hasher into) {
+        if (from == null) {
+            into.putByte(NULL);
+        } else if (from instanceof String) {
+            String string = (String) from;
+            into.putByte(STRING).putInt(string.length()).putString(string);
+        } else if (from instanceof Integer) {
+            into.putByte(INT).putInt((Integer) from);
+        } else if (from instanceof Long) {
+            into.putByte(LONG).putLong((Long) from);
+        } else if (from instanceof Boolean) {
+            into.putByte(BOOLEAN).putBoolean((Boolean) from);
+        } else if (from instanceof Double) {
+            into.putByte(DOUBLE).putDouble((Double) from);
+        } else if (from instanceof Float) {
+            into.putByte(FLOAT).putFloat((Float) from);
+        } else if (from instanceof Short) {
+            into.putByte(SHORT).putShort((Short) from);
+        } else if (from instanceof Byte) {
+            into.putByte(BYTE).putByte((Byte) from);
+        } else if (from instanceof Character) {
+            into.putByte(CHAR).putChar((Character) from);
+        } else if (from instanceof ContentHashable) {
+            into.putByte(CONTENT).putString(from.getClass().getName()).putByte(END);
+            ((ContentHashable) from).hashContent(into);
+        } else if (from instanceof Enum) {
+            Enum<?> constant = (Enum<?>) from;
+            into.putByte(ENUM).putString(constant.getDeclaringClass().getName())
+                    .putByte(END).putString(constant.name()).putByte(END);
+        } else if (from.getClass().isArray()) {
+            funnelArray(from, into);
+        } else if (from instanceof Set) {
+            Set<?> set = (Set<?>) from;
+            Hasher hasher = ELEMENT_HASH.hasher();
+            int length = hasher.getDigestLength();
+            byte[] digests = new byte[set.size() * length];
+            int count = 0;
+            for (Object element : set) {
+                funnelObject(element, hasher);
+                hasher.finishKeeping(digests, count++ * length);
+            }
+            hasher.release();
+            funnelUnordered(SET, digests, length, into);
+        } else if (from instanceof Iterable) {
+            into.putByte(ITERABLE);
+            for (Object element : (Iterable<?>) from) {
+                funnelObject(element, into);
+            }
+            into.putByte(END);
+        } else if (from instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) from;
+            Hasher hasher = ELEMENT_HASH.hasher();
+            int length = hasher.getDigestLength();
+            byte[] digests = new byte[map.size() * length];
+            int count = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                funnelObject(entry.getKey(), hasher);
+                funnelObject(entry.getValue(), hasher);
+                hasher.finishKeeping(digests, count++ * length);
+            }
+            hasher.release();
+            funnelUnordered(MAP, digests, length, into);
+        } else if (from.getClass().isRecord()) {
+            funnelRecord(from, into);
+        } else {
+            funnelFields(from, into);
+        }
+    }
+
+    /**
+     * Descrive una collezione non ordinata tramite i digest dei suoi elementi,
+     * scritti uno dopo l'altro in {@code digests} e riversati in ordine
+     * crescente, così che il risultato non dipenda dall'ordine di iterazione.
+     * Vengono ordinate le posizioni dei digest, senza spostarli.
+     */
+    private static void funnelUnordered(byte type, byte[] digests, int length, Hasher into) {
+        int count = digests.length / length;
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = i * length;
+        }
+        // heapsort: non alloca e non dipende dalla distribuzione dei digest
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(digests, length, offsets, i, count);
+        }
+        for (int end = count - 1; end > 0; end--) {
+            int top = offsets[0];
+            offsets[0] = offsets[end];
+            offsets[end] = top;
+            siftDown(digests, length, offsets, 0, end);
+        }
+        into.putByte(type).putInt(count);
+        for (int offset : offsets) {
+            into.putBytes(digests, offset, length);
+        }
+    }
+
+    /**
+     * Fa scendere la posizione in {@code root} nel max-heap formato dalle
+     * prime {@code size} posizioni di {@code offsets}.
+     */
+    private static void siftDown(byte[] digests, int length, int[] offsets, int root, int size) {
+        int offset = offsets[root];
+        int child;
+        while ((child = 2 * root + 1) < size) {
+            if (child + 1 < size && compare(digests, length, offsets[child + 1], offsets[child]) > 0) {
+                child++;
+            }
+            if (compare(digests, length, offsets[child], offset) <= 0) {
+                break;
+            }
+            offsets[root] = offsets[child];
+            root = child;
+        }
+        offsets[root] = offset;
+    }
+
+    /**
+     * Confronta senza segno i digest che iniziano nelle posizioni indicate.
+     */
+    private static int compare(byte[] digests, int length, int first, int second) {
+        return Arrays.compareUnsigned(digests, first, first + length, digests, second, second + length);
+    }
+
+    /**
+     * Descrive un oggetto ordinario con i suoi campi di istanza oppure, se non
+     * sono accessibili, con il suo {@code hashCode()}.
+     */
+    private static void funnelFields(Object from, Hasher into) {
+        Field[] fields = OBJECT_FIELDS.get(from.getClass());
+        if (fields == INACCESSIBLE) {
+            funnelHashCode(from, into);
+            return;
+        }
+        into.putByte(FIELDS).putString(from.getClass().getName()).putByte(END);
+        for (Field field : fields) {
+            try {
+                funnelObject(field.get(from), into);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read field " + field.getName(), e);
+            }
+        }
+    }
+
+    private static void funnelHashCode(Object from, Hasher into) {
+        into.putByte(HASH_CODE).putString(from.getClass().getName()).putByte(END).putInt(from.hashCode());
+    }
+
+    private static void funnelArray(Object array, Hasher into) {
+        if (array instanceof byte[]) {
+            byte[] bytes = (byte[]) array;
+            into.putByte(BYTE_ARRAY).putInt(bytes.length).putBytes(bytes);
+        } else if (array instanceof int[]) {
+            int[] ints = (int[]) array;
+            into.putByte(INT_ARRAY).putInt(ints.length);
+            for (int value : ints) into.putInt(value);
+        } else if (array instanceof long[]) {
+            long[] longs = (long[]) array;
+            into.putByte(LONG_ARRAY).putInt(longs.length);
+            for (long value : longs) into.putLong(value);
+        } else if (array instanceof char[]) {
+            char[] chars = (char[]) array;
+            into.putByte(CHAR_ARRAY).putInt(chars.length);
+            for (char value : chars) into.putChar(value);
+        } else if (array instanceof double[]) {
+            double[] doubles = (double[]) array;
+            into.putByte(DOUBLE_ARRAY).putInt(doubles.length);
+            for (double value : doubles) into.putDouble(value);
+        } else if (array instanceof Object[]) {
+            Object[] objects = (Object[]) array;
+            into.putByte(OBJECT_ARRAY).putInt(objects.length);
+            for (Object value : objects) funnelObject(value, into);
+        } else {
+            // boolean[], short[] e float[]: li descriviamo elemento per elemento
+            int length = Array.getLength(array);
+            into.putByte(OBJECT_ARRAY).putInt(length);
+            for (int i = 0; i < length; i++) {
+                funnelObject(Array.get(array, i), into);
+            }
+        }
+    }
+
+    private static void funnelRecord(Object record, Hasher into) {
+        Method[] accessors;
+        try {
+            accessors = RECORD_ACCESSORS.get(record.getClass());
+        } catch (RuntimeException e) {
+            // componenti non accessibili, come per gli oggetti ordinari
+            funnelHashCode(record, into);
+            return;
+        }
+        into.putByte(RECORD).putString(record.getClass().getName()).putByte(END);
+        for (Method accessor : accessors) {
+            try {
+                funnelObject(accessor.invoke(record), into);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot read record component " + accessor.getName(), e);
+            }
+        }
+    }
+}
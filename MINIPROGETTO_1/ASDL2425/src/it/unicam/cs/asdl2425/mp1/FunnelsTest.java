@@ -0,0 +1,298 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link Funnels}. Questa classe verifica che il
+ * funnel di default descriva il contenuto reale dei dati.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testSameContentSameHash()}: Verifica che oggetti distinti con lo
+ * stesso contenuto abbiano lo stesso hash.</li>
+ *
+ * <li>{@link #testHashCodeCollision()}: Verifica che stringhe con lo stesso
+ * {@code hashCode} abbiano hash diversi.</li>
+ *
+ * <li>{@link #testLoneSurrogate()}: Verifica che stringhe che differiscono
+ * solo per una surrogata non accoppiata abbiano hash diversi.</li>
+ *
+ * <li>{@link #testTypesAreDistinguished()}: Verifica che valori uguali di tipi
+ * diversi abbiano hash diversi.</li>
+ *
+ * <li>{@link #testNestedStructures()}: Verifica che i confini tra gli elementi
+ * di strutture annidate siano preservati.</li>
+ *
+ * <li>{@link #testSetIgnoresOrder()}: Verifica che insiemi uguali abbiano lo
+ * stesso hash anche se vengono visitati in ordini diversi.</li>
+ *
+ * <li>{@link #testMapIgnoresOrder()}: Verifica che mappe uguali abbiano lo
+ * stesso hash anche se vengono visitate in ordini diversi, e che le coppie
+ * chiave-valore non vengano confuse.</li>
+ *
+ * <li>{@link #testNestedSetsIgnoreOrder()}: Verifica che insiemi annidati
+ * in altri insiemi, insieme a elementi semplici, non dipendano dall'ordine di
+ * visita.</li>
+ *
+ * <li>{@link #testListKeepsOrder()}: Verifica che le liste continuino a
+ * essere descritte nell'ordine dei loro elementi.</li>
+ *
+ * <li>{@link #testPlainObject()}: Verifica che gli oggetti ordinari vengano
+ * descritti dai loro campi, compresi quelli annidati e delle superclassi, e
+ * non dal loro {@code hashCode}.</li>
+ *
+ * <li>{@link #testInaccessibleFields()}: Verifica che gli oggetti con campi
+ * non accessibili vengano descritti dal loro {@code hashCode}.</li>
+ *
+ * <li>{@link #testRecord()}: Verifica che i record vengano descritti campo per
+ * campo, compresi i campi annidati.</li>
+ *
+ * <li>{@link #testContentHashable()}: Verifica che gli oggetti
+ * {@link ContentHashable} vengano descritti dal proprio metodo.</li>
+ *
+ * <li>{@link #testHashCodeFunnel()}: Verifica che il funnel basato su
+ * {@code hashCode} riproduca l'hash originale dei dati.</li>
+ *
+ * <li>{@link #testHashIntoBuffer()}: Verifica che l'hash scritto in un array
+ * fornito coincida con quello restituito come digest.</li>
+ *
+ * <li>{@link #testFileContent()}: Verifica che il funnel dei file descriva il
+ * contenuto del file e possa essere usato per costruire un albero.</li>
+ * </ul>
+ */
+class FunnelsTest {
+
+    private record Payment(String from, String to, long amount, List<String> notes) {
+    }
+
+    private static final class Account implements ContentHashable {
+        private final String owner;
+
+        private final byte[] payload;
+
+        private Account(String owner, byte[] payload) {
+            this.owner = owner;
+            this.payload = payload;
+        }
+
+        @Override
+        public void hashContent(Hasher into) {
+            Funnels.object().funnel(owner, into);
+            Funnels.object().funnel(payload, into);
+        }
+
+        @Override
+        public int hashCode() {
+            return 0; // volutamente costante
+        }
+    }
+
+    private static class Entry {
+        private final String label;
+
+        private Entry(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0; // volutamente costante
+        }
+    }
+
+    private static final class Transfer extends Entry {
+        private final long amount;
+
+        private final Entry parent;
+
+        private transient int cachedHash;
+
+        private Transfer(String label, long amount, Entry parent) {
+            super(label);
+            this.amount = amount;
+            this.parent = parent;
+        }
+    }
+
+    private static Digest hash(Object data) {
+        return HashUtil.hash(data, Funnels.object(), HashFunction.MD5);
+    }
+
+    @Test
+    void testSameContentSameHash() {
+        assertEquals(hash(new String("Alice paga Bob")), hash("Alice paga Bob"),
+                "Stringhe con lo stesso contenuto dovrebbero avere lo stesso hash.");
+        assertEquals(hash(new byte[] { 1, 2, 3 }), hash(new byte[] { 1, 2, 3 }),
+                "Array con lo stesso contenuto dovrebbero avere lo stesso hash.");
+        assertEquals(HashUtil.dataToDigest("Alice paga Bob"), hash("Alice paga Bob"),
+                "dataToDigest dovrebbe usare il funnel di default.");
+    }
+
+    @Test
+    void testHashCodeCollision() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(hash("Aa"), hash("BB"),
+                "Stringhe diverse dovrebbero avere hash diversi anche con lo stesso hashCode.");
+    }
+
+    @Test
+    void testLoneSurrogate() {
+        assertNotEquals(hash("a\ud800b"), hash("a?b"),
+                "Una surrogata non accoppiata non dovrebbe avere l'hash di '?'.");
+        assertNotEquals(hash("a\ud800b"), hash("a\udbffb"),
+                "Stringhe con surrogate non accoppiate diverse dovrebbero avere hash diversi.");
+        assertNotEquals(hash("\ud83d"), hash("\ude00"),
+                "Una surrogata alta e una bassa isolate dovrebbero avere hash diversi.");
+    }
+
+    @Test
+    void testTypesAreDistinguished() {
+        assertNotEquals(hash(555), hash(555L), "Un Integer e un Long non dovrebbero avere lo stesso hash.");
+        assertNotEquals(hash("1"), hash('1'), "Una stringa e un carattere non dovrebbero avere lo stesso hash.");
+        assertNotEquals(hash(true), hash((byte) 1), "Un Boolean e un Byte non dovrebbero avere lo stesso hash.");
+    }
+
+    @Test
+    void testNestedStructures() {
+        assertNotEquals(hash(Arrays.asList("ab", "c")), hash(Arrays.asList("a", "bc")),
+                "I confini tra gli elementi dovrebbero essere preservati.");
+        assertNotEquals(hash(Arrays.asList(Arrays.asList("a"), "b")), hash(Arrays.asList("a", Arrays.asList("b"))),
+                "L'annidamento dovrebbe essere preservato.");
+        assertEquals(hash(new Object[] { "a", 1, null }), hash(new Object[] { "a", 1, null }),
+                "Array con lo stesso contenuto dovrebbero avere lo stesso hash.");
+    }
+
+    @Test
+    void testSetIgnoresOrder() {
+        Set<String> ascending = new TreeSet<>(List.of("a", "b", "c"));
+        Set<String> descending = new TreeSet<>(Comparator.reverseOrder());
+        descending.addAll(ascending);
+        assertEquals(hash(ascending), hash(descending),
+                "Insiemi uguali dovrebbero avere lo stesso hash in qualsiasi ordine.");
+        assertEquals(hash(ascending), hash(new HashSet<>(ascending)),
+                "L'hash non dovrebbe dipendere dall'implementazione dell'insieme.");
+        assertNotEquals(hash(ascending), hash(Set.of("a", "b")), "Insiemi diversi dovrebbero avere hash diversi.");
+        assertNotEquals(hash(ascending), hash(List.of("a", "b", "c")),
+                "Un insieme e una lista non dovrebbero avere lo stesso hash.");
+    }
+
+    @Test
+    void testMapIgnoresOrder() {
+        Map<String, Integer> ascending = new TreeMap<>(Map.of("a", 1, "b", 2));
+        Map<String, Integer> descending = new TreeMap<>(Comparator.reverseOrder());
+        descending.putAll(ascending);
+        assertEquals(hash(ascending), hash(descending),
+                "Mappe uguali dovrebbero avere lo stesso hash in qualsiasi ordine.");
+        assertNotEquals(hash(ascending), hash(Map.of("a", 2, "b", 1)),
+                "Mappe con le stesse chiavi e gli stessi valori in coppie diverse dovrebbero avere hash diversi.");
+    }
+
+    @Test
+    void testNestedSetsIgnoreOrder() {
+        Set<Object> first = new LinkedHashSet<>(List.of("a", Set.of("b"), Map.of("c", Set.of(1, 2)), 3));
+        Set<Object> second = new LinkedHashSet<>(List.of(3, Map.of("c", Set.of(2, 1)), Set.of("b"), "a"));
+        assertEquals(hash(first), hash(second),
+                "Insiemi annidati uguali dovrebbero avere lo stesso hash in qualsiasi ordine.");
+        assertNotEquals(hash(first), hash(Set.of("a", Set.of("b"), Map.of("c", Set.of(1)), 3)),
+                "Insiemi annidati diversi dovrebbero avere hash diversi.");
+    }
+
+    @Test
+    void testListKeepsOrder() {
+        assertNotEquals(hash(List.of("a", "b")), hash(List.of("b", "a")),
+                "Liste con gli elementi in ordine diverso dovrebbero avere hash diversi.");
+    }
+
+    @Test
+    void testPlainObject() {
+        Transfer t1 = new Transfer("affitto", 10, new Entry("gennaio"));
+        Transfer t2 = new Transfer("affitto", 10, new Entry("gennaio"));
+        t2.cachedHash = 42;
+        assertEquals(hash(t1), hash(t2), "Oggetti con gli stessi campi dovrebbero avere lo stesso hash.");
+        assertNotEquals(hash(t1), hash(new Transfer("affitto", 11, new Entry("gennaio"))),
+                "Oggetti con campi diversi dovrebbero avere hash diversi anche con lo stesso hashCode.");
+        assertNotEquals(hash(t1), hash(new Transfer("cena", 10, new Entry("gennaio"))),
+                "I campi delle superclassi dovrebbero essere descritti.");
+        assertNotEquals(hash(t1), hash(new Transfer("affitto", 10, new Entry("febbraio"))),
+                "I campi annidati dovrebbero essere descritti.");
+        assertNotEquals(hash(new Entry("affitto")), hash(new Transfer("affitto", 0, null)),
+                "Oggetti di classi diverse dovrebbero avere hash diversi.");
+    }
+
+    @Test
+    void testInaccessibleFields() {
+        assertEquals(hash(new Date(5)), hash(new Date(5)), "Date uguali dovrebbero avere lo stesso hash.");
+        assertNotEquals(hash(new Date(5)), hash(new Date(6)), "Date diverse dovrebbero avere hash diversi.");
+    }
+
+    @Test
+    void testRecord() {
+        Payment p1 = new Payment("Alice", "Bob", 10, List.of("affitto"));
+        Payment p2 = new Payment("Alice", "Bob", 10, List.of("affitto"));
+        Payment p3 = new Payment("Alice", "Bob", 10, List.of("cena"));
+        assertEquals(hash(p1), hash(p2), "Record uguali dovrebbero avere lo stesso hash.");
+        assertNotEquals(hash(p1), hash(p3), "Record con campi annidati diversi dovrebbero avere hash diversi.");
+    }
+
+    @Test
+    void testContentHashable() {
+        Account a1 = new Account("Alice", new byte[] { 1, 2 });
+        Account a2 = new Account("Alice", new byte[] { 1, 2 });
+        Account a3 = new Account("Alice", new byte[] { 1, 3 });
+        assertEquals(hash(a1), hash(a2), "Oggetti con lo stesso contenuto dovrebbero avere lo stesso hash.");
+        assertNotEquals(hash(a1), hash(a3),
+                "Oggetti con contenuto diverso dovrebbero avere hash diversi anche con lo stesso hashCode.");
+    }
+
+    @Test
+    void testHashCodeFunnel() {
+        assertEquals(HashUtil.computeMD5(HashUtil.intToBytes("Alice paga Bob".hashCode())),
+                HashUtil.hash("Alice paga Bob", Funnels.hashCodeFunnel(), HashFunction.MD5).toString(),
+                "Il funnel basato su hashCode dovrebbe riprodurre l'hash originale.");
+    }
+
+    @Test
+    void testHashIntoBuffer() {
+        byte[] out = new byte[HashUtil.MD5_LENGTH + 2];
+        HashUtil.hash(List.of(1, 2, 3), Funnels.object(), HashFunction.MD5, out, 2);
+        assertTrue(hash(List.of(1, 2, 3)).matches(out, 2),
+                "L'hash scritto nell'array dovrebbe coincidere con il digest.");
+    }
+
+    @Test
+    void testFileContent() throws IOException {
+        Path first = Files.createTempFile("funnels", ".bin");
+        Path second = Files.createTempFile("funnels", ".bin");
+        try {
+            Files.write(first, "contenuto".getBytes());
+            Files.write(second, "contenuto".getBytes());
+            assertEquals(HashUtil.hash(first, HashFunction.MD5),
+                    HashUtil.hash(first, Funnels.fileContent(), HashFunction.MD5),
+                    "Il funnel dovrebbe produrre l'hash del contenuto del file.");
+
+            HashLinkedList<Path> files = new HashLinkedList<>(HashFunction.MD5, Funnels.fileContent());
+            files.addAtTail(first);
+            MerkleTree<Path> tree = new MerkleTree<>(files);
+            assertTrue(tree.validateData(second), "Un file con lo stesso contenuto dovrebbe risultare valido.");
+        } finally {
+            Files.delete(first);
+            Files.delete(second);
+        }
+    }
+}
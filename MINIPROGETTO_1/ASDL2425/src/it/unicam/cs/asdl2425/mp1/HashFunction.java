@@ -0,0 +1,291 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Una funzione di hash utilizzabile per costruire e verificare le strutture di
+ * questo package ({@link HashLinkedList}, {@link MerkleTree},
+ * {@link MerkleProof}). Permette di scegliere, per ogni istanza, l'algoritmo
+ * più veloce che soddisfi i requisiti di sicurezza del caso d'uso:
+ *
+ * <ul>
+ * <li>{@link #MD5}: l'algoritmo storico di questo package, usato per
+ * default;</li>
+ * <li>{@link #SHA256}: SHA-256 del provider della JDK, che sfrutta le
+ * istruzioni dedicate del processore quando disponibili;</li>
+ * <li>{@link #MURMUR3_128}: MurmurHash3 a 128 bit, molto più veloce ma non
+ * crittografico, adatto solo a controlli di integrità interni in cui non è
+ * necessario resistere a collisioni costruite ad arte.</li>
+ * </ul>
+ *
+ * <p>
+ * Ogni funzione riutilizza un calcolatore per thread, quindi i metodi di questa
+ * classe non creano un nuovo {@code MessageDigest} a ogni invocazione.
+ */
+public abstract class HashFunction {
+
+    /**
+     * La funzione di hash MD5 (digest di 16 byte).
+     */
+    public static final HashFunction MD5 = new MessageDigestHashFunction("MD5", 16);
+
+    /**
+     * La funzione di hash SHA-256 (digest di 32 byte).
+     */
+    public static final HashFunction SHA256 = new MessageDigestHashFunction("SHA-256", 32);
+
+    /**
+     * La funzione di hash non crittografica MurmurHash3 x64 a 128 bit (digest
+     * di 16 byte).
+     */
+    public static final HashFunction MURMUR3_128 = new Murmur3HashFunction();
+
+    private final String name;
+
+    private final int digestLength;
+
+    /**
+     * Numero massimo di calcolatori conservati da ciascun thread, ovvero di
+     * calcoli annidati che non richiedono un nuovo calcolatore.
+     */
+    private static final int MAX_HASHERS_PER_THREAD = 8;
+
+    /**
+     * Calcolatori riutilizzati da ciascun thread, uno per livello di calcoli
+     * annidati.
+     */
+    private final ThreadLocal<Hasher[]> hashers;
+
+    /**
+     * Buffer di appoggio per la concatenazione esadecimale di due digest.
+     */
+    private final ThreadLocal<byte[]> hexScratch;
+
+    /**
+     * Costruisce una funzione di hash con il nome e la lunghezza del digest
+     * specificati.
+     *
+     * @param name
+     *                         il nome dell'algoritmo.
+     * @param digestLength
+     *                         la lunghezza in byte del digest.
+     */
+    protected HashFunction(String name, int digestLength) {
+        this.name = name;
+        this.digestLength = digestLength;
+        this.hashers = ThreadLocal.withInitial(() -> new Hasher[] { newHasher() });
+        this.hexScratch = ThreadLocal.withInitial(() -> new byte[4 * digestLength]);
+    }
+
+    /**
+     * Restituisce la funzione di hash con il nome specificato.
+     *
+     * @param name
+     *                 il nome dell'algoritmo, come restituito da
+     *                 {@link #getName()}.
+     * @return la funzione di hash corrispondente.
+     * @throws IllegalArgumentException
+     *                                      se non esiste una funzione con il
+     *                                      nome specificato.
+     */
+    public static HashFunction forName(String name) {
+        for (HashFunction function : new HashFunction[] { MD5, SHA256, MURMUR3_128 }) {
+            if (function.getName().equals(name)) {
+                return function;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash function: " + name);
+    }
+
+    /**
+     * Restituisce il nome dell'algoritmo.
+     *
+     * @return il nome dell'algoritmo.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Restituisce la lunghezza in byte dei digest prodotti.
+     *
+     * @return la lunghezza dei digest.
+     */
+    public int getDigestLength() {
+        return digestLength;
+    }
+
+    /**
+     * Crea un nuovo calcolatore incrementale, indipendente da quelli degli
+     * altri thread.
+     *
+     * @return un nuovo calcolatore.
+     */
+    public abstract Hasher newHasher();
+
+    /**
+     * Restituisce il calcolatore incrementale del thread corrente, pronto per
+     * un nuovo hash. Il calcolatore viene riutilizzato dopo ogni
+     * {@code finish}; se è ancora in uso, ad esempio per un calcolo annidato,
+     * viene restituito un altro calcolatore del thread, creato la prima volta
+     * che serve. Oltre {@value #MAX_HASHERS_PER_THREAD} livelli, o se dei
+     * calcoli interrotti da un'eccezione li hanno lasciati tutti in uso,
+     * l'ultimo viene sostituito da uno nuovo.
+     *
+     * @return il calcolatore del thread corrente.
+     */
+    public Hasher hasher() {
+        Hasher[] pool = hashers.get();
+        for (Hasher hasher : pool) {
+            if (!hasher.inUse) {
+                hasher.inUse = true;
+                return hasher;
+            }
+        }
+        if (pool.length < MAX_HASHERS_PER_THREAD) {
+            pool = Arrays.copyOf(pool, pool.length + 1);
+            hashers.set(pool);
+        }
+        Hasher hasher = newHasher();
+        pool[pool.length - 1] = hasher;
+        hasher.inUse = true;
+        return hasher;
+    }
+
+    /**
+     * Calcola l'hash di una porzione di un array di byte e scrive il digest
+     * nell'array {@code out} a partire da {@code outOffset}.
+     *
+     * @param input
+     *                      l'array di byte di cui calcolare l'hash.
+     * @param offset
+     *                      la posizione del primo byte da considerare.
+     * @param length
+     *                      il numero di byte da considerare.
+     * @param out
+     *                      l'array in cui scrivere il digest.
+     * @param outOffset
+     *                      la posizione da cui scrivere il digest.
+     */
+    public void hash(byte[] input, int offset, int length, byte[] out, int outOffset) {
+        hasher().putBytes(input, offset, length).finish(out, outOffset);
+    }
+
+    /**
+     * Calcola l'hash dei byte rimanenti del buffer fornito, consumandolo, e
+     * scrive il digest nell'array {@code out} a partire da {@code outOffset}.
+     *
+     * @param input
+     *                      il buffer di cui calcolare l'hash.
+     * @param out
+     *                      l'array in cui scrivere il digest.
+     * @param outOffset
+     *                      la posizione da cui scrivere il digest.
+     */
+    public void hash(ByteBuffer input, byte[] out, int outOffset) {
+        hasher().putBytes(input).finish(out, outOffset);
+    }
+
+    /**
+     * Calcola l'hash di un array di byte.
+     *
+     * @param input
+     *                  l'array di byte di cui calcolare l'hash.
+     * @return il digest come nuovo array di byte.
+     */
+    public byte[] hash(byte[] input) {
+        byte[] out = new byte[digestLength];
+        hash(input, 0, input.length, out, 0);
+        return out;
+    }
+
+    /**
+     * Calcola l'hash di un array di byte restituendolo come {@link Digest}.
+     *
+     * @param input
+     *                  l'array di byte di cui calcolare l'hash.
+     * @return il digest calcolato.
+     */
+    public Digest hashToDigest(byte[] input) {
+        return Digest.wrap(hash(input));
+    }
+
+    /**
+     * Calcola l'hash di un array di byte restituendolo come stringa
+     * esadecimale.
+     *
+     * @param input
+     *                  l'array di byte di cui calcolare l'hash.
+     * @return l'hash come stringa esadecimale.
+     */
+    public String hashToHex(byte[] input) {
+        return HashUtil.toHex(hash(input));
+    }
+
+    /**
+     * Calcola il digest della concatenazione delle rappresentazioni
+     * esadecimali di due digest, ovvero la regola con cui vengono combinati i
+     * nodi di un albero di Merkle, senza costruire stringhe intermedie. Se
+     * {@code right} è null viene usata la sola rappresentazione di
+     * {@code left}, come se fosse concatenata alla stringa vuota.
+     *
+     * @param left
+     *                        l'array contenente il digest sinistro.
+     * @param leftOffset
+     *                        la posizione del digest sinistro.
+     * @param right
+     *                        l'array contenente il digest destro, oppure null.
+     * @param rightOffset
+     *                        la posizione del digest destro.
+     * @param out
+     *                        l'array in cui scrivere il digest risultante.
+     * @param outOffset
+     *                        la posizione da cui scrivere il digest risultante.
+     */
+    public void combine(byte[] left, int leftOffset, byte[] right, int rightOffset,
+            byte[] out, int outOffset) {
+        byte[] scratch = hexScratch.get();
+        HashUtil.writeHex(left, leftOffset, digestLength, scratch, 0);
+        int length = 2 * digestLength;
+        if (right != null) {
+            HashUtil.writeHex(right, rightOffset, digestLength, scratch, length);
+            length += 2 * digestLength;
+        }
+        hash(scratch, 0, length, out, outOffset);
+    }
+
+    /**
+     * Generalizza {@link #combine(byte[], int, byte[], int, byte[], int)} a
+     * un numero qualsiasi di figli: calcola il digest della concatenazione
+     * delle rappresentazioni esadecimali di {@code count} digest consecutivi,
+     * a partire da {@code offset}. Con due digest il risultato coincide con
+     * quello di {@code combine}, e con uno solo con quello di un nodo senza
+     * fratello. Il risultato può sovrapporsi ai digest in ingresso.
+     *
+     * @param children
+     *                      l'array contenente i digest dei figli.
+     * @param offset
+     *                      la posizione del primo digest.
+     * @param count
+     *                      il numero di digest da combinare.
+     * @param out
+     *                      l'array in cui scrivere il digest risultante.
+     * @param outOffset
+     *                      la posizione da cui scrivere il digest risultante.
+     */
+    public void combineAll(byte[] children, int offset, int count, byte[] out, int outOffset) {
+        byte[] scratch = hexScratch.get();
+        Hasher hasher = hasher();
+        for (int i = 0; i < count; i++) {
+            HashUtil.writeHex(children, offset + i * digestLength, digestLength, scratch, 0);
+            hasher.putBytes(scratch, 0, 2 * digestLength);
+        }
+        hasher.finish(out, outOffset);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
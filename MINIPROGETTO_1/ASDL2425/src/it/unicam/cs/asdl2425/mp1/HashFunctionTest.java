@@ -0,0 +1,184 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link HashFunction}. Questa classe verifica
+ * gli algoritmi disponibili e il riutilizzo dei calcolatori per thread.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testMD5MatchesHashUtil()}: Verifica che {@link HashFunction#MD5}
+ * produca gli stessi hash di {@code HashUtil.computeMD5}.</li>
+ *
+ * <li>{@link #testSHA256()}: Verifica l'hash SHA-256 di un valore noto.</li>
+ *
+ * <li>{@link #testMurmur3()}: Verifica l'hash MurmurHash3 a 128 bit di valori
+ * noti.</li>
+ *
+ * <li>{@link #testIncrementalMatchesOneShot()}: Verifica che l'hash calcolato
+ * a blocchi coincida con quello calcolato in un'unica invocazione, per tutti
+ * gli algoritmi.</li>
+ *
+ * <li>{@link #testHasherReuse()}: Verifica che il calcolatore del thread venga
+ * riutilizzato dopo {@code finish} e che un calcolo annidato ne usi uno
+ * diverso, anch'esso riutilizzato.</li>
+ *
+ * <li>{@link #testForName()}: Verifica la ricerca di una funzione di hash per
+ * nome.</li>
+ *
+ * <li>{@link #testCombine()}: Verifica che {@code combine} equivalga all'hash
+ * della concatenazione esadecimale per un digest di 32 byte.</li>
+ *
+ * <li>{@link #testPutString()}: Verifica che {@code putString} codifichi i
+ * caratteri in UTF-8, comprese le coppie di surrogate, e che le surrogate
+ * non accoppiate non vengano confuse con altri caratteri.</li>
+ *
+ * <li>{@link #testCombineAll()}: Verifica che {@code combineAll} equivalga
+ * all'hash della concatenazione esadecimale di più digest e a
+ * {@code combine} con uno o due digest.</li>
+ * </ul>
+ */
+class HashFunctionTest {
+
+    private static final HashFunction[] FUNCTIONS = { HashFunction.MD5,
+            HashFunction.SHA256, HashFunction.MURMUR3_128 };
+
+    @Test
+    void testMD5MatchesHashUtil() {
+        byte[] input = "Hello, World!".getBytes();
+        assertEquals(HashUtil.computeMD5(input), HashFunction.MD5.hashToHex(input),
+                "MD5 dovrebbe coincidere con HashUtil.computeMD5.");
+        assertEquals(16, HashFunction.MD5.getDigestLength(),
+                "Un digest MD5 dovrebbe essere lungo 16 byte.");
+    }
+
+    @Test
+    void testSHA256() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                HashFunction.SHA256.hashToHex("abc".getBytes()),
+                "L'hash SHA-256 di 'abc' non corrisponde all'atteso.");
+        assertEquals(32, HashFunction.SHA256.getDigestLength(),
+                "Un digest SHA-256 dovrebbe essere lungo 32 byte.");
+    }
+
+    @Test
+    void testMurmur3() {
+        assertEquals("029bbd41b3a7d8cb191dae486a901e5b",
+                HashFunction.MURMUR3_128.hashToHex("hello".getBytes()),
+                "L'hash MurmurHash3 di 'hello' non corrisponde all'atteso.");
+        assertEquals("00000000000000000000000000000000",
+                HashFunction.MURMUR3_128.hashToHex(new byte[0]),
+                "L'hash MurmurHash3 dell'input vuoto dovrebbe essere nullo.");
+    }
+
+    @Test
+    void testIncrementalMatchesOneShot() {
+        byte[] input = new byte[100];
+        for (int i = 0; i < input.length; i++) input[i] = (byte) (i * 31);
+
+        for (HashFunction function : FUNCTIONS) {
+            Hasher hasher = function.newHasher();
+            hasher.putBytes(input, 0, 7).putByte(input[7]).putBytes(input, 8, 30);
+            hasher.putBytes(ByteBuffer.wrap(input, 38, 62));
+            assertEquals(function.hashToDigest(input), hasher.finish(),
+                    "L'hash incrementale dovrebbe coincidere per " + function);
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(input.length).put(input).flip();
+            byte[] out = new byte[function.getDigestLength()];
+            function.hash(direct, out, 0);
+            assertArrayEquals(function.hash(input), out,
+                    "L'hash di un buffer diretto dovrebbe coincidere per " + function);
+        }
+    }
+
+    @Test
+    void testHasherReuse() {
+        Hasher first = HashFunction.MD5.hasher();
+        Hasher nested = HashFunction.MD5.hasher();
+        assertNotSame(first, nested, "Un calcolo annidato dovrebbe usare un calcolatore diverso.");
+        nested.putBytes("b".getBytes()).finish();
+        first.putBytes("a".getBytes());
+        assertEquals(HashUtil.computeMD5("a".getBytes()), first.finish().toString(),
+                "Il calcolo esterno non dovrebbe essere influenzato da quello annidato.");
+
+        Hasher reused = HashFunction.MD5.hasher();
+        reused.finish();
+        Hasher again = HashFunction.MD5.hasher();
+        assertSame(reused, again, "Dopo finish il calcolatore del thread dovrebbe essere riutilizzato.");
+        again.finish();
+
+        Hasher outer = HashFunction.MD5.hasher();
+        Hasher inner = HashFunction.MD5.hasher();
+        assertSame(nested, inner, "Anche il calcolatore annidato dovrebbe essere riutilizzato.");
+        inner.finish();
+        outer.finish();
+    }
+
+    @Test
+    void testForName() {
+        for (HashFunction function : FUNCTIONS) {
+            assertSame(function, HashFunction.forName(function.getName()),
+                    "La funzione dovrebbe essere trovata per nome.");
+        }
+        assertThrows(IllegalArgumentException.class, () -> HashFunction.forName("CRC32"),
+                "Dovrebbe lanciare IllegalArgumentException per un nome sconosciuto.");
+    }
+
+    @Test
+    void testCombine() {
+        String left = HashFunction.SHA256.hashToHex("sinistro".getBytes());
+        String right = HashFunction.SHA256.hashToHex("destro".getBytes());
+        byte[] buffer = new byte[3 * 32];
+        Digest.fromHex(left).copyTo(buffer, 0);
+        Digest.fromHex(right).copyTo(buffer, 32);
+        HashFunction.SHA256.combine(buffer, 0, buffer, 32, buffer, 64);
+        assertEquals(HashFunction.SHA256.hashToHex((left + right).getBytes()),
+                HashUtil.toHex(buffer, 64, 32),
+                "combine dovrebbe equivalere all'hash della concatenazione.");
+    }
+
+    @Test
+    void testPutString() {
+        String text = "Città \u20ac \ud83d\ude00 fine";
+        assertEquals(HashFunction.MD5.hashToDigest(text.getBytes(StandardCharsets.UTF_8)),
+                HashFunction.MD5.hasher().putString(text).finish(),
+                "putString dovrebbe equivalere alla codifica UTF-8 della stringa.");
+        assertNotEquals(HashFunction.MD5.hasher().putString("\ud800").finish(),
+                HashFunction.MD5.hasher().putString("?").finish(),
+                "Una surrogata non accoppiata non dovrebbe essere codificata come '?'.");
+        assertNotEquals(HashFunction.MD5.hasher().putString("a\udc00").finish(),
+                HashFunction.MD5.hasher().putString("a\ud800").finish(),
+                "Surrogate non accoppiate diverse dovrebbero avere codifiche diverse.");
+    }
+
+    @Test
+    void testCombineAll() {
+        byte[] buffer = new byte[6 * 16];
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            Digest child = HashUtil.dataToDigest(i);
+            child.copyTo(buffer, i * 16);
+            hex.append(child);
+        }
+        HashFunction.MD5.combineAll(buffer, 0, 5, buffer, 5 * 16);
+        assertEquals(HashFunction.MD5.hashToHex(hex.toString().getBytes()), HashUtil.toHex(buffer, 5 * 16, 16),
+                "combineAll dovrebbe equivalere all'hash della concatenazione.");
+
+        byte[] expected = new byte[16];
+        HashFunction.MD5.combine(buffer, 16, buffer, 32, expected, 0);
+        HashFunction.MD5.combineAll(buffer, 16, 2, buffer, 16);
+        assertArrayEquals(expected, Arrays.copyOfRange(buffer, 16, 32),
+                "Con due digest combineAll dovrebbe equivalere a combine.");
+        HashFunction.MD5.combine(buffer, 0, null, 0, expected, 0);
+        HashFunction.MD5.combineAll(buffer, 0, 1, buffer, 0);
+        assertArrayEquals(expected, Arrays.copyOfRange(buffer, 0, 16),
+                "Con un digest combineAll dovrebbe equivalere a un nodo senza fratello.");
+    }
+}
@@ -1,7 +1,9 @@
 package it.unicam.cs.asdl2425.mp1;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ConcurrentModificationException;
 import java.util.NoSuchElementException;
 
@@ -16,6 +18,8 @@ import java.util.NoSuchElementException;
  * <ul>
  * <li>Aggiungere un elemento in testa alla lista</li>
  * <li>Aggiungere un elemento in coda alla lista</li>
+ * <li>Aggiungere in coda alla lista un insieme di elementi, calcolandone gli
+ * hash in parallelo</li>
  * <li>Rimuovere un elemento dalla lista in base al dato</li>
  * <li>Recuperare una lista ordinata di tutti gli hash contenuti nella
  * lista</li>
@@ -28,7 +32,10 @@ import java.util.NoSuchElementException;
  * coda un'operazione O(1).
  *
  * <p>
- * La classe utilizza la classe HashUtil per calcolare l'hash MD5 dei dati.
+ * La classe utilizza la classe HashUtil per calcolare l'hash MD5 dei dati. Una
+ * diversa {@link HashFunction} può essere scelta alla costruzione della lista,
+ * così come il {@link Funnel} che descrive il contenuto dei dati da hashare
+ * (per default {@link Funnels#object()}).
  *
  * @param <T>
  *                il tipo generico dei dati contenuti nei nodi della lista.
@@ -48,11 +55,51 @@ public class HashLinkedList<T> implements Iterable<T> {
     // per l'implementazione dell'iteratore
     // fail-fast
 
+    private final HashFunction hashFunction; // Funzione di hash dei dati
+
+    private final Funnel<? super T> funnel; // Descrive il contenuto dei dati
+
     public HashLinkedList() {
+        this(HashFunction.MD5);
+    }
+
+    /**
+     * Costruisce una lista vuota che calcola gli hash dei dati con la funzione
+     * di hash specificata.
+     *
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @throws IllegalArgumentException
+     *                                      se la funzione di hash è null.
+     */
+    public HashLinkedList(HashFunction hashFunction) {
+        this(hashFunction, Funnels.object());
+    }
+
+    /**
+     * Costruisce una lista vuota che calcola gli hash dei dati con la funzione
+     * di hash specificata, riversando nel calcolatore il contenuto dei dati
+     * descritto dal funnel fornito.
+     *
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @param funnel
+     *                         il funnel che descrive il contenuto dei dati.
+     * @throws IllegalArgumentException
+     *                                      se la funzione di hash o il funnel
+     *                                      sono null.
+     */
+    public HashLinkedList(HashFunction hashFunction, Funnel<? super T> funnel) {
+        if (hashFunction == null)
+            throw new IllegalArgumentException("The hash function cannot be null");
+        if (funnel == null)
+            throw new IllegalArgumentException("The funnel cannot be null");
         this.head = null;
         this.tail = null;
         this.size = 0;
         this.numeroModifiche = 0;
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
     }
 
     /**
@@ -64,21 +111,55 @@ public class HashLinkedList<T> implements Iterable<T> {
         return size;
     }
 
+    /**
+     * Restituisce la funzione di hash con cui vengono calcolati gli hash dei
+     * dati della lista.
+     *
+     * @return la funzione di hash della lista.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce il funnel che descrive il contenuto dei dati della lista.
+     *
+     * @return il funnel della lista.
+     */
+    public Funnel<? super T> getFunnel() {
+        return funnel;
+    }
+
     /**
      * Rappresenta un nodo nella lista concatenata.
      */
     private class Node {
-        String hash; // Hash del dato
+        Digest hash; // Hash del dato, convertito in esadecimale solo se richiesto
 
         T data; // Dato originale
 
         Node next;
 
         Node(T data) {
+            this(data, HashUtil.hash(data, funnel, hashFunction));
+        }
+
+        Node(T data, Digest hash) {
             this.data = data;
-            this.hash = HashUtil.dataToHash(data);
+            this.hash = hash;
             this.next = null;
         }
+
+        /**
+         * Restituisce l'hash del dato, calcolandolo se il nodo è stato
+         * aggiunto con {@link HashLinkedList#addAtTailLazily(Object)}.
+         */
+        Digest digest() {
+            if (hash == null) {
+                hash = HashUtil.hash(data, funnel, hashFunction);
+            }
+            return hash;
+        }
     }
 
     /**
@@ -112,7 +193,26 @@ public class HashLinkedList<T> implements Iterable<T> {
      */
     public void addAtTail(T data) {
         // Creiamo un nuovo nodo con il dato fornito
-        Node newNode = new Node(data);
+        linkAtTail(new Node(data));
+    }
+
+    /**
+     * Aggiunge un nuovo elemento in coda alla lista senza calcolarne l'hash,
+     * che viene calcolato solo se richiesto. È pensato per le liste usate
+     * solo come contenitori, come quella di {@link MerkleProof}, i cui hash
+     * non vengono mai letti.
+     *
+     * @param data
+     *                 il dato da aggiungere.
+     */
+    void addAtTailLazily(T data) {
+        linkAtTail(new Node(data, null));
+    }
+
+    /**
+     * Collega un nodo in coda alla lista.
+     */
+    private void linkAtTail(Node newNode) {
         // Se la lista è vuota, sia head che tail puntano al nuovo nodo
         if (tail == null) {
             head = newNode;
@@ -127,6 +227,39 @@ public class HashLinkedList<T> implements Iterable<T> {
         numeroModifiche++;
     }
 
+    /**
+     * Aggiunge in coda alla lista tutti gli elementi della collezione, nel loro
+     * ordine di iterazione. Gli hash degli elementi vengono calcolati in
+     * parallelo con {@link HashUtil#hashAll(List, Funnel, HashFunction, Digest[])}
+     * prima di collegare i nuovi nodi alla lista.
+     *
+     * @param data
+     *                 gli elementi da aggiungere.
+     * @throws IllegalArgumentException
+     *                                      se la collezione è null.
+     */
+    public void addAllAtTail(Collection<? extends T> data) {
+        if (data == null)
+            throw new IllegalArgumentException("The collection cannot be null");
+        if (data.isEmpty()) return;
+        // Copiamo gli elementi per avere un accesso posizionale stabile
+        List<T> elements = new ArrayList<>(data);
+        Digest[] hashes = new Digest[elements.size()];
+        HashUtil.hashAll(elements, funnel, hashFunction, hashes);
+        // Colleghiamo i nuovi nodi in ordine, come farebbe addAtTail
+        for (int i = 0; i < hashes.length; i++) {
+            Node newNode = new Node(elements.get(i), hashes[i]);
+            if (tail == null) {
+                head = newNode;
+            } else {
+                tail.next = newNode;
+            }
+            tail = newNode;
+        }
+        size += hashes.length;
+        numeroModifiche++;
+    }
+
     /**
      * Restituisce un'ArrayList contenente tutti gli hash nella lista in ordine.
      *
@@ -138,12 +271,26 @@ public class HashLinkedList<T> implements Iterable<T> {
         // Iteriamo su tutti i nodi della lista
         for (Node current = head; current != null; current = current.next) {
             // Aggiungiamo l'hash del nodo corrente alla lista
-            hashes.add(current.hash);
+            hashes.add(current.digest().toString());
         }
         // Restituiamo la lista di hash
         return hashes;
     }
 
+    /**
+     * Restituisce un'ArrayList contenente tutti gli hash nella lista in ordine,
+     * come digest grezzi anziché come stringhe esadecimali.
+     *
+     * @return una lista con tutti i digest della lista.
+     */
+    public ArrayList<Digest> getAllDigests() {
+        ArrayList<Digest> digests = new ArrayList<>(size);
+        for (Node current = head; current != null; current = current.next) {
+            digests.add(current.digest());
+        }
+        return digests;
+    }
+
     /**
      * Costruisce una stringa contenente tutti i nodi della lista, includendo
      * dati e hash. La stringa dovrebbe essere formattata come nel seguente
@@ -165,7 +312,7 @@ public class HashLinkedList<T> implements Iterable<T> {
         for (Node current = head; current != null; current = current.next) {
             // Aggiungiamo i dati e gli hash dei nodi alla stringa
             sb.append("Dato: ").append(current.data)
-                    .append(", Hash: ").append(current.hash).append("\n");
+                    .append(", Hash: ").append(current.digest()).append("\n");
         }
         // Restituiamo la stringa costruita
         return sb.toString();
@@ -65,6 +65,12 @@ import static org.junit.jupiter.api.Assertions.*;
  * 
  * <li>{@link #testFailFastIterator2()}: Verifica che l'iteratore sia
  * {@code fail-fast} rimuovendo un elemento durante l'iterazione.</li>
+ * 
+ * <li>{@link #testCustomHashFunction()}: Verifica che una lista costruita con una
+ * diversa funzione di hash calcoli gli hash dei dati con quella funzione.</li>
+ * 
+ * <li>{@link #testAddAllAtTail()}: Verifica che l'aggiunta in blocco di molti elementi
+ * produca la stessa lista di una sequenza di {@code addAtTail}.</li>
  * </ul>
  */
 class HashLinkedListTest {
@@ -337,4 +343,40 @@ class HashLinkedListTest {
                 "L'iteratore non è fail-fast."
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCustomHashFunction() {
+        HashLinkedList<String> shaList = new HashLinkedList<>(HashFunction.SHA256);
+        shaList.addAtTail("Alice paga Bob");
+
+        assertSame(HashFunction.SHA256, shaList.getHashFunction(),
+                "La lista dovrebbe usare la funzione di hash fornita.");
+        assertSame(HashFunction.MD5, list.getHashFunction(),
+                "La lista dovrebbe usare MD5 per default.");
+        assertEquals(HashUtil.dataToHash("Alice paga Bob", HashFunction.SHA256), shaList.getAllHashes().get(0),
+                "L'hash del dato dovrebbe essere calcolato con SHA-256.");
+        assertThrows(IllegalArgumentException.class, () -> new HashLinkedList<String>(null),
+                "Dovrebbe lanciare IllegalArgumentException per una funzione di hash null.");
+    }
+
+    @Test
+    void testAddAllAtTail() {
+        List<String> data = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) data.add("Dato " + i);
+
+        HashLinkedList<String> expected = new HashLinkedList<>();
+        expected.addAtTail("Alice paga Bob");
+        for (String d : data) expected.addAtTail(d);
+        expected.addAtTail("Bob paga Charlie");
+
+        list.addAtTail("Alice paga Bob");
+        list.addAllAtTail(data);
+        list.addAtTail("Bob paga Charlie");
+
+        assertEquals(expected.getSize(), list.getSize(), "Le dimensioni delle liste dovrebbero coincidere.");
+        assertEquals(expected.getAllHashes(), list.getAllHashes(), "Gli hash delle liste dovrebbero coincidere.");
+        assertTrue(list.remove("Bob paga Charlie"), "L'ultimo elemento dovrebbe essere rimosso.");
+        list.addAtTail("Charlie paga Diana");
+        assertEquals(3002, list.getSize(), "La coda della lista dovrebbe essere aggiornata correttamente.");
+    }
+}
@@ -1,24 +1,548 @@
 package it.unicam.cs.asdl2425.mp1;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
 
 /**
  * Classe fornita di utilità per calcolare gli hash MD5.
+ *
+ * <p>
+ * Oltre ai metodi che restituiscono l'hash come stringa esadecimale, la classe
+ * offre varianti che scrivono il digest grezzo in un array fornito dal
+ * chiamante o lo restituiscono come {@link Digest}, evitando la formattazione
+ * esadecimale e le concatenazioni di stringhe nei percorsi più frequenti. I
+ * metodi senza parametro {@link HashFunction} usano {@link HashFunction#MD5},
+ * che riutilizza un calcolatore per thread.
  * 
  * @author Luca Tesei, Marco Caputo
  */
 public class HashUtil {
 
     /**
-     * Calcola l'hash del dato fornito utilizzando MD5.
+     * Lunghezza in byte di un digest MD5.
+     */
+    public static final int MD5_LENGTH = 16;
+
+    /**
+     * Numero di elementi al di sotto del quale un blocco di dati viene hashato
+     * da un solo thread invece di essere ulteriormente suddiviso.
+     */
+    static final int PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * Numero di elementi di uno {@link Stream} letti e hashati insieme da
+     * {@link #hashAll(Stream, Funnel, HashFunction, ForkJoinPool)}.
+     */
+    static final int STREAM_BATCH = 16 * PARALLEL_THRESHOLD;
+
+    /**
+     * Dimensione dei blocchi con cui vengono letti stream e canali.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Dimensione massima di ciascuna regione mappata in memoria di un file.
+     */
+    static final long MAP_REGION_SIZE = 1L << 30;
+
+    /**
+     * Blocco di appoggio per la lettura degli stream, riutilizzato per thread.
+     */
+    private static final ThreadLocal<byte[]> STREAM_CHUNK = ThreadLocal
+            .withInitial(() -> new byte[CHUNK_SIZE]);
+
+    /**
+     * Buffer diretto per la lettura dei canali, riutilizzato per thread.
+     */
+    private static final ThreadLocal<ByteBuffer> CHANNEL_CHUNK = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocateDirect(CHUNK_SIZE));
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final byte[] HEX_BYTES = { '0', '1', '2', '3', '4', '5', '6',
+            '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    /**
+     * Calcola l'hash del dato fornito utilizzando MD5. L'hash dipende dal
+     * contenuto reale del dato, descritto dal funnel {@link Funnels#object()},
+     * e non solo dal suo {@code hashCode()}.
      *
      * @param data
      *                 il dato da hashare.
      * @return l'hash come stringa esadecimale.
      */
     public static String dataToHash(Object data) {
-        return HashUtil.computeMD5(intToBytes(data.hashCode()));
+        return dataToDigest(data).toString();
+    }
+
+    /**
+     * Calcola l'hash del dato fornito utilizzando la funzione di hash
+     * specificata.
+     *
+     * @param data
+     *                         il dato da hashare.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return l'hash come stringa esadecimale.
+     */
+    public static String dataToHash(Object data, HashFunction hashFunction) {
+        return dataToDigest(data, hashFunction).toString();
+    }
+
+    /**
+     * Calcola l'hash del dato fornito utilizzando MD5, restituendolo come
+     * digest grezzo. Il risultato corrisponde a {@link #dataToHash(Object)}.
+     *
+     * @param data
+     *                 il dato da hashare.
+     * @return l'hash come digest.
+     */
+    public static Digest dataToDigest(Object data) {
+        return dataToDigest(data, HashFunction.MD5);
+    }
+
+    /**
+     * Calcola l'hash del dato fornito utilizzando la funzione di hash
+     * specificata, restituendolo come digest grezzo.
+     *
+     * @param data
+     *                         il dato da hashare.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return l'hash come digest.
+     */
+    public static Digest dataToDigest(Object data, HashFunction hashFunction) {
+        return hash(data, Funnels.object(), hashFunction);
+    }
+
+    /**
+     * Calcola l'hash del dato fornito riversandone il contenuto, tramite il
+     * funnel specificato, direttamente nel calcolatore della funzione di hash,
+     * senza costruire un array di byte intermedio.
+     *
+     * @param <T>
+     *                         il tipo del dato.
+     * @param data
+     *                         il dato da hashare.
+     * @param funnel
+     *                         il funnel che descrive il contenuto del dato.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return l'hash come digest.
+     */
+    public static <T> Digest hash(T data, Funnel<? super T> funnel, HashFunction hashFunction) {
+        Hasher hasher = hashFunction.hasher();
+        funnel.funnel(data, hasher);
+        return hasher.finish();
+    }
+
+    /**
+     * Come {@link #hash(Object, Funnel, HashFunction)}, ma scrive il digest
+     * nell'array {@code out} a partire da {@code outOffset}, senza allocare
+     * memoria.
+     *
+     * @param <T>
+     *                         il tipo del dato.
+     * @param data
+     *                         il dato da hashare.
+     * @param funnel
+     *                         il funnel che descrive il contenuto del dato.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @param out
+     *                         l'array in cui scrivere il digest.
+     * @param outOffset
+     *                         la posizione da cui scrivere il digest.
+     */
+    public static <T> void hash(T data, Funnel<? super T> funnel, HashFunction hashFunction,
+            byte[] out, int outOffset) {
+        Hasher hasher = hashFunction.hasher();
+        funnel.funnel(data, hasher);
+        hasher.finish(out, outOffset);
+    }
+
+    /**
+     * Calcola in parallelo l'hash di tutti gli elementi della lista, usando il
+     * pool {@link ForkJoinPool#commonPool()}, e scrive i digest uno dopo
+     * l'altro nell'array {@code out} a partire da {@code outOffset}:
+     * l'hash dell'elemento {@code i} occupa i byte da
+     * {@code outOffset + i * L} a {@code outOffset + (i + 1) * L - 1}, dove
+     * {@code L} è la lunghezza del digest. Ogni thread riutilizza il proprio
+     * calcolatore e l'unica memoria allocata è quella per suddividere il
+     * lavoro.
+     *
+     * @param <T>
+     *                         il tipo dei dati.
+     * @param data
+     *                         i dati di cui calcolare l'hash.
+     * @param funnel
+     *                         il funnel che descrive il contenuto dei dati.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @param out
+     *                         l'array in cui scrivere i digest.
+     * @param outOffset
+     *                         la posizione da cui scrivere i digest.
+     * @throws IllegalArgumentException
+     *                                      se l'array di destinazione è troppo
+     *                                      piccolo.
+     */
+    public static <T> void hashAll(List<? extends T> data, Funnel<? super T> funnel,
+            HashFunction hashFunction, byte[] out, int outOffset) {
+        hashAll(data, funnel, hashFunction, out, outOffset, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Come {@link #hashAll(List, Funnel, HashFunction, byte[], int)}, ma usa il
+     * pool di thread specificato.
+     *
+     * @param <T>
+     *                         il tipo dei dati.
+     * @param data
+     *                         i dati di cui calcolare l'hash.
+     * @param funnel
+     *                         il funnel che descrive il contenuto dei dati.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @param out
+     *                         l'array in cui scrivere i digest.
+     * @param outOffset
+     *                         la posizione da cui scrivere i digest.
+     * @param pool
+     *                         il pool di thread da utilizzare.
+     * @throws IllegalArgumentException
+     *                                      se l'array di destinazione è troppo
+     *                                      piccolo.
+     */
+    public static <T> void hashAll(List<? extends T> data, Funnel<? super T> funnel,
+            HashFunction hashFunction, byte[] out, int outOffset, ForkJoinPool pool) {
+        int digestLength = hashFunction.getDigestLength();
+        if (outOffset < 0 || out.length - outOffset < (long) data.size() * digestLength)
+            throw new IllegalArgumentException("The output array is too small");
+        List<? extends T> list = randomAccess(data);
+        pool.invoke(new HashTask(0, list.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                hash(list.get(i), funnel, hashFunction, out, outOffset + i * digestLength);
+            }
+        }));
+    }
+
+    /**
+     * Calcola in parallelo l'hash di tutti gli elementi della lista, usando il
+     * pool {@link ForkJoinPool#commonPool()}, e scrive il digest dell'elemento
+     * {@code i} in {@code out[i]}.
+     *
+     * @param <T>
+     *                         il tipo dei dati.
+     * @param data
+     *                         i dati di cui calcolare l'hash.
+     * @param funnel
+     *                         il funnel che descrive il contenuto dei dati.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @param out
+     *                         l'array in cui scrivere i digest.
+     * @throws IllegalArgumentException
+     *                                      se l'array di destinazione è troppo
+     *                                      piccolo.
+     */
+    public static <T> void hashAll(List<? extends T> data, Funnel<? super T> funnel,
+            HashFunction hashFunction, Digest[] out) {
+        hashAll(data, funnel, hashFunction, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Come {@link #hashAll(List, Funnel, HashFunction, Digest[])}, ma usa il
+     * pool di thread specificato.
+     *
+     * @param <T>
+     *                         il tipo dei dati.
+     * @param data
+     *                         i dati di cui calcolare l'hash.
+     * @param funnel
+     *                         il funnel che descrive il contenuto dei dati.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @param out
+     *                         l'array in cui scrivere i digest.
+     * @param pool
+     *                         il pool di thread da utilizzare.
+     * @throws IllegalArgumentException
+     *                                      se l'array di destinazione è troppo
+     *                                      piccolo.
+     */
+    public static <T> void hashAll(List<? extends T> data, Funnel<? super T> funnel,
+            HashFunction hashFunction, Digest[] out, ForkJoinPool pool) {
+        if (out.length < data.size())
+            throw new IllegalArgumentException("The output array is too small");
+        List<? extends T> list = randomAccess(data);
+        pool.invoke(new HashTask(0, list.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                out[i] = hash(list.get(i), funnel, hashFunction);
+            }
+        }));
+    }
+
+    /**
+     * Calcola in parallelo l'hash di tutti gli elementi dell'array. Equivale a
+     * {@link #hashAll(List, Funnel, HashFunction, byte[], int)} applicato a
+     * {@code Arrays.asList(data)}.
+     *
+     * @param <T>
+     *                         il tipo dei dati.
+     * @param data
+     *                         i dati di cui calcolare l'hash.
+     * @param funnel
+     *                         il funnel che descrive il contenuto dei dati.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @param out
+     *                         l'array in cui scrivere i digest.
+     * @param outOffset
+     *                         la posizione da cui scrivere i digest.
+     */
+    public static <T> void hashAll(T[] data, Funnel<? super T> funnel,
+            HashFunction hashFunction, byte[] out, int outOffset) {
+        hashAll(Arrays.asList(data), funnel, hashFunction, out, outOffset);
+    }
+
+    /**
+     * Calcola in parallelo, usando il pool {@link ForkJoinPool#commonPool()},
+     * l'hash di tutti gli elementi dello stream, nel loro ordine di incontro,
+     * e li restituisce uno dopo l'altro in un unico array, come
+     * {@link #hashAll(List, Funnel, HashFunction, byte[], int)}.
+     *
+     * @param <T>
+     *                         il tipo dei dati.
+     * @param data
+     *                         i dati di cui calcolare l'hash.
+     * @param funnel
+     *                         il funnel che descrive il contenuto dei dati.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return l'array con i digest di tutti gli elementi.
+     * @see #hashAll(Stream, Funnel, HashFunction, ForkJoinPool)
+     */
+    public static <T> byte[] hashAll(Stream<? extends T> data, Funnel<? super T> funnel,
+            HashFunction hashFunction) {
+        return hashAll(data, funnel, hashFunction, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Come {@link #hashAll(Stream, Funnel, HashFunction)}, ma usa il pool di
+     * thread specificato. Lo stream non viene raccolto in una lista: gli
+     * elementi vengono letti a blocchi di {@value #STREAM_BATCH} e ogni blocco
+     * viene hashato in parallelo prima di leggere il successivo, per cui in
+     * memoria restano, oltre ai digest calcolati, solo gli elementi di un
+     * blocco.
+     *
+     * @param <T>
+     *                         il tipo dei dati.
+     * @param data
+     *                         i dati di cui calcolare l'hash.
+     * @param funnel
+     *                         il funnel che descrive il contenuto dei dati.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @param pool
+     *                         il pool di thread da utilizzare.
+     * @return l'array con i digest di tutti gli elementi.
+     */
+    public static <T> byte[] hashAll(Stream<? extends T> data, Funnel<? super T> funnel,
+            HashFunction hashFunction, ForkJoinPool pool) {
+        int digestLength = hashFunction.getDigestLength();
+        Iterator<? extends T> elements = data.iterator();
+        List<T> batch = new ArrayList<>(STREAM_BATCH);
+        byte[] out = new byte[0];
+        int count = 0;
+        while (elements.hasNext()) {
+            batch.add(elements.next());
+            if (batch.size() == STREAM_BATCH || !elements.hasNext()) {
+                int length = Math.multiplyExact(count + batch.size(), digestLength);
+                if (length > out.length) {
+                    out = Arrays.copyOf(out, (int) Math.min(Math.max(length, 2L * out.length), Integer.MAX_VALUE));
+                }
+                hashAll(batch, funnel, hashFunction, out, count * digestLength, pool);
+                count += batch.size();
+                batch.clear();
+            }
+        }
+        int length = count * digestLength;
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    /**
+     * Calcola l'hash di tutti i byte letti dallo stream fornito, fino alla sua
+     * fine, leggendoli a blocchi di dimensione fissa in un buffer riutilizzato:
+     * il contenuto non viene mai copiato in un unico array. Lo stream non viene
+     * chiuso.
+     *
+     * @param input
+     *                         lo stream da leggere.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return il digest del contenuto dello stream.
+     * @throws IOException
+     *                         se si verifica un errore di lettura.
+     */
+    public static Digest hash(InputStream input, HashFunction hashFunction) throws IOException {
+        Hasher hasher = hashFunction.hasher();
+        update(hasher, input);
+        return hasher.finish();
+    }
+
+    /**
+     * Calcola l'hash di tutti i byte letti dal canale fornito, fino alla sua
+     * fine, leggendoli a blocchi in un buffer diretto riutilizzato. Il canale
+     * non viene chiuso.
+     *
+     * @param input
+     *                         il canale da leggere.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return il digest del contenuto del canale.
+     * @throws IOException
+     *                         se si verifica un errore di lettura.
+     */
+    public static Digest hash(ReadableByteChannel input, HashFunction hashFunction) throws IOException {
+        Hasher hasher = hashFunction.hasher();
+        update(hasher, input);
+        return hasher.finish();
+    }
+
+    /**
+     * Calcola l'hash della porzione di file indicata mappandola in memoria a
+     * regioni di al più {@value #MAP_REGION_SIZE} byte, così da poter
+     * elaborare file più grandi di 2 GB senza copiarli nello heap. Il canale
+     * non viene chiuso.
+     *
+     * @param file
+     *                         il canale del file.
+     * @param position
+     *                         la posizione del primo byte da considerare.
+     * @param size
+     *                         il numero di byte da considerare.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return il digest della porzione di file.
+     * @throws IOException
+     *                         se si verifica un errore di lettura.
+     */
+    public static Digest hash(FileChannel file, long position, long size, HashFunction hashFunction)
+            throws IOException {
+        Hasher hasher = hashFunction.hasher();
+        update(hasher, file, position, size);
+        return hasher.finish();
+    }
+
+    /**
+     * Calcola l'hash dell'intero contenuto del file indicato, mappandolo in
+     * memoria come {@link #hash(FileChannel, long, long, HashFunction)}.
+     *
+     * @param file
+     *                         il percorso del file.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return il digest del contenuto del file.
+     * @throws IOException
+     *                         se si verifica un errore di lettura.
+     */
+    public static Digest hash(Path file, HashFunction hashFunction) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hash(channel, 0, channel.size(), hashFunction);
+        }
+    }
+
+    /**
+     * Calcola l'hash dei byte rimanenti di un buffer, ad esempio un
+     * {@link MappedByteBuffer}, consumandolo senza copiarlo in un array.
+     *
+     * @param input
+     *                         il buffer di cui calcolare l'hash.
+     * @param hashFunction
+     *                         la funzione di hash da utilizzare.
+     * @return il digest dei byte del buffer.
+     */
+    public static Digest hash(ByteBuffer input, HashFunction hashFunction) {
+        return hashFunction.hasher().putBytes(input).finish();
+    }
+
+    /**
+     * Aggiunge all'input del calcolatore tutti i byte letti dallo stream.
+     *
+     * @param hasher
+     *                   il calcolatore.
+     * @param input
+     *                   lo stream da leggere.
+     * @throws IOException
+     *                         se si verifica un errore di lettura.
+     */
+    static void update(Hasher hasher, InputStream input) throws IOException {
+        byte[] chunk = STREAM_CHUNK.get();
+        int read;
+        while ((read = input.read(chunk)) != -1) {
+            hasher.putBytes(chunk, 0, read);
+        }
+    }
+
+    /**
+     * Aggiunge all'input del calcolatore tutti i byte letti dal canale.
+     *
+     * @param hasher
+     *                   il calcolatore.
+     * @param input
+     *                   il canale da leggere.
+     * @throws IOException
+     *                         se si verifica un errore di lettura.
+     */
+    static void update(Hasher hasher, ReadableByteChannel input) throws IOException {
+        ByteBuffer chunk = CHANNEL_CHUNK.get();
+        chunk.clear();
+        while (input.read(chunk) != -1) {
+            chunk.flip();
+            hasher.putBytes(chunk);
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Aggiunge all'input del calcolatore una porzione di file, mappandola in
+     * memoria a regioni.
+     *
+     * @param hasher
+     *                     il calcolatore.
+     * @param file
+     *                     il canale del file.
+     * @param position
+     *                     la posizione del primo byte da considerare.
+     * @param size
+     *                     il numero di byte da considerare.
+     * @throws IOException
+     *                         se si verifica un errore di lettura.
+     */
+    static void update(Hasher hasher, FileChannel file, long position, long size) throws IOException {
+        if (position < 0 || size < 0)
+            throw new IllegalArgumentException("Position and size cannot be negative");
+        long end = position + size;
+        for (long start = position; start < end; start += MAP_REGION_SIZE) {
+            long regionSize = Math.min(MAP_REGION_SIZE, end - start);
+            MappedByteBuffer region = file.map(FileChannel.MapMode.READ_ONLY, start, regionSize);
+            hasher.putBytes(region);
+        }
     }
 
     /**
@@ -31,16 +555,142 @@ public class HashUtil {
      *                              se l'algoritmo di hashing non è disponibile.
      */
     public static String computeMD5(byte[] input) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hashBytes = md.digest(input);
-            StringBuilder hashString = new StringBuilder();
-            for (byte b : hashBytes) {
-                hashString.append(String.format("%02x", b));
-            }
-            return hashString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("MD5 algorithm not found", e);
+        return HashFunction.MD5.hashToHex(input);
+    }
+
+    /**
+     * Calcola l'hash di un array di byte fornito utilizzando MD5, restituendolo
+     * come digest grezzo.
+     *
+     * @param input
+     *                  l'array di byte di cui calcolare l'hash.
+     * @return l'hash come digest.
+     */
+    public static Digest computeMD5Digest(byte[] input) {
+        return HashFunction.MD5.hashToDigest(input);
+    }
+
+    /**
+     * Calcola l'hash MD5 di una porzione di un array di byte e scrive il digest
+     * risultante nell'array {@code out} a partire da {@code outOffset}, senza
+     * allocare memoria.
+     *
+     * @param input
+     *                      l'array di byte di cui calcolare l'hash.
+     * @param offset
+     *                      la posizione del primo byte da considerare.
+     * @param length
+     *                      il numero di byte da considerare.
+     * @param out
+     *                      l'array in cui scrivere il digest.
+     * @param outOffset
+     *                      la posizione da cui scrivere il digest.
+     */
+    public static void computeMD5(byte[] input, int offset, int length,
+            byte[] out, int outOffset) {
+        HashFunction.MD5.hash(input, offset, length, out, outOffset);
+    }
+
+    /**
+     * Calcola l'hash MD5 dei byte rimanenti del buffer fornito e scrive il
+     * digest risultante nell'array {@code out} a partire da {@code outOffset}.
+     * Il buffer viene consumato fino al suo limite; nessuna copia intermedia
+     * viene allocata, neanche per i buffer diretti.
+     *
+     * @param input
+     *                      il buffer di cui calcolare l'hash.
+     * @param out
+     *                      l'array in cui scrivere il digest.
+     * @param outOffset
+     *                      la posizione da cui scrivere il digest.
+     */
+    public static void computeMD5(ByteBuffer input, byte[] out, int outOffset) {
+        HashFunction.MD5.hash(input, out, outOffset);
+    }
+
+    /**
+     * Calcola il digest MD5 della concatenazione delle rappresentazioni
+     * esadecimali di due digest, ovvero lo stesso valore di
+     * {@code computeMD5((toHex(left) + toHex(right)).getBytes())}, senza
+     * costruire stringhe intermedie. È la regola con cui vengono combinati i
+     * nodi di un albero di Merkle. Se {@code right} è null viene usata la sola
+     * rappresentazione di {@code left}, come se fosse concatenata alla stringa
+     * vuota.
+     *
+     * @param left
+     *                        l'array contenente il digest sinistro.
+     * @param leftOffset
+     *                        la posizione del digest sinistro.
+     * @param right
+     *                        l'array contenente il digest destro, oppure null.
+     * @param rightOffset
+     *                        la posizione del digest destro.
+     * @param out
+     *                        l'array in cui scrivere il digest risultante.
+     * @param outOffset
+     *                        la posizione da cui scrivere il digest risultante.
+     */
+    public static void combineMD5(byte[] left, int leftOffset, byte[] right,
+            int rightOffset, byte[] out, int outOffset) {
+        HashFunction.MD5.combine(left, leftOffset, right, rightOffset, out, outOffset);
+    }
+
+    /**
+     * Converte un array di byte nella sua rappresentazione esadecimale
+     * minuscola.
+     *
+     * @param bytes
+     *                  l'array da convertire.
+     * @return la rappresentazione esadecimale dell'array.
+     */
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Converte una porzione di un array di byte nella sua rappresentazione
+     * esadecimale minuscola.
+     *
+     * @param bytes
+     *                   l'array da convertire.
+     * @param offset
+     *                   la posizione del primo byte da convertire.
+     * @param length
+     *                   il numero di byte da convertire.
+     * @return la rappresentazione esadecimale della porzione.
+     */
+    public static String toHex(byte[] bytes, int offset, int length) {
+        char[] chars = new char[2 * length];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xff;
+            chars[2 * i] = HEX_DIGITS[b >>> 4];
+            chars[2 * i + 1] = HEX_DIGITS[b & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Scrive la rappresentazione esadecimale minuscola (in caratteri ASCII) di
+     * una porzione di un array di byte nell'array {@code dst}, che deve avere
+     * spazio per {@code 2 * length} byte a partire da {@code dstOffset}.
+     *
+     * @param src
+     *                      l'array da convertire.
+     * @param srcOffset
+     *                      la posizione del primo byte da convertire.
+     * @param length
+     *                      il numero di byte da convertire.
+     * @param dst
+     *                      l'array di destinazione.
+     * @param dstOffset
+     *                      la posizione da cui scrivere i caratteri.
+     */
+    public static void writeHex(byte[] src, int srcOffset, int length,
+            byte[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) {
+            int b = src[srcOffset + i] & 0xff;
+            dst[dstOffset + 2 * i] = HEX_BYTES[b >>> 4];
+            dst[dstOffset + 2 * i + 1] = HEX_BYTES[b & 0x0f];
         }
     }
 
@@ -61,4 +711,61 @@ public class HashUtil {
         return new byte[] { (byte) (value >> 24), (byte) (value >> 16),
                 (byte) (value >> 8), (byte) value };
     }
-}
\ No newline at end of file
+
+    private static <T> List<T> randomAccess(List<T> data) {
+        // Le liste senza accesso posizionale efficiente vengono copiate
+        return data instanceof RandomAccess ? data : new ArrayList<>(data);
+    }
+
+    /**
+     * Porzione di lavoro su un intervallo di indici.
+     */
+    @FunctionalInterface
+    interface RangeAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * Suddivide ricorsivamente un intervallo di indici finché i blocchi non
+     * scendono sotto {@link #PARALLEL_THRESHOLD} (o la soglia indicata),
+     * quindi esegue l'azione su ciascun blocco.
+     */
+    static final class HashTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+
+        private final int to;
+
+        private final int threshold;
+
+        private final RangeAction action;
+
+        HashTask(int from, int to, RangeAction action) {
+            this(from, to, PARALLEL_THRESHOLD, action);
+        }
+
+        /**
+         * Come {@link #HashTask(int, int, RangeAction)}, ma suddivide
+         * l'intervallo finché i blocchi non scendono sotto {@code threshold}
+         * indici, per azioni in cui ogni indice rappresenta molto lavoro.
+         */
+        HashTask(int from, int to, int threshold, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.threshold = Math.max(1, threshold);
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                action.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new HashTask(from, middle, threshold, action),
+                    new HashTask(middle, to, threshold, action));
+        }
+    }
+}
@@ -2,6 +2,22 @@ package it.unicam.cs.asdl2425.mp1;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -18,6 +34,31 @@ import static org.junit.jupiter.api.Assertions.*;
  * 
  * <li>{@link #testComputeMD5_nullInput()}: Verifica che il metodo
  * {@code computeMD5} lanci una {@code NullPointerException} quando l'input è {@code null}.</li>
+ * 
+ * <li>{@link #testComputeMD5_intoBuffer()}: Verifica che le varianti di {@code computeMD5}
+ * che scrivono il digest in un array fornito producano lo stesso hash della variante esadecimale.</li>
+ * 
+ * <li>{@link #testDataToDigest()}: Verifica che {@code dataToDigest} corrisponda a {@code dataToHash}.</li>
+ * 
+ * <li>{@link #testCombineMD5()}: Verifica che {@code combineMD5} equivalga all'hash della
+ * concatenazione delle rappresentazioni esadecimali, anche con un solo digest.</li>
+ * 
+ * <li>{@link #testHashAll()}: Verifica che il calcolo parallelo degli hash di molti dati
+ * produca, nell'ordine, gli stessi hash del calcolo sequenziale.</li>
+ * 
+ * <li>{@link #testHashAllStream()}: Verifica il calcolo parallelo degli hash degli elementi
+ * di uno stream.</li>
+ * 
+ * <li>{@link #testHashAllOnPool()}: Verifica che gli hash calcolati su un pool indicato, anche
+ * per uno stream letto in più blocchi, coincidano con quelli calcolati uno per uno.</li>
+ * 
+ * <li>{@link #testHashAllOutputTooSmall()}: Verifica che venga lanciata un'eccezione se
+ * l'array di destinazione è troppo piccolo.</li>
+ * 
+ * <li>{@link #testHashStreamAndChannel()}: Verifica che l'hash letto a blocchi da uno stream
+ * o da un canale coincida con quello dell'intero array, per ogni funzione di hash.</li>
+ * 
+ * <li>{@link #testHashFile()}: Verifica l'hash di un file mappato in memoria, intero o in parte.</li>
  * </ul>
  */
 class HashUtilTest {
@@ -49,4 +90,147 @@ class HashUtilTest {
         assertThrows(NullPointerException.class, () -> HashUtil.computeMD5(null),
                 "Dovrebbe lanciare NullPointerException se l'input è null.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testComputeMD5_intoBuffer() {
+        byte[] input = "xxHello, World!xx".getBytes();
+        byte[] out = new byte[HashUtil.MD5_LENGTH + 1];
+
+        HashUtil.computeMD5(input, 2, input.length - 4, out, 1);
+        assertEquals("65a8e27d8879283831b664bd8b7f0ad4", HashUtil.toHex(out, 1, HashUtil.MD5_LENGTH),
+                "L'hash scritto nel buffer non corrisponde all'atteso.");
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(input.length);
+        direct.put(input).flip().position(2).limit(input.length - 2);
+        HashUtil.computeMD5(direct, out, 0);
+        assertEquals("65a8e27d8879283831b664bd8b7f0ad4", HashUtil.toHex(out, 0, HashUtil.MD5_LENGTH),
+                "L'hash del ByteBuffer non corrisponde all'atteso.");
+    }
+
+    @Test
+    void testDataToDigest() {
+        assertEquals(HashUtil.dataToHash("Alice paga Bob"), HashUtil.dataToDigest("Alice paga Bob").toString(),
+                "dataToDigest dovrebbe corrispondere a dataToHash.");
+    }
+
+    @Test
+    void testCombineMD5() {
+        String left = HashUtil.dataToHash("Alice paga Bob");
+        String right = HashUtil.dataToHash("Bob paga Charlie");
+        byte[] buffer = new byte[3 * HashUtil.MD5_LENGTH];
+        Digest.fromHex(left).copyTo(buffer, 0);
+        Digest.fromHex(right).copyTo(buffer, HashUtil.MD5_LENGTH);
+
+        HashUtil.combineMD5(buffer, 0, buffer, HashUtil.MD5_LENGTH, buffer, 2 * HashUtil.MD5_LENGTH);
+        assertEquals(HashUtil.computeMD5((left + right).getBytes()),
+                HashUtil.toHex(buffer, 2 * HashUtil.MD5_LENGTH, HashUtil.MD5_LENGTH),
+                "combineMD5 dovrebbe equivalere all'hash della concatenazione.");
+
+        HashUtil.combineMD5(buffer, 0, null, 0, buffer, 2 * HashUtil.MD5_LENGTH);
+        assertEquals(HashUtil.computeMD5((left + "").getBytes()),
+                HashUtil.toHex(buffer, 2 * HashUtil.MD5_LENGTH, HashUtil.MD5_LENGTH),
+                "combineMD5 con un solo digest dovrebbe equivalere all'hash del solo digest.");
+    }
+
+    @Test
+    void testHashAll() {
+        List<String> data = new LinkedList<>();
+        for (int i = 0; i < 5000; i++) data.add("Dato " + i);
+
+        byte[] out = new byte[1 + data.size() * HashUtil.MD5_LENGTH];
+        HashUtil.hashAll(data, Funnels.object(), HashFunction.MD5, out, 1);
+        Digest[] digests = new Digest[data.size()];
+        HashUtil.hashAll(data, Funnels.object(), HashFunction.MD5, digests);
+
+        for (int i = 0; i < data.size(); i++) {
+            Digest expected = HashUtil.dataToDigest("Dato " + i);
+            assertTrue(expected.matches(out, 1 + i * HashUtil.MD5_LENGTH),
+                    "L'hash in posizione " + i + " non corrisponde all'atteso.");
+            assertEquals(expected, digests[i], "Il digest in posizione " + i + " non corrisponde all'atteso.");
+        }
+    }
+
+    @Test
+    void testHashAllStream() {
+        byte[] out = HashUtil.hashAll(IntStream.range(0, 3000).boxed(), Funnels.object(), HashFunction.SHA256);
+        assertEquals(3000 * 32, out.length, "L'array dovrebbe contenere un digest per elemento.");
+        assertTrue(HashUtil.dataToDigest(2999, HashFunction.SHA256).matches(out, 2999 * 32),
+                "L'ultimo digest non corrisponde all'atteso.");
+    }
+
+    @Test
+    void testHashAllOnPool() {
+        List<Integer> data = new ArrayList<>();
+        for (int i = 0; i < 2 * HashUtil.STREAM_BATCH + 7; i++) {
+            data.add(i);
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Digest[] digests = new Digest[data.size()];
+            HashUtil.hashAll(data, Funnels.object(), HashFunction.MD5, digests, pool);
+            byte[] out = HashUtil.hashAll(data.stream(), Funnels.object(), HashFunction.MD5, pool);
+            assertEquals(data.size() * HashUtil.MD5_LENGTH, out.length,
+                    "L'array dovrebbe contenere un digest per elemento.");
+            for (int i = 0; i < data.size(); i++) {
+                Digest expected = HashUtil.dataToDigest(i);
+                assertEquals(expected, digests[i], "Il digest in posizione " + i + " non corrisponde all'atteso.");
+                assertTrue(expected.matches(out, i * HashUtil.MD5_LENGTH),
+                        "L'hash in posizione " + i + " non corrisponde all'atteso.");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testHashAllOutputTooSmall() {
+        List<String> data = new ArrayList<>(List.of("a", "b"));
+        assertThrows(IllegalArgumentException.class,
+                () -> HashUtil.hashAll(data, Funnels.object(), HashFunction.MD5, new byte[HashUtil.MD5_LENGTH], 0),
+                "Dovrebbe lanciare IllegalArgumentException se l'array è troppo piccolo.");
+    }
+
+    @Test
+    void testHashStreamAndChannel() throws IOException {
+        // Una lunghezza non multipla né del blocco di lettura né dei blocchi interni
+        byte[] data = new byte[3 * HashUtil.CHUNK_SIZE + 13];
+        new Random(42).nextBytes(data);
+
+        for (HashFunction function : List.of(HashFunction.MD5, HashFunction.SHA256, HashFunction.MURMUR3_128)) {
+            Digest expected = function.hashToDigest(data);
+            assertEquals(expected, HashUtil.hash(new ByteArrayInputStream(data), function),
+                    "L'hash dello stream non corrisponde per " + function + ".");
+            assertEquals(expected, HashUtil.hash(Channels.newChannel(new ByteArrayInputStream(data)), function),
+                    "L'hash del canale non corrisponde per " + function + ".");
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length).order(ByteOrder.LITTLE_ENDIAN);
+            direct.put(data).flip();
+            assertEquals(expected, HashUtil.hash(direct, function),
+                    "L'hash del buffer diretto non corrisponde per " + function + ".");
+            assertFalse(direct.hasRemaining(), "Il buffer dovrebbe essere stato consumato.");
+        }
+    }
+
+    @Test
+    void testHashFile() throws IOException {
+        byte[] data = new byte[HashUtil.CHUNK_SIZE + 7];
+        new Random(7).nextBytes(data);
+        Path file = Files.createTempFile("hashutil", ".bin");
+        try {
+            Files.write(file, data);
+            assertEquals(HashFunction.MD5.hashToDigest(data), HashUtil.hash(file, HashFunction.MD5),
+                    "L'hash del file non corrisponde a quello del suo contenuto.");
+            try (FileChannel channel = FileChannel.open(file)) {
+                byte[] part = Arrays.copyOfRange(data, 100, 1100);
+                assertEquals(HashFunction.MURMUR3_128.hashToDigest(part),
+                        HashUtil.hash(channel, 100, 1000, HashFunction.MURMUR3_128),
+                        "L'hash della porzione di file non corrisponde.");
+                assertThrows(IllegalArgumentException.class,
+                        () -> HashUtil.hash(channel, -1, 10, HashFunction.MD5),
+                        "Dovrebbe lanciare IllegalArgumentException per una posizione negativa.");
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Calcola incrementalmente l'hash di una sequenza di byte secondo una data
+ * {@link HashFunction}. I byte vengono forniti con i metodi {@code put*} e il
+ * digest viene ottenuto con uno dei metodi {@code finish}, che riportano il
+ * calcolatore allo stato iniziale.
+ *
+ * <p>
+ * Un oggetto di questa classe non è thread-safe. Quelli restituiti da
+ * {@link HashFunction#hasher()} appartengono al thread corrente e vengono
+ * riutilizzati dopo ogni {@code finish}, quindi non devono essere conservati
+ * oltre il calcolo di un singolo hash.
+ */
+public abstract class Hasher {
+
+    /**
+     * Indica se il calcolatore è stato assegnato da
+     * {@link HashFunction#hasher()} e non è ancora stato completato.
+     */
+    boolean inUse;
+
+    /**
+     * Aggiunge un byte all'input dell'hash.
+     *
+     * @param b
+     *              il byte da aggiungere.
+     * @return questo calcolatore.
+     */
+    public abstract Hasher putByte(byte b);
+
+    /**
+     * Aggiunge una porzione di un array di byte all'input dell'hash.
+     *
+     * @param bytes
+     *                   l'array di byte.
+     * @param offset
+     *                   la posizione del primo byte da aggiungere.
+     * @param length
+     *                   il numero di byte da aggiungere.
+     * @return questo calcolatore.
+     */
+    public abstract Hasher putBytes(byte[] bytes, int offset, int length);
+
+    /**
+     * Aggiunge un array di byte all'input dell'hash.
+     *
+     * @param bytes
+     *                  l'array di byte.
+     * @return questo calcolatore.
+     */
+    public Hasher putBytes(byte[] bytes) {
+        return putBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Aggiunge un valore booleano all'input dell'hash, come un byte di valore 1
+     * o 0.
+     *
+     * @param value
+     *                  il valore da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putBoolean(boolean value) {
+        return putByte(value ? (byte) 1 : (byte) 0);
+    }
+
+    /**
+     * Aggiunge un valore short all'input dell'hash, in formato big-endian.
+     *
+     * @param value
+     *                  il valore da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putShort(short value) {
+        putByte((byte) (value >> 8));
+        return putByte((byte) value);
+    }
+
+    /**
+     * Aggiunge un carattere all'input dell'hash, come valore a 16 bit in
+     * formato big-endian.
+     *
+     * @param value
+     *                  il carattere da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putChar(char value) {
+        return putShort((short) value);
+    }
+
+    /**
+     * Aggiunge un valore intero all'input dell'hash, in formato big-endian
+     * (lo stesso di {@link HashUtil#intToBytes(int)}).
+     *
+     * @param value
+     *                  il valore da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putInt(int value) {
+        putByte((byte) (value >> 24));
+        putByte((byte) (value >> 16));
+        putByte((byte) (value >> 8));
+        return putByte((byte) value);
+    }
+
+    /**
+     * Aggiunge un valore long all'input dell'hash, in formato big-endian.
+     *
+     * @param value
+     *                  il valore da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putLong(long value) {
+        putInt((int) (value >> 32));
+        return putInt((int) value);
+    }
+
+    /**
+     * Aggiunge un valore float all'input dell'hash, tramite la sua
+     * rappresentazione IEEE 754.
+     *
+     * @param value
+     *                  il valore da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putFloat(float value) {
+        return putInt(Float.floatToIntBits(value));
+    }
+
+    /**
+     * Aggiunge un valore double all'input dell'hash, tramite la sua
+     * rappresentazione IEEE 754.
+     *
+     * @param value
+     *                  il valore da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putDouble(double value) {
+        return putLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Aggiunge una sequenza di caratteri all'input dell'hash, codificata in
+     * UTF-8. I caratteri vengono codificati uno alla volta, senza costruire un
+     * array di byte intermedio. Le surrogate non accoppiate, che UTF-8 non sa
+     * rappresentare, sono codificate con i tre byte del loro valore a 16 bit
+     * (come in WTF-8) invece che come '?', così che sequenze diverse non
+     * producano mai gli stessi byte.
+     *
+     * @param chars
+     *                  la sequenza di caratteri da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putString(CharSequence chars) {
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                putByte((byte) c);
+            } else if (c < 0x800) {
+                putByte((byte) (0xc0 | (c >>> 6)));
+                putByte((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                putByte((byte) (0xf0 | (codePoint >>> 18)));
+                putByte((byte) (0x80 | ((codePoint >>> 12) & 0x3f)));
+                putByte((byte) (0x80 | ((codePoint >>> 6) & 0x3f)));
+                putByte((byte) (0x80 | (codePoint & 0x3f)));
+            } else {
+                // anche le surrogate non accoppiate
+                putByte((byte) (0xe0 | (c >>> 12)));
+                putByte((byte) (0x80 | ((c >>> 6) & 0x3f)));
+                putByte((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Aggiunge i byte rimanenti del buffer all'input dell'hash, consumandolo
+     * fino al suo limite.
+     *
+     * @param buffer
+     *                   il buffer da aggiungere.
+     * @return questo calcolatore.
+     */
+    public Hasher putBytes(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            putBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            while (buffer.hasRemaining()) {
+                putByte(buffer.get());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Restituisce la lunghezza in byte del digest prodotto.
+     *
+     * @return la lunghezza del digest.
+     */
+    public abstract int getDigestLength();
+
+    /**
+     * Completa il calcolo scrivendo il digest nell'array fornito a partire da
+     * {@code offset} e riporta il calcolatore allo stato iniziale.
+     *
+     * @param out
+     *                   l'array in cui scrivere il digest.
+     * @param offset
+     *                   la posizione da cui scrivere il digest.
+     */
+    public final void finish(byte[] out, int offset) {
+        doFinish(out, offset);
+        inUse = false;
+    }
+
+    /**
+     * Come {@link #finish(byte[], int)}, ma il calcolatore resta assegnato al
+     * chiamante, che può usarlo per altri hash senza che
+     * {@link HashFunction#hasher()} lo consegni ad altri nel frattempo. Va
+     * rilasciato con {@link #release()} o con un {@code finish}.
+     */
+    final void finishKeeping(byte[] out, int offset) {
+        doFinish(out, offset);
+    }
+
+    /**
+     * Rilascia un calcolatore usato con {@link #finishKeeping(byte[], int)}.
+     */
+    final void release() {
+        inUse = false;
+    }
+
+    /**
+     * Completa il calcolo restituendo il digest e riporta il calcolatore allo
+     * stato iniziale.
+     *
+     * @return il digest calcolato.
+     */
+    public final Digest finish() {
+        byte[] out = new byte[getDigestLength()];
+        finish(out, 0);
+        return Digest.wrap(out);
+    }
+
+    /**
+     * Scrive il digest nell'array fornito e riporta lo stato del calcolatore a
+     * quello iniziale.
+     *
+     * @param out
+     *                   l'array in cui scrivere il digest.
+     * @param offset
+     *                   la posizione da cui scrivere il digest.
+     */
+    protected abstract void doFinish(byte[] out, int offset);
+}
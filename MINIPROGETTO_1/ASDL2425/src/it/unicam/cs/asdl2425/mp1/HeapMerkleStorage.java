@@ -0,0 +1,70 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+
+/**
+ * Memoria dei digest di un {@link MerkleTree} basata su un unico array di
+ * byte nello heap, in cui i digest sono memorizzati uno dopo l'altro. Rispetto
+ * a un grafo di {@link MerkleNode} non ci sono intestazioni di oggetti né
+ * riferimenti per nodo, e la lettura di nodi vicini accede a memoria contigua.
+ */
+final class HeapMerkleStorage extends MerkleStorage {
+
+    /**
+     * I digest memorizzati, uno dopo l'altro.
+     */
+    private final byte[] data;
+
+    /**
+     * Costruisce una memoria con il numero di posizioni indicato.
+     *
+     * @param digestLength
+     *                         la lunghezza in byte di ciascun digest.
+     * @param capacity
+     *                         il numero di posizioni.
+     * @throws IllegalArgumentException
+     *                                      se la capacità è negativa o troppo
+     *                                      grande per un singolo array.
+     */
+    HeapMerkleStorage(int digestLength, long capacity) {
+        super(digestLength);
+        if (capacity < 0 || capacity * digestLength > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Invalid capacity for an on-heap tree: " + capacity
+                    + "; use the off-heap storage mode for larger trees");
+        this.data = new byte[(int) capacity * digestLength];
+    }
+
+    @Override
+    long getCapacity() {
+        return data.length / getDigestLength();
+    }
+
+    @Override
+    void read(long slot, byte[] dst, int offset) {
+        System.arraycopy(data, offset(slot), dst, offset, getDigestLength());
+    }
+
+    @Override
+    void write(long slot, byte[] src, int offset) {
+        System.arraycopy(src, offset, data, offset(slot), getDigestLength());
+    }
+
+    @Override
+    boolean matches(long slot, Digest digest) {
+        return digest.length() == getDigestLength() && digest.matches(data, offset(slot));
+    }
+
+    @Override
+    boolean sameDigest(long slot, MerkleStorage other, long otherSlot) {
+        if (!(other instanceof HeapMerkleStorage) || other.getDigestLength() != getDigestLength())
+            return super.sameDigest(slot, other, otherSlot);
+        int from = offset(slot);
+        int otherFrom = offset(otherSlot);
+        return Arrays.equals(data, from, from + getDigestLength(),
+                ((HeapMerkleStorage) other).data, otherFrom, otherFrom + getDigestLength());
+    }
+
+    private int offset(long slot) {
+        return Math.toIntExact(slot * getDigestLength());
+    }
+}
@@ -0,0 +1,269 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prova di inclusione di una foglia in un {@link KaryMerkleTree}. Per ogni
+ * livello, dal basso verso l'alto, la prova contiene i digest degli altri
+ * figli dello stesso padre, da sinistra a destra: la posizione del nodo tra i
+ * fratelli e il loro numero si ricavano dall'indice della foglia e dal numero
+ * di foglie dell'albero, che fanno parte della prova. La verifica richiede una
+ * sola combinazione di digest per livello.
+ */
+public class KaryMerkleProof {
+
+    private final int fanOut;
+
+    private final int width;
+
+    private final int index;
+
+    private final Digest root;
+
+    private final HashFunction hashFunction;
+
+    private final Funnel<?> funnel;
+
+    /**
+     * I digest dei fratelli, uno dopo l'altro, nell'ordine in cui vengono
+     * usati durante la verifica.
+     */
+    private final byte[] siblings;
+
+    /**
+     * Costruisce una prova a partire dalle sue parti, ad esempio dopo averla
+     * ricevuta da un altro nodo.
+     *
+     * @param fanOut
+     *                         il fan-out dell'albero.
+     * @param width
+     *                         il numero di foglie dell'albero.
+     * @param index
+     *                         l'indice della foglia.
+     * @param root
+     *                         il digest della radice dell'albero.
+     * @param hashFunction
+     *                         la funzione di hash dell'albero.
+     * @param funnel
+     *                         il funnel dei dati dell'albero.
+     * @param siblings
+     *                         i digest dei fratelli, livello per livello.
+     * @throws IllegalArgumentException
+     *                                      se un argomento è null, se il
+     *                                      fan-out non è supportato, se
+     *                                      l'indice non è una foglia
+     *                                      dell'albero, se il numero di
+     *                                      fratelli non corrisponde alla forma
+     *                                      dell'albero o se un digest ha una
+     *                                      lunghezza diversa da quella della
+     *                                      funzione di hash.
+     */
+    public KaryMerkleProof(int fanOut, int width, int index, Digest root, HashFunction hashFunction,
+            Funnel<?> funnel, List<Digest> siblings) {
+        this(fanOut, width, index, root, hashFunction, funnel, toBytes(siblings, hashFunction));
+    }
+
+    /**
+     * Costruisce una prova dai digest dei fratelli già concatenati.
+     */
+    KaryMerkleProof(int fanOut, int width, int index, Digest root, HashFunction hashFunction, Funnel<?> funnel,
+            byte[] siblings) {
+        if (root == null || hashFunction == null || funnel == null)
+            throw new IllegalArgumentException("The arguments cannot be null");
+        KaryMerkleTree.checkFanOut(fanOut);
+        if (index < 0 || index >= width)
+            throw new IllegalArgumentException("Invalid leaf index: " + index);
+        int digestLength = hashFunction.getDigestLength();
+        if (root.length() != digestLength)
+            throw new IllegalArgumentException("The root has the wrong length");
+        if (siblings.length != (long) siblingCount(fanOut, width, index) * digestLength)
+            throw new IllegalArgumentException("The number of siblings does not match the shape of the tree");
+        this.fanOut = fanOut;
+        this.width = width;
+        this.index = index;
+        this.root = root;
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
+        this.siblings = siblings;
+    }
+
+    /**
+     * Restituisce il fan-out dell'albero.
+     *
+     * @return il fan-out.
+     */
+    public int getFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return il numero di foglie.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Restituisce l'indice della foglia.
+     *
+     * @return l'indice della foglia.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Restituisce il digest della radice per cui la prova è stata costruita.
+     *
+     * @return il digest della radice.
+     */
+    public Digest getRootDigest() {
+        return root;
+    }
+
+    /**
+     * Restituisce la funzione di hash dell'albero.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce i digest dei fratelli, livello per livello, in una lista
+     * non modificabile.
+     *
+     * @return i digest dei fratelli.
+     */
+    public List<Digest> getSiblings() {
+        int digestLength = hashFunction.getDigestLength();
+        List<Digest> result = new ArrayList<>(siblings.length / digestLength);
+        for (int offset = 0; offset < siblings.length; offset += digestLength) {
+            result.add(Digest.of(siblings, offset, digestLength));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Verifica che il dato fornito sia la foglia della prova.
+     *
+     * @param data
+     *                 il dato da validare.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     * @throws ClassCastException
+     *                                      se il dato non è del tipo descritto
+     *                                      dal funnel della prova.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean proveValidityOfData(Object data) {
+        if (data == null)
+            throw new IllegalArgumentException("Data cannot be null");
+        byte[] group = new byte[fanOut * hashFunction.getDigestLength()];
+        HashUtil.hash(data, (Funnel<Object>) funnel, hashFunction, group, 0);
+        return verify(group);
+    }
+
+    /**
+     * Verifica che il digest fornito sia quello della foglia della prova.
+     *
+     * @param leaf
+     *                 il digest della foglia.
+     * @return true se il digest è valido secondo la prova; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il digest è null.
+     */
+    public boolean verify(Digest leaf) {
+        if (leaf == null)
+            throw new IllegalArgumentException("The leaf cannot be null");
+        int digestLength = hashFunction.getDigestLength();
+        if (leaf.length() != digestLength)
+            return false;
+        byte[] group = new byte[fanOut * digestLength];
+        leaf.copyTo(group, 0);
+        return verify(group);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof KaryMerkleProof))
+            return false;
+        KaryMerkleProof other = (KaryMerkleProof) obj;
+        return fanOut == other.fanOut && width == other.width && index == other.index
+                && hashFunction == other.hashFunction && root.equals(other.root)
+                && Arrays.equals(siblings, other.siblings);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * root.hashCode() + index) + Arrays.hashCode(siblings);
+    }
+
+    @Override
+    public String toString() {
+        return "KaryMerkleProof [leaf " + index + " of " + width + ", fan-out " + fanOut + "]";
+    }
+
+    /**
+     * Restituisce il numero di fratelli nella prova della foglia
+     * {@code index} di un albero con {@code width} foglie.
+     */
+    static int siblingCount(int fanOut, int width, int index) {
+        int count = 0;
+        for (int w = width, p = index; w > 1; w = KaryMerkleTree.parentWidth(w, fanOut), p /= fanOut) {
+            int first = p - p % fanOut;
+            count += Math.min(fanOut, w - first) - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Risale l'albero a partire dal digest della foglia, scritto all'inizio
+     * del buffer, e confronta il risultato con la radice. A ogni livello il
+     * nodo corrente viene spostato nella sua posizione tra i fratelli e il
+     * gruppo viene combinato nel nodo padre.
+     */
+    private boolean verify(byte[] group) {
+        int digestLength = hashFunction.getDigestLength();
+        int offset = 0;
+        for (int w = width, p = index; w > 1; w = KaryMerkleTree.parentWidth(w, fanOut), p /= fanOut) {
+            int first = p - p % fanOut;
+            int count = Math.min(fanOut, w - first);
+            int position = p - first;
+            System.arraycopy(group, 0, group, position * digestLength, digestLength);
+            System.arraycopy(siblings, offset, group, 0, position * digestLength);
+            offset += position * digestLength;
+            int after = (count - position - 1) * digestLength;
+            System.arraycopy(siblings, offset, group, (position + 1) * digestLength, after);
+            offset += after;
+            hashFunction.combineAll(group, 0, count, group, 0);
+        }
+        return root.matches(group, 0);
+    }
+
+    /**
+     * Concatena i digest dei fratelli.
+     */
+    private static byte[] toBytes(List<Digest> siblings, HashFunction hashFunction) {
+        if (siblings == null || hashFunction == null)
+            throw new IllegalArgumentException("The arguments cannot be null");
+        int digestLength = hashFunction.getDigestLength();
+        byte[] bytes = new byte[siblings.size() * digestLength];
+        for (int i = 0; i < siblings.size(); i++) {
+            Digest sibling = siblings.get(i);
+            if (sibling == null || sibling.length() != digestLength)
+                throw new IllegalArgumentException("The proof contains an invalid digest");
+            sibling.copyTo(bytes, i * digestLength);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,335 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Un albero di Merkle in cui ogni nodo interno ha fino a {@code k} figli
+ * invece di due. Con un fan-out maggiore l'albero ha meno livelli: con 16
+ * figli per nodo, 100 milioni di foglie stanno in 7 livelli invece di 27, per
+ * cui costruzione e verifica di una prova richiedono meno invocazioni della
+ * funzione di hash, al prezzo di prove più grandi ({@code k - 1} fratelli per
+ * livello invece di uno).
+ *
+ * <p>
+ * Il digest di un nodo interno si ottiene, come in {@link MerkleTree},
+ * applicando la funzione di hash alla concatenazione delle rappresentazioni
+ * esadecimali dei figli, da sinistra a destra
+ * ({@link HashFunction#combineAll(byte[], int, int, byte[], int)}). Il nodo
+ * in posizione {@code p} di un livello ha come figli i nodi da {@code k * p} a
+ * {@code k * p + k - 1} del livello inferiore; l'ultimo nodo di un livello può
+ * averne meno, anche uno solo. Con fan-out 2 l'albero coincide quindi con un
+ * {@link MerkleTree} costruito sugli stessi dati.
+ *
+ * <p>
+ * I digest di tutti i nodi sono conservati in un'unica memoria contigua,
+ * livello per livello a partire dalle foglie, e le prove di inclusione sono
+ * oggetti {@link KaryMerkleProof}.
+ *
+ * @param <T>
+ *                il tipo di dati su cui l'albero è costruito.
+ */
+public class KaryMerkleTree<T> {
+
+    /**
+     * Fan-out massimo supportato.
+     */
+    static final int MAX_FAN_OUT = 16;
+
+    private final int fanOut;
+
+    /**
+     * Logaritmo in base 2 del fan-out.
+     */
+    private final int shift;
+
+    private final int width;
+
+    private final HashFunction hashFunction;
+
+    private final Funnel<? super T> funnel;
+
+    private final MerkleStorage storage;
+
+    /**
+     * Numero di nodi di ciascun livello, a partire dalle foglie.
+     */
+    private final int[] levelWidths;
+
+    /**
+     * Posizione in memoria del primo nodo di ciascun livello.
+     */
+    private final long[] levelOffsets;
+
+    private final DigestIndex leafIndex;
+
+    /**
+     * Costruisce un albero con il fan-out indicato a partire da un oggetto
+     * HashLinkedList, con la funzione di hash e il funnel della lista.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @param fanOut
+     *                     il numero massimo di figli di un nodo: 2, 4, 8 o 16.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se il
+     *                                      fan-out non è supportato.
+     */
+    public KaryMerkleTree(HashLinkedList<T> hashList, int fanOut) {
+        this(hashList, fanOut, null);
+    }
+
+    /**
+     * Come {@link #KaryMerkleTree(HashLinkedList, int)}, ma calcola in
+     * parallelo sul pool indicato i nodi di ciascun livello, che sono
+     * indipendenti tra loro.
+     *
+     * @param hashList
+     *                     un oggetto HashLinkedList contenente i dati e i
+     *                     relativi hash.
+     * @param fanOut
+     *                     il numero massimo di figli di un nodo: 2, 4, 8 o 16.
+     * @param pool
+     *                     il pool su cui eseguire la costruzione, oppure null
+     *                     per costruire l'albero nel thread corrente.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se il
+     *                                      fan-out non è supportato.
+     */
+    public KaryMerkleTree(HashLinkedList<T> hashList, int fanOut, ForkJoinPool pool) {
+        if (hashList == null || hashList.getSize() == 0) {
+            throw new IllegalArgumentException("The list cannot be null or empty");
+        }
+        checkFanOut(fanOut);
+        this.fanOut = fanOut;
+        this.shift = Integer.numberOfTrailingZeros(fanOut);
+        this.width = hashList.getSize();
+        this.hashFunction = hashList.getHashFunction();
+        this.funnel = hashList.getFunnel();
+
+        int levels = levels(width, fanOut);
+        this.levelWidths = new int[levels];
+        this.levelOffsets = new long[levels];
+        long nodes = 0;
+        for (int level = 0, w = width; level < levels; level++, w = parentWidth(w, fanOut)) {
+            levelWidths[level] = w;
+            levelOffsets[level] = nodes;
+            nodes += w;
+        }
+        int digestLength = hashFunction.getDigestLength();
+        this.storage = new HeapMerkleStorage(digestLength, nodes);
+
+        List<Digest> leaves = hashList.getAllDigests();
+        byte[] buffer = new byte[digestLength];
+        DigestIndex index = new DigestIndex(width, (leaf, digest) -> storage.matches(leaf, digest));
+        for (int i = 0; i < width; i++) {
+            Digest leaf = leaves.get(i);
+            leaf.copyTo(buffer, 0);
+            storage.write(i, buffer, 0);
+            index.add(i, leaf);
+        }
+        this.leafIndex = index;
+
+        for (int level = 1; level < levels; level++) {
+            int parent = level;
+            HashUtil.RangeAction buildLevel = (from, to) -> buildLevel(parent, from, to);
+            if (pool == null) {
+                buildLevel.run(0, levelWidths[level]);
+            } else {
+                pool.invoke(new HashUtil.HashTask(0, levelWidths[level], buildLevel));
+            }
+        }
+    }
+
+    /**
+     * Restituisce il numero massimo di figli di un nodo.
+     *
+     * @return il fan-out dell'albero.
+     */
+    public int getFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return il numero di foglie.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Restituisce l'altezza dell'albero, ovvero il numero di livelli sopra le
+     * foglie.
+     *
+     * @return l'altezza dell'albero.
+     */
+    public int getHeight() {
+        return levelWidths.length - 1;
+    }
+
+    /**
+     * Restituisce la funzione di hash dell'albero.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce il digest della radice.
+     *
+     * @return il digest della radice.
+     */
+    public Digest getRootDigest() {
+        return storage.getDigest(rootSlot());
+    }
+
+    /**
+     * Restituisce l'hash della radice in forma esadecimale.
+     *
+     * @return l'hash della radice.
+     */
+    public String getRootHash() {
+        return getRootDigest().toString();
+    }
+
+    /**
+     * Restituisce l'indice della prima foglia che contiene il dato.
+     *
+     * @param data
+     *                 il dato da cercare.
+     * @return l'indice della foglia, oppure -1 se il dato non è presente.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public int getIndexOfData(T data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        return leafIndex.first(HashUtil.hash(data, funnel, hashFunction));
+    }
+
+    /**
+     * Verifica se un dato è una delle foglie dell'albero.
+     *
+     * @param data
+     *                 il dato da validare.
+     * @return true se il dato è parte dell'albero; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public boolean validateData(T data) {
+        return getIndexOfData(data) >= 0;
+    }
+
+    /**
+     * Restituisce la prova di inclusione della foglia indicata.
+     *
+     * @param index
+     *                  l'indice della foglia.
+     * @return la prova di inclusione della foglia.
+     * @throws IllegalArgumentException
+     *                                      se l'indice non è una foglia
+     *                                      dell'albero.
+     */
+    public KaryMerkleProof getProof(int index) {
+        if (index < 0 || index >= width) {
+            throw new IllegalArgumentException("Invalid leaf index: " + index);
+        }
+        int digestLength = storage.getDigestLength();
+        byte[] siblings = new byte[KaryMerkleProof.siblingCount(fanOut, width, index) * digestLength];
+        int offset = 0;
+        for (int level = 0, p = index; level < levelWidths.length - 1; level++, p >>>= shift) {
+            int first = p & -fanOut;
+            int last = Math.min(first + fanOut, levelWidths[level]);
+            for (int sibling = first; sibling < last; sibling++) {
+                if (sibling != p) {
+                    storage.read(slot(level, sibling), siblings, offset);
+                    offset += digestLength;
+                }
+            }
+        }
+        return new KaryMerkleProof(fanOut, width, index, getRootDigest(), hashFunction, funnel, siblings);
+    }
+
+    /**
+     * Restituisce la prova di inclusione della prima foglia che contiene il
+     * dato.
+     *
+     * @param data
+     *                 il dato per cui generare la prova.
+     * @return la prova di inclusione del dato.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o non è parte
+     *                                      dell'albero.
+     */
+    public KaryMerkleProof getProof(T data) {
+        int index = getIndexOfData(data);
+        if (index < 0) {
+            throw new IllegalArgumentException("Data not found in the tree");
+        }
+        return getProof(index);
+    }
+
+    /**
+     * Controlla che il fan-out sia una potenza di 2 tra 2 e
+     * {@link #MAX_FAN_OUT}.
+     */
+    static void checkFanOut(int fanOut) {
+        if (fanOut < 2 || fanOut > MAX_FAN_OUT || Integer.bitCount(fanOut) != 1) {
+            throw new IllegalArgumentException("The fan-out must be 2, 4, 8 or 16: " + fanOut);
+        }
+    }
+
+    /**
+     * Restituisce il numero di nodi del livello superiore a uno con
+     * {@code width} nodi.
+     */
+    static int parentWidth(int width, int fanOut) {
+        return (int) (((long) width + fanOut - 1) / fanOut);
+    }
+
+    /**
+     * Restituisce il numero di livelli, foglie comprese, di un albero con
+     * {@code width} foglie.
+     */
+    static int levels(int width, int fanOut) {
+        int levels = 1;
+        for (int w = width; w > 1; w = parentWidth(w, fanOut)) {
+            levels++;
+        }
+        return levels;
+    }
+
+    private long slot(int level, int position) {
+        return levelOffsets[level] + position;
+    }
+
+    private long rootSlot() {
+        return slot(levelWidths.length - 1, 0);
+    }
+
+    /**
+     * Calcola i digest dei nodi del livello indicato nelle posizioni da
+     * {@code from} (inclusa) a {@code to} (esclusa) a partire da quelli del
+     * livello inferiore, già calcolati.
+     */
+    private void buildLevel(int level, int from, int to) {
+        int digestLength = storage.getDigestLength();
+        int childWidth = levelWidths[level - 1];
+        byte[] buffer = new byte[fanOut * digestLength];
+        for (int p = from; p < to; p++) {
+            int first = p << shift;
+            int count = Math.min(fanOut, childWidth - first);
+            for (int c = 0; c < count; c++) {
+                storage.read(slot(level - 1, first + c), buffer, c * digestLength);
+            }
+            hashFunction.combineAll(buffer, 0, count, buffer, 0);
+            storage.write(slot(level, p), buffer, 0);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static it.unicam.cs.asdl2425.mp1.TestTrees.listOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per le classi {@link KaryMerkleTree} e
+ * {@link KaryMerkleProof}. Questa classe verifica la costruzione di alberi
+ * con fan-out maggiore di 2 e le relative prove di inclusione.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testBinaryMatchesMerkleTree()}: Verifica che con fan-out 2
+ * l'albero abbia la stessa radice e la stessa altezza di un
+ * {@link MerkleTree}.</li>
+ *
+ * <li>{@link #testHeight()}: Verifica che l'albero abbia il numero atteso di
+ * livelli per ogni fan-out.</li>
+ *
+ * <li>{@link #testProofs()}: Verifica che le prove di tutte le foglie siano
+ * valide per ogni fan-out.</li>
+ *
+ * <li>{@link #testSiblingsPerLevel()}: Verifica che le prove abbiano al più
+ * {@code k - 1} fratelli per livello.</li>
+ *
+ * <li>{@link #testParallelBuild()}: Verifica che la costruzione parallela
+ * produca la stessa radice.</li>
+ *
+ * <li>{@link #testLeafDigest()}: Verifica che la prova accetti il digest
+ * della foglia e respinga un altro dato.</li>
+ *
+ * <li>{@link #testValidateData()}: Verifica che solo i dati dell'albero
+ * vengano validati.</li>
+ *
+ * <li>{@link #testTamperedProof()}: Verifica che una prova per un'altra
+ * foglia o una prova alterata vengano respinte.</li>
+ *
+ * <li>{@link #testRebuiltProof()}: Verifica che una prova ricostruita dalle
+ * sue parti sia uguale all'originale.</li>
+ *
+ * <li>{@link #testInvalidFanOut()}: Verifica che venga lanciata un'eccezione
+ * per fan-out non supportati o liste vuote.</li>
+ *
+ * <li>{@link #testInvalidProofRequest()}: Verifica che venga lanciata
+ * un'eccezione per indici non validi o dati assenti.</li>
+ *
+ * <li>{@link #testInvalidSiblings()}: Verifica che venga lanciata
+ * un'eccezione per un numero errato di fratelli.</li>
+ * </ul>
+ */
+class KaryMerkleTreeTest {
+
+    private static final int[] FAN_OUTS = { 4, 8, 16 };
+
+    /**
+     * Restituisce i numeri di foglie provati con il fan-out indicato.
+     */
+    private static int[] widths(int fanOut) {
+        return new int[] { 1, 2, 5, fanOut, fanOut + 1, 100, 257 };
+    }
+
+    /**
+     * Restituisce il numero di livelli sopra le foglie atteso per un albero
+     * con {@code width} foglie.
+     */
+    private static int expectedHeight(int width, int fanOut) {
+        int levels = 0;
+        for (long capacity = 1; capacity < width; capacity *= fanOut) {
+            levels++;
+        }
+        return levels;
+    }
+
+    @Test
+    void testBinaryMatchesMerkleTree() {
+        for (int width = 1; width <= 40; width++) {
+            HashLinkedList<Integer> list = listOf(width);
+            MerkleTree<Integer> binary = new MerkleTree<>(list);
+            KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(list, 2);
+            assertEquals(binary.getRoot().getHash(), tree.getRootHash(),
+                    "Con fan-out 2 la radice dovrebbe coincidere con quella di MerkleTree (" + width + " foglie).");
+            assertEquals(binary.getHeight(), tree.getHeight(),
+                    "Con fan-out 2 l'altezza dovrebbe coincidere con quella di MerkleTree (" + width + " foglie).");
+        }
+    }
+
+    @Test
+    void testHeight() {
+        for (int fanOut : FAN_OUTS) {
+            for (int width : widths(fanOut)) {
+                assertEquals(expectedHeight(width, fanOut), new KaryMerkleTree<>(listOf(width), fanOut).getHeight(),
+                        "Altezza errata con fan-out " + fanOut + " e " + width + " foglie.");
+            }
+        }
+    }
+
+    @Test
+    void testProofs() {
+        for (int fanOut : FAN_OUTS) {
+            for (int width : widths(fanOut)) {
+                KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(listOf(width), fanOut);
+                for (int i = 0; i < width; i++) {
+                    KaryMerkleProof proof = tree.getProof(Integer.valueOf(i));
+                    assertEquals(i, proof.getIndex(), "La prova dovrebbe essere per la foglia " + i + ".");
+                    assertTrue(proof.proveValidityOfData(i),
+                            "La prova della foglia " + i + " con fan-out " + fanOut + " dovrebbe essere valida.");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSiblingsPerLevel() {
+        for (int fanOut : FAN_OUTS) {
+            for (int width : widths(fanOut)) {
+                KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(listOf(width), fanOut);
+                int levels = expectedHeight(width, fanOut);
+                for (int i = 0; i < width; i++) {
+                    assertTrue(tree.getProof(i).getSiblings().size() <= levels * (fanOut - 1),
+                            "La prova dovrebbe avere al più " + (fanOut - 1) + " fratelli per livello.");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testParallelBuild() {
+        HashLinkedList<Integer> list = listOf(5000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int fanOut : FAN_OUTS) {
+                assertEquals(new KaryMerkleTree<>(list, fanOut).getRootDigest(),
+                        new KaryMerkleTree<>(list, fanOut, pool).getRootDigest(),
+                        "La costruzione parallela dovrebbe produrre la stessa radice.");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testLeafDigest() {
+        KaryMerkleProof proof = new KaryMerkleTree<>(listOf(70), 8).getProof(37);
+        assertTrue(proof.verify(HashUtil.dataToDigest(37)), "Il digest della foglia dovrebbe essere valido.");
+        assertFalse(proof.proveValidityOfData(38), "Un altro dato non è valido.");
+    }
+
+    @Test
+    void testValidateData() {
+        KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(listOf(70), 8);
+        assertTrue(tree.validateData(69), "Il dato 69 è nell'albero.");
+        assertFalse(tree.validateData(70), "Il dato 70 non è nell'albero.");
+    }
+
+    @Test
+    void testTamperedProof() {
+        KaryMerkleProof proof = new KaryMerkleTree<>(listOf(70), 8).getProof(37);
+        List<Digest> siblings = new ArrayList<>(proof.getSiblings());
+        assertFalse(new KaryMerkleProof(8, 70, 36, proof.getRootDigest(), HashFunction.MD5, Funnels.object(),
+                siblings).proveValidityOfData(37), "La prova non vale per un'altra posizione.");
+        siblings.set(siblings.size() - 1, HashUtil.dataToDigest("alterato"));
+        assertFalse(new KaryMerkleProof(8, 70, 37, proof.getRootDigest(), HashFunction.MD5, Funnels.object(),
+                siblings).proveValidityOfData(37), "Una prova alterata non è valida.");
+    }
+
+    @Test
+    void testRebuiltProof() {
+        KaryMerkleProof proof = new KaryMerkleTree<>(listOf(70), 8).getProof(37);
+        assertEquals(proof, new KaryMerkleProof(8, 70, 37, proof.getRootDigest(), HashFunction.MD5,
+                Funnels.object(), proof.getSiblings()), "Una prova ricostruita dalle sue parti è uguale.");
+    }
+
+    @Test
+    void testInvalidFanOut() {
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(listOf(4), 3),
+                "Un fan-out non potenza di 2 dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(listOf(4), 32),
+                "Un fan-out troppo grande dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleTree<>(new HashLinkedList<Integer>(), 4),
+                "Una lista vuota dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidProofRequest() {
+        KaryMerkleTree<Integer> tree = new KaryMerkleTree<>(listOf(20), 4);
+        assertThrows(IllegalArgumentException.class, () -> tree.getProof(20),
+                "Un indice non valido dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> tree.getProof(Integer.valueOf(99)),
+                "Un dato assente dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidSiblings() {
+        KaryMerkleProof proof = new KaryMerkleTree<>(listOf(20), 4).getProof(3);
+        List<Digest> truncated = proof.getSiblings().subList(1, proof.getSiblings().size());
+        assertThrows(IllegalArgumentException.class, () -> new KaryMerkleProof(4, 20, 3, proof.getRootDigest(),
+                HashFunction.MD5, Funnels.object(), truncated),
+                "Un numero errato di fratelli dovrebbe lanciare IllegalArgumentException.");
+    }
+}
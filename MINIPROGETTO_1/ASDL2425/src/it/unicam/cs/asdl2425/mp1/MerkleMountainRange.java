@@ -0,0 +1,387 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Un Merkle Mountain Range: un accumulatore di dati a cui si possono solo
+ * aggiungere elementi in fondo, pensato per log di eventi. I dati sono le
+ * foglie di una sequenza di alberi binari completi (i picchi), uno per ogni
+ * bit a 1 del numero di dati, dal più grande a sinistra al più piccolo a
+ * destra. Aggiungere un dato costa O(1) ammortizzato e al più O(log n)
+ * combinazioni di hash, senza mai ricalcolare i nodi esistenti.
+ *
+ * <p>
+ * I nodi vengono combinati come in {@link MerkleTree}, concatenando le
+ * rappresentazioni esadecimali dei figli. La radice complessiva si ottiene
+ * "insaccando" i picchi da destra verso sinistra: la radice è
+ * {@code H(p0 + H(p1 + ... H(pk-2 + pk-1)))}, e con un solo picco coincide con
+ * esso.
+ *
+ * <p>
+ * Per default vengono conservati solo i picchi, cioè al più 63 digest
+ * indipendentemente dal numero di dati. Se richiesto alla costruzione vengono
+ * conservati anche tutti i nodi, in ordine di creazione in segmenti di
+ * memoria al di fuori dello heap ({@link OffHeapMerkleStorage}) aggiunti man
+ * mano che servono, senza mai copiare i nodi già conservati, per
+ * generare prove di inclusione sotto forma di {@link MerkleProof},
+ * verificabili con {@link MerkleProof#proveValidityOfData(Object)} come quelle
+ * di un {@link MerkleTree}. In questo caso la memoria non ha il limite di 2 GB
+ * di un array e va rilasciata con {@link #close()} quando non serve più.
+ *
+ * @param <T>
+ *                il tipo dei dati.
+ */
+public class MerkleMountainRange<T> implements AutoCloseable {
+
+    /**
+     * Numero massimo di livelli dei picchi.
+     */
+    private static final int MAX_LEVELS = 63;
+
+    /**
+     * Numero di nodi di ciascun segmento della memoria dei nodi.
+     */
+    static final int SEGMENT_SLOTS = 1 << 15;
+
+    private final HashFunction hashFunction;
+
+    private final Funnel<? super T> funnel;
+
+    private final int digestLength;
+
+    /**
+     * Il picco di ciascun livello, uno dopo l'altro. Il livello {@code l} ha
+     * un picco se e solo se il bit {@code l} del numero di dati vale 1.
+     */
+    private final byte[] peaks;
+
+    /**
+     * Digest che risale i livelli durante un'aggiunta.
+     */
+    private final byte[] carry;
+
+    /**
+     * Numero di nodi di ciascun segmento.
+     */
+    private final int segmentSlots;
+
+    /**
+     * Tutti i nodi in ordine di creazione, divisi in segmenti di
+     * {@code segmentSlots} nodi, oppure null se vengono conservati solo i
+     * picchi.
+     */
+    private final List<OffHeapMerkleStorage> segments;
+
+    /**
+     * Se la memoria dei nodi è stata rilasciata.
+     */
+    private boolean closed;
+
+    /**
+     * Numero di nodi creati.
+     */
+    private long nodeCount;
+
+    /**
+     * Numero di dati aggiunti.
+     */
+    private long count;
+
+    /**
+     * Costruisce un Merkle Mountain Range vuoto che usa MD5 e il funnel di
+     * default e conserva solo i picchi.
+     */
+    public MerkleMountainRange() {
+        this(HashFunction.MD5);
+    }
+
+    /**
+     * Costruisce un Merkle Mountain Range vuoto che usa la funzione di hash
+     * indicata e il funnel di default e conserva solo i picchi.
+     *
+     * @param hashFunction
+     *                         la funzione di hash.
+     * @throws IllegalArgumentException
+     *                                      se la funzione di hash è null.
+     */
+    public MerkleMountainRange(HashFunction hashFunction) {
+        this(hashFunction, Funnels.object(), false);
+    }
+
+    /**
+     * Costruisce un Merkle Mountain Range vuoto.
+     *
+     * @param hashFunction
+     *                         la funzione di hash.
+     * @param funnel
+     *                         il funnel dei dati.
+     * @param retainNodes
+     *                         true per conservare tutti i nodi e poter
+     *                         generare prove di inclusione, al di fuori
+     *                         dello heap, false per conservare solo i
+     *                         picchi.
+     * @throws IllegalArgumentException
+     *                                      se la funzione di hash o il funnel
+     *                                      sono null.
+     */
+    public MerkleMountainRange(HashFunction hashFunction, Funnel<? super T> funnel, boolean retainNodes) {
+        this(hashFunction, funnel, retainNodes, SEGMENT_SLOTS);
+    }
+
+    /**
+     * Costruisce un Merkle Mountain Range vuoto che conserva i nodi in
+     * segmenti di {@code segmentSlots} nodi.
+     */
+    MerkleMountainRange(HashFunction hashFunction, Funnel<? super T> funnel, boolean retainNodes,
+            int segmentSlots) {
+        if (hashFunction == null)
+            throw new IllegalArgumentException("The hash function cannot be null");
+        if (funnel == null)
+            throw new IllegalArgumentException("The funnel cannot be null");
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
+        this.digestLength = hashFunction.getDigestLength();
+        this.peaks = new byte[MAX_LEVELS * digestLength];
+        this.carry = new byte[digestLength];
+        this.segmentSlots = segmentSlots;
+        this.segments = retainNodes ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Aggiunge un dato in fondo, combinandolo con i picchi della stessa
+     * altezza finché non ne forma uno nuovo.
+     *
+     * @param data
+     *                 il dato da aggiungere.
+     * @return l'indice del dato aggiunto.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public long append(T data) {
+        if (data == null)
+            throw new IllegalArgumentException("Data cannot be null");
+        if (count == (1L << MAX_LEVELS) - 1)
+            throw new IllegalStateException("The mountain range cannot grow any further");
+        HashUtil.hash(data, funnel, hashFunction, carry, 0);
+        store(carry);
+        int level = 0;
+        while (((count >>> level) & 1) == 1) {
+            hashFunction.combine(peaks, level * digestLength, carry, 0, carry, 0);
+            store(carry);
+            level++;
+        }
+        System.arraycopy(carry, 0, peaks, level * digestLength, digestLength);
+        return count++;
+    }
+
+    /**
+     * Aggiunge in fondo, nell'ordine, tutti i dati forniti dall'iteratore.
+     *
+     * @param data
+     *                 l'iteratore dei dati.
+     * @throws IllegalArgumentException
+     *                                      se l'iteratore o uno dei dati è
+     *                                      null.
+     */
+    public void appendAll(Iterator<? extends T> data) {
+        if (data == null)
+            throw new IllegalArgumentException("The iterator cannot be null");
+        while (data.hasNext()) {
+            append(data.next());
+        }
+    }
+
+    /**
+     * Restituisce il numero di dati aggiunti.
+     *
+     * @return il numero di dati.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Restituisce la funzione di hash usata.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce i digest dei picchi, da sinistra a destra.
+     *
+     * @return la lista dei picchi, vuota se non ci sono dati.
+     */
+    public List<Digest> getPeaks() {
+        List<Digest> result = new ArrayList<>();
+        for (int level = MAX_LEVELS - 1; level >= 0; level--) {
+            if (((count >>> level) & 1) == 1) {
+                result.add(peak(level));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Restituisce il digest della radice, ottenuto insaccando i picchi da
+     * destra verso sinistra.
+     *
+     * @return il digest della radice.
+     * @throws IllegalStateException
+     *                                   se non ci sono dati.
+     */
+    public Digest getRootDigest() {
+        if (count == 0)
+            throw new IllegalStateException("The mountain range is empty");
+        return bagPeaks(0, MAX_LEVELS);
+    }
+
+    /**
+     * Restituisce la rappresentazione esadecimale della radice.
+     *
+     * @return l'hash della radice.
+     * @throws IllegalStateException
+     *                                   se non ci sono dati.
+     */
+    public String getRoot() {
+        return getRootDigest().toString();
+    }
+
+    /**
+     * Restituisce la prova di inclusione del dato in posizione {@code index}
+     * rispetto alla radice attuale: prima i fratelli nel picco che contiene il
+     * dato, poi i picchi alla sua destra già insaccati, infine i picchi alla
+     * sua sinistra.
+     *
+     * @param index
+     *                  l'indice del dato.
+     * @return la prova di Merkle del dato.
+     * @throws IllegalArgumentException
+     *                                      se l'indice non è valido.
+     * @throws IllegalStateException
+     *                                      se vengono conservati solo i
+     *                                      picchi o se la memoria dei nodi è
+     *                                      stata rilasciata.
+     */
+    public MerkleProof getMerkleProof(long index) {
+        if (segments == null)
+            throw new IllegalStateException("Only the peaks are retained");
+        checkOpen();
+        if (index < 0 || index >= count)
+            throw new IllegalArgumentException("Invalid index: " + index);
+
+        // individuo il picco che contiene il dato
+        int peakLevel = MAX_LEVELS - 1;
+        int leftPeaks = 0;
+        long start = 0;
+        for (; peakLevel >= 0; peakLevel--) {
+            if (((count >>> peakLevel) & 1) == 1) {
+                if (index < start + (1L << peakLevel)) {
+                    break;
+                }
+                start += 1L << peakLevel;
+                leftPeaks++;
+            }
+        }
+        boolean hasRightPeaks = (count & ((1L << peakLevel) - 1)) != 0;
+
+        MerkleProof proof = new MerkleProof(getRoot(), peakLevel + (hasRightPeaks ? 1 : 0) + leftPeaks,
+                hashFunction, funnel);
+        for (int level = 0; level < peakLevel; level++) {
+            long position = index >>> level;
+            proof.addHash(node(nodeSlot(level, position ^ 1)).toString(), (position & 1) == 1);
+        }
+        if (hasRightPeaks) {
+            proof.addHash(bagPeaks(0, peakLevel).toString(), false);
+        }
+        for (int level = peakLevel + 1; level < MAX_LEVELS; level++) {
+            if (((count >>> level) & 1) == 1) {
+                proof.addHash(peak(level).toString(), true);
+            }
+        }
+        return proof;
+    }
+
+    /**
+     * Rilascia la memoria dei nodi, se vengono conservati. Dopo la chiusura
+     * le aggiunte e le prove lanciano un'{@link IllegalStateException}. Se
+     * vengono conservati solo i picchi non ha effetto.
+     */
+    @Override
+    public void close() {
+        if (segments != null && !closed) {
+            closed = true;
+            for (OffHeapMerkleStorage segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+        }
+    }
+
+    /**
+     * Restituisce la posizione, in ordine di creazione, del nodo in posizione
+     * {@code position} del livello {@code level}: il nodo viene creato subito
+     * dopo l'ultima foglia che copre.
+     */
+    static long nodeSlot(int level, long position) {
+        long leaves = (position + 1) << level;
+        return 2 * leaves - 2 - Long.bitCount(leaves - 1) + level;
+    }
+
+    private Digest peak(int level) {
+        return Digest.of(peaks, level * digestLength, digestLength);
+    }
+
+    /**
+     * Insacca da destra verso sinistra i picchi dei livelli da
+     * {@code fromLevel} (incluso) a {@code toLevel} (escluso).
+     */
+    private Digest bagPeaks(int fromLevel, int toLevel) {
+        byte[] bag = new byte[digestLength];
+        boolean empty = true;
+        for (int level = fromLevel; level < toLevel; level++) {
+            if (((count >>> level) & 1) == 1) {
+                if (empty) {
+                    System.arraycopy(peaks, level * digestLength, bag, 0, digestLength);
+                    empty = false;
+                } else {
+                    hashFunction.combine(peaks, level * digestLength, bag, 0, bag, 0);
+                }
+            }
+        }
+        return empty ? null : Digest.wrap(bag);
+    }
+
+    /**
+     * Conserva un nuovo nodo, se richiesto, aggiungendo un segmento quando
+     * l'ultimo è pieno: i nodi già conservati non vengono mai copiati.
+     */
+    private void store(byte[] digest) {
+        if (segments == null) {
+            return;
+        }
+        checkOpen();
+        int offset = (int) (nodeCount % segmentSlots);
+        if (offset == 0) {
+            segments.add(new OffHeapMerkleStorage(digestLength, segmentSlots));
+        }
+        segments.get(segments.size() - 1).write(offset, digest, 0);
+        nodeCount++;
+    }
+
+    /**
+     * Restituisce il nodo in posizione {@code slot} nell'ordine di creazione.
+     */
+    private Digest node(long slot) {
+        return segments.get(Math.toIntExact(slot / segmentSlots)).getDigest(slot % segmentSlots);
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("The mountain range has been closed");
+    }
+}
@@ -0,0 +1,148 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link MerkleMountainRange}. Questa classe
+ * verifica le aggiunte, la radice e le prove di inclusione.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testProofsAfterEachAppend()}: Verifica che, dopo ogni aggiunta,
+ * la prova di ogni dato sia valida rispetto alla radice attuale e che i
+ * picchi siano uno per ogni bit a 1 del numero di dati.</li>
+ *
+ * <li>{@link #testRootOfPerfectTree()}: Verifica che con un numero di dati
+ * potenza di due la radice coincida con quella di un {@link MerkleTree}.</li>
+ *
+ * <li>{@link #testPeaksOnly()}: Verifica che conservando solo i picchi la
+ * radice resti la stessa e che le prove non siano disponibili.</li>
+ *
+ * <li>{@link #testNodeSlot()}: Verifica la posizione dei nodi in ordine di
+ * creazione.</li>
+ *
+ * <li>{@link #testPeaksOnlyByDefault()}: Verifica che per default vengano
+ * conservati solo i picchi.</li>
+ *
+ * <li>{@link #testSegments()}: Verifica che le prove restino valide quando i
+ * nodi occupano più segmenti di memoria.</li>
+ *
+ * <li>{@link #testClose()}: Verifica che dopo la chiusura le prove non siano
+ * più disponibili.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate le
+ * eccezioni previste per argomenti non validi.</li>
+ * </ul>
+ */
+class MerkleMountainRangeTest {
+
+    private static <T> MerkleMountainRange<T> retaining(HashFunction hashFunction) {
+        return new MerkleMountainRange<>(hashFunction, Funnels.object(), true);
+    }
+
+    @Test
+    void testProofsAfterEachAppend() {
+        MerkleMountainRange<Integer> range = retaining(HashFunction.MD5);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, range.append(i), "L'indice del dato aggiunto dovrebbe essere " + i + ".");
+            assertEquals(Integer.bitCount(i + 1), range.getPeaks().size(),
+                    "Il numero di picchi con " + (i + 1) + " dati non è corretto.");
+            for (int j = 0; j <= i; j++) {
+                MerkleProof proof = range.getMerkleProof(j);
+                assertTrue(proof.proveValidityOfData(j),
+                        "La prova del dato " + j + " con " + (i + 1) + " dati dovrebbe essere valida.");
+                assertFalse(proof.proveValidityOfData(j + 1000),
+                        "La prova del dato " + j + " non dovrebbe validare un altro dato.");
+            }
+        }
+    }
+
+    @Test
+    void testRootOfPerfectTree() {
+        MerkleMountainRange<Integer> range = new MerkleMountainRange<>(HashFunction.SHA256);
+        HashLinkedList<Integer> list = new HashLinkedList<>(HashFunction.SHA256);
+        for (int i = 0; i < 32; i++) {
+            range.append(i);
+            list.addAtTail(i);
+            if (Integer.bitCount(i + 1) == 1) {
+                assertEquals(new MerkleTree<>(list).getRoot().getHash(), range.getRoot(),
+                        "Con " + (i + 1) + " dati la radice dovrebbe coincidere con quella dell'albero.");
+            }
+        }
+    }
+
+    @Test
+    void testPeaksOnly() {
+        MerkleMountainRange<Integer> full = retaining(HashFunction.MD5);
+        MerkleMountainRange<Integer> peaksOnly = new MerkleMountainRange<>(HashFunction.MD5, Funnels.object(), false);
+        full.appendAll(IntStream.range(0, 100).iterator());
+        peaksOnly.appendAll(IntStream.range(0, 100).iterator());
+        assertEquals(full.getRootDigest(), peaksOnly.getRootDigest(), "Le radici dovrebbero coincidere.");
+        assertEquals(full.getPeaks(), peaksOnly.getPeaks(), "I picchi dovrebbero coincidere.");
+        assertThrows(IllegalStateException.class, () -> peaksOnly.getMerkleProof(0),
+                "Senza i nodi le prove non dovrebbero essere disponibili.");
+    }
+
+    @Test
+    void testPeaksOnlyByDefault() {
+        MerkleMountainRange<Integer> range = new MerkleMountainRange<>(HashFunction.SHA256);
+        range.append(1);
+        assertThrows(IllegalStateException.class, () -> range.getMerkleProof(0),
+                "Per default le prove non dovrebbero essere disponibili.");
+        range.close();
+        range.append(2);
+        assertEquals(2, range.getCount(), "Chiudere un range senza nodi non dovrebbe avere effetto.");
+    }
+
+    @Test
+    void testSegments() {
+        MerkleMountainRange<Integer> range = new MerkleMountainRange<>(HashFunction.MD5, Funnels.object(), true, 5);
+        range.appendAll(IntStream.range(0, 100).iterator());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(range.getMerkleProof(i).proveValidityOfData(i),
+                    "La prova del dato " + i + " dovrebbe essere valida con segmenti di 5 nodi.");
+        }
+        MerkleMountainRange<Integer> peaksOnly = new MerkleMountainRange<>();
+        peaksOnly.appendAll(IntStream.range(0, 100).iterator());
+        assertEquals(peaksOnly.getRoot(), range.getRoot(), "I segmenti non dovrebbero cambiare la radice.");
+    }
+
+    @Test
+    void testClose() {
+        MerkleMountainRange<Integer> range = retaining(HashFunction.MD5);
+        range.appendAll(IntStream.range(0, 100).iterator());
+        assertTrue(range.getMerkleProof(42).proveValidityOfData(42), "La prova dovrebbe essere valida.");
+        range.close();
+        assertThrows(IllegalStateException.class, () -> range.getMerkleProof(42),
+                "Dopo la chiusura le prove non dovrebbero essere disponibili.");
+    }
+
+    @Test
+    void testNodeSlot() {
+        // foglie 0, 1 -> nodi 0, 1, padre 2; foglie 2, 3 -> 3, 4, padre 5; radice 6
+        assertEquals(0, MerkleMountainRange.nodeSlot(0, 0));
+        assertEquals(1, MerkleMountainRange.nodeSlot(0, 1));
+        assertEquals(2, MerkleMountainRange.nodeSlot(1, 0));
+        assertEquals(3, MerkleMountainRange.nodeSlot(0, 2));
+        assertEquals(5, MerkleMountainRange.nodeSlot(1, 1));
+        assertEquals(6, MerkleMountainRange.nodeSlot(2, 0));
+        assertEquals(7, MerkleMountainRange.nodeSlot(0, 4));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        MerkleMountainRange<String> range = retaining(HashFunction.MD5);
+        assertThrows(IllegalStateException.class, range::getRootDigest,
+                "Senza dati dovrebbe lanciare IllegalStateException.");
+        assertThrows(IllegalArgumentException.class, () -> range.append(null),
+                "Un dato null dovrebbe lanciare IllegalArgumentException.");
+        range.append("a");
+        assertEquals(HashUtil.dataToHash("a"), range.getRoot(), "Con un dato la radice è il suo hash.");
+        assertThrows(IllegalArgumentException.class, () -> range.getMerkleProof(1),
+                "Un indice non valido dovrebbe lanciare IllegalArgumentException.");
+    }
+}
@@ -0,0 +1,202 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Prova di Merkle per più foglie di un albero contemporaneamente. Invece di
+ * una {@link MerkleProof} per ogni foglia, la prova contiene una sola volta i
+ * digest dei nodi fratelli necessari: i nodi che si possono calcolare dalle
+ * foglie stesse, come il padre di due foglie adiacenti, non vengono inclusi,
+ * e i fratelli condivisi dai cammini di più foglie compaiono una volta sola.
+ *
+ * <p>
+ * La verifica ricalcola la radice risalendo l'albero un livello alla volta a
+ * partire da tutte le foglie insieme, con lo stesso cammino usato per
+ * generare la prova da {@link MerkleTree#getMultiProof(java.util.Collection)}:
+ * i fratelli vengono quindi consumati nell'ordine in cui compaiono nella
+ * prova. L'albero ha la forma di {@link MerkleTree}, compresa la regola per
+ * cui un nodo senza fratello viene combinato con la stringa vuota.
+ */
+public class MerkleMultiProof {
+
+    private final int width;
+
+    private final int[] indices;
+
+    private final Digest root;
+
+    private final HashFunction hashFunction;
+
+    private final Funnel<?> funnel;
+
+    /**
+     * Digest dei fratelli, nell'ordine in cui vengono richiesti durante la
+     * verifica.
+     */
+    private final List<Digest> siblings;
+
+    /**
+     * Costruisce una prova per più foglie a partire dalle sue parti, ad
+     * esempio dopo averla ricevuta da un altro nodo.
+     *
+     * @param width
+     *                         il numero di foglie dell'albero.
+     * @param indices
+     *                         gli indici delle foglie coperte dalla prova, in
+     *                         ordine strettamente crescente.
+     * @param root
+     *                         il digest della radice dell'albero.
+     * @param hashFunction
+     *                         la funzione di hash dell'albero.
+     * @param funnel
+     *                         il funnel dei dati dell'albero.
+     * @param siblings
+     *                         i digest dei fratelli.
+     * @throws IllegalArgumentException
+     *                                      se un argomento è null, se gli
+     *                                      indici sono vuoti, non sono in
+     *                                      ordine crescente o non sono foglie
+     *                                      dell'albero, o se un digest ha una
+     *                                      lunghezza diversa da quella della
+     *                                      funzione di hash.
+     */
+    public MerkleMultiProof(int width, int[] indices, Digest root, HashFunction hashFunction, Funnel<?> funnel,
+            List<Digest> siblings) {
+        if (indices == null || root == null || hashFunction == null || funnel == null || siblings == null)
+            throw new IllegalArgumentException("The arguments cannot be null");
+        if (indices.length == 0)
+            throw new IllegalArgumentException("The proof must cover at least one leaf");
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] < 0 || indices[i] >= width || (i > 0 && indices[i] <= indices[i - 1]))
+                throw new IllegalArgumentException("The indices must be increasing leaves of the tree");
+        }
+        int digestLength = hashFunction.getDigestLength();
+        if (root.length() != digestLength)
+            throw new IllegalArgumentException("The root has the wrong length");
+        for (Digest sibling : siblings) {
+            if (sibling == null || sibling.length() != digestLength)
+                throw new IllegalArgumentException("The proof contains an invalid digest");
+        }
+        this.width = width;
+        this.indices = indices.clone();
+        this.root = root;
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
+        this.siblings = Collections.unmodifiableList(new ArrayList<>(siblings));
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return il numero di foglie dell'albero.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Restituisce gli indici delle foglie coperte dalla prova, in ordine
+     * crescente.
+     *
+     * @return una copia degli indici delle foglie.
+     */
+    public int[] getIndices() {
+        return indices.clone();
+    }
+
+    /**
+     * Restituisce il digest della radice per cui la prova è stata costruita.
+     *
+     * @return il digest della radice.
+     */
+    public Digest getRootDigest() {
+        return root;
+    }
+
+    /**
+     * Restituisce la funzione di hash dell'albero.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce i digest dei fratelli, in una lista non modificabile.
+     *
+     * @return i digest dei fratelli.
+     */
+    public List<Digest> getSiblings() {
+        return siblings;
+    }
+
+    /**
+     * Verifica che i dati forniti siano le foglie della prova, nell'ordine
+     * dei loro indici.
+     *
+     * @param data
+     *                 i dati delle foglie, uno per ogni indice.
+     * @return true se tutti i dati sono validi secondo la prova; false
+     *         altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la lista o uno dei dati è null.
+     * @throws ClassCastException
+     *                                      se un dato non è del tipo descritto
+     *                                      dal funnel della prova.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean proveValidityOfData(List<?> data) {
+        if (data == null)
+            throw new IllegalArgumentException("The data cannot be null");
+        List<Digest> leaves = new ArrayList<>(data.size());
+        for (Object element : data) {
+            if (element == null)
+                throw new IllegalArgumentException("The data cannot be null");
+            leaves.add(HashUtil.hash(element, (Funnel<Object>) funnel, hashFunction));
+        }
+        return verify(leaves);
+    }
+
+    /**
+     * Verifica che i digest forniti siano quelli delle foglie della prova,
+     * nell'ordine dei loro indici.
+     *
+     * @param leaves
+     *                   i digest delle foglie, uno per ogni indice.
+     * @return true se tutti i digest sono validi secondo la prova; false
+     *         altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la lista o uno dei digest è
+     *                                      null.
+     */
+    public boolean verify(List<Digest> leaves) {
+        if (leaves == null)
+            throw new IllegalArgumentException("The leaves cannot be null");
+        if (leaves.size() != indices.length)
+            return false;
+        List<MerkleWalk.Node> known = new ArrayList<>(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            Digest leaf = leaves.get(i);
+            if (leaf == null)
+                throw new IllegalArgumentException("The leaves cannot be null");
+            if (leaf.length() != hashFunction.getDigestLength())
+                return false;
+            known.add(new MerkleWalk.Node(0, indices[i], leaf));
+        }
+        Iterator<Digest> digests = siblings.iterator();
+        Digest computed = MerkleWalk.computeRoot(width, known, hashFunction,
+                (level, position) -> digests.hasNext() ? digests.next() : null);
+        // tutti i digest della prova devono essere stati usati
+        return !digests.hasNext() && root.equals(computed);
+    }
+
+    @Override
+    public String toString() {
+        return "MerkleMultiProof [" + indices.length + " leaves of " + width + ", " + siblings.size()
+                + " siblings]";
+    }
+}
@@ -0,0 +1,253 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static it.unicam.cs.asdl2425.mp1.TestTrees.treeOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link MerkleMultiProof}. Questa classe
+ * verifica la generazione e la verifica delle prove per più foglie di un
+ * {@link MerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testRandomSubsets()}: Verifica che la prova sia valida per
+ * insiemi casuali di foglie di alberi fino a 40 foglie.</li>
+ *
+ * <li>{@link #testNotLongerThanSingleProofs()}: Verifica che la prova non
+ * contenga più digest delle prove singole delle stesse foglie.</li>
+ *
+ * <li>{@link #testAllLeaves()}: Verifica che una prova per tutte le foglie
+ * non contenga fratelli.</li>
+ *
+ * <li>{@link #testSharedSiblings()}: Verifica che i fratelli ricalcolabili o
+ * condivisi non vengano inclusi nella prova.</li>
+ *
+ * <li>{@link #testRepeatedIndices()}: Verifica che gli indici ripetuti
+ * vengano considerati una volta sola.</li>
+ *
+ * <li>{@link #testSortedIndices()}: Verifica che gli indici della prova
+ * siano ordinati.</li>
+ *
+ * <li>{@link #testVerifyData()}: Verifica che la prova validi i dati delle
+ * foglie nell'ordine degli indici.</li>
+ *
+ * <li>{@link #testVerifyLeafDigests()}: Verifica che la prova validi i
+ * digest delle foglie.</li>
+ *
+ * <li>{@link #testWrongData()}: Verifica che dati in ordine diverso,
+ * alterati o mancanti vengano respinti.</li>
+ *
+ * <li>{@link #testTamperedSibling()}: Verifica che una prova con un fratello
+ * alterato venga respinta.</li>
+ *
+ * <li>{@link #testTruncatedProof()}: Verifica che una prova troncata venga
+ * respinta.</li>
+ *
+ * <li>{@link #testExtendedProof()}: Verifica che una prova con fratelli in
+ * più venga respinta.</li>
+ *
+ * <li>{@link #testInvalidIndices()}: Verifica che venga lanciata
+ * un'eccezione per indici null, vuoti o non validi.</li>
+ *
+ * <li>{@link #testInvalidProofParts()}: Verifica che venga lanciata
+ * un'eccezione se la prova viene costruita da parti non valide.</li>
+ *
+ * <li>{@link #testNullData()}: Verifica che venga lanciata un'eccezione se i
+ * dati da validare sono null.</li>
+ * </ul>
+ */
+class MerkleMultiProofTest {
+
+    /**
+     * Le foglie usate nei test di verifica, in ordine.
+     */
+    private static final List<Integer> DATA = Arrays.asList(3, 7, 12);
+
+    private static List<Integer> dataOf(int[] indices) {
+        List<Integer> data = new ArrayList<>();
+        for (int index : indices) {
+            data.add(index);
+        }
+        return data;
+    }
+
+    /**
+     * Restituisce un insieme casuale e non vuoto di foglie, in ordine
+     * casuale.
+     */
+    private static List<Integer> randomIndices(int width, Random random) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            if (random.nextInt(4) == 0) {
+                indices.add(i);
+            }
+        }
+        if (indices.isEmpty()) {
+            indices.add(random.nextInt(width));
+        }
+        Collections.shuffle(indices, random);
+        return indices;
+    }
+
+    /**
+     * Restituisce la prova delle foglie 3, 7 e 12 di un albero di 13 foglie,
+     * richieste in ordine sparso.
+     */
+    private static MerkleMultiProof proof() {
+        return treeOf(13).getMultiProof(Arrays.asList(12, 3, 7));
+    }
+
+    private static List<Digest> leaves() {
+        List<Digest> leaves = new ArrayList<>();
+        for (int data : DATA) {
+            leaves.add(HashUtil.dataToDigest(data));
+        }
+        return leaves;
+    }
+
+    private static MerkleMultiProof withSiblings(MerkleMultiProof proof, List<Digest> siblings) {
+        return new MerkleMultiProof(13, proof.getIndices(), proof.getRootDigest(), HashFunction.MD5, Funnels.object(),
+                siblings);
+    }
+
+    @Test
+    void testRandomSubsets() {
+        Random random = new Random(42);
+        for (int width = 1; width <= 40; width++) {
+            MerkleTree<Integer> tree = treeOf(width);
+            for (int round = 0; round < 10; round++) {
+                List<Integer> indices = randomIndices(width, random);
+                MerkleMultiProof proof = tree.getMultiProof(indices);
+                assertTrue(proof.proveValidityOfData(dataOf(proof.getIndices())),
+                        "La prova di " + indices + " su " + width + " foglie dovrebbe essere valida.");
+            }
+        }
+    }
+
+    @Test
+    void testNotLongerThanSingleProofs() {
+        Random random = new Random(42);
+        for (int width = 1; width <= 40; width++) {
+            MerkleTree<Integer> tree = treeOf(width);
+            for (int round = 0; round < 10; round++) {
+                List<Integer> indices = randomIndices(width, random);
+                MerkleMultiProof proof = tree.getMultiProof(indices);
+                int single = 0;
+                for (int index : proof.getIndices()) {
+                    single += tree.getCompactMerkleProof(Integer.valueOf(index)).toMerkleProof().getLength();
+                }
+                assertTrue(proof.getSiblings().size() <= single,
+                        "La prova di " + indices + " non dovrebbe essere più lunga delle prove singole.");
+            }
+        }
+    }
+
+    @Test
+    void testAllLeaves() {
+        List<Integer> all = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            all.add(i);
+        }
+        assertTrue(treeOf(16).getMultiProof(all).getSiblings().isEmpty(), "Con tutte le foglie non servono fratelli.");
+    }
+
+    @Test
+    void testSharedSiblings() {
+        MerkleTree<Integer> tree = treeOf(16);
+        // 0 e 1 sono fratelli; 2-3 e 4-7 vengono richiesti una sola volta
+        assertEquals(3, tree.getMultiProof(Arrays.asList(0, 1)).getSiblings().size(),
+                "Due foglie sorelle dovrebbero richiedere tre fratelli.");
+        assertEquals(6, tree.getMultiProof(Arrays.asList(0, 15)).getSiblings().size(),
+                "Due foglie agli estremi condividono solo la radice.");
+    }
+
+    @Test
+    void testRepeatedIndices() {
+        MerkleMultiProof proof = treeOf(16).getMultiProof(Arrays.asList(0, 0, 0));
+        assertArrayEquals(new int[] { 0 }, proof.getIndices(), "Gli indici ripetuti dovrebbero essere rimossi.");
+        assertEquals(4, proof.getSiblings().size(), "Gli indici ripetuti dovrebbero essere considerati una volta sola.");
+    }
+
+    @Test
+    void testSortedIndices() {
+        assertArrayEquals(new int[] { 3, 7, 12 }, proof().getIndices(), "Gli indici dovrebbero essere ordinati.");
+    }
+
+    @Test
+    void testVerifyData() {
+        assertTrue(proof().proveValidityOfData(DATA), "La prova dovrebbe essere valida.");
+    }
+
+    @Test
+    void testVerifyLeafDigests() {
+        assertTrue(proof().verify(leaves()), "I digest delle foglie dovrebbero essere validi.");
+    }
+
+    @Test
+    void testWrongData() {
+        MerkleMultiProof proof = proof();
+        assertFalse(proof.proveValidityOfData(Arrays.asList(7, 3, 12)), "L'ordine dei dati conta.");
+        assertFalse(proof.proveValidityOfData(Arrays.asList(3, 7, 11)), "Un dato alterato non è valido.");
+        assertFalse(proof.proveValidityOfData(Arrays.asList(3, 7)), "Mancano dei dati.");
+    }
+
+    @Test
+    void testTamperedSibling() {
+        MerkleMultiProof proof = proof();
+        List<Digest> siblings = new ArrayList<>(proof.getSiblings());
+        siblings.set(1, HashUtil.dataToDigest("alterato"));
+        assertFalse(withSiblings(proof, siblings).verify(leaves()), "Una prova alterata non è valida.");
+    }
+
+    @Test
+    void testTruncatedProof() {
+        MerkleMultiProof proof = proof();
+        List<Digest> truncated = proof.getSiblings().subList(0, proof.getSiblings().size() - 1);
+        assertFalse(withSiblings(proof, truncated).verify(leaves()), "Una prova troncata non è valida.");
+    }
+
+    @Test
+    void testExtendedProof() {
+        MerkleMultiProof proof = proof();
+        List<Digest> extended = new ArrayList<>(proof.getSiblings());
+        extended.add(HashUtil.dataToDigest("in più"));
+        assertFalse(withSiblings(proof, extended).verify(leaves()), "Una prova allungata non è valida.");
+    }
+
+    @Test
+    void testInvalidIndices() {
+        MerkleTree<Integer> tree = treeOf(5);
+        assertThrows(IllegalArgumentException.class, () -> tree.getMultiProof(null),
+                "Una collezione null dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> tree.getMultiProof(Collections.emptyList()),
+                "Una collezione vuota dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> tree.getMultiProof(Arrays.asList(0, 5)),
+                "Un indice non valido dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidProofParts() {
+        Digest root = treeOf(5).getRoot().getDigest();
+        assertThrows(IllegalArgumentException.class, () -> new MerkleMultiProof(5, new int[] { 2, 1 }, root,
+                HashFunction.MD5, Funnels.object(), Collections.emptyList()),
+                "Indici non ordinati dovrebbero lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> new MerkleMultiProof(5, new int[] { 1 }, root,
+                HashFunction.SHA256, Funnels.object(), Collections.emptyList()),
+                "Una radice di lunghezza diversa dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testNullData() {
+        MerkleMultiProof proof = treeOf(5).getMultiProof(Arrays.asList(1));
+        assertThrows(IllegalArgumentException.class, () -> proof.proveValidityOfData(null),
+                "Dati null dovrebbero lanciare IllegalArgumentException.");
+    }
+}
@@ -9,12 +9,25 @@ import java.util.Objects;
  *         simone01.antonini@studenti.unicam.it ** (implementazione)
  */
 public class MerkleNode {
-    private final String hash; // Hash associato al nodo.
+    private String hash; // Hash associato al nodo, in esadecimale.
+
+    private Digest digest; // Hash associato al nodo, come digest grezzo.
 
     private final MerkleNode left; // Figlio sinistro del nodo.
 
     private final MerkleNode right; // Figlio destro del nodo.
 
+    /**
+     * Costruisce un nodo senza hash né figli memorizzati, per le sottoclassi
+     * che li ricavano da un'altra rappresentazione dell'albero ridefinendo
+     * {@link #getHash()}, {@link #getDigest()}, {@link #getLeft()} e
+     * {@link #getRight()}.
+     */
+    protected MerkleNode() {
+        this.left = null;
+        this.right = null;
+    }
+
     /**
      * Costruisce un nodo Merkle foglia con un valore di hash, quindi,
      * corrispondente all'hash di un dato.
@@ -43,15 +56,62 @@ public class MerkleNode {
         this.right = right;
     }
 
+    /**
+     * Costruisce un nodo Merkle foglia a partire dal digest grezzo del dato.
+     * La rappresentazione esadecimale viene calcolata solo se richiesta.
+     *
+     * @param digest
+     *                   il digest associato al nodo.
+     */
+    public MerkleNode(Digest digest) {
+        this(digest, null, null);
+    }
+
+    /**
+     * Costruisce un nodo Merkle con un digest grezzo e due figli. La
+     * rappresentazione esadecimale viene calcolata solo se richiesta.
+     *
+     * @param digest
+     *                   il digest associato al nodo.
+     * @param left
+     *                   il figlio sinistro.
+     * @param right
+     *                   il figlio destro.
+     */
+    public MerkleNode(Digest digest, MerkleNode left, MerkleNode right) {
+        if (digest == null)
+            throw new IllegalArgumentException("The digest cannot be null");
+        this.digest = digest;
+        this.left = left;
+        this.right = right;
+    }
+
     /**
      * Restituisce l'hash associato al nodo.
      *
      * @return l'hash associato al nodo.
      */
     public String getHash() {
+        if (hash == null && digest != null) {
+            hash = digest.toString();
+        }
         return hash;
     }
 
+    /**
+     * Restituisce l'hash associato al nodo come digest grezzo. Se il nodo è
+     * stato costruito a partire da una stringa che non è un hash esadecimale
+     * valido, viene restituito null.
+     *
+     * @return il digest associato al nodo, oppure null.
+     */
+    public Digest getDigest() {
+        if (digest == null && hash != null) {
+            digest = Digest.tryFromHex(hash);
+        }
+        return digest;
+    }
+
     /**
      * Restituisce il figlio sinistro del nodo.
      *
@@ -77,12 +137,12 @@ public class MerkleNode {
      */
     public boolean isLeaf() {
         // Verifica che entrambi i figli del nodo siano nulli
-        return (left == null && right == null);
+        return (getLeft() == null && getRight() == null);
     }
 
     @Override
     public String toString() {
-        return hash;
+        return getHash();
     }
 
     @Override
@@ -91,13 +151,13 @@ public class MerkleNode {
         if (this == obj) {
             return true;
         }
-        // Se l'oggetto è null o di una classe diversa, non sono uguali
-        if (obj == null || getClass() != obj.getClass()) {
+        // Se l'oggetto è null o non è un nodo, non sono uguali
+        if (!(obj instanceof MerkleNode)) {
             return false;
         }
         // Cast dell'oggetto a MerkleNode e confronto degli hash
         MerkleNode other = (MerkleNode) obj;
-        return Objects.equals(hash, other.hash);
+        return Objects.equals(getHash(), other.getHash());
 
         /* Due nodi sono uguali se hanno lo stesso hash */
     }
@@ -106,6 +166,6 @@ public class MerkleNode {
     @Override
     public int hashCode() {
         // Calcola l'hash code basato sull'hash del nodo, coerentemente con equals
-        return Objects.hashCode(hash);
+        return Objects.hashCode(getHash());
     }
 }
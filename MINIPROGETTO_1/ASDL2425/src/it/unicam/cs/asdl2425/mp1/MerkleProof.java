@@ -1,5 +1,6 @@
 package it.unicam.cs.asdl2425.mp1;
 
+import java.util.Arrays; // Per ridimensionare i digest della prova compatta
 import java.util.Objects; // Per equals e hashCode
 import java.util.Iterator; // Per iterare attraverso la prova
 
@@ -9,13 +10,43 @@ import java.util.Iterator; // Per iterare attraverso la prova
  * processo di verifica auto-contenuto, dato da una sequenza di oggetti
  * MerkleProofHash che rappresentano i passaggi necessari per validare un dato
  * elemento o branch in un albero di Merkle decisi al momento di costruzione
- * della prova.
+ * della prova. Gli hash vengono combinati con la {@link HashFunction} scelta
+ * alla costruzione della prova, MD5 per default, e il contenuto dei dati da
+ * validare è descritto dal {@link Funnel} della prova, per default
+ * {@link Funnels#object()}.
  *
  * @author Luca Tesei, Marco Caputo (template) **SIMONE ANTONINI
  *         simone01.antonini@studenti.unicam.it DELLO STUDENTE** (implementazione)
  */
 public class MerkleProof {
 
+    /**
+     * Profondità massima dei nodi che possono essere identificati in
+     * {@link VerifiedNodes}: la posizione di un nodo deve stare in un long.
+     */
+    static final int MAX_VERIFIED_DEPTH = 62;
+
+    /**
+     * Nodi di un albero di Merkle già verificati rispetto alla radice,
+     * identificati dalla profondità, dalla posizione nel loro livello e dal
+     * digest. Un nodo può anche essere noto come assente, quando un nodo del
+     * suo livello non ha fratello e viene hashato da solo.
+     */
+    interface VerifiedNodes {
+
+        /**
+         * Indica se il nodo nella posizione data è stato verificato con il
+         * digest indicato, oppure, se {@code digest} è null, come assente.
+         */
+        boolean contains(int depth, long position, byte[] digest, int offset);
+
+        /**
+         * Registra il nodo nella posizione data con il digest indicato, oppure,
+         * se {@code digest} è null, come assente.
+         */
+        void add(int depth, long position, byte[] digest, int offset);
+    }
+
     /**
      * La prova di Merkle, rappresentata come una lista concatenata di oggetti
      * MerkleProofHash.
@@ -28,6 +59,19 @@ public class MerkleProof {
      */
     private final String rootHash;
 
+    /**
+     * Il digest della radice, oppure null se l'hash della radice non è la
+     * rappresentazione esadecimale canonica di un digest.
+     */
+    private final Digest rootDigest;
+
+    /**
+     * Indica se tutti gli hash della prova sono digest della funzione di hash
+     * in forma canonica oppure stringhe vuote: in questo caso la verifica
+     * combina direttamente i digest, senza costruire stringhe.
+     */
+    private boolean digestSteps;
+
     /**
      * Lunghezza massima della prova, dato dal numero di hash che la compongono
      * quando completa. Serve ad evitare che la prova venga modificata una volta
@@ -35,6 +79,16 @@ public class MerkleProof {
      */
     private final int length;
 
+    /**
+     * La funzione di hash con cui vengono combinati gli hash della prova.
+     */
+    private final HashFunction hashFunction;
+
+    /**
+     * Il funnel che descrive il contenuto dei dati da validare.
+     */
+    private final Funnel<?> funnel;
+
     /**
      * Costruisce una nuova prova di Merkle per un dato albero di Merkle,
      * specificando la radice dell'albero e la lunghezza massima della prova. La
@@ -47,11 +101,55 @@ public class MerkleProof {
      *                     la lunghezza massima della prova.
      */
     public MerkleProof(String rootHash, int length) {
+        this(rootHash, length, HashFunction.MD5);
+    }
+
+    /**
+     * Costruisce una nuova prova di Merkle per un dato albero di Merkle,
+     * specificando la radice dell'albero, la lunghezza massima della prova e la
+     * funzione di hash con cui l'albero è stato costruito.
+     *
+     * @param rootHash
+     *                         l'hash della radice dell'albero di Merkle.
+     * @param length
+     *                         la lunghezza massima della prova.
+     * @param hashFunction
+     *                         la funzione di hash dell'albero.
+     */
+    public MerkleProof(String rootHash, int length, HashFunction hashFunction) {
+        this(rootHash, length, hashFunction, Funnels.object());
+    }
+
+    /**
+     * Costruisce una nuova prova di Merkle per un dato albero di Merkle,
+     * specificando la radice dell'albero, la lunghezza massima della prova, la
+     * funzione di hash e il funnel dei dati con cui l'albero è stato
+     * costruito.
+     *
+     * @param rootHash
+     *                         l'hash della radice dell'albero di Merkle.
+     * @param length
+     *                         la lunghezza massima della prova.
+     * @param hashFunction
+     *                         la funzione di hash dell'albero.
+     * @param funnel
+     *                         il funnel dei dati dell'albero.
+     */
+    public MerkleProof(String rootHash, int length, HashFunction hashFunction, Funnel<?> funnel) {
         if (rootHash == null)
             throw new IllegalArgumentException("The root hash is null");
+        if (hashFunction == null)
+            throw new IllegalArgumentException("The hash function is null");
+        if (funnel == null)
+            throw new IllegalArgumentException("The funnel is null");
         this.proof = new HashLinkedList<>();
         this.rootHash = rootHash;
         this.length = length;
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
+        Digest root = canonicalDigest(rootHash);
+        this.rootDigest = root != null && root.length() == hashFunction.getDigestLength() ? root : null;
+        this.digestSteps = true;
     }
 
     /**
@@ -64,6 +162,16 @@ public class MerkleProof {
         return length;
     }
 
+    /**
+     * Restituisce la funzione di hash con cui vengono combinati gli hash della
+     * prova.
+     *
+     * @return la funzione di hash della prova.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
     /**
      * Aggiunge un hash alla prova di Merkle, specificando se esso dovrebbe
      * essere concatenato a sinistra o a destra durante la verifica della prova.
@@ -85,13 +193,59 @@ public class MerkleProof {
         }
         // Controlla se è possibile aggiungere un nuovo hash (la prova non è completa)
         if (proof.getSize() < length) {
-            // Aggiunge un nuovo oggetto MerkleProofHash alla fine della lista
-            proof.addAtTail(new MerkleProofHash(hash, isLeft));
+            // Aggiunge un nuovo oggetto MerkleProofHash alla fine della lista,
+            // senza calcolarne l'hash, che non viene mai usato
+            MerkleProofHash step = new MerkleProofHash(hash, isLeft);
+            proof.addAtTailLazily(step);
+            if (!hash.isEmpty() && (step.digest == null || step.digest.length() != hashFunction.getDigestLength())) {
+                digestSteps = false;
+            }
             return true;  // L'hash è stato aggiunto con successo
         }
         return false;  // La prova è completa e non è possibile aggiungere altri hash
     }
 
+    /**
+     * Converte la prova nella sua forma compatta, con le direzioni in una
+     * maschera di bit e i digest dei fratelli in un unico array. Gli hash
+     * vuoti, usati per i passi senza fratello, non occupano spazio.
+     *
+     * @return la prova in forma compatta.
+     * @throws IllegalArgumentException
+     *                                      se la radice o uno degli hash della
+     *                                      prova non sono digest esadecimali
+     *                                      della funzione di hash della prova.
+     */
+    public CompactMerkleProof toCompactProof() {
+        int digestLength = hashFunction.getDigestLength();
+        if (rootDigest == null)
+            throw new IllegalArgumentException("The root hash is not a valid digest");
+        int steps = proof.getSize();
+        long[] left = new long[(steps + 63) >>> 6];
+        long[] absent = new long[left.length];
+        byte[] siblings = new byte[steps * digestLength];
+        int step = 0;
+        int present = 0;
+        for (MerkleProofHash hash : proof) {
+            if (hash.getHash().isEmpty()) {
+                absent[step >>> 6] |= 1L << (step & 63);
+            } else {
+                Digest sibling = hash.digest;
+                if (sibling == null || sibling.length() != digestLength)
+                    throw new IllegalArgumentException("The proof contains an invalid hash: " + hash.getHash());
+                sibling.copyTo(siblings, present++ * digestLength);
+                if (hash.isLeft()) {
+                    left[step >>> 6] |= 1L << (step & 63);
+                }
+            }
+            step++;
+        }
+        if (present < steps) {
+            siblings = Arrays.copyOf(siblings, present * digestLength);
+        }
+        return new CompactMerkleProof(hashFunction, funnel, rootDigest, steps, left, absent, siblings);
+    }
+
     /**
      * Rappresenta un singolo step di una prova di Merkle per la validazione di
      * un dato elemento.
@@ -108,12 +262,19 @@ public class MerkleProof {
          */
         private final boolean isLeft;
 
+        /**
+         * Il digest rappresentato dall'hash, oppure null se l'hash non è la
+         * rappresentazione esadecimale canonica di un digest.
+         */
+        private final Digest digest;
+
         public MerkleProofHash(String hash, boolean isLeft) {
             if (hash == null)
                 throw new IllegalArgumentException("The hash cannot be null");
 
             this.hash = hash;
             this.isLeft = isLeft;
+            this.digest = canonicalDigest(hash);
         }
 
         /**
@@ -184,20 +345,30 @@ public class MerkleProof {
      * @return true se il dato è valido secondo la prova; false altrimenti.
      * @throws IllegalArgumentException
      *                                      se il dato è null.
+     * @throws ClassCastException
+     *                                      se il dato non è del tipo descritto
+     *                                      dal funnel della prova.
      */
+    @SuppressWarnings("unchecked")
     public boolean proveValidityOfData(Object data) {
         // Controlla che il dato non sia nullo
         if (data == null) {
             throw new IllegalArgumentException("The data cannot be null");
         }
+        if (canCombineDigests()) {
+            // Il digest corrente occupa la prima metà del buffer
+            byte[] buffer = new byte[2 * hashFunction.getDigestLength()];
+            HashUtil.hash(data, (Funnel<Object>) funnel, hashFunction, buffer, 0);
+            return climb(buffer);
+        }
         // Calcola l'hash iniziale del dato fornito
-        String currentHash = HashUtil.dataToHash(data);
+        String currentHash = HashUtil.hash(data, (Funnel<Object>) funnel, hashFunction).toString();
         // Itera attraverso la lista di MerkleProofHash per combinare gli hash
         for (MerkleProofHash step : proof) {
             // Concatena gli hash a sinistra o destra a seconda del flag isLeft
             currentHash = (step.isLeft())
-                    ? HashUtil.computeMD5((step.getHash() + currentHash).getBytes())
-                    : HashUtil.computeMD5((currentHash + step.getHash()).getBytes());
+                    ? hashFunction.hashToHex((step.getHash() + currentHash).getBytes())
+                    : hashFunction.hashToHex((currentHash + step.getHash()).getBytes());
         }
         // Confronta l'hash finale con l'hash della radice
         return currentHash.equals(rootHash);
@@ -223,14 +394,176 @@ public class MerkleProof {
         }
         // Ottiene l'hash iniziale del branch fornito
         String currentHash = branch.getHash();
+        if (canCombineDigests()) {
+            Digest digest = canonicalDigest(currentHash);
+            if (digest != null && digest.length() == hashFunction.getDigestLength()) {
+                byte[] buffer = new byte[2 * digest.length()];
+                digest.copyTo(buffer, 0);
+                return climb(buffer);
+            }
+        }
         // Itera attraverso la lista di MerkleProofHash per combinare gli hash
         for (MerkleProofHash step : proof) {
             // Concatena gli hash a sinistra o destra a seconda del flag isLeft
             currentHash = (step.isLeft())
-                    ? HashUtil.computeMD5((step.getHash() + currentHash).getBytes())
-                    : HashUtil.computeMD5((currentHash + step.getHash()).getBytes());
+                    ? hashFunction.hashToHex((step.getHash() + currentHash).getBytes())
+                    : hashFunction.hashToHex((currentHash + step.getHash()).getBytes());
         }
         // Confronta l'hash finale con l'hash della radice
         return currentHash.equals(rootHash);
     }
+
+    /**
+     * Restituisce l'hash della radice per cui la prova è stata costruita.
+     */
+    String getRootHash() {
+        return rootHash;
+    }
+
+    /**
+     * Valida un dato come {@link #proveValidityOfData(Object)}, fermando la
+     * risalita non appena il nodo corrente è uno dei nodi già verificati: da
+     * quel punto basta controllare, senza calcolare altri hash, che i
+     * fratelli della prova siano quelli verificati. Se la prova è valida, i
+     * nodi calcolati e i loro fratelli vengono aggiunti ai nodi verificati.
+     *
+     * @param data
+     *                     l'elemento da validare, non null.
+     * @param path
+     *                     un array di almeno {@link #MAX_VERIFIED_DEPTH} + 2
+     *                     digest, riusato tra più verifiche.
+     * @param verified
+     *                     i nodi già verificati rispetto alla radice della
+     *                     prova.
+     * @return true se il dato è valido secondo la prova; false altrimenti.
+     */
+    @SuppressWarnings("unchecked")
+    boolean proveValidityOfData(Object data, byte[] path, VerifiedNodes verified) {
+        int steps = proof.getSize();
+        if (!canCombineDigests() || steps > MAX_VERIFIED_DEPTH) {
+            return proveValidityOfData(data);
+        }
+        int digestLength = hashFunction.getDigestLength();
+        // Il nodo al passo k occupa il k-esimo digest di path, il fratello
+        // corrente l'ultimo
+        int siblingOffset = (steps + 1) * digestLength;
+        long position = leafPosition();
+        HashUtil.hash(data, (Funnel<Object>) funnel, hashFunction, path, 0);
+        int known = -1;
+        int level = 0;
+        for (MerkleProofHash step : proof) {
+            int depth = steps - level;
+            long current = position >>> level;
+            if (known < 0 && verified.contains(depth, current, path, level * digestLength)) {
+                known = level;
+            }
+            if (step.digest != null) {
+                step.digest.copyTo(path, siblingOffset);
+            }
+            byte[] sibling = step.digest == null ? null : path;
+            if (known >= 0) {
+                // Un fratello diverso da quello verificato porta a un altro
+                // padre, e quindi a un'altra radice
+                if (!verified.contains(depth, current ^ 1, sibling, siblingOffset)) {
+                    return false;
+                }
+            } else if (sibling == null) {
+                hashFunction.combine(path, level * digestLength, null, 0, path, (level + 1) * digestLength);
+            } else if (step.isLeft()) {
+                hashFunction.combine(path, siblingOffset, path, level * digestLength, path,
+                        (level + 1) * digestLength);
+            } else {
+                hashFunction.combine(path, level * digestLength, path, siblingOffset, path,
+                        (level + 1) * digestLength);
+            }
+            level++;
+        }
+        if (known < 0) {
+            if (!rootDigest.matches(path, steps * digestLength)) {
+                return false;
+            }
+            known = steps;
+            verified.add(0, 0, path, steps * digestLength);
+        }
+        level = 0;
+        for (Iterator<MerkleProofHash> it = proof.iterator(); level < known; level++) {
+            MerkleProofHash step = it.next();
+            int depth = steps - level;
+            long current = position >>> level;
+            verified.add(depth, current, path, level * digestLength);
+            if (step.digest == null) {
+                verified.add(depth, current ^ 1, null, 0);
+            } else {
+                step.digest.copyTo(path, siblingOffset);
+                verified.add(depth, current ^ 1, path, siblingOffset);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce la posizione della foglia nel suo livello, ricavata dai
+     * passi della prova: il bit k è 1 se al passo k il nodo corrente è un
+     * figlio destro.
+     */
+    private long leafPosition() {
+        long position = 0;
+        int level = 0;
+        for (MerkleProofHash step : proof) {
+            if (step.digest != null && step.isLeft()) {
+                position |= 1L << level;
+            }
+            level++;
+        }
+        return position;
+    }
+
+    /**
+     * Indica se la verifica può combinare direttamente i digest: la radice e
+     * tutti gli hash della prova devono essere digest canonici della funzione
+     * di hash, o stringhe vuote. Altrimenti gli hash vengono concatenati come
+     * stringhe, come richiesto dalla definizione della prova.
+     */
+    private boolean canCombineDigests() {
+        return rootDigest != null && digestSteps;
+    }
+
+    /**
+     * Combina il digest contenuto all'inizio del buffer con i fratelli di
+     * tutti i passi, nella seconda metà del buffer, e confronta il risultato
+     * con la radice. Non viene allocato alcun oggetto per ogni passo.
+     *
+     * @param buffer
+     *                   un array di due digest, il primo dei quali è il
+     *                   digest da verificare.
+     * @return true se il risultato coincide con la radice.
+     */
+    private boolean climb(byte[] buffer) {
+        int digestLength = hashFunction.getDigestLength();
+        for (MerkleProofHash step : proof) {
+            if (step.digest == null) {
+                // La stringa vuota: il digest corrente viene hashato da solo
+                hashFunction.combine(buffer, 0, null, 0, buffer, 0);
+            } else {
+                step.digest.copyTo(buffer, digestLength);
+                if (step.isLeft()) {
+                    hashFunction.combine(buffer, digestLength, buffer, 0, buffer, 0);
+                } else {
+                    hashFunction.combine(buffer, 0, buffer, digestLength, buffer, 0);
+                }
+            }
+        }
+        return rootDigest.matches(buffer, 0);
+    }
+
+    /**
+     * Restituisce il digest rappresentato da una stringa esadecimale, solo se
+     * la stringa è nella forma canonica minuscola prodotta da
+     * {@link Digest#toString()}: solo in questo caso concatenare le stringhe
+     * equivale a combinare i digest.
+     */
+    private static Digest canonicalDigest(String hex) {
+        Digest digest = Digest.tryFromHex(hex);
+        return digest != null && digest.toString().equals(hex) ? digest : null;
+    }
 }
@@ -31,6 +31,12 @@ import static org.junit.jupiter.api.Assertions.*;
  * 
  * <li>{@link #testVerifyProofOnData3()}: Verifica che un dato non valido venga correttamente respinto
  * dalla prova di Merkle.</li>
+ * 
+ * <li>{@link #testVerifyProofOnBranch()}: Verifica la validazione di un branch, anche con passi senza
+ * fratello rappresentati dalla stringa vuota.</li>
+ * 
+ * <li>{@link #testVerifyProofWithNonDigestHashes()}: Verifica che hash che non sono digest canonici,
+ * come stringhe arbitrarie o esadecimali maiuscole, vengano concatenati come stringhe.</li>
  * </ul>
  */
 public class MerkleProofTest {
@@ -110,4 +116,34 @@ public class MerkleProofTest {
         assertFalse(proof.proveValidityOfData("Dato non valido"), "La prova di validità del dato non dovrebbe andare a buon fine");
     }
 
+    @Test
+    void testVerifyProofOnBranch() {
+        String left = HashUtil.computeMD5((HashUtil.dataToHash("Alice paga Bob") + HashUtil.dataToHash("Bob paga Charlie")).getBytes());
+        String lone = HashUtil.computeMD5(left.getBytes());
+        String root = HashUtil.computeMD5((HashUtil.dataToHash("Eve paga Alice") + lone).getBytes());
+        MerkleProof proof = new MerkleProof(root, 2);
+        proof.addHash("", false);
+        proof.addHash(HashUtil.dataToHash("Eve paga Alice"), true);
+
+        assertTrue(proof.proveValidityOfBranch(new MerkleNode(left)), "La prova di validità del branch dovrebbe andare a buon fine");
+        assertFalse(proof.proveValidityOfBranch(new MerkleNode(lone)), "La prova di validità del branch non dovrebbe andare a buon fine");
+        assertFalse(proof.proveValidityOfBranch(new MerkleNode("non esadecimale")), "La prova di validità del branch non dovrebbe andare a buon fine");
+    }
+
+    @Test
+    void testVerifyProofWithNonDigestHashes() {
+        String dataHash = HashUtil.dataToHash("Alice paga Bob");
+        MerkleProof proof = new MerkleProof(HashUtil.computeMD5(("passo" + dataHash).getBytes()), 1);
+        proof.addHash("passo", true);
+        assertTrue(proof.proveValidityOfData("Alice paga Bob"), "La prova di validità del dato dovrebbe andare a buon fine");
+
+        String sibling = HashUtil.dataToHash("Bob paga Charlie");
+        MerkleProof upperCase = new MerkleProof(HashUtil.computeMD5((dataHash + sibling.toUpperCase()).getBytes()), 1);
+        upperCase.addHash(sibling.toUpperCase(), false);
+        assertTrue(upperCase.proveValidityOfData("Alice paga Bob"), "La prova di validità del dato dovrebbe andare a buon fine");
+
+        MerkleProof upperCaseRoot = new MerkleProof(HashUtil.computeMD5((dataHash + sibling).getBytes()).toUpperCase(), 1);
+        upperCaseRoot.addHash(sibling, false);
+        assertFalse(upperCaseRoot.proveValidityOfData("Alice paga Bob"), "La radice viene confrontata come stringa");
+    }
 }
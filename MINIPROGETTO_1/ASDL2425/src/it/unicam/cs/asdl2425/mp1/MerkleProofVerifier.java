@@ -0,0 +1,175 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Verifica in blocco molte coppie (dato, {@link MerkleProof}) rispetto alla
+ * stessa radice. Il risultato di ciascuna verifica è lo stesso di
+ * {@link MerkleProof#proveValidityOfData(Object)}, con in più il controllo
+ * che la prova sia stata costruita per la radice e la funzione di hash del
+ * verificatore.
+ *
+ * <p>
+ * Durante una verifica in blocco vengono registrati, con la loro profondità,
+ * la loro posizione e il loro digest, i nodi delle prove risultate valide e i
+ * loro fratelli. Le prove di foglie vicine condividono la parte alta del
+ * cammino verso la radice: la risalita di una prova si ferma non appena
+ * raggiunge un nodo registrato, e da lì basta confrontare i fratelli rimasti
+ * con quelli registrati, senza calcolare altri hash. Ogni nodo interno viene
+ * così calcolato circa una volta per blocco invece che una volta per prova, e
+ * viene allocato soltanto ciò che si registra. I nodi registrati vengono
+ * scartati al termine del blocco. Le verifiche possono essere distribuite su
+ * un {@link ForkJoinPool}: ogni porzione di lavoro riusa il proprio buffer per
+ * tutte le prove che verifica.
+ */
+public class MerkleProofVerifier {
+
+    /**
+     * Numero di prove sotto il quale una porzione di lavoro non viene più
+     * suddivisa.
+     */
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    private final String rootHash;
+
+    private final HashFunction hashFunction;
+
+    /**
+     * Costruisce un verificatore per la radice e la funzione di hash
+     * indicate.
+     *
+     * @param rootHash
+     *                         l'hash della radice, in forma esadecimale.
+     * @param hashFunction
+     *                         la funzione di hash dell'albero.
+     * @throws IllegalArgumentException
+     *                                      se uno degli argomenti è null o se
+     *                                      l'hash della radice non è un digest
+     *                                      esadecimale della funzione di hash.
+     */
+    public MerkleProofVerifier(String rootHash, HashFunction hashFunction) {
+        if (rootHash == null || hashFunction == null)
+            throw new IllegalArgumentException("The root hash and the hash function cannot be null");
+        Digest root = Digest.tryFromHex(rootHash);
+        if (root == null || root.length() != hashFunction.getDigestLength() || !root.toString().equals(rootHash))
+            throw new IllegalArgumentException("The root hash is not a valid digest: " + rootHash);
+        this.rootHash = rootHash;
+        this.hashFunction = hashFunction;
+    }
+
+    /**
+     * Restituisce l'hash della radice del verificatore.
+     *
+     * @return l'hash della radice.
+     */
+    public String getRootHash() {
+        return rootHash;
+    }
+
+    /**
+     * Verifica nel thread corrente ogni dato con la prova nella stessa
+     * posizione.
+     *
+     * @param data
+     *                   i dati da validare.
+     * @param proofs
+     *                   le prove, una per ogni dato.
+     * @return per ogni posizione, true se il dato è valido secondo la prova e
+     *         la prova è per la radice del verificatore; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se una delle liste, un dato o una
+     *                                      prova sono null o se le liste hanno
+     *                                      lunghezze diverse.
+     */
+    public boolean[] verifyAll(List<?> data, List<MerkleProof> proofs) {
+        return verifyAll(data, proofs, null);
+    }
+
+    /**
+     * Verifica ogni dato con la prova nella stessa posizione, distribuendo il
+     * lavoro sul pool indicato.
+     *
+     * @param data
+     *                   i dati da validare.
+     * @param proofs
+     *                   le prove, una per ogni dato.
+     * @param pool
+     *                   il pool su cui eseguire le verifiche, oppure null per
+     *                   eseguirle nel thread corrente.
+     * @return per ogni posizione, true se il dato è valido secondo la prova e
+     *         la prova è per la radice del verificatore; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se una delle liste, un dato o una
+     *                                      prova sono null o se le liste hanno
+     *                                      lunghezze diverse.
+     */
+    public boolean[] verifyAll(List<?> data, List<MerkleProof> proofs, ForkJoinPool pool) {
+        if (data == null || proofs == null)
+            throw new IllegalArgumentException("The data and the proofs cannot be null");
+        if (data.size() != proofs.size())
+            throw new IllegalArgumentException("There must be one proof for each data");
+        // copio le liste per avere un accesso posizionale in tempo costante
+        Object[] elements = data.toArray();
+        MerkleProof[] steps = proofs.toArray(new MerkleProof[0]);
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] == null || steps[i] == null)
+                throw new IllegalArgumentException("The data and the proofs cannot contain null");
+        }
+
+        boolean[] results = new boolean[elements.length];
+        KnownNodes verified = new KnownNodes();
+        HashUtil.RangeAction verify = (from, to) -> {
+            byte[] path = new byte[(MerkleProof.MAX_VERIFIED_DEPTH + 2) * hashFunction.getDigestLength()];
+            for (int i = from; i < to; i++) {
+                MerkleProof proof = steps[i];
+                results[i] = proof.getHashFunction() == hashFunction && rootHash.equals(proof.getRootHash())
+                        && proof.proveValidityOfData(elements[i], path, verified);
+            }
+        };
+        if (pool == null) {
+            verify.run(0, elements.length);
+        } else {
+            pool.invoke(new HashUtil.HashTask(0, elements.length, PARALLEL_THRESHOLD, verify));
+        }
+        return results;
+    }
+
+    /**
+     * Nodi verificati durante un blocco, condivisi tra i thread. Un nodo è
+     * identificato dal long {@code 2^profondità + posizione}, come
+     * nell'ordinamento per livelli di un albero completo.
+     */
+    private final class KnownNodes implements MerkleProof.VerifiedNodes {
+
+        /**
+         * Valore dei nodi noti come assenti.
+         */
+        private final byte[] absent = new byte[0];
+
+        private final ConcurrentHashMap<Long, byte[]> nodes = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean contains(int depth, long position, byte[] digest, int offset) {
+            byte[] node = nodes.get((1L << depth) | position);
+            if (node == null) {
+                return false;
+            }
+            if (digest == null) {
+                return node == absent;
+            }
+            return node != absent && Arrays.equals(node, 0, node.length, digest, offset, offset + node.length);
+        }
+
+        @Override
+        public void add(int depth, long position, byte[] digest, int offset) {
+            Long key = (1L << depth) | position;
+            if (!nodes.containsKey(key)) {
+                nodes.putIfAbsent(key, digest == null ? absent
+                        : Arrays.copyOfRange(digest, offset, offset + hashFunction.getDigestLength()));
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static it.unicam.cs.asdl2425.mp1.TestTrees.treeOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link MerkleProofVerifier}. Questa classe
+ * verifica la validazione in blocco di molte prove di Merkle.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testVerifyAll()}: Verifica che la validazione in blocco
+ * accetti i dati corretti.</li>
+ *
+ * <li>{@link #testWrongData()}: Verifica che i dati che non corrispondono
+ * alla loro prova vengano respinti, senza influire sugli altri.</li>
+ *
+ * <li>{@link #testParallelMatchesSequential()}: Verifica che la validazione
+ * in parallelo dia gli stessi risultati di quella nel thread corrente.</li>
+ *
+ * <li>{@link #testProofForOtherRoot()}: Verifica che una prova costruita per
+ * un'altra radice venga respinta.</li>
+ *
+ * <li>{@link #testTextualProof()}: Verifica che una prova con hash non
+ * esadecimali dia lo stesso risultato della verifica singola.</li>
+ *
+ * <li>{@link #testOtherHashFunction()}: Verifica che una prova con un'altra
+ * funzione di hash venga respinta.</li>
+ *
+ * <li>{@link #testSharedNodesHashedOnce()}: Verifica che i nodi comuni a più
+ * prove vengano calcolati una sola volta per blocco.</li>
+ *
+ * <li>{@link #testClimbStopsAtVerifiedNode()}: Verifica che la risalita di
+ * una prova si fermi su un nodo già verificato, senza calcolare altri
+ * hash.</li>
+ *
+ * <li>{@link #testWrongSiblingAboveVerifiedNode()}: Verifica che una prova
+ * che raggiunge un nodo verificato ma prosegue con un fratello diverso da
+ * quello verificato non sia valida.</li>
+ *
+ * <li>{@link #testInvalidRoot()}: Verifica che venga lanciata un'eccezione per
+ * una radice non valida per la funzione di hash.</li>
+ *
+ * <li>{@link #testInvalidLists()}: Verifica che venga lanciata un'eccezione
+ * per liste di lunghezze diverse o con elementi null.</li>
+ * </ul>
+ */
+class MerkleProofVerifierTest {
+
+    /**
+     * MD5 che conta le combinazioni di digest.
+     */
+    private static final class CountingHashFunction extends HashFunction {
+        private final AtomicInteger combinations = new AtomicInteger();
+
+        CountingHashFunction() {
+            super("MD5-counting", 16);
+        }
+
+        @Override
+        public Hasher newHasher() {
+            return HashFunction.MD5.newHasher();
+        }
+
+        @Override
+        public void combine(byte[] left, int leftOffset, byte[] right, int rightOffset, byte[] out, int outOffset) {
+            combinations.incrementAndGet();
+            super.combine(left, leftOffset, right, rightOffset, out, outOffset);
+        }
+    }
+
+    /**
+     * Restituisce le prove di tutte le foglie dell'albero, nell'ordine.
+     */
+    private static List<MerkleProof> proofsOf(MerkleTree<Integer> tree, int width) {
+        List<MerkleProof> proofs = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            proofs.add(tree.getMerkleProof(Integer.valueOf(i)));
+        }
+        return proofs;
+    }
+
+    /**
+     * Restituisce gli interi da 0 a {@code width - 1}, nell'ordine.
+     */
+    private static List<Integer> dataOf(int width) {
+        List<Integer> data = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            data.add(i);
+        }
+        return data;
+    }
+
+    /**
+     * Restituisce gli interi da 0 a {@code width - 1}, dove ogni dato in
+     * posizione multipla di dieci è sostituito dal successivo e non
+     * corrisponde quindi alla sua prova.
+     */
+    private static List<Integer> dataWithMismatches(int width) {
+        List<Integer> data = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            data.add(i % 10 == 0 ? i + 1 : i);
+        }
+        return data;
+    }
+
+    @Test
+    void testVerifyAll() {
+        MerkleTree<Integer> tree = treeOf(3000, HashFunction.SHA256);
+        MerkleProofVerifier verifier = new MerkleProofVerifier(tree.getRoot().getHash(), HashFunction.SHA256);
+        boolean[] results = verifier.verifyAll(dataOf(3000), proofsOf(tree, 3000));
+        for (int i = 0; i < 3000; i++) {
+            assertTrue(results[i], "La prova del dato " + i + " dovrebbe essere valida.");
+        }
+    }
+
+    @Test
+    void testWrongData() {
+        MerkleTree<Integer> tree = treeOf(3000, HashFunction.SHA256);
+        MerkleProofVerifier verifier = new MerkleProofVerifier(tree.getRoot().getHash(), HashFunction.SHA256);
+        boolean[] results = verifier.verifyAll(dataWithMismatches(3000), proofsOf(tree, 3000));
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(i % 10 != 0, results[i], "La verifica del dato " + i + " non corrisponde.");
+        }
+    }
+
+    @Test
+    void testParallelMatchesSequential() {
+        MerkleTree<Integer> tree = treeOf(3000, HashFunction.SHA256);
+        MerkleProofVerifier verifier = new MerkleProofVerifier(tree.getRoot().getHash(), HashFunction.SHA256);
+        List<Integer> data = dataWithMismatches(3000);
+        List<MerkleProof> proofs = proofsOf(tree, 3000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(verifier.verifyAll(data, proofs), verifier.verifyAll(data, proofs, pool),
+                    "La verifica parallela dovrebbe dare gli stessi risultati.");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testProofForOtherRoot() {
+        MerkleTree<Integer> tree = treeOf(3000, HashFunction.SHA256);
+        MerkleProofVerifier verifier = new MerkleProofVerifier(tree.getRoot().getHash(), HashFunction.SHA256);
+        List<MerkleProof> proofs = proofsOf(tree, 3);
+        proofs.set(1, treeOf(3001, HashFunction.SHA256).getMerkleProof(Integer.valueOf(1)));
+        assertArrayEquals(new boolean[] { true, false, true }, verifier.verifyAll(dataOf(3), proofs),
+                "Una prova per un'altra radice non dovrebbe essere valida.");
+    }
+
+    @Test
+    void testTextualProof() {
+        MerkleTree<Integer> tree = treeOf(4, HashFunction.SHA256);
+        MerkleProof textual = new MerkleProof(tree.getRoot().getHash(), 1, HashFunction.SHA256);
+        textual.addHash("non esadecimale", false);
+        MerkleProofVerifier verifier = new MerkleProofVerifier(tree.getRoot().getHash(), HashFunction.SHA256);
+        assertEquals(textual.proveValidityOfData(0),
+                verifier.verifyAll(dataOf(1), Collections.singletonList(textual))[0],
+                "Una prova con hash non esadecimali dovrebbe dare il risultato della verifica singola.");
+    }
+
+    @Test
+    void testOtherHashFunction() {
+        MerkleTree<Integer> tree = treeOf(4);
+        MerkleProofVerifier verifier = new MerkleProofVerifier(HashUtil.dataToHash("radice", HashFunction.SHA256),
+                HashFunction.SHA256);
+        assertFalse(verifier.verifyAll(dataOf(1), proofsOf(tree, 1))[0],
+                "Una prova con un'altra funzione di hash non è valida.");
+    }
+
+    @Test
+    void testSharedNodesHashedOnce() {
+        CountingHashFunction hashFunction = new CountingHashFunction();
+        MerkleTree<Integer> tree = treeOf(1024, hashFunction);
+        List<Integer> data = new ArrayList<>();
+        List<MerkleProof> proofs = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            data.add(i);
+            proofs.add(tree.getMerkleProof(Integer.valueOf(i)));
+        }
+        MerkleProofVerifier verifier = new MerkleProofVerifier(tree.getRoot().getHash(), hashFunction);
+        hashFunction.combinations.set(0);
+        boolean[] results = verifier.verifyAll(data, proofs);
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(results[i], "La prova del dato " + i + " dovrebbe essere valida.");
+        }
+        // ogni nodo interno viene calcolato una volta, invece di 10 per prova
+        assertEquals(1023, hashFunction.combinations.get(), "Ogni nodo interno dovrebbe essere calcolato una volta.");
+    }
+
+    @Test
+    void testClimbStopsAtVerifiedNode() {
+        CountingHashFunction hashFunction = new CountingHashFunction();
+        MerkleTree<Integer> tree = treeOf(1024, hashFunction);
+        MerkleProof proof = tree.getMerkleProof(Integer.valueOf(5));
+        MerkleProofVerifier verifier = new MerkleProofVerifier(tree.getRoot().getHash(), hashFunction);
+        hashFunction.combinations.set(0);
+        boolean[] results = verifier.verifyAll(Arrays.asList(5, 5, 5), Arrays.asList(proof, proof, proof));
+        assertArrayEquals(new boolean[] { true, true, true }, results, "Le prove dovrebbero essere valide.");
+        // solo la prima prova risale fino alla radice
+        assertEquals(10, hashFunction.combinations.get(), "Le prove ripetute non dovrebbero calcolare hash.");
+    }
+
+    @Test
+    void testWrongSiblingAboveVerifiedNode() {
+        MerkleTree<Integer> tree = treeOf(4);
+        String root = tree.getRoot().getHash();
+        // la foglia 1 è già verificata come fratello della foglia 0, ma il
+        // secondo fratello della prova è sbagliato
+        MerkleProof wrong = new MerkleProof(root, 2, HashFunction.MD5);
+        wrong.addHash(tree.getRoot().getLeft().getLeft().getHash(), true);
+        wrong.addHash(HashUtil.dataToHash("altro"), false);
+        assertFalse(wrong.proveValidityOfData(1), "La prova non dovrebbe essere valida.");
+        MerkleProofVerifier verifier = new MerkleProofVerifier(root, HashFunction.MD5);
+        boolean[] results = verifier.verifyAll(Arrays.asList(0, 1),
+                Arrays.asList(tree.getMerkleProof(Integer.valueOf(0)), wrong));
+        assertTrue(results[0], "La prova della foglia 0 dovrebbe essere valida.");
+        assertFalse(results[1], "La prova con un fratello sbagliato non dovrebbe essere valida.");
+    }
+
+    @Test
+    void testInvalidRoot() {
+        String root = treeOf(4).getRoot().getHash();
+        assertThrows(IllegalArgumentException.class, () -> new MerkleProofVerifier(root, HashFunction.SHA256),
+                "Una radice di lunghezza diversa dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> new MerkleProofVerifier(root.toUpperCase(), HashFunction.MD5),
+                "Una radice non canonica dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidLists() {
+        MerkleTree<Integer> tree = treeOf(4);
+        MerkleProofVerifier verifier = new MerkleProofVerifier(tree.getRoot().getHash(), HashFunction.MD5);
+        MerkleProof proof = tree.getMerkleProof(Integer.valueOf(0));
+        assertThrows(IllegalArgumentException.class,
+                () -> verifier.verifyAll(Arrays.asList(0, 1), Collections.singletonList(proof)),
+                "Liste di lunghezze diverse dovrebbero lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class,
+                () -> verifier.verifyAll(Collections.singletonList(null), Collections.singletonList(proof)),
+                "Un dato null dovrebbe lanciare IllegalArgumentException.");
+    }
+}
@@ -0,0 +1,223 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Prova di Merkle per un intervallo di foglie consecutive di un albero. I
+ * nodi interni coperti interamente dall'intervallo si calcolano dalle foglie
+ * stesse, quindi la prova contiene soltanto i fratelli ai due confini
+ * dell'intervallo: al più due digest per livello, dal basso verso l'alto e,
+ * in ogni livello, prima quello sinistro e poi quello destro. La dimensione
+ * della prova è logaritmica nel numero di foglie dell'albero, e la verifica
+ * costa un hash per ogni foglia dell'intervallo più uno per ogni livello.
+ *
+ * <p>
+ * L'albero ha la forma di {@link MerkleTree}, compresa la regola per cui un
+ * nodo senza fratello viene combinato con la stringa vuota.
+ */
+public class MerkleRangeProof {
+
+    private final int width;
+
+    private final int from;
+
+    private final int to;
+
+    private final Digest root;
+
+    private final HashFunction hashFunction;
+
+    private final Funnel<?> funnel;
+
+    /**
+     * Digest dei fratelli ai confini dell'intervallo, nell'ordine in cui
+     * vengono richiesti durante la verifica.
+     */
+    private final List<Digest> siblings;
+
+    /**
+     * Costruisce una prova per un intervallo di foglie a partire dalle sue
+     * parti, ad esempio dopo averla ricevuta da un altro nodo.
+     *
+     * @param width
+     *                         il numero di foglie dell'albero.
+     * @param from
+     *                         la prima foglia dell'intervallo.
+     * @param to
+     *                         la foglia successiva all'ultima
+     *                         dell'intervallo.
+     * @param root
+     *                         il digest della radice dell'albero.
+     * @param hashFunction
+     *                         la funzione di hash dell'albero.
+     * @param funnel
+     *                         il funnel dei dati dell'albero.
+     * @param siblings
+     *                         i digest dei fratelli ai confini.
+     * @throws IllegalArgumentException
+     *                                      se un argomento è null, se
+     *                                      l'intervallo è vuoto o non è
+     *                                      contenuto nell'albero, o se un
+     *                                      digest ha una lunghezza diversa da
+     *                                      quella della funzione di hash.
+     */
+    public MerkleRangeProof(int width, int from, int to, Digest root, HashFunction hashFunction, Funnel<?> funnel,
+            List<Digest> siblings) {
+        if (root == null || hashFunction == null || funnel == null || siblings == null)
+            throw new IllegalArgumentException("The arguments cannot be null");
+        if (from < 0 || to <= from || to > width)
+            throw new IllegalArgumentException("Invalid range: [" + from + ", " + to + ")");
+        int digestLength = hashFunction.getDigestLength();
+        if (root.length() != digestLength)
+            throw new IllegalArgumentException("The root has the wrong length");
+        for (Digest sibling : siblings) {
+            if (sibling == null || sibling.length() != digestLength)
+                throw new IllegalArgumentException("The proof contains an invalid digest");
+        }
+        this.width = width;
+        this.from = from;
+        this.to = to;
+        this.root = root;
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
+        this.siblings = Collections.unmodifiableList(new ArrayList<>(siblings));
+    }
+
+    /**
+     * Restituisce il numero di foglie dell'albero.
+     *
+     * @return il numero di foglie dell'albero.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Restituisce la prima foglia dell'intervallo.
+     *
+     * @return l'indice della prima foglia.
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * Restituisce la foglia successiva all'ultima dell'intervallo.
+     *
+     * @return l'indice successivo all'ultima foglia.
+     */
+    public int getTo() {
+        return to;
+    }
+
+    /**
+     * Restituisce il digest della radice per cui la prova è stata costruita.
+     *
+     * @return il digest della radice.
+     */
+    public Digest getRootDigest() {
+        return root;
+    }
+
+    /**
+     * Restituisce la funzione di hash dell'albero.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce i digest dei fratelli ai confini, in una lista non
+     * modificabile.
+     *
+     * @return i digest dei fratelli.
+     */
+    public List<Digest> getSiblings() {
+        return siblings;
+    }
+
+    /**
+     * Verifica che i dati forniti siano, nell'ordine, le foglie
+     * dell'intervallo.
+     *
+     * @param data
+     *                 i dati delle foglie dell'intervallo.
+     * @return true se tutti i dati sono validi secondo la prova; false
+     *         altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la lista o uno dei dati è null.
+     * @throws ClassCastException
+     *                                      se un dato non è del tipo descritto
+     *                                      dal funnel della prova.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean proveValidityOfData(List<?> data) {
+        if (data == null)
+            throw new IllegalArgumentException("The data cannot be null");
+        if (data.size() != to - from)
+            return false;
+        int digestLength = hashFunction.getDigestLength();
+        byte[] nodes = new byte[data.size() * digestLength];
+        int offset = 0;
+        for (Object element : data) {
+            if (element == null)
+                throw new IllegalArgumentException("The data cannot be null");
+            HashUtil.hash(element, (Funnel<Object>) funnel, hashFunction, nodes, offset);
+            offset += digestLength;
+        }
+        return verify(nodes);
+    }
+
+    /**
+     * Verifica che i digest forniti siano, nell'ordine, quelli delle foglie
+     * dell'intervallo.
+     *
+     * @param leaves
+     *                   i digest delle foglie dell'intervallo.
+     * @return true se tutti i digest sono validi secondo la prova; false
+     *         altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la lista o uno dei digest è
+     *                                      null.
+     */
+    public boolean verify(List<Digest> leaves) {
+        if (leaves == null)
+            throw new IllegalArgumentException("The leaves cannot be null");
+        if (leaves.size() != to - from)
+            return false;
+        int digestLength = hashFunction.getDigestLength();
+        byte[] nodes = new byte[leaves.size() * digestLength];
+        int offset = 0;
+        for (Digest leaf : leaves) {
+            if (leaf == null)
+                throw new IllegalArgumentException("The leaves cannot be null");
+            if (leaf.length() != digestLength)
+                return false;
+            leaf.copyTo(nodes, offset);
+            offset += digestLength;
+        }
+        return verify(nodes);
+    }
+
+    @Override
+    public String toString() {
+        return "MerkleRangeProof [" + from + ", " + to + ") of " + width + ", " + siblings.size() + " siblings]";
+    }
+
+    /**
+     * Ricalcola la radice dai digest consecutivi delle foglie, che vengono
+     * sovrascritti, e la confronta con quella della prova.
+     */
+    private boolean verify(byte[] nodes) {
+        Iterator<Digest> digests = siblings.iterator();
+        Digest computed = MerkleWalk.computeRangeRoot(width, from, to, nodes, hashFunction,
+                (level, position) -> digests.hasNext() ? digests.next() : null);
+        // tutti i digest della prova devono essere stati usati
+        return !digests.hasNext() && root.equals(computed);
+    }
+}
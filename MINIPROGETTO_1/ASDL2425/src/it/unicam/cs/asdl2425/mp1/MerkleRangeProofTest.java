@@ -0,0 +1,171 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static it.unicam.cs.asdl2425.mp1.TestTrees.treeOf;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link MerkleRangeProof}. Questa classe
+ * verifica la generazione e la verifica delle prove per intervalli di foglie
+ * consecutive di un {@link MerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testAllRanges()}: Verifica che la prova sia valida per ogni
+ * intervallo di alberi fino a 20 foglie.</li>
+ *
+ * <li>{@link #testTwoSiblingsPerLevel()}: Verifica che ogni prova contenga al
+ * più due fratelli per livello.</li>
+ *
+ * <li>{@link #testSameSiblingsAsMultiProof()}: Verifica che ogni prova
+ * contenga gli stessi fratelli della prova per più foglie.</li>
+ *
+ * <li>{@link #testWrongData()}: Verifica che un intervallo spostato, dati
+ * mancanti o in un altro ordine vengano respinti.</li>
+ *
+ * <li>{@link #testLeafDigests()}: Verifica che la prova accetti i digest delle
+ * foglie e li respinga per un altro intervallo.</li>
+ *
+ * <li>{@link #testTamperedSiblings()}: Verifica che una prova alterata,
+ * troncata o allungata venga respinta.</li>
+ *
+ * <li>{@link #testInvalidRange()}: Verifica che venga lanciata un'eccezione
+ * per intervalli vuoti o fuori dalle foglie.</li>
+ *
+ * <li>{@link #testInvalidProofArguments()}: Verifica che venga lanciata
+ * un'eccezione per una radice di lunghezza diversa.</li>
+ *
+ * <li>{@link #testInvalidData()}: Verifica che venga lanciata un'eccezione per
+ * dati o digest null.</li>
+ * </ul>
+ */
+class MerkleRangeProofTest {
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> data = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            data.add(i);
+        }
+        return data;
+    }
+
+    private static List<Digest> digests(int from, int to) {
+        List<Digest> leaves = new ArrayList<>();
+        for (int data = from; data < to; data++) {
+            leaves.add(HashUtil.dataToDigest(data));
+        }
+        return leaves;
+    }
+
+    private static MerkleRangeProof withSiblings(MerkleRangeProof proof, List<Digest> siblings) {
+        return new MerkleRangeProof(13, 3, 9, proof.getRootDigest(), HashFunction.MD5, Funnels.object(), siblings);
+    }
+
+    @Test
+    void testAllRanges() {
+        for (int width = 1; width <= 20; width++) {
+            MerkleTree<Integer> tree = treeOf(width);
+            for (int from = 0; from < width; from++) {
+                for (int to = from + 1; to <= width; to++) {
+                    assertTrue(tree.getRangeProof(from, to).proveValidityOfData(range(from, to)),
+                            "La prova di [" + from + ", " + to + ") su " + width + " foglie dovrebbe essere valida.");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTwoSiblingsPerLevel() {
+        for (int width = 1; width <= 20; width++) {
+            MerkleTree<Integer> tree = treeOf(width);
+            for (int from = 0; from < width; from++) {
+                for (int to = from + 1; to <= width; to++) {
+                    assertTrue(tree.getRangeProof(from, to).getSiblings().size() <= 2 * tree.getHeight(),
+                            "La prova di [" + from + ", " + to + ") su " + width
+                                    + " foglie dovrebbe avere al più due fratelli per livello.");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSameSiblingsAsMultiProof() {
+        for (int width = 1; width <= 20; width++) {
+            MerkleTree<Integer> tree = treeOf(width);
+            for (int from = 0; from < width; from++) {
+                for (int to = from + 1; to <= width; to++) {
+                    assertEquals(tree.getMultiProof(range(from, to)).getSiblings(),
+                            tree.getRangeProof(from, to).getSiblings(), "La prova di [" + from + ", " + to
+                                    + ") su " + width + " foglie dovrebbe contenere solo i fratelli necessari.");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testWrongData() {
+        MerkleRangeProof proof = treeOf(13).getRangeProof(3, 9);
+        assertFalse(proof.proveValidityOfData(range(4, 10)), "Un intervallo spostato non è valido.");
+        assertFalse(proof.proveValidityOfData(range(3, 8)), "Mancano dei dati.");
+        assertFalse(proof.proveValidityOfData(Arrays.asList(3, 4, 5, 7, 6, 8)), "L'ordine dei dati conta.");
+    }
+
+    @Test
+    void testLeafDigests() {
+        MerkleRangeProof proof = treeOf(13).getRangeProof(3, 9);
+        assertTrue(proof.verify(digests(3, 9)), "I digest delle foglie dovrebbero essere validi.");
+        MerkleRangeProof shifted = new MerkleRangeProof(13, 2, 8, proof.getRootDigest(), HashFunction.MD5,
+                Funnels.object(), proof.getSiblings());
+        assertFalse(shifted.verify(digests(3, 9)), "La prova non vale per un altro intervallo.");
+    }
+
+    @Test
+    void testTamperedSiblings() {
+        MerkleRangeProof proof = treeOf(13).getRangeProof(3, 9);
+        List<Digest> leaves = digests(3, 9);
+        List<Digest> altered = new ArrayList<>(proof.getSiblings());
+        altered.set(0, HashUtil.dataToDigest("alterato"));
+        assertFalse(withSiblings(proof, altered).verify(leaves), "Una prova alterata non è valida.");
+        List<Digest> truncated = proof.getSiblings().subList(0, proof.getSiblings().size() - 1);
+        assertFalse(withSiblings(proof, truncated).verify(leaves), "Una prova troncata non è valida.");
+        List<Digest> extended = new ArrayList<>(proof.getSiblings());
+        extended.add(HashUtil.dataToDigest("in più"));
+        assertFalse(withSiblings(proof, extended).verify(leaves), "Una prova allungata non è valida.");
+    }
+
+    @Test
+    void testInvalidRange() {
+        MerkleTree<Integer> tree = treeOf(5);
+        assertThrows(IllegalArgumentException.class, () -> tree.getRangeProof(2, 2),
+                "Un intervallo vuoto dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> tree.getRangeProof(-1, 2),
+                "Un inizio negativo dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> tree.getRangeProof(3, 6),
+                "Un intervallo oltre le foglie dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidProofArguments() {
+        Digest root = treeOf(5).getRoot().getDigest();
+        assertThrows(IllegalArgumentException.class, () -> new MerkleRangeProof(5, 1, 2, root,
+                HashFunction.SHA256, Funnels.object(), Collections.emptyList()),
+                "Una radice di lunghezza diversa dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testInvalidData() {
+        MerkleTree<Integer> tree = treeOf(5);
+        Digest root = tree.getRoot().getDigest();
+        MerkleRangeProof proof = tree.getRangeProof(1, 4);
+        assertThrows(IllegalArgumentException.class, () -> proof.proveValidityOfData(null),
+                "Dati null dovrebbero lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> proof.verify(Arrays.asList(root, null, root)),
+                "Un digest null dovrebbe lanciare IllegalArgumentException.");
+    }
+}
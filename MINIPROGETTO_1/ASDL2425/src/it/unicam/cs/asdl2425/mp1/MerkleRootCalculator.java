@@ -0,0 +1,271 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Calcola l'hash della radice di un albero di Merkle leggendo i dati uno alla
+ * volta, senza costruire né la {@link HashLinkedList} né il
+ * {@link MerkleTree}. La radice ottenuta è la stessa di
+ * {@code new MerkleTree<>(list).getRoot()} per una lista con gli stessi dati,
+ * la stessa funzione di hash e lo stesso funnel, compresa la regola per cui un
+ * nodo senza fratello viene combinato con la stringa vuota.
+ *
+ * <p>
+ * Per ogni livello viene conservato al più un digest in attesa del proprio
+ * fratello destro, come le cifre di un contatore binario: la memoria occupata
+ * è logaritmica nel numero di dati, e permette di calcolare la radice di
+ * miliardi di elementi.
+ *
+ * @param <T>
+ *                il tipo dei dati.
+ */
+public class MerkleRootCalculator<T> {
+
+    /**
+     * Numero massimo di livelli, sufficiente per qualsiasi numero di dati
+     * rappresentabile con un long.
+     */
+    private static final int MAX_LEVELS = 64;
+
+    private final HashFunction hashFunction;
+
+    private final Funnel<? super T> funnel;
+
+    private final int digestLength;
+
+    /**
+     * Il digest in attesa di ciascun livello, uno dopo l'altro. Il livello
+     * {@code l} ha un digest in attesa se e solo se il bit {@code l} del
+     * numero di dati aggiunti vale 1.
+     */
+    private final byte[] pending;
+
+    /**
+     * Digest che risale i livelli durante un'aggiunta.
+     */
+    private final byte[] carry;
+
+    /**
+     * Numero di dati aggiunti.
+     */
+    private long count;
+
+    /**
+     * Costruisce un calcolatore che usa MD5 e il funnel di default, come
+     * {@link HashLinkedList#HashLinkedList()}.
+     */
+    public MerkleRootCalculator() {
+        this(HashFunction.MD5);
+    }
+
+    /**
+     * Costruisce un calcolatore che usa la funzione di hash indicata e il
+     * funnel di default.
+     *
+     * @param hashFunction
+     *                         la funzione di hash.
+     * @throws IllegalArgumentException
+     *                                      se la funzione di hash è null.
+     */
+    public MerkleRootCalculator(HashFunction hashFunction) {
+        this(hashFunction, Funnels.object());
+    }
+
+    /**
+     * Costruisce un calcolatore che usa la funzione di hash e il funnel
+     * indicati.
+     *
+     * @param hashFunction
+     *                         la funzione di hash.
+     * @param funnel
+     *                         il funnel dei dati.
+     * @throws IllegalArgumentException
+     *                                      se la funzione di hash o il funnel
+     *                                      sono null.
+     */
+    public MerkleRootCalculator(HashFunction hashFunction, Funnel<? super T> funnel) {
+        if (hashFunction == null)
+            throw new IllegalArgumentException("The hash function cannot be null");
+        if (funnel == null)
+            throw new IllegalArgumentException("The funnel cannot be null");
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
+        this.digestLength = hashFunction.getDigestLength();
+        this.pending = new byte[MAX_LEVELS * digestLength];
+        this.carry = new byte[digestLength];
+    }
+
+    /**
+     * Aggiunge un dato come foglia successiva.
+     *
+     * @param data
+     *                 il dato da aggiungere.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public void add(T data) {
+        if (data == null)
+            throw new IllegalArgumentException("Data cannot be null");
+        HashUtil.hash(data, funnel, hashFunction, carry, 0);
+        push();
+    }
+
+    /**
+     * Aggiunge come foglia successiva un digest già calcolato, ad esempio con
+     * {@link HashUtil#hash(java.nio.channels.ReadableByteChannel, HashFunction)}.
+     *
+     * @param leaf
+     *                 il digest della foglia.
+     * @throws IllegalArgumentException
+     *                                      se il digest è null o ha una
+     *                                      lunghezza diversa da quella della
+     *                                      funzione di hash.
+     */
+    public void addDigest(Digest leaf) {
+        if (leaf == null || leaf.length() != digestLength)
+            throw new IllegalArgumentException("The leaf digest is null or has the wrong length");
+        leaf.copyTo(carry, 0);
+        push();
+    }
+
+    /**
+     * Aggiunge, nell'ordine, tutti i dati forniti dall'iteratore.
+     *
+     * @param data
+     *                 l'iteratore dei dati.
+     * @throws IllegalArgumentException
+     *                                      se l'iteratore o uno dei dati è
+     *                                      null.
+     */
+    public void addAll(Iterator<? extends T> data) {
+        if (data == null)
+            throw new IllegalArgumentException("The iterator cannot be null");
+        while (data.hasNext()) {
+            add(data.next());
+        }
+    }
+
+    /**
+     * Aggiunge, nell'ordine, tutti i dati dello stream. Lo stream viene
+     * consumato nell'ordine dei suoi elementi anche se è parallelo.
+     *
+     * @param data
+     *                 lo stream dei dati.
+     * @throws IllegalArgumentException
+     *                                      se lo stream o uno dei dati è null.
+     */
+    public void addAll(Stream<? extends T> data) {
+        if (data == null)
+            throw new IllegalArgumentException("The stream cannot be null");
+        data.forEachOrdered(this::add);
+    }
+
+    /**
+     * Restituisce il numero di dati aggiunti.
+     *
+     * @return il numero di dati aggiunti.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Restituisce la funzione di hash usata.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Calcola il digest della radice dell'albero formato dai dati aggiunti
+     * finora. Il calcolatore non viene modificato e può continuare a ricevere
+     * dati.
+     *
+     * @return il digest della radice.
+     * @throws IllegalStateException
+     *                                   se non è stato aggiunto alcun dato.
+     */
+    public Digest getRootDigest() {
+        if (count == 0)
+            throw new IllegalStateException("No data has been added");
+        // "node" è l'ultimo nodo, incompleto, del livello corrente: nasce dai
+        // digest in attesa dei livelli inferiori
+        byte[] node = new byte[digestLength];
+        boolean hasNode = false;
+        for (int level = 0;; level++) {
+            boolean hasPending = ((count >>> level) & 1) == 1;
+            if (nodesAt(level) == 1) {
+                return hasNode ? Digest.wrap(node) : Digest.of(pending, level * digestLength, digestLength);
+            }
+            if (hasPending) {
+                // il digest in attesa si combina con il nodo incompleto, se
+                // c'è, altrimenti è l'ultimo nodo del livello ed è da solo
+                hashFunction.combine(pending, level * digestLength, hasNode ? node : null, 0, node, 0);
+                hasNode = true;
+            } else if (hasNode) {
+                hashFunction.combine(node, 0, null, 0, node, 0);
+            }
+        }
+    }
+
+    /**
+     * Restituisce la rappresentazione esadecimale della radice, la stessa di
+     * {@link MerkleTree#getRoot()}.
+     *
+     * @return l'hash della radice.
+     * @throws IllegalStateException
+     *                                   se non è stato aggiunto alcun dato.
+     */
+    public String getRoot() {
+        return getRootDigest().toString();
+    }
+
+    /**
+     * Calcola in un solo passo l'hash della radice dei dati forniti
+     * dall'iteratore, usando MD5 e il funnel di default.
+     *
+     * @param <T>
+     *                 il tipo dei dati.
+     * @param data
+     *                 l'iteratore dei dati.
+     * @return il digest della radice.
+     * @throws IllegalArgumentException
+     *                                      se l'iteratore o uno dei dati è
+     *                                      null.
+     * @throws IllegalStateException
+     *                                      se l'iteratore è vuoto.
+     */
+    public static <T> Digest rootOf(Iterator<? extends T> data) {
+        MerkleRootCalculator<T> calculator = new MerkleRootCalculator<>();
+        calculator.addAll(data);
+        return calculator.getRootDigest();
+    }
+
+    /**
+     * Inserisce il digest contenuto in {@link #carry} come nuova foglia,
+     * combinandolo con i digest in attesa finché trova un livello libero.
+     */
+    private void push() {
+        if (count == Long.MAX_VALUE)
+            throw new IllegalStateException("Too many leaves");
+        int level = 0;
+        while (((count >>> level) & 1) == 1) {
+            hashFunction.combine(pending, level * digestLength, carry, 0, carry, 0);
+            level++;
+        }
+        System.arraycopy(carry, 0, pending, level * digestLength, digestLength);
+        count++;
+    }
+
+    /**
+     * Restituisce il numero di nodi del livello indicato.
+     */
+    private long nodesAt(int level) {
+        long complete = count >>> level;
+        boolean partial = (count & ((1L << level) - 1)) != 0;
+        return partial ? complete + 1 : complete;
+    }
+}
@@ -0,0 +1,83 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link MerkleRootCalculator}. Questa classe
+ * verifica che la radice calcolata leggendo i dati uno alla volta coincida con
+ * quella di un {@link MerkleTree}.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testSameRootAsMerkleTree()}: Verifica che, per ogni numero di
+ * dati da 1 a 70, la radice coincida con quella dell'albero costruito dagli
+ * stessi dati.</li>
+ *
+ * <li>{@link #testOtherHashFunction()}: Verifica la radice con una diversa
+ * funzione di hash e con dati forniti da uno stream.</li>
+ *
+ * <li>{@link #testAddDigest()}: Verifica che aggiungere i digest delle foglie
+ * equivalga ad aggiungere i dati.</li>
+ *
+ * <li>{@link #testInvalidInput()}: Verifica che vengano lanciate le eccezioni
+ * previste per input non validi o in assenza di dati.</li>
+ * </ul>
+ */
+class MerkleRootCalculatorTest {
+
+    @Test
+    void testSameRootAsMerkleTree() {
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        MerkleRootCalculator<Integer> calculator = new MerkleRootCalculator<>();
+        for (int i = 0; i < 70; i++) {
+            list.addAtTail(i);
+            calculator.add(i);
+            assertEquals(new MerkleTree<>(list).getRoot().getHash(), calculator.getRoot(),
+                    "La radice con " + (i + 1) + " dati non corrisponde a quella dell'albero.");
+        }
+        assertEquals(70, calculator.getCount(), "Dovrebbero essere stati aggiunti 70 dati.");
+        assertEquals(calculator.getRootDigest(), MerkleRootCalculator.rootOf(list.iterator()),
+                "La radice calcolata da un iteratore non corrisponde.");
+    }
+
+    @Test
+    void testOtherHashFunction() {
+        HashLinkedList<Integer> list = new HashLinkedList<>(HashFunction.SHA256);
+        IntStream.range(0, 13).forEach(list::addAtTail);
+        MerkleRootCalculator<Integer> calculator = new MerkleRootCalculator<>(HashFunction.SHA256);
+        calculator.addAll(IntStream.range(0, 13).boxed().parallel());
+        assertEquals(new MerkleTree<>(list).getRoot().getHash(), calculator.getRoot(),
+                "La radice con SHA-256 non corrisponde a quella dell'albero.");
+    }
+
+    @Test
+    void testAddDigest() {
+        MerkleRootCalculator<String> byData = new MerkleRootCalculator<>();
+        MerkleRootCalculator<String> byDigest = new MerkleRootCalculator<>();
+        for (String data : List.of("a", "b", "c")) {
+            byData.add(data);
+            byDigest.addDigest(HashUtil.dataToDigest(data));
+        }
+        assertEquals(byData.getRootDigest(), byDigest.getRootDigest(),
+                "Aggiungere i digest dovrebbe equivalere ad aggiungere i dati.");
+    }
+
+    @Test
+    void testInvalidInput() {
+        MerkleRootCalculator<String> calculator = new MerkleRootCalculator<>();
+        assertThrows(IllegalStateException.class, calculator::getRootDigest,
+                "Senza dati dovrebbe lanciare IllegalStateException.");
+        assertThrows(IllegalArgumentException.class, () -> calculator.add(null),
+                "Un dato null dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class,
+                () -> calculator.addDigest(HashUtil.dataToDigest("a", HashFunction.SHA256)),
+                "Un digest di lunghezza diversa dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> new MerkleRootCalculator<String>(null),
+                "Una funzione di hash null dovrebbe lanciare IllegalArgumentException.");
+    }
+}
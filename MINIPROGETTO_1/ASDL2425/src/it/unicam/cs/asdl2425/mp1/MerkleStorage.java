@@ -0,0 +1,133 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Memoria contigua in cui un {@link MerkleTree} conserva i digest di tutti i
+ * suoi nodi. La memoria è divisa in posizioni (slot) di dimensione fissa, pari
+ * alla lunghezza del digest, numerate a partire da 0: la corrispondenza tra i
+ * nodi dell'albero e le posizioni è decisa dall'albero, che la calcola con
+ * semplici operazioni aritmetiche, senza memorizzare riferimenti tra i nodi.
+ *
+ * <p>
+ * Le implementazioni non sono thread-safe in scrittura, ma devono permettere
+ * letture concorrenti di posizioni diverse.
+ */
+abstract class MerkleStorage {
+
+    /**
+     * Lunghezza in byte di ciascun digest memorizzato.
+     */
+    private final int digestLength;
+
+    /**
+     * Costruisce una memoria per digest della lunghezza indicata.
+     *
+     * @param digestLength
+     *                         la lunghezza in byte di ciascun digest.
+     * @throws IllegalArgumentException
+     *                                      se la lunghezza non è positiva.
+     */
+    MerkleStorage(int digestLength) {
+        if (digestLength <= 0)
+            throw new IllegalArgumentException("The digest length must be positive");
+        this.digestLength = digestLength;
+    }
+
+    /**
+     * Restituisce la lunghezza in byte di ciascun digest memorizzato.
+     *
+     * @return la lunghezza di ciascun digest.
+     */
+    final int getDigestLength() {
+        return digestLength;
+    }
+
+    /**
+     * Restituisce il numero di posizioni disponibili.
+     *
+     * @return il numero di posizioni.
+     */
+    abstract long getCapacity();
+
+    /**
+     * Copia il digest in posizione {@code slot} nell'array fornito.
+     *
+     * @param slot
+     *                   la posizione del digest.
+     * @param dst
+     *                   l'array di destinazione.
+     * @param offset
+     *                   la posizione di partenza nell'array di destinazione.
+     */
+    abstract void read(long slot, byte[] dst, int offset);
+
+    /**
+     * Scrive in posizione {@code slot} il digest contenuto nell'array fornito.
+     *
+     * @param slot
+     *                   la posizione del digest.
+     * @param src
+     *                   l'array sorgente.
+     * @param offset
+     *                   la posizione del primo byte del digest nell'array.
+     */
+    abstract void write(long slot, byte[] src, int offset);
+
+    /**
+     * Verifica se il digest in posizione {@code slot} coincide con quello
+     * fornito, senza copiarlo.
+     *
+     * @param slot
+     *                   la posizione del digest.
+     * @param digest
+     *                   il digest da confrontare.
+     * @return true se i digest coincidono, false altrimenti.
+     */
+    abstract boolean matches(long slot, Digest digest);
+
+    /**
+     * Restituisce il digest in posizione {@code slot}.
+     *
+     * @param slot
+     *                 la posizione del digest.
+     * @return il digest memorizzato.
+     */
+    Digest getDigest(long slot) {
+        byte[] bytes = new byte[digestLength];
+        read(slot, bytes, 0);
+        return Digest.wrap(bytes);
+    }
+
+    /**
+     * Verifica se i digest in posizione {@code slot} di questa memoria e in
+     * posizione {@code otherSlot} di un'altra memoria coincidono.
+     *
+     * @param slot
+     *                      la posizione in questa memoria.
+     * @param other
+     *                      l'altra memoria.
+     * @param otherSlot
+     *                      la posizione nell'altra memoria.
+     * @return true se i digest coincidono, false altrimenti.
+     */
+    boolean sameDigest(long slot, MerkleStorage other, long otherSlot) {
+        return other.getDigestLength() == digestLength && other.matches(otherSlot, getDigest(slot));
+    }
+
+    /**
+     * Indica se la memoria è in sola lettura, ad esempio perché mappata da un
+     * file: in questo caso {@link #write(long, byte[], int)} lancia
+     * un'eccezione.
+     *
+     * @return true se la memoria è in sola lettura, false altrimenti.
+     */
+    boolean isReadOnly() {
+        return false;
+    }
+
+    /**
+     * Rilascia la memoria occupata. Per le memorie nello heap non fa nulla,
+     * dato che la memoria viene recuperata dal garbage collector.
+     */
+    void close() {
+    }
+}
@@ -1,8 +1,25 @@
 package it.unicam.cs.asdl2425.mp1;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ObjIntConsumer;
 
 // TODO inserire solo gli import della Java SE che si ritengono necessari
 
@@ -12,7 +29,40 @@ import java.util.Set;
  * all'interno di un set di dati più ampio. Viene costruito eseguendo l'hashing
  * ricorsivo di coppie di dati (valori hash crittografici) fino a ottenere un
  * singolo hash root. In questa implementazione la verifica di dati avviene
- * utilizzando hash MD5.
+ * utilizzando hash MD5, oppure la {@link HashFunction} della lista da cui
+ * l'albero è costruito.
+ *
+ * <p>
+ * I digest di tutti i nodi sono conservati in un'unica memoria contigua
+ * ({@link MerkleStorage}), livello per livello a partire dalle foglie: il nodo
+ * in posizione {@code p} del livello {@code l} copre le foglie da
+ * {@code p * 2^l} a {@code (p + 1) * 2^l - 1}, e i suoi figli sono i nodi
+ * {@code 2p} e {@code 2p + 1} del livello {@code l - 1}. Gli oggetti
+ * {@link MerkleNode} restituiti da {@link #getRoot()} sono viste create su
+ * richiesta che leggono i digest da questa memoria. Su richiesta i nodi
+ * possono essere disposti nel layout di van Emde Boas
+ * ({@link NodeLayout#VAN_EMDE_BOAS}), che avvicina in memoria i nodi di uno
+ * stesso cammino dalla radice alle foglie.
+ *
+ * <p>
+ * Con {@link StorageMode#OFF_HEAP} la memoria dei digest si trova al di fuori
+ * dello heap: in questo caso l'albero va chiuso con {@link #close()} quando
+ * non serve più, dopodiché qualsiasi operazione che legge i digest lancia
+ * un'{@link IllegalStateException}.
+ *
+ * <p>
+ * L'albero può essere modificato con {@link #updateLeaf(int, Object)} e
+ * {@link #append(Object)}, che ricalcolano solo i nodi nel cammino verso la
+ * radice. Le modifiche non sono thread-safe: non devono essere eseguite in
+ * concorrenza con altre operazioni sullo stesso albero.
+ *
+ * <p>
+ * Un albero può essere salvato su file con {@link #save(Path)} e ricaricato
+ * con {@link #load(Path, Funnel)} senza ricalcolare alcun hash. Il file
+ * contiene un'intestazione seguita dai digest di tutti i livelli, uno dopo
+ * l'altro a partire dalle foglie, nello stesso ordine della memoria: al
+ * caricamento il file viene mappato in memoria e i digest vengono letti solo
+ * quando servono. Il formato è descritto in {@link #save(Path)}.
  *
  * @author Luca Tesei, Marco Caputo (template) **INSERIRE NOME, COGNOME ED EMAIL
  *         xxxx@studenti.unicam.it DELLO STUDENTE** (implementazione)
@@ -20,16 +70,132 @@ import java.util.Set;
  * @param <T>
  *                il tipo di dati su cui l'albero è costruito.
  */
-public class MerkleTree<T> {
+public class MerkleTree<T> implements AutoCloseable {
+
+    /**
+     * Dove conservare i digest dei nodi dell'albero.
+     */
+    public enum StorageMode {
+        /**
+         * In un unico array nello heap.
+         */
+        HEAP,
+        /**
+         * In buffer diretti al di fuori dello heap, adatti ad alberi con
+         * centinaia di milioni di foglie.
+         */
+        OFF_HEAP
+    }
+
+    /**
+     * Ordine in cui i digest dei nodi sono disposti nella memoria.
+     */
+    public enum NodeLayout {
+        /**
+         * Livello per livello a partire dalle foglie e da sinistra a destra in
+         * ogni livello.
+         */
+        LEVEL_ORDER,
+        /**
+         * Layout di van Emde Boas: l'albero viene diviso a metà altezza in un
+         * sottoalbero superiore e nei sottoalberi inferiori, ciascuno
+         * disposto ricorsivamente allo stesso modo in una porzione contigua
+         * della memoria. Un cammino dalla radice a una foglia attraversa
+         * {@code O(log_B n)} blocchi di memoria di {@code B} digest, per
+         * qualsiasi {@code B}, invece di uno per livello. La memoria ha spazio
+         * per un albero completo con un numero di foglie pari alla potenza di
+         * 2 successiva alla capacità, per cui può occupare fino al doppio di
+         * {@link #LEVEL_ORDER}.
+         */
+        VAN_EMDE_BOAS
+    }
+
     /**
-     * Nodo radice dell'albero.
+     * Numero di livelli dei sottoalberi costruiti da un singolo task: ogni
+     * task calcola tutti i nodi sopra un blocco di {@code 2^BLOCK_LEVELS}
+     * foglie consecutive.
      */
-    private final MerkleNode root;
+    static final int BLOCK_LEVELS = 10;
+
+    /**
+     * Numero magico all'inizio dei file creati con {@link #save(Path)}: i
+     * caratteri ASCII {@code MRKL}.
+     */
+    static final int FILE_MAGIC = 0x4d524b4c;
+
+    /**
+     * Versione del formato dei file creati con {@link #save(Path)}.
+     */
+    static final short FILE_VERSION = 1;
+
+    /**
+     * Memoria contenente i digest di tutti i nodi, nell'ordine indicato da
+     * {@link #nodeLayout}.
+     */
+    private MerkleStorage storage;
+
+    /**
+     * Dove vengono conservati i digest dei nodi.
+     */
+    private final StorageMode storageMode;
+
+    /**
+     * Ordine dei nodi nella memoria.
+     */
+    private final NodeLayout nodeLayout;
+
+    /**
+     * Numero di foglie per cui è riservato spazio in memoria. Coincide con la
+     * larghezza finché non vengono aggiunte foglie con {@link #append}.
+     */
+    private int leafCapacity;
+
+    /**
+     * Numero di nodi di ciascun livello, a partire dalle foglie. Sono
+     * significativi solo i livelli fino all'altezza dell'albero.
+     */
+    private int[] levelWidths;
+
+    /**
+     * Numero del primo nodo di ciascun livello, se i nodi sono numerati
+     * livello per livello: con {@link NodeLayout#LEVEL_ORDER} è anche la sua
+     * posizione nella memoria.
+     */
+    private long[] levelOffsets;
+
+    /**
+     * Altezza dell'albero, ovvero l'indice del livello della radice.
+     */
+    private int height;
+
+    /**
+     * Indice che associa il digest di ogni foglia alla sua posizione. Per gli
+     * alberi caricati da file viene costruito solo alla prima ricerca.
+     */
+    private volatile DigestIndex leafIndex;
+
+    /**
+     * Indice che associa il digest di ogni nodo interno alla sua posizione,
+     * costruito solo alla prima ricerca di un branch esterno all'albero. I
+     * nodi interni sono numerati livello per livello a partire dal livello
+     * sopra le foglie.
+     */
+    private volatile DigestIndex branchIndex;
 
     /**
      * Larghezza dell'albero, ovvero il numero di nodi nell'ultimo livello.
      */
-    private final int width;
+    private int width;
+
+    /**
+     * Funzione di hash dei nodi, la stessa della lista da cui è costruito.
+     */
+    private final HashFunction hashFunction;
+
+    /**
+     * Funnel dei dati, lo stesso della lista da cui è costruito.
+     */
+    private final Funnel<? super T> funnel;
 
     /**
      * Costruisce un albero di Merkle a partire da un oggetto HashLinkedList,
@@ -37,7 +203,9 @@ public class MerkleTree<T> {
      * foglie. Si noti che gli hash dei nodi intermedi dovrebbero essere
      * ottenuti da quelli inferiori concatenando hash adiacenti due a due e
      * applicando direttmaente la funzione di hash MD5 al risultato della
-     * concatenazione in bytes.
+     * concatenazione in bytes. Se la lista usa una diversa
+     * {@link HashFunction}, la stessa funzione viene usata per i nodi
+     * intermedi.
      *
      * @param hashList
      *                     un oggetto HashLinkedList contenente i dati e i
@@ -46,33 +214,275 @@ public class MerkleTree<T> {
      *                                      se la lista è null o vuota.
      */
     public MerkleTree(HashLinkedList<T> hashList) {
-        // TODO implementare
+        this(hashList, StorageMode.HEAP);
+    }
+
+    /**
+     * Costruisce un albero di Merkle a partire da un oggetto HashLinkedList,
+     * come {@link #MerkleTree(HashLinkedList)}, conservando i digest dei nodi
+     * nella memoria indicata.
+     *
+     * @param hashList
+     *                        un oggetto HashLinkedList contenente i dati e i
+     *                        relativi hash.
+     * @param storageMode
+     *                        dove conservare i digest dei nodi.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se la
+     *                                      modalità è null.
+     */
+    public MerkleTree(HashLinkedList<T> hashList, StorageMode storageMode) {
+        this(hashList, storageMode, null);
+    }
+
+    /**
+     * Costruisce un albero di Merkle a partire da un oggetto HashLinkedList,
+     * come {@link #MerkleTree(HashLinkedList, StorageMode)}, calcolando i
+     * nodi in parallelo sul pool indicato: le foglie vengono divise in blocchi
+     * consecutivi i cui sottoalberi sono calcolati da task indipendenti, e i
+     * livelli superiori, molto più piccoli, vengono completati al termine. La
+     * radice ottenuta è identica a quella della costruzione sequenziale.
+     *
+     * @param hashList
+     *                        un oggetto HashLinkedList contenente i dati e i
+     *                        relativi hash.
+     * @param storageMode
+     *                        dove conservare i digest dei nodi.
+     * @param pool
+     *                        il pool su cui eseguire la costruzione, oppure
+     *                        null per costruire l'albero nel thread corrente.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se la
+     *                                      modalità è null.
+     */
+    public MerkleTree(HashLinkedList<T> hashList, StorageMode storageMode, ForkJoinPool pool) {
+        this(hashList, storageMode, NodeLayout.LEVEL_ORDER, pool);
+    }
+
+    /**
+     * Costruisce un albero di Merkle a partire da un oggetto HashLinkedList,
+     * come {@link #MerkleTree(HashLinkedList, StorageMode, ForkJoinPool)},
+     * disponendo i digest dei nodi nella memoria nell'ordine indicato. Il
+     * layout non cambia né i digest né le prove, ma solo la località degli
+     * accessi: con {@link NodeLayout#VAN_EMDE_BOAS} la generazione delle
+     * prove e le discese dalla radice su alberi molto più grandi della cache
+     * leggono meno blocchi di memoria.
+     *
+     * @param hashList
+     *                        un oggetto HashLinkedList contenente i dati e i
+     *                        relativi hash.
+     * @param storageMode
+     *                        dove conservare i digest dei nodi.
+     * @param nodeLayout
+     *                        l'ordine dei nodi nella memoria.
+     * @param pool
+     *                        il pool su cui eseguire la costruzione, oppure
+     *                        null per costruire l'albero nel thread corrente.
+     * @throws IllegalArgumentException
+     *                                      se la lista è null o vuota o se la
+     *                                      modalità o il layout sono null.
+     */
+    public MerkleTree(HashLinkedList<T> hashList, StorageMode storageMode, NodeLayout nodeLayout,
+            ForkJoinPool pool) {
         if (hashList == null || hashList.getSize() == 0) {
             throw new IllegalArgumentException("The list cannot be null or empty");
         }
+        if (storageMode == null || nodeLayout == null) {
+            throw new IllegalArgumentException("The storage mode and the node layout cannot be null");
+        }
+
+        this.hashFunction = hashList.getHashFunction();
+        this.funnel = hashList.getFunnel();
+        this.storageMode = storageMode;
+        this.nodeLayout = nodeLayout;
+        this.width = hashList.getSize();
+
+        // calcolo la larghezza di ogni livello e la sua posizione in memoria
+        this.storage = allocate(width);
+        updateLevelWidths();
+        int levels = height + 1;
+
+        // ogni blocco di foglie consecutive produce un sottoalbero completo,
+        // indipendente dagli altri
+        List<Digest> leaves = hashList.getAllDigests();
+        int blockLevels = Math.min(BLOCK_LEVELS, levels - 1);
+        int blocks = (int) (((long) width + (1L << blockLevels) - 1) >>> blockLevels);
+        HashUtil.RangeAction buildBlocks = (from, to) -> {
+            byte[] buffer = new byte[3 * hashFunction.getDigestLength()];
+            for (int block = from; block < to; block++) {
+                buildBlock(leaves, block, blockLevels, buffer);
+            }
+        };
+        if (pool == null) {
+            buildBlocks.run(0, blocks);
+        } else {
+            pool.invoke(new HashUtil.HashTask(0, blocks, 1, buildBlocks));
+        }
 
-        // creo i nodi foglia
-        ArrayList<MerkleNode> currentLevel = new ArrayList<>();
-        for (String hash : hashList.getAllHashes()) {
-            currentLevel.add(new MerkleNode(hash));
+        // completo i livelli superiori livello per livello
+        byte[] buffer = new byte[3 * hashFunction.getDigestLength()];
+        for (int level = blockLevels + 1; level < levels; level++) {
+            buildLevel(level, 0, levelWidths[level], buffer);
         }
 
-        // costruisco l'albero livello per livello
-        while (currentLevel.size() > 1) {
-            ArrayList<MerkleNode> nextLevel = new ArrayList<>();
-            for (int i = 0; i < currentLevel.size(); i += 2) {
-                MerkleNode left = currentLevel.get(i);
-                MerkleNode right = (i + 1 < currentLevel.size()) ? currentLevel.get(i + 1) : null;
-                String parentHash = HashUtil.computeMD5(
-                        (left.getHash() + (right != null ? right.getHash() : "")).getBytes());
-                nextLevel.add(new MerkleNode(parentHash, left, right));
+        // indicizzo le foglie per trovarle in tempo costante
+        DigestIndex index = new DigestIndex(width, (leaf, digest) -> storage.matches(slot(0, leaf), digest));
+        for (int i = 0; i < width; i++) {
+            index.add(i, leaves.get(i));
+        }
+        this.leafIndex = index;
+    }
+
+    /**
+     * Costruisce un albero a partire da una memoria che contiene già i digest
+     * di tutti i nodi, disposti come in un albero con capacità pari alla
+     * larghezza.
+     */
+    private MerkleTree(MerkleStorage storage, int width, HashFunction hashFunction, Funnel<? super T> funnel) {
+        this.hashFunction = hashFunction;
+        this.funnel = funnel;
+        this.storageMode = StorageMode.OFF_HEAP;
+        this.nodeLayout = NodeLayout.LEVEL_ORDER;
+        this.width = width;
+        layout(width);
+        updateLevelWidths();
+        this.storage = storage;
+    }
+
+    /**
+     * Carica un albero salvato con {@link #save(Path)}, usando il funnel di
+     * default per i dati cercati o aggiunti in seguito.
+     *
+     * @param <T>
+     *                 il tipo dei dati dell'albero.
+     * @param file
+     *                 il file da caricare.
+     * @return l'albero caricato.
+     * @throws IOException
+     *                                      se il file non può essere letto o
+     *                                      non è nel formato previsto.
+     * @throws IllegalArgumentException
+     *                                      se il file è null.
+     * @see #load(Path, Funnel)
+     */
+    public static <T> MerkleTree<T> load(Path file) throws IOException {
+        return load(file, Funnels.object());
+    }
+
+    /**
+     * Carica un albero salvato con {@link #save(Path)}. Il file viene mappato
+     * in memoria in sola lettura, senza leggere né ricalcolare i digest: la
+     * radice, le prove e i confronti con altri alberi leggono dal file solo i
+     * nodi di cui hanno bisogno, e l'indice delle foglie viene costruito alla
+     * prima ricerca di un dato. Il tempo di caricamento non dipende quindi
+     * dalla dimensione dell'albero.
+     *
+     * <p>
+     * L'albero caricato si comporta come un albero con
+     * {@link StorageMode#OFF_HEAP}: va chiuso con {@link #close()} quando non
+     * serve più. Il file non viene mai modificato: alla prima chiamata di
+     * {@link #updateLeaf(int, Object)} o {@link #append(Object)} i digest
+     * vengono copiati in una memoria al di fuori dello heap.
+     *
+     * @param <T>
+     *                   il tipo dei dati dell'albero.
+     * @param file
+     *                   il file da caricare.
+     * @param funnel
+     *                   il funnel con cui sono stati calcolati i digest delle
+     *                   foglie, usato per i dati cercati o aggiunti in
+     *                   seguito.
+     * @return l'albero caricato.
+     * @throws IOException
+     *                                      se il file non può essere letto o
+     *                                      non è nel formato previsto.
+     * @throws IllegalArgumentException
+     *                                      se il file o il funnel sono null.
+     */
+    public static <T> MerkleTree<T> load(Path file, Funnel<? super T> funnel) throws IOException {
+        if (file == null || funnel == null) {
+            throw new IllegalArgumentException("The file and the funnel cannot be null");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // lo stream non va chiuso: il canale viene chiuso alla fine
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a Merkle tree file: " + file);
+            }
+            short version = in.readShort();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported Merkle tree file version: " + version);
+            }
+            byte[] name = new byte[in.readUnsignedShort()];
+            in.readFully(name);
+            int digestLength = in.readInt();
+            int width = in.readInt();
+            long headerLength = 16 + name.length;
+
+            HashFunction hashFunction;
+            try {
+                hashFunction = HashFunction.forName(new String(name, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown hash function in " + file, e);
             }
-            currentLevel = nextLevel;
+            if (digestLength != hashFunction.getDigestLength() || width < 1) {
+                throw new IOException("Corrupted Merkle tree header in " + file);
+            }
+            long nodes = nodeCount(width);
+            if (channel.size() != headerLength + nodes * digestLength) {
+                throw new IOException("Truncated or corrupted Merkle tree file: " + file);
+            }
+            MerkleStorage storage = OffHeapMerkleStorage.map(channel, headerLength, digestLength, nodes);
+            return new MerkleTree<>(storage, width, hashFunction, funnel);
         }
+    }
 
-        // imposto radice e altezza
-        this.root = currentLevel.get(0);
-        this.width = hashList.getSize();
+    /**
+     * Salva l'albero nel file indicato, sovrascrivendolo se esiste, così da
+     * poterlo ricaricare con {@link #load(Path, Funnel)} senza ricalcolare gli
+     * hash. Il file, con interi in formato big-endian, contiene:
+     *
+     * <ul>
+     * <li>il numero magico {@code MRKL} (4 byte) e la versione del formato (2
+     * byte);</li>
+     * <li>la lunghezza (2 byte) e i byte UTF-8 del nome della funzione di
+     * hash, come restituito da {@link HashFunction#getName()};</li>
+     * <li>la lunghezza dei digest (4 byte) e il numero di foglie (4
+     * byte);</li>
+     * <li>i digest dei nodi, livello per livello a partire dalle foglie e da
+     * sinistra a destra in ogni livello, senza separatori.</li>
+     * </ul>
+     *
+     * Il funnel dei dati non viene salvato.
+     *
+     * @param file
+     *                 il file in cui salvare l'albero.
+     * @throws IOException
+     *                                      se il file non può essere scritto.
+     * @throws IllegalArgumentException
+     *                                      se il file è null.
+     */
+    public void save(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("The file cannot be null");
+        }
+        byte[] name = hashFunction.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] buffer = new byte[storage.getDigestLength()];
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), HashUtil.CHUNK_SIZE))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeShort(FILE_VERSION);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeInt(buffer.length);
+            out.writeInt(width);
+            for (int level = 0; level <= height; level++) {
+                for (int p = 0; p < levelWidths[level]; p++) {
+                    storage.read(slot(level, p), buffer, 0);
+                    out.write(buffer);
+                }
+            }
+        }
     }
 
     /**
@@ -81,7 +491,7 @@ public class MerkleTree<T> {
      * @return il nodo radice.
      */
     public MerkleNode getRoot() {
-        return root;
+        return new NodeView(this, height, 0);
     }
 
     /**
@@ -93,6 +503,37 @@ public class MerkleTree<T> {
         return width;
     }
 
+    /**
+     * Restituisce la funzione di hash usata dall'albero.
+     *
+     * @return la funzione di hash dell'albero.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce l'ordine dei nodi nella memoria dell'albero. Gli alberi
+     * caricati da file usano sempre {@link NodeLayout#LEVEL_ORDER}, lo stesso
+     * del file.
+     *
+     * @return il layout dei nodi.
+     */
+    public NodeLayout getNodeLayout() {
+        return nodeLayout;
+    }
+
+    /**
+     * Rilascia la memoria dei digest se si trova al di fuori dello heap. Dopo
+     * la chiusura le operazioni che leggono i digest lanciano
+     * un'{@link IllegalStateException}. Per gli alberi nello heap non ha
+     * effetto.
+     */
+    @Override
+    public void close() {
+        storage.close();
+    }
+
     /**
      * Restituisce l'altezza dell'albero.
      *
@@ -100,8 +541,7 @@ public class MerkleTree<T> {
      */
     public int getHeight() {
         // TODO implementare
-        if (root == null) return -1; // l'altezza di un albero vuoto è -1
-        return calculateHeight(root) - 1; // Subtract 1 to match the expected height
+        return height;
     }
 
     /**
@@ -131,12 +571,20 @@ public class MerkleTree<T> {
         if (branch == null || data == null) {
             throw new IllegalArgumentException("Branch and data cannot be null");
         }
-        if (!validateBranch(branch)) {
+        long position = locate(branch);
+        if (position < 0) {
             throw new IllegalArgumentException("Branch is not part of this tree");
         }
-
-        String targetHash = HashUtil.dataToHash(data);
-        return findIndexInBranch(branch, targetHash, 0, calculateBranchWidth(branch));
+        int level = (int) (position >>> 32);
+        int first = ((int) position) << level;
+        int last = (int) Math.min((long) first + (1L << level), width);
+        // le foglie con lo stesso digest sono in ordine crescente
+        DigestIndex leaves = leafIndex();
+        int index = leaves.first(HashUtil.hash(data, funnel, hashFunction));
+        while (index >= 0 && index < first) {
+            index = leaves.next(index);
+        }
+        return index < 0 || index >= last ? -1 : index - first;
     }
 
     /**
@@ -158,7 +606,30 @@ public class MerkleTree<T> {
         if (data == null) {
             throw new IllegalArgumentException("Data cannot be null");
         }
-        return findIndex(root, HashUtil.dataToHash(data), 0, width);
+        return leafIndex().first(HashUtil.hash(data, funnel, hashFunction));
+    }
+
+    /**
+     * Restituisce gli indici di tutte le foglie il cui hash coincide con
+     * quello dell'elemento fornito, in ordine crescente. Gli indici seguono lo
+     * stesso ordine di {@link #getIndexOfData(Object)}.
+     *
+     * @param data
+     *                 l'elemento da cercare.
+     * @return la lista degli indici del dato, vuota se il dato non è presente.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public List<Integer> getIndicesOfData(T data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        List<Integer> indices = new ArrayList<>();
+        DigestIndex leaves = leafIndex();
+        for (int i = leaves.first(HashUtil.hash(data, funnel, hashFunction)); i >= 0; i = leaves.next(i)) {
+            indices.add(i);
+        }
+        return indices;
     }
 
     /**
@@ -176,7 +647,7 @@ public class MerkleTree<T> {
         if (data == null) {
             throw new IllegalArgumentException("Data cannot be null");
         }
-        return containsHash(root, HashUtil.dataToHash(data));
+        return leafIndex().first(HashUtil.hash(data, funnel, hashFunction)) >= 0;
     }
 
     /**
@@ -195,7 +666,7 @@ public class MerkleTree<T> {
         if (branch == null) {
             throw new IllegalArgumentException("Branch cannot be null");
         }
-        return containsHash(root, branch.getHash());
+        return locate(branch) >= 0;
     }
 
     /**
@@ -215,7 +686,7 @@ public class MerkleTree<T> {
         if (otherTree == null) {
             throw new IllegalArgumentException("Other tree cannot be null");
         }
-        return this.root.getHash().equals(otherTree.getRoot().getHash());
+        return storage.sameDigest(rootSlot(), otherTree.storage, otherTree.rootSlot());
     }
 
     /**
@@ -242,15 +713,43 @@ public class MerkleTree<T> {
         if (otherTree == null) {
             throw new IllegalArgumentException("Other tree cannot be null");
         }
-        if (this.width != otherTree.getWidth()) {
+        if (this.width != otherTree.getWidth() || this.hashFunction != otherTree.getHashFunction()) {
             throw new IllegalArgumentException("The trees have different structures");
         }
 
+        // Stessa larghezza implica stessa struttura: scendo solo nei
+        // sottoalberi le cui radici hanno hash diversi
         Set<Integer> invalidIndices = new HashSet<>();
-        compareNodes(root, otherTree.getRoot(), 0, width, invalidIndices);
+        diff(otherTree, height, 0, invalidIndices);
         return invalidIndices;
     }
 
+    /**
+     * Come {@link #findInvalidDataIndices(MerkleTree)}, ma esplora in
+     * parallelo sul pool indicato i sottoalberi con hash diversi. I
+     * sottoalberi con meno di {@code 2^BLOCK_LEVELS} foglie vengono esplorati
+     * da un singolo task.
+     *
+     * @param otherTree
+     *                      l'altro Merkle Tree.
+     * @param pool
+     *                      il pool su cui eseguire il confronto.
+     * @throws IllegalArgumentException
+     *                                      se l'altro albero o il pool sono
+     *                                      null o se l'altro albero ha una
+     *                                      struttura diversa.
+     * @return l'insieme di indici degli elementi di dati non validi.
+     */
+    public Set<Integer> findInvalidDataIndices(MerkleTree<T> otherTree, ForkJoinPool pool) {
+        if (otherTree == null || pool == null) {
+            throw new IllegalArgumentException("Other tree and pool cannot be null");
+        }
+        if (this.width != otherTree.getWidth() || this.hashFunction != otherTree.getHashFunction()) {
+            throw new IllegalArgumentException("The trees have different structures");
+        }
+        return new HashSet<>(pool.invoke(new DiffTask(otherTree, height, 0)));
+    }
+
     /**
      * Restituisce la prova di Merkle per un dato elemento, ovvero la lista di
      * hash dei nodi fratelli di ciascun nodo nel cammino dalla radice a una
@@ -275,12 +774,11 @@ public class MerkleTree<T> {
             throw new IllegalArgumentException("Data cannot be null");
         }
 
-        String targetHash = HashUtil.dataToHash(data);
-        MerkleProof proof = new MerkleProof(root.getHash(), getHeight());
-        if (!buildProof(root, targetHash, proof)) {
+        int index = leafIndex().first(HashUtil.hash(data, funnel, hashFunction));
+        if (index < 0) {
             throw new IllegalArgumentException("Data not found in the tree");
         }
-        return proof;
+        return buildProof(0, index);
     }
 
     /**
@@ -304,187 +802,920 @@ public class MerkleTree<T> {
      */
     public MerkleProof getMerkleProof(MerkleNode branch) {
 
-        if (branch == null || !validateBranch(branch)) {
+        long position = branch == null ? -1 : locate(branch);
+        if (position < 0) {
             throw new IllegalArgumentException("Branch is null or not part of this tree");
         }
+        return buildProof((int) (position >>> 32), (int) position);
+    }
 
-        // Create a proof with the root hash and correct height
-        MerkleProof proof = new MerkleProof(root.getHash(), calculateProofHeight(branch));
-        buildBranchProof(root, branch, proof);
-        return proof;
+    /**
+     * Restituisce un'unica prova di Merkle per tutte le foglie indicate, con
+     * il minimo numero di digest di nodi fratelli: sono esclusi i nodi che si
+     * possono ricalcolare dalle foglie stesse, e i fratelli comuni a più
+     * cammini compaiono una volta sola. Gli indici dei dati si possono
+     * ottenere con {@link #getIndexOfData(Object)}.
+     *
+     * @param indices
+     *                    gli indici delle foglie, in qualsiasi ordine; gli
+     *                    indici ripetuti vengono considerati una volta sola.
+     * @return la prova per tutte le foglie.
+     * @throws IllegalArgumentException
+     *                                      se la collezione è null o vuota o
+     *                                      contiene un indice null o non
+     *                                      valido.
+     */
+    public MerkleMultiProof getMultiProof(Collection<Integer> indices) {
+        if (indices == null || indices.isEmpty()) {
+            throw new IllegalArgumentException("The indices cannot be null or empty");
+        }
+        int[] sorted = new int[indices.size()];
+        int count = 0;
+        for (Integer index : indices) {
+            if (index == null || index < 0 || index >= width) {
+                throw new IllegalArgumentException("Invalid leaf index: " + index);
+            }
+            sorted[count++] = index;
+        }
+        Arrays.sort(sorted);
+        // elimino gli indici ripetuti
+        count = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[count - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        sorted = Arrays.copyOf(sorted, count);
+
+        List<MerkleWalk.Node> known = new ArrayList<>(count);
+        for (int index : sorted) {
+            known.add(new MerkleWalk.Node(0, index, null));
+        }
+        List<Digest> siblings = new ArrayList<>();
+        MerkleWalk.computeRoot(width, known, null, (level, position) -> {
+            Digest sibling = storage.getDigest(slot(level, (int) position));
+            siblings.add(sibling);
+            return sibling;
+        });
+        return new MerkleMultiProof(width, sorted, storage.getDigest(rootSlot()), hashFunction, funnel, siblings);
+    }
+
+    /**
+     * Restituisce la prova di Merkle per le foglie consecutive da {@code from}
+     * (inclusa) a {@code to} (esclusa). La prova contiene solo i fratelli ai
+     * confini dell'intervallo, al più due per livello, e viene generata
+     * leggendo solo quei nodi: il suo costo non dipende dalla lunghezza
+     * dell'intervallo.
+     *
+     * @param from
+     *                 la prima foglia dell'intervallo.
+     * @param to
+     *                 la foglia successiva all'ultima dell'intervallo.
+     * @return la prova per l'intervallo.
+     * @throws IllegalArgumentException
+     *                                      se l'intervallo è vuoto o non è
+     *                                      contenuto nell'albero.
+     */
+    public MerkleRangeProof getRangeProof(int from, int to) {
+        if (from < 0 || to <= from || to > width) {
+            throw new IllegalArgumentException("Invalid range: [" + from + ", " + to + ")");
+        }
+        List<Digest> siblings = new ArrayList<>();
+        MerkleWalk.computeRangeRoot(width, from, to, null, null, (level, position) -> {
+            Digest sibling = storage.getDigest(slot(level, (int) position));
+            siblings.add(sibling);
+            return sibling;
+        });
+        return new MerkleRangeProof(width, from, to, storage.getDigest(rootSlot()), hashFunction, funnel, siblings);
     }
 
-    private int calculateHeight(MerkleNode node) {
-        if (node == null) return 0;
-        if (node.isLeaf()) return 1;
-        return 1 + Math.max(calculateHeight(node.getLeft()), calculateHeight(node.getRight()));
+    /**
+     * Restituisce la prova di Merkle per un dato elemento in forma compatta,
+     * equivalente a quella di {@link #getMerkleProof(Object)}: i digest dei
+     * fratelli vengono copiati direttamente dalla memoria dell'albero in un
+     * unico array, senza creare un oggetto per ogni passo.
+     *
+     * @param data
+     *                 l'elemento per cui generare la prova di Merkle.
+     * @return la prova di Merkle compatta per il dato.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o non è parte
+     *                                      dell'albero.
+     */
+    public CompactMerkleProof getCompactMerkleProof(T data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        int index = leafIndex().first(HashUtil.hash(data, funnel, hashFunction));
+        if (index < 0) {
+            throw new IllegalArgumentException("Data not found in the tree");
+        }
+        return buildCompactProof(0, index);
     }
 
-    private int findIndex(MerkleNode node, String targetHash, int offset, int branchWidth) {
-        if (node == null) return -1;
-        if (node.isLeaf() && node.getHash().equals(targetHash)) return offset;
+    /**
+     * Restituisce la prova di Merkle per un dato branch in forma compatta,
+     * equivalente a quella di {@link #getMerkleProof(MerkleNode)}.
+     *
+     * @param branch
+     *                   il branch per cui generare la prova di Merkle.
+     * @return la prova di Merkle compatta per il branch.
+     * @throws IllegalArgumentException
+     *                                      se il branch è null o non è parte
+     *                                      dell'albero.
+     */
+    public CompactMerkleProof getCompactMerkleProof(MerkleNode branch) {
+        long position = branch == null ? -1 : locate(branch);
+        if (position < 0) {
+            throw new IllegalArgumentException("Branch is null or not part of this tree");
+        }
+        return buildCompactProof((int) (position >>> 32), (int) position);
+    }
 
-        int halfWidth = branchWidth / 2;
-        int leftIndex = findIndex(node.getLeft(), targetHash, offset, halfWidth);
-        if (leftIndex != -1) return leftIndex;
+    /**
+     * Genera in un'unica passata la prova compatta di ogni foglia, in ordine
+     * di indice, e la passa all'azione insieme all'indice della foglia. Le
+     * foglie consecutive condividono i fratelli sopra il loro antenato comune,
+     * per cui passando da una foglia alla successiva vengono letti in media
+     * meno di due nodi: l'intera esportazione legge un numero di nodi lineare
+     * nel numero di foglie, invece di un cammino completo per ogni prova.
+     *
+     * @param action
+     *                   l'azione da eseguire per ogni prova.
+     * @throws IllegalArgumentException
+     *                                      se l'azione è null.
+     */
+    public void forEachLeafProof(ObjIntConsumer<CompactMerkleProof> action) {
+        if (action == null) {
+            throw new IllegalArgumentException("The action cannot be null");
+        }
+        ProofCursor cursor = new ProofCursor();
+        for (int i = 0; i < width; i++) {
+            action.accept(cursor.moveTo(i), i);
+        }
+    }
 
-        return findIndex(node.getRight(), targetHash, offset + halfWidth, halfWidth);
+    /**
+     * Come {@link #forEachLeafProof(ObjIntConsumer)}, ma divide le foglie in
+     * blocchi consecutivi di {@code 2^BLOCK_LEVELS} elaborati in parallelo sul
+     * pool indicato. L'azione viene quindi eseguita da più thread
+     * contemporaneamente e senza un ordine preciso tra le foglie.
+     *
+     * @param action
+     *                   l'azione da eseguire per ogni prova, che deve poter
+     *                   essere eseguita in concorrenza.
+     * @param pool
+     *                   il pool su cui generare le prove.
+     * @throws IllegalArgumentException
+     *                                      se l'azione o il pool sono null.
+     */
+    public void forEachLeafProof(ObjIntConsumer<CompactMerkleProof> action, ForkJoinPool pool) {
+        if (action == null || pool == null) {
+            throw new IllegalArgumentException("The action and the pool cannot be null");
+        }
+        pool.invoke(new HashUtil.HashTask(0, width, 1 << BLOCK_LEVELS, (from, to) -> {
+            ProofCursor cursor = new ProofCursor();
+            for (int i = from; i < to; i++) {
+                action.accept(cursor.moveTo(i), i);
+            }
+        }));
     }
 
-    private boolean containsHash(MerkleNode node, String targetHash) {
-        if (node == null) return false;
-        if (node.getHash().equals(targetHash)) return true;
-        return containsHash(node.getLeft(), targetHash) || containsHash(node.getRight(), targetHash);
+    /**
+     * Scrive sullo stream la prova compatta di ogni foglia, in ordine di
+     * indice. Lo stream contiene il numero di prove (4 byte) seguito, per
+     * ogni prova, dalla lunghezza della sua codifica (4 byte) e dalla
+     * codifica prodotta da {@link CompactMerkleProof#encode()}, che si può
+     * rileggere con {@link CompactMerkleProof#decode(byte[], HashFunction,
+     * Funnel)}. Lo stream non viene chiuso.
+     *
+     * @param out
+     *                lo stream su cui scrivere le prove.
+     * @throws IOException
+     *                                      se lo stream non può essere
+     *                                      scritto.
+     * @throws IllegalArgumentException
+     *                                      se lo stream è null.
+     */
+    public void exportProofs(OutputStream out) throws IOException {
+        exportProofs(out, null);
     }
 
-    private void findInvalidIndices(MerkleNode node1, MerkleNode node2, int offset, int branchWidth, Set<Integer> invalidIndices) {
-        if (node1 == null || node2 == null) return;
+    /**
+     * Come {@link #exportProofs(OutputStream)}, ma codifica le prove in
+     * parallelo sul pool indicato. Le prove vengono generate a gruppi di
+     * qualche blocco per ogni thread del pool e scritte nell'ordine delle
+     * foglie, per cui in memoria resta solo la codifica di un gruppo alla
+     * volta.
+     *
+     * @param out
+     *                 lo stream su cui scrivere le prove.
+     * @param pool
+     *                 il pool su cui codificare le prove, oppure null per
+     *                 codificarle nel thread corrente.
+     * @throws IOException
+     *                                      se lo stream non può essere
+     *                                      scritto.
+     * @throws IllegalArgumentException
+     *                                      se lo stream è null.
+     */
+    public void exportProofs(OutputStream out, ForkJoinPool pool) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("The output stream cannot be null");
+        }
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, HashUtil.CHUNK_SIZE));
+        data.writeInt(width);
+        if (pool == null) {
+            ProofCursor cursor = new ProofCursor();
+            for (int i = 0; i < width; i++) {
+                byte[] encoded = cursor.moveTo(i).encode();
+                data.writeInt(encoded.length);
+                data.write(encoded);
+            }
+        } else {
+            int batch = (int) Math.min(width, (4L * pool.getParallelism()) << BLOCK_LEVELS);
+            byte[][] encoded = new byte[batch][];
+            for (int first = 0; first < width; first += batch) {
+                int base = first;
+                int last = (int) Math.min((long) first + batch, width);
+                pool.invoke(new HashUtil.HashTask(first, last, 1 << BLOCK_LEVELS, (from, to) -> {
+                    ProofCursor cursor = new ProofCursor();
+                    for (int i = from; i < to; i++) {
+                        encoded[i - base] = cursor.moveTo(i).encode();
+                    }
+                }));
+                for (int i = 0; i < last - first; i++) {
+                    data.writeInt(encoded[i].length);
+                    data.write(encoded[i]);
+                    encoded[i] = null;
+                }
+            }
+        }
+        data.flush();
+    }
 
-        if (node1.isLeaf() && node2.isLeaf()) {
-            if (!node1.getHash().equals(node2.getHash())) {
-                invalidIndices.add(offset);
+    /**
+     * Restituisce la prova di consistenza tra la versione di questo albero
+     * formata dalle prime {@code oldWidth} foglie e quella attuale, ovvero la
+     * prova che l'albero attuale estende quello più vecchio aggiungendo dati
+     * in fondo.
+     *
+     * @param oldWidth
+     *                     il numero di foglie del vecchio albero.
+     * @return la prova di consistenza.
+     * @throws IllegalArgumentException
+     *                                      se {@code oldWidth} non è compreso
+     *                                      tra 1 e la larghezza dell'albero.
+     */
+    public ConsistencyProof getConsistencyProof(int oldWidth) {
+        if (oldWidth < 1 || oldWidth > width) {
+            throw new IllegalArgumentException("Invalid old width: " + oldWidth);
+        }
+        List<long[]> peaks = MerkleWalk.peaks(oldWidth);
+        List<Digest> path = new ArrayList<>();
+        List<MerkleWalk.Node> known = new ArrayList<>();
+        for (long[] peak : peaks) {
+            // i sottoalberi completi del vecchio albero sono anche in questo
+            known.add(new MerkleWalk.Node((int) peak[0], peak[1], null));
+            if (peaks.size() > 1) {
+                path.add(storage.getDigest(slot((int) peak[0], (int) peak[1])));
             }
-            return;
         }
+        MerkleWalk.computeRoot(width, known, null, (level, position) -> {
+            Digest sibling = storage.getDigest(slot(level, (int) position));
+            path.add(sibling);
+            return sibling;
+        });
+        return new ConsistencyProof(oldWidth, width, hashFunction, path);
+    }
 
-        int halfWidth = branchWidth / 2;
-        findInvalidIndices(node1.getLeft(), node2.getLeft(), offset, halfWidth, invalidIndices);
-        findInvalidIndices(node1.getRight(), node2.getRight(), offset + halfWidth, halfWidth, invalidIndices);
+    /**
+     * Restituisce la prova di consistenza tra un albero più vecchio e questo,
+     * come {@link #getConsistencyProof(int)}.
+     *
+     * @param olderTree
+     *                      il vecchio albero.
+     * @return la prova di consistenza.
+     * @throws IllegalArgumentException
+     *                                      se il vecchio albero è null, ha
+     *                                      più foglie di questo o usa una
+     *                                      diversa funzione di hash.
+     */
+    public ConsistencyProof getConsistencyProof(MerkleTree<T> olderTree) {
+        if (olderTree == null || olderTree.getHashFunction() != hashFunction) {
+            throw new IllegalArgumentException("The older tree is null or uses a different hash function");
+        }
+        return getConsistencyProof(olderTree.getWidth());
     }
 
-    private boolean buildProof(MerkleNode node, String targetHash, MerkleProof proof) {
-        if (node == null) return false;
-        if (node.getHash().equals(targetHash)) return true;
+    /**
+     * Sostituisce il dato in posizione {@code index} con quello fornito,
+     * ricalcolando solo gli hash dei nodi nel cammino dalla foglia alla
+     * radice. L'albero non è collegato alla lista da cui è stato costruito,
+     * che quindi non viene modificata.
+     *
+     * @param index
+     *                  l'indice della foglia da aggiornare.
+     * @param data
+     *                  il nuovo dato.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null o l'indice non è
+     *                                      valido.
+     */
+    public void updateLeaf(int index, T data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        if (index < 0 || index >= width) {
+            throw new IllegalArgumentException("Invalid leaf index: " + index);
+        }
+        ensureWritable();
+        byte[] buffer = new byte[3 * hashFunction.getDigestLength()];
+        // l'indice va aggiornato prima che la memoria cambi
+        DigestIndex leaves = leafIndex;
+        if (leaves != null) {
+            leaves.remove(index, storage.getDigest(slot(0, index)));
+        }
+        writeLeaf(index, HashUtil.hash(data, funnel, hashFunction), buffer);
+        rehashPath(index, buffer);
+    }
 
-        if (buildProof(node.getLeft(), targetHash, proof)) {
-            // Add empty string if right node is null, otherwise add its hash
-            proof.addHash(node.getRight() != null ? node.getRight().getHash() : "", false);
-            return true;
+    /**
+     * Aggiunge un dato in fondo all'albero, come ultima foglia, ricalcolando
+     * solo gli hash dei nodi nel cammino dalla nuova foglia alla radice. Se
+     * l'albero era completo, la vecchia radice diventa il figlio sinistro di
+     * una nuova radice e l'altezza aumenta di uno. Lo spazio in memoria viene
+     * raddoppiato quando si esaurisce, per un costo ammortizzato costante.
+     *
+     * @param data
+     *                 il dato da aggiungere.
+     * @throws IllegalArgumentException
+     *                                      se il dato è null.
+     */
+    public void append(T data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        if (width == Integer.MAX_VALUE) {
+            throw new IllegalStateException("The tree cannot grow any further");
         }
+        Digest digest = HashUtil.hash(data, funnel, hashFunction);
+        ensureWritable();
+        if (width == leafCapacity) {
+            grow((int) Math.min(2L * leafCapacity, Integer.MAX_VALUE));
+        }
+        int index = width++;
+        updateLevelWidths();
+        byte[] buffer = new byte[3 * hashFunction.getDigestLength()];
+        writeLeaf(index, digest, buffer);
+        rehashPath(index, buffer);
+    }
+
+    /**
+     * Riserva la memoria per un albero con {@code capacity} foglie e calcola
+     * la posizione di ciascun livello: il livello {@code l} ha spazio per
+     * {@code ceil(capacity / 2^l)} nodi.
+     *
+     * @return la memoria allocata.
+     */
+    private MerkleStorage allocate(int capacity) {
+        long totalNodes = layout(capacity);
+        return storageMode == StorageMode.OFF_HEAP
+                ? new OffHeapMerkleStorage(hashFunction.getDigestLength(), totalNodes)
+                : new HeapMerkleStorage(hashFunction.getDigestLength(), totalNodes);
+    }
 
-        if (buildProof(node.getRight(), targetHash, proof)) {
-            // Add empty string if left node is null, otherwise add its hash
-            proof.addHash(node.getLeft() != null ? node.getLeft().getHash() : "", true);
-            return true;
+    /**
+     * Calcola la numerazione di ciascun livello in una memoria per un albero
+     * con {@code capacity} foglie.
+     *
+     * @return il numero di nodi che la memoria deve contenere.
+     */
+    private long layout(int capacity) {
+        int levels = 1;
+        for (int w = capacity; w > 1; w = (w + 1) / 2) {
+            levels++;
         }
+        long[] offsets = new long[levels];
+        long totalNodes = 0;
+        for (int level = 0, w = capacity; level < levels; level++, w = (w + 1) / 2) {
+            offsets[level] = totalNodes;
+            totalNodes += w;
+        }
+        this.leafCapacity = capacity;
+        this.levelOffsets = offsets;
+        this.levelWidths = new int[levels];
+        // il layout di van Emde Boas dispone un albero completo
+        return nodeLayout == NodeLayout.VAN_EMDE_BOAS ? (1L << levels) - 1 : totalNodes;
+    }
 
-        return false;
+    /**
+     * Restituisce il numero di nodi di un albero con {@code width} foglie.
+     */
+    private static long nodeCount(int width) {
+        long total = width;
+        for (long w = width; w > 1;) {
+            w = (w + 1) / 2;
+            total += w;
+        }
+        return total;
     }
 
-    private boolean buildBranchProof(MerkleNode current, MerkleNode targetBranch, MerkleProof proof) {
-        if (current == null || current == targetBranch) {
-            return true;
+    /**
+     * Se la memoria è in sola lettura, perché mappata da un file, copia i
+     * digest in una nuova memoria modificabile.
+     */
+    private void ensureWritable() {
+        if (storage.isReadOnly()) {
+            grow(leafCapacity);
         }
+    }
 
-        if (buildBranchProof(current.getLeft(), targetBranch, proof)) {
-            // Add empty string if right node is null, otherwise add its hash
-            proof.addHash(current.getRight() != null ? current.getRight().getHash() : "", false);
-            return true;
+    /**
+     * Ricalcola larghezza di ciascun livello e altezza a partire dalla
+     * larghezza dell'albero.
+     */
+    private void updateLevelWidths() {
+        int level = 0;
+        int w = width;
+        levelWidths[0] = w;
+        while (w > 1) {
+            w = (w + 1) / 2;
+            levelWidths[++level] = w;
         }
+        this.height = level;
+    }
 
-        if (buildBranchProof(current.getRight(), targetBranch, proof)) {
-            if (current.getLeft() != null) {
-                proof.addHash(current.getLeft().getHash(), true);
+    /**
+     * Sposta tutti i nodi in una nuova memoria con spazio per
+     * {@code capacity} foglie, liberando la precedente.
+     */
+    private void grow(int capacity) {
+        MerkleStorage oldStorage = storage;
+        long[] oldOffsets = levelOffsets;
+        int[] oldWidths = levelWidths;
+        int oldHeight = height;
+        MerkleStorage newStorage = allocate(capacity);
+        byte[] buffer = new byte[storage.getDigestLength()];
+        for (int level = 0; level <= oldHeight; level++) {
+            for (int p = 0; p < oldWidths[level]; p++) {
+                oldStorage.read(slot(level, p, oldOffsets), buffer, 0);
+                newStorage.write(slot(level, p), buffer, 0);
             }
-            return true;
         }
+        System.arraycopy(oldWidths, 0, levelWidths, 0, oldHeight + 1);
+        this.storage = newStorage;
+        oldStorage.close();
+        // la numerazione dei nodi interni dipende dalla memoria
+        this.branchIndex = null;
+    }
 
-        return false;
+    /**
+     * Scrive il digest di una foglia e la aggiunge all'indice delle foglie.
+     */
+    private void writeLeaf(int index, Digest digest, byte[] buffer) {
+        digest.copyTo(buffer, 0);
+        storage.write(slot(0, index), buffer, 0);
+        DigestIndex leaves = leafIndex;
+        if (leaves != null) {
+            leaves.add(index, digest);
+        }
     }
 
-    private int findIndexInBranch(MerkleNode node, String targetHash, int offset, int branchWidth) {
-        if (node == null) {
-            return -1;
+    /**
+     * Ricalcola i nodi nel cammino dalla foglia indicata alla radice,
+     * mantenendo aggiornato l'indice dei nodi interni se è già stato
+     * costruito.
+     */
+    private void rehashPath(int leaf, byte[] buffer) {
+        DigestIndex index = branchIndex;
+        for (int level = 1, p = leaf >>> 1; level <= height; level++, p >>>= 1) {
+            int id = (int) (levelOffsets[level] - levelOffsets[1]) + p;
+            if (index != null) {
+                // i nodi appena aggiunti non sono nell'indice e vengono ignorati
+                index.remove(id, storage.getDigest(slot(level, p)));
+            }
+            buildLevel(level, p, p + 1, buffer);
+            if (index != null) {
+                index.add(id, storage.getDigest(slot(level, p)));
+            }
         }
+    }
+
+    /**
+     * Restituisce la posizione in memoria del nodo in posizione
+     * {@code position} del livello {@code level}.
+     */
+    private long slot(int level, int position) {
+        return slot(level, position, levelOffsets);
+    }
 
-        // If this is a leaf node
-        if (node.isLeaf()) {
-            if (node.getHash().equals(targetHash)) {
-                return offset;
+    /**
+     * Restituisce la posizione del nodo indicato in una memoria con la
+     * numerazione dei livelli {@code offsets}, nel layout dell'albero.
+     */
+    private long slot(int level, int position, long[] offsets) {
+        if (nodeLayout == NodeLayout.VAN_EMDE_BOAS) {
+            return vanEmdeBoasSlot(offsets.length - 1 - level, position, offsets.length);
+        }
+        return offsets[level] + position;
+    }
+
+    /**
+     * Restituisce la posizione, nel layout di van Emde Boas, del nodo in
+     * posizione {@code index} alla profondità {@code depth} di un albero
+     * binario completo con {@code levels} livelli. L'albero viene diviso in
+     * un sottoalbero superiore con {@code levels / 2} livelli, disposto per
+     * primo, seguito dai sottoalberi inferiori da sinistra a destra; la
+     * divisione prosegue nel sottoalbero che contiene il nodo, per cui il
+     * calcolo richiede {@code O(log log n)} passi.
+     */
+    static long vanEmdeBoasSlot(int depth, long index, int levels) {
+        long slot = 0;
+        while (levels > 1) {
+            int top = levels >>> 1;
+            if (depth < top) {
+                levels = top;
+            } else {
+                int bottom = levels - top;
+                int below = depth - top;
+                slot += (1L << top) - 1 + (index >>> below) * ((1L << bottom) - 1);
+                index &= (1L << below) - 1;
+                depth = below;
+                levels = bottom;
             }
-            return -1;
         }
+        return slot;
+    }
 
-        // Calculate the theoretical width at this level
-        int halfWidth = branchWidth / 2;
+    private long rootSlot() {
+        return slot(height, 0);
+    }
 
-        // Search left subtree
-        int leftIndex = findIndexInBranch(node.getLeft(), targetHash, offset, halfWidth);
-        if (leftIndex != -1) {
-            return leftIndex;
+    /**
+     * Scrive le foglie del blocco indicato e calcola i nodi dei primi
+     * {@code blockLevels} livelli che le coprono.
+     */
+    private void buildBlock(List<Digest> leaves, int block, int blockLevels, byte[] buffer) {
+        int first = block << blockLevels;
+        int last = (int) Math.min((long) first + (1 << blockLevels), width);
+        for (int i = first; i < last; i++) {
+            leaves.get(i).copyTo(buffer, 0);
+            storage.write(slot(0, i), buffer, 0);
+        }
+        for (int level = 1; level <= blockLevels; level++) {
+            int from = block << (blockLevels - level);
+            int to = Math.min(from + (1 << (blockLevels - level)), levelWidths[level]);
+            buildLevel(level, from, to, buffer);
         }
+    }
 
-        // Search right subtree
-        return findIndexInBranch(node.getRight(), targetHash, offset + halfWidth, halfWidth);
+    /**
+     * Calcola i digest dei nodi del livello indicato nelle posizioni da
+     * {@code from} (inclusa) a {@code to} (esclusa) a partire da quelli del
+     * livello inferiore, già calcolati. Un nodo senza fratello destro viene
+     * combinato con la stringa vuota.
+     */
+    private void buildLevel(int level, int from, int to, byte[] buffer) {
+        int digestLength = storage.getDigestLength();
+        int childWidth = levelWidths[level - 1];
+        for (int p = from; p < to; p++) {
+            int left = 2 * p;
+            boolean hasRight = left + 1 < childWidth;
+            storage.read(slot(level - 1, left), buffer, 0);
+            if (hasRight) {
+                storage.read(slot(level - 1, left + 1), buffer, digestLength);
+            }
+            // equivale a computeMD5((left.getHash() + right.getHash()).getBytes())
+            hashFunction.combine(buffer, 0, hasRight ? buffer : null, digestLength,
+                    buffer, 2 * digestLength);
+            storage.write(slot(level, p), buffer, 2 * digestLength);
+        }
     }
 
-    private int calculateBranchWidth(MerkleNode branch) {
-        if (branch == null) {
-            return 0;
+    /**
+     * Aggiunge gli indici delle foglie diverse nel sottoalbero del nodo
+     * indicato, senza scendere nei sottoalberi con lo stesso hash.
+     */
+    private void diff(MerkleTree<T> otherTree, int level, int position, Collection<Integer> invalidIndices) {
+        if (storage.sameDigest(slot(level, position), otherTree.storage, otherTree.slot(level, position))) {
+            return;
         }
+        if (level == 0) {
+            invalidIndices.add(position);
+            return;
+        }
+        diff(otherTree, level - 1, 2 * position, invalidIndices);
+        if (2 * position + 1 < levelWidths[level - 1]) {
+            diff(otherTree, level - 1, 2 * position + 1, invalidIndices);
+        }
+    }
+
+    /**
+     * Task che confronta un sottoalbero di due alberi con la stessa
+     * struttura, dividendosi sui figli con hash diversi.
+     */
+    private final class DiffTask extends RecursiveTask<List<Integer>> {
+        private static final long serialVersionUID = 1L;
 
-        // For leaf nodes, return 1
-        if (branch.isLeaf()) {
-            return 1;
+        private final MerkleTree<T> otherTree;
+
+        private final int level;
+
+        private final int position;
+
+        DiffTask(MerkleTree<T> otherTree, int level, int position) {
+            this.otherTree = otherTree;
+            this.level = level;
+            this.position = position;
         }
 
-        // For internal nodes, calculate the theoretical full width
-        int height = calculateHeight(branch) - 1;
-        return (int) Math.pow(2, height);
+        @Override
+        protected List<Integer> compute() {
+            List<Integer> invalidIndices = new ArrayList<>();
+            if (level <= BLOCK_LEVELS) {
+                diff(otherTree, level, position, invalidIndices);
+                return invalidIndices;
+            }
+            if (storage.sameDigest(slot(level, position), otherTree.storage, otherTree.slot(level, position))) {
+                return invalidIndices;
+            }
+            DiffTask left = new DiffTask(otherTree, level - 1, 2 * position);
+            if (2 * position + 1 >= levelWidths[level - 1]) {
+                return left.compute();
+            }
+            DiffTask right = new DiffTask(otherTree, level - 1, 2 * position + 1);
+            right.fork();
+            invalidIndices.addAll(left.compute());
+            invalidIndices.addAll(right.join());
+            return invalidIndices;
+        }
     }
 
-    // Add new helper method to calculate proof height
-    private int calculateProofHeight(MerkleNode branch) {
-        int branchHeight = 0;
-        MerkleNode current = root;
-        String branchHash = branch.getHash();
+    /**
+     * Individua un nodo di questo albero con lo stesso hash del nodo fornito.
+     * Se il nodo è una vista di questo albero le sue coordinate sono note,
+     * altrimenti viene cercato il nodo meno profondo con lo stesso digest.
+     *
+     * @return livello e posizione del nodo codificati come
+     *         {@code (livello << 32) | posizione}, oppure -1 se il nodo non è
+     *         parte dell'albero.
+     */
+    private long locate(MerkleNode node) {
+        if (node instanceof NodeView && ((NodeView) node).tree == this) {
+            NodeView view = (NodeView) node;
+            if (view.level <= height && view.position < levelWidths[view.level]) {
+                return ((long) view.level << 32) | view.position;
+            }
+        }
+        Digest target = node.getDigest();
+        // Un hash che non è un digest esadecimale non può appartenere all'albero
+        if (target == null) {
+            return -1;
+        }
+        // tra i nodi interni con lo stesso digest preferisco il meno profondo
+        long best = -1;
+        int bestLevel = 0;
+        DigestIndex index = branchIndex();
+        for (int id = index == null ? -1 : index.first(target); id >= 0; id = index.next(id)) {
+            long position = internalPosition(id);
+            int level = (int) (position >>> 32);
+            if (level > bestLevel) {
+                best = position;
+                bestLevel = level;
+            }
+        }
+        if (best >= 0) {
+            return best;
+        }
+        return leafIndex().first(target);
+    }
 
-        while (current != null && !current.getHash().equals(branchHash)) {
-            branchHeight++;
-            if (current.getLeft() != null && containsHash(current.getLeft(), branchHash)) {
-                current = current.getLeft();
-            } else if (current.getRight() != null && containsHash(current.getRight(), branchHash)) {
-                current = current.getRight();
-            } else {
-                break;
+    /**
+     * Restituisce l'indice delle foglie, costruendolo se necessario.
+     */
+    private DigestIndex leafIndex() {
+        DigestIndex index = leafIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = leafIndex;
+                if (index == null) {
+                    index = new DigestIndex(width, (leaf, digest) -> storage.matches(slot(0, leaf), digest));
+                    for (int i = 0; i < width; i++) {
+                        index.add(i, storage.getDigest(slot(0, i)));
+                    }
+                    leafIndex = index;
+                }
             }
         }
-        return branchHeight;
+        return index;
     }
 
-    private void compareNodes(MerkleNode node1, MerkleNode node2, int offset, int branchWidth, Set<Integer> invalidIndices) {
-        // Se entrambi i nodi sono null, sono strutturalmente equivalenti
-        if (node1 == null && node2 == null) {
-            return;
+    /**
+     * Restituisce l'indice dei nodi interni, costruendolo se necessario.
+     *
+     * @return l'indice dei nodi interni, oppure null se l'albero è formato da
+     *         una sola foglia.
+     */
+    private DigestIndex branchIndex() {
+        DigestIndex index = branchIndex;
+        if (index == null && height > 0) {
+            synchronized (this) {
+                index = branchIndex;
+                if (index == null) {
+                    int internalNodes = (int) (levelOffsets[height] - levelOffsets[1] + 1);
+                    index = new DigestIndex(internalNodes, (id, digest) -> {
+                        long position = internalPosition(id);
+                        return storage.matches(slot((int) (position >>> 32), (int) position), digest);
+                    });
+                    for (int level = 1; level <= height; level++) {
+                        int first = (int) (levelOffsets[level] - levelOffsets[1]);
+                        for (int p = 0; p < levelWidths[level]; p++) {
+                            index.add(first + p, storage.getDigest(slot(level, p)));
+                        }
+                    }
+                    branchIndex = index;
+                }
+            }
         }
-        // Se uno dei nodi è null ma l'altro no, c'è una discrepanza strutturale
-        if (node1 == null || node2 == null) {
-            invalidIndices.add(offset);
-            return;
+        return index;
+    }
+
+    /**
+     * Converte il numero di un nodo interno in livello e posizione, codificati
+     * come {@code (livello << 32) | posizione}.
+     */
+    private long internalPosition(int id) {
+        long offset = levelOffsets[1] + id;
+        int level = 1;
+        while (level + 1 < levelOffsets.length && levelOffsets[level + 1] <= offset) {
+            level++;
         }
+        return ((long) level << 32) | (offset - levelOffsets[level]);
+    }
 
-        // Se entrambi sono foglie, confronta gli hash
-        if (node1.isLeaf() && node2.isLeaf()) {
-            if (!node1.getHash().equals(node2.getHash())) {
-                invalidIndices.add(offset); // Aggiungi l'indice al set
+    /**
+     * Costruisce la prova di Merkle del nodo in posizione {@code position} del
+     * livello {@code level}, risalendo fino alla radice e aggiungendo a ogni
+     * passo l'hash del nodo fratello, oppure la stringa vuota se manca.
+     */
+    private MerkleProof buildProof(int level, int position) {
+        MerkleProof proof = new MerkleProof(storage.getDigest(rootSlot()).toString(), height - level,
+                hashFunction, funnel);
+        for (int l = level, p = position; l < height; l++, p >>>= 1) {
+            if ((p & 1) == 0) {
+                boolean hasRight = p + 1 < levelWidths[l];
+                proof.addHash(hasRight ? storage.getDigest(slot(l, p + 1)).toString() : "", false);
+            } else {
+                proof.addHash(storage.getDigest(slot(l, p - 1)).toString(), true);
             }
-            return;
         }
+        return proof;
+    }
 
-        // Se uno è foglia e l'altro no, c'è una discrepanza strutturale
-        if (node1.isLeaf() || node2.isLeaf()) {
-            throw new IllegalArgumentException("The trees have different structures");
+    /**
+     * Costruisce la prova compatta del nodo in posizione {@code position} del
+     * livello {@code level}, con gli stessi passi di
+     * {@link #buildProof(int, int)}.
+     */
+    private CompactMerkleProof buildCompactProof(int level, int position) {
+        int digestLength = storage.getDigestLength();
+        int steps = height - level;
+        long[] left = new long[(steps + 63) >>> 6];
+        long[] absent = new long[left.length];
+        // un nodo è senza fratello solo se è l'ultimo, in posizione pari
+        int present = steps;
+        for (int l = level, p = position; l < height; l++, p >>>= 1) {
+            if ((p & 1) == 0 && p + 1 >= levelWidths[l]) {
+                present--;
+            }
+        }
+        byte[] siblings = new byte[present * digestLength];
+        int offset = 0;
+        for (int l = level, p = position, step = 0; l < height; l++, p >>>= 1, step++) {
+            if ((p & 1) == 1) {
+                left[step >>> 6] |= 1L << (step & 63);
+                storage.read(slot(l, p - 1), siblings, offset);
+                offset += digestLength;
+            } else if (p + 1 < levelWidths[l]) {
+                storage.read(slot(l, p + 1), siblings, offset);
+                offset += digestLength;
+            } else {
+                absent[step >>> 6] |= 1L << (step & 63);
+            }
         }
+        return new CompactMerkleProof(hashFunction, funnel, storage.getDigest(rootSlot()), steps, left, absent,
+                siblings);
+    }
+
+    /**
+     * Cammino dalle foglie alla radice che si sposta da una foglia all'altra
+     * rileggendo solo i fratelli che cambiano: passando dalla foglia
+     * {@code i - 1} alla foglia {@code i} cambiano solo i passi sotto il loro
+     * antenato comune. I fratelli sono conservati in un passo per ogni
+     * livello, anche quando mancano, e vengono compattati solo quando si crea
+     * la prova. Ogni cursore è usato da un solo thread.
+     */
+    private final class ProofCursor {
+
+        private final int digestLength = storage.getDigestLength();
 
-        // Divide la larghezza del ramo per navigare nei sottoalberi
-        int halfWidth = branchWidth / 2;
+        private final Digest root = storage.getDigest(rootSlot());
 
-        // Confronta il sottoalbero sinistro
-        compareNodes(node1.getLeft(), node2.getLeft(), offset, halfWidth, invalidIndices);
+        private final byte[] path = new byte[height * digestLength];
 
-        // Confronta il sottoalbero destro
-        compareNodes(node1.getRight(), node2.getRight(), offset + halfWidth, halfWidth, invalidIndices);
+        private final long[] left = new long[(height + 63) >>> 6];
+
+        private final long[] absent = new long[left.length];
+
+        /**
+         * La foglia a cui si trova il cursore, oppure -1.
+         */
+        private int leaf = -1;
+
+        /**
+         * Sposta il cursore sulla foglia indicata e ne restituisce la prova.
+         */
+        CompactMerkleProof moveTo(int index) {
+            int changed = leaf >= 0 && index == leaf + 1 ? 32 - Integer.numberOfLeadingZeros(index ^ leaf)
+                    : height;
+            for (int step = 0; step < Math.min(changed, height); step++) {
+                int p = index >>> step;
+                long bit = 1L << (step & 63);
+                left[step >>> 6] &= ~bit;
+                absent[step >>> 6] &= ~bit;
+                if ((p & 1) == 1) {
+                    left[step >>> 6] |= bit;
+                    storage.read(slot(step, p - 1), path, step * digestLength);
+                } else if (p + 1 < levelWidths[step]) {
+                    storage.read(slot(step, p + 1), path, step * digestLength);
+                } else {
+                    absent[step >>> 6] |= bit;
+                }
+            }
+            leaf = index;
+
+            int missing = 0;
+            for (long word : absent) {
+                missing += Long.bitCount(word);
+            }
+            byte[] siblings;
+            if (missing == 0) {
+                siblings = path.clone();
+            } else {
+                siblings = new byte[(height - missing) * digestLength];
+                int offset = 0;
+                for (int step = 0; step < height; step++) {
+                    if ((absent[step >>> 6] & (1L << (step & 63))) == 0) {
+                        System.arraycopy(path, step * digestLength, siblings, offset, digestLength);
+                        offset += digestLength;
+                    }
+                }
+            }
+            return new CompactMerkleProof(hashFunction, funnel, root, height, left.clone(), absent.clone(),
+                    siblings);
+        }
     }
 
+    /**
+     * Vista di un nodo dell'albero, creata su richiesta: hash e figli vengono
+     * ricavati dalla memoria dell'albero a partire da livello e posizione.
+     */
+    private static final class NodeView extends MerkleNode {
+
+        private final MerkleTree<?> tree;
+
+        private final int level;
 
+        private final int position;
+
+        NodeView(MerkleTree<?> tree, int level, int position) {
+            this.tree = tree;
+            this.level = level;
+            this.position = position;
+        }
+
+        @Override
+        public String getHash() {
+            return getDigest().toString();
+        }
+
+        @Override
+        public Digest getDigest() {
+            return tree.storage.getDigest(tree.slot(level, position));
+        }
+
+        @Override
+        public MerkleNode getLeft() {
+            return level == 0 ? null : new NodeView(tree, level - 1, 2 * position);
+        }
+
+        @Override
+        public MerkleNode getRight() {
+            if (level == 0 || 2 * position + 1 >= tree.levelWidths[level - 1]) {
+                return null;
+            }
+            return new NodeView(tree, level - 1, 2 * position + 1);
+        }
+    }
 }
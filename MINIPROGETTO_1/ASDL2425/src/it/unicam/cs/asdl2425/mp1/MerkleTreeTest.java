@@ -3,11 +3,19 @@ package it.unicam.cs.asdl2425.mp1;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,6 +85,59 @@ import static org.junit.jupiter.api.Assertions.*;
  *
  * <li>{@link #testSingleLeafTree()}: Verifica il comportamento del MerkleTree per un singolo elemento,
  * controllando larghezza, altezza e validità dei dati.</li>
+ *
+ * <li>{@link #testTreeWithOtherHashFunction()}: Verifica che un albero costruito da una lista
+ * con una diversa funzione di hash usi la stessa funzione per i nodi e per le prove.</li>
+ *
+ * <li>{@link #testFindInvalidDataIndicesDifferentHashFunction()}: Verifica che venga lanciata
+ * un'eccezione confrontando alberi costruiti con funzioni di hash diverse.</li>
+ *
+ * <li>{@link #testValidateDataHashCodeCollision()}: Verifica che un dato con lo stesso
+ * {@code hashCode} di un dato dell'albero non venga considerato valido.</li>
+ *
+ * <li>{@link #testNodeViews()}: Verifica che i nodi restituiti da {@code getRoot()} descrivano
+ * la struttura dell'albero e che un nodo costruito con lo stesso hash sia riconosciuto.</li>
+ *
+ * <li>{@link #testOffHeapStorage()}: Verifica che un albero con i digest fuori dallo heap
+ * si comporti come quello nello heap e che non sia più utilizzabile dopo la chiusura.</li>
+ *
+ * <li>{@link #testParallelConstruction()}: Verifica che la costruzione parallela produca
+ * la stessa radice della costruzione sequenziale, anche con un numero dispari di nodi.</li>
+ *
+ * <li>{@link #testGetIndicesOfData()}: Verifica che vengano restituiti, in ordine, tutti gli
+ * indici di un dato ripetuto, e che la ricerca in un branch consideri solo le sue foglie.</li>
+ *
+ * <li>{@link #testBranchProofForEveryNode()}: Verifica che per ogni nodo dell'albero, anche
+ * ricostruito a partire dal solo hash, venga generata una prova valida della lunghezza attesa.</li>
+ *
+ * <li>{@link #testUpdateLeaf()}: Verifica che l'aggiornamento di una foglia produca lo stesso
+ * albero ricostruito da zero e mantenga aggiornate le ricerche dei dati e dei branch.</li>
+ *
+ * <li>{@link #testAppend()}: Verifica che aggiungendo dati uno alla volta si ottenga, a ogni passo,
+ * lo stesso albero ricostruito da zero, anche fuori dallo heap.</li>
+ *
+ * <li>{@link #testFindInvalidDataIndicesParallel()}: Verifica che il confronto parallelo e quello
+ * sequenziale trovino gli stessi dati non validi in alberi di grandi dimensioni.</li>
+ *
+ * <li>{@link #testSaveAndLoad()}: Verifica che un albero salvato su file e ricaricato abbia la stessa
+ * radice, le stesse prove e gli stessi dati, che resti modificabile senza alterare il file e che
+ * un file non valido venga rifiutato.</li>
+ *
+ * <li>{@link #testForEachLeafProof()}: Verifica che le prove generate in un'unica passata, anche in
+ * parallelo, coincidano con quelle delle singole foglie.</li>
+ *
+ * <li>{@link #testExportProofs()}: Verifica che le prove esportate su uno stream, anche in parallelo,
+ * si possano rileggere e siano valide per i dati delle foglie.</li>
+ *
+ * <li>{@link #testVanEmdeBoasLayout()}: Verifica che un albero con layout di van Emde Boas abbia la
+ * stessa radice e le stesse prove di uno con layout per livelli, anche dopo modifiche, aggiunte e
+ * salvataggio su file.</li>
+ *
+ * <li>{@link #testVanEmdeBoasSlots()}: Verifica che il layout di van Emde Boas assegni a ogni nodo di
+ * un albero completo una posizione diversa, con i sottoalberi inferiori in porzioni contigue.</li>
+ *
+ * <li>{@link #testManyEqualLeaves()}: Verifica che un albero con moltissime foglie uguali venga
+ * costruito e indicizzato rapidamente, anche nei nodi interni.</li>
  * </ul>
  */
 class MerkleTreeTest {
@@ -576,4 +637,444 @@ class MerkleTreeTest {
         assertTrue(singleTree.validateData("Alice paga Bob"),
                 "Il dato dovrebbe essere valido.");
     }
+
+    @Test
+    void testTreeWithOtherHashFunction() {
+        HashLinkedList<String> shaList = new HashLinkedList<>(HashFunction.SHA256);
+        shaList.addAtTail("Alice paga Bob");
+        shaList.addAtTail("Bob paga Charlie");
+        shaList.addAtTail("Charlie paga Diana");
+        shaList.addAtTail("Diana paga Alice");
+        MerkleTree<String> shaTree = new MerkleTree<>(shaList);
+
+        assertSame(HashFunction.SHA256, shaTree.getHashFunction(),
+                "L'albero dovrebbe usare la funzione di hash della lista.");
+        String left = HashFunction.SHA256.hashToHex((HashUtil.dataToHash("Alice paga Bob", HashFunction.SHA256)
+                + HashUtil.dataToHash("Bob paga Charlie", HashFunction.SHA256)).getBytes());
+        String right = HashFunction.SHA256.hashToHex((HashUtil.dataToHash("Charlie paga Diana", HashFunction.SHA256)
+                + HashUtil.dataToHash("Diana paga Alice", HashFunction.SHA256)).getBytes());
+        assertEquals(HashFunction.SHA256.hashToHex((left + right).getBytes()), shaTree.getRoot().getHash(),
+                "La radice dovrebbe essere calcolata con SHA-256.");
+        assertTrue(shaTree.validateData("Bob paga Charlie"), "Il dato dovrebbe essere valido.");
+        assertEquals(2, shaTree.getIndexOfData("Charlie paga Diana"), "L'indice del dato dovrebbe essere 2.");
+
+        MerkleProof proof = shaTree.getMerkleProof("Charlie paga Diana");
+        assertSame(HashFunction.SHA256, proof.getHashFunction(),
+                "La prova dovrebbe usare la funzione di hash dell'albero.");
+        assertTrue(proof.proveValidityOfData("Charlie paga Diana"), "La prova dovrebbe essere valida.");
+    }
+
+    @Test
+    void testFindInvalidDataIndicesDifferentHashFunction() {
+        HashLinkedList<String> murmurList = new HashLinkedList<>(HashFunction.MURMUR3_128);
+        for (String data : hashList1) murmurList.addAtTail(data);
+        MerkleTree<String> murmurTree = new MerkleTree<>(murmurList);
+
+        assertThrows(IllegalArgumentException.class, () -> merkleTree1.findInvalidDataIndices(murmurTree),
+                "Dovrebbe lanciare IllegalArgumentException per funzioni di hash diverse.");
+        assertFalse(merkleTree1.validateTree(murmurTree),
+                "Alberi costruiti con funzioni di hash diverse non dovrebbero essere validi.");
+    }
+
+    @Test
+    void testValidateDataHashCodeCollision() {
+        HashLinkedList<String> list = new HashLinkedList<>();
+        list.addAtTail("Aa");
+        list.addAtTail("Alice paga Bob");
+        MerkleTree<String> tree = new MerkleTree<>(list);
+
+        assertTrue(tree.validateData("Aa"), "Il dato dovrebbe essere valido.");
+        assertFalse(tree.validateData("BB"),
+                "Un dato con lo stesso hashCode non dovrebbe essere valido.");
+        assertEquals(-1, tree.getIndexOfData("BB"),
+                "Un dato con lo stesso hashCode non dovrebbe essere trovato.");
+    }
+
+    @Test
+    void testNodeViews() {
+        MerkleNode root = merkleTree2.getRoot();
+        assertEquals(root, merkleTree2.getRoot(), "La radice dovrebbe essere sempre la stessa.");
+        assertEquals(13, countLeaves(root), "L'albero dovrebbe avere 13 foglie.");
+
+        // L'ultimo nodo del penultimo livello non ha fratello destro
+        MerkleNode lone = root.getRight().getRight().getLeft();
+        assertNull(lone.getRight(), "Il nodo dovrebbe avere solo il figlio sinistro.");
+        assertEquals(HashUtil.computeMD5((lone.getLeft().getHash()).getBytes()), lone.getHash(),
+                "Un nodo con un solo figlio dovrebbe avere l'hash del solo figlio.");
+        assertEquals(HashUtil.computeMD5((root.getLeft().getHash() + root.getRight().getHash()).getBytes()),
+                root.getHash(), "La radice dovrebbe combinare gli hash dei figli.");
+
+        MerkleNode copy = new MerkleNode(root.getLeft().getHash());
+        assertEquals(root.getLeft(), copy, "Nodi con lo stesso hash dovrebbero essere uguali.");
+        assertTrue(merkleTree2.validateBranch(copy), "Il nodo dovrebbe essere un branch valido.");
+        assertEquals(merkleTree2.getMerkleProof(root.getLeft()).getLength(),
+                merkleTree2.getMerkleProof(copy).getLength(),
+                "Le prove dovrebbero avere la stessa lunghezza.");
+    }
+
+    @Test
+    void testOffHeapStorage() {
+        MerkleTree<Long> offHeap = new MerkleTree<>(hashList2, MerkleTree.StorageMode.OFF_HEAP);
+        assertEquals(merkleTree2.getRoot(), offHeap.getRoot(), "Le radici dovrebbero coincidere.");
+        assertEquals(merkleTree2.getHeight(), offHeap.getHeight(), "Le altezze dovrebbero coincidere.");
+        assertTrue(offHeap.validateTree(merkleTree2), "Gli alberi dovrebbero essere equivalenti.");
+        assertTrue(offHeap.findInvalidDataIndices(merkleTree2).isEmpty(),
+                "Non dovrebbero esserci dati non validi.");
+        assertEquals(12, offHeap.getIndexOfData(111L * 13), "L'indice del dato dovrebbe essere 12.");
+        assertTrue(offHeap.getMerkleProof(111L * 13).proveValidityOfData(111L * 13),
+                "La prova dovrebbe essere valida.");
+
+        offHeap.close();
+        assertThrows(IllegalStateException.class, () -> offHeap.validateData(111L),
+                "Dopo la chiusura l'albero non dovrebbe essere utilizzabile.");
+        assertThrows(IllegalStateException.class, () -> offHeap.getRoot().getHash(),
+                "Dopo la chiusura i nodi non dovrebbero essere leggibili.");
+        assertDoesNotThrow(offHeap::close, "Chiudere più volte non dovrebbe lanciare eccezioni.");
+    }
+
+    @Test
+    void testParallelConstruction() {
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        for (int i = 0; i < 5 * (1 << MerkleTree.BLOCK_LEVELS) + 3; i++) list.addAtTail(i);
+        MerkleTree<Integer> sequential = new MerkleTree<>(list);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MerkleTree<Integer> parallel = new MerkleTree<>(list, MerkleTree.StorageMode.HEAP, pool);
+            assertEquals(sequential.getRoot().getHash(), parallel.getRoot().getHash(),
+                    "La radice dovrebbe essere la stessa della costruzione sequenziale.");
+            assertEquals(sequential.getHeight(), parallel.getHeight(), "Le altezze dovrebbero coincidere.");
+            assertTrue(parallel.getMerkleProof(list.getSize() - 1).proveValidityOfData(list.getSize() - 1),
+                    "La prova dell'ultimo dato dovrebbe essere valida.");
+
+            MerkleTree<Long> small = new MerkleTree<>(hashList2, MerkleTree.StorageMode.OFF_HEAP, pool);
+            assertEquals(merkleTree2.getRoot(), small.getRoot(),
+                    "La radice di un albero piccolo dovrebbe essere la stessa.");
+            small.close();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testGetIndicesOfData() {
+        HashLinkedList<String> list = new HashLinkedList<>();
+        for (String data : new String[] { "a", "b", "a", "c", "a", "b" }) list.addAtTail(data);
+        MerkleTree<String> tree = new MerkleTree<>(list);
+
+        assertEquals(Arrays.asList(0, 2, 4), tree.getIndicesOfData("a"), "Gli indici di \"a\" non corrispondono.");
+        assertEquals(Arrays.asList(1, 5), tree.getIndicesOfData("b"), "Gli indici di \"b\" non corrispondono.");
+        assertTrue(tree.getIndicesOfData("d").isEmpty(), "Un dato non presente non dovrebbe avere indici.");
+        assertEquals(0, tree.getIndexOfData("a"), "Il primo indice di \"a\" dovrebbe essere 0.");
+
+        // Il branch destro della radice copre le foglie 4 e 5
+        assertEquals(0, tree.getIndexOfData(tree.getRoot().getRight(), "a"),
+                "Nel branch destro \"a\" dovrebbe avere indice relativo 0.");
+        assertEquals(-1, tree.getIndexOfData(tree.getRoot().getRight(), "c"),
+                "Nel branch destro \"c\" non dovrebbe essere presente.");
+    }
+
+    @Test
+    void testBranchProofForEveryNode() {
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        for (int i = 0; i < 37; i++) list.addAtTail(i);
+        MerkleTree<Integer> tree = new MerkleTree<>(list);
+        checkBranchProofs(tree, tree.getRoot(), 0);
+    }
+
+    private static void checkBranchProofs(MerkleTree<Integer> tree, MerkleNode node, int depth) {
+        if (node == null) return;
+        MerkleNode copy = new MerkleNode(node.getHash());
+        MerkleProof proof = tree.getMerkleProof(copy);
+        assertEquals(depth, proof.getLength(), "La prova del nodo " + node + " dovrebbe avere lunghezza " + depth + ".");
+        assertTrue(proof.proveValidityOfBranch(copy), "La prova del nodo " + node + " dovrebbe essere valida.");
+        checkBranchProofs(tree, node.getLeft(), depth + 1);
+        checkBranchProofs(tree, node.getRight(), depth + 1);
+    }
+
+    @Test
+    void testUpdateLeaf() {
+        MerkleNode oldBranch = new MerkleNode(merkleTree2.getRoot().getRight().getHash());
+        assertTrue(merkleTree2.validateBranch(oldBranch), "Il branch dovrebbe essere valido.");
+
+        merkleTree2.updateLeaf(12, 1000L);
+        HashLinkedList<Long> expectedList = new HashLinkedList<>();
+        for (int i = 1; i <= 12; i++) expectedList.addAtTail(111L * i);
+        expectedList.addAtTail(1000L);
+        MerkleTree<Long> expected = new MerkleTree<>(expectedList);
+
+        assertEquals(expected.getRoot(), merkleTree2.getRoot(), "La radice dovrebbe essere ricalcolata.");
+        assertEquals(12, merkleTree2.getIndexOfData(1000L), "Il nuovo dato dovrebbe avere indice 12.");
+        assertFalse(merkleTree2.validateData(111L * 13), "Il vecchio dato non dovrebbe essere più valido.");
+        assertFalse(merkleTree2.validateBranch(oldBranch), "Il vecchio branch non dovrebbe essere più valido.");
+        assertTrue(merkleTree2.validateBranch(new MerkleNode(expected.getRoot().getRight().getHash())),
+                "Il nuovo branch dovrebbe essere valido.");
+        assertTrue(merkleTree2.getMerkleProof(1000L).proveValidityOfData(1000L),
+                "La prova del nuovo dato dovrebbe essere valida.");
+        assertThrows(IllegalArgumentException.class, () -> merkleTree2.updateLeaf(13, 1L),
+                "Dovrebbe lanciare IllegalArgumentException per un indice non valido.");
+    }
+
+    @Test
+    void testAppend() {
+        for (MerkleTree.StorageMode mode : MerkleTree.StorageMode.values()) {
+            HashLinkedList<Integer> list = new HashLinkedList<>();
+            list.addAtTail(0);
+            MerkleTree<Integer> tree = new MerkleTree<>(list, mode);
+            // costruisco l'indice dei branch, che va mantenuto durante le aggiunte
+            assertTrue(tree.validateBranch(new MerkleNode(tree.getRoot().getHash())));
+            for (int i = 1; i < 40; i++) {
+                tree.append(i);
+                list.addAtTail(i);
+                MerkleTree<Integer> expected = new MerkleTree<>(list);
+                assertEquals(expected.getRoot(), tree.getRoot(), "La radice dopo " + (i + 1) + " dati non corrisponde.");
+                assertEquals(expected.getHeight(), tree.getHeight(), "L'altezza dopo " + (i + 1) + " dati non corrisponde.");
+                assertEquals(i + 1, tree.getWidth(), "La larghezza dovrebbe essere " + (i + 1) + ".");
+                assertEquals(i, tree.getIndexOfData(i), "Il dato aggiunto dovrebbe avere indice " + i + ".");
+                MerkleNode branch = new MerkleNode(expected.getRoot().getLeft().getHash());
+                assertEquals(expected.getMerkleProof(expected.getRoot().getLeft()).getLength(),
+                        tree.getMerkleProof(branch).getLength(), "Il branch sinistro dovrebbe essere trovato.");
+            }
+            assertTrue(tree.getMerkleProof(0).proveValidityOfData(0), "La prova del primo dato dovrebbe essere valida.");
+            tree.close();
+        }
+    }
+
+    @Test
+    void testFindInvalidDataIndicesParallel() {
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        HashLinkedList<Integer> modified = new HashLinkedList<>();
+        Set<Integer> expected = new HashSet<>(Arrays.asList(0, 1023, 1024, 4099, 5000));
+        for (int i = 0; i < 5001; i++) {
+            list.addAtTail(i);
+            modified.addAtTail(expected.contains(i) ? -i - 1 : i);
+        }
+        MerkleTree<Integer> tree = new MerkleTree<>(list);
+        MerkleTree<Integer> other = new MerkleTree<>(modified, MerkleTree.StorageMode.OFF_HEAP);
+
+        assertEquals(expected, tree.findInvalidDataIndices(other), "Il confronto sequenziale non corrisponde.");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, tree.findInvalidDataIndices(other, pool),
+                    "Il confronto parallelo non corrisponde.");
+            assertTrue(tree.findInvalidDataIndices(new MerkleTree<>(list), pool).isEmpty(),
+                    "Alberi uguali non dovrebbero avere dati non validi.");
+        } finally {
+            pool.shutdown();
+            other.close();
+        }
+    }
+
+    private static int countLeaves(MerkleNode node) {
+        if (node == null) return 0;
+        if (node.isLeaf()) return 1;
+        return countLeaves(node.getLeft()) + countLeaves(node.getRight());
+    }
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        HashLinkedList<Integer> list = new HashLinkedList<>(HashFunction.SHA256);
+        for (int i = 0; i < 1500; i++) {
+            list.addAtTail(i);
+        }
+        MerkleTree<Integer> tree = new MerkleTree<>(list);
+        // l'albero salvato deve avere la forma della larghezza, non della capacità
+        tree.append(1500);
+        list.addAtTail(1500);
+        Path file = Files.createTempFile("merkle", ".bin");
+        try {
+            tree.save(file);
+            MerkleTree<Integer> loaded = MerkleTree.load(file);
+            try {
+                assertEquals(tree.getRoot().getHash(), loaded.getRoot().getHash(),
+                        "La radice dell'albero caricato dovrebbe coincidere.");
+                assertEquals(tree.getHeight(), loaded.getHeight(), "L'altezza dovrebbe coincidere.");
+                assertEquals(HashFunction.SHA256, loaded.getHashFunction(), "La funzione di hash dovrebbe coincidere.");
+                assertTrue(loaded.validateTree(tree), "Gli alberi dovrebbero essere uguali.");
+                assertTrue(loaded.findInvalidDataIndices(tree).isEmpty(), "Non dovrebbero esserci dati non validi.");
+                for (int i = 0; i <= 1500; i += 7) {
+                    assertEquals(i, loaded.getIndexOfData(i), "L'indice del dato " + i + " non corrisponde.");
+                    assertTrue(loaded.getMerkleProof(Integer.valueOf(i)).proveValidityOfData(i),
+                            "La prova del dato " + i + " dovrebbe essere valida.");
+                }
+
+                loaded.updateLeaf(3, -3);
+                loaded.append(1501);
+                list.addAtTail(1501);
+                assertEquals(Set.of(3), loaded.findInvalidDataIndices(new MerkleTree<>(list)),
+                        "Solo il dato aggiornato dovrebbe essere diverso.");
+                assertEquals(3, loaded.getIndexOfData(-3), "Il dato aggiornato dovrebbe essere trovato.");
+            } finally {
+                loaded.close();
+            }
+
+            MerkleTree<Integer> reloaded = MerkleTree.load(file);
+            try {
+                assertEquals(tree.getRoot().getHash(), reloaded.getRoot().getHash(),
+                        "Le modifiche all'albero caricato non dovrebbero alterare il file.");
+            } finally {
+                reloaded.close();
+            }
+
+            Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 100));
+            assertThrows(IOException.class, () -> MerkleTree.load(file),
+                    "Un file troncato dovrebbe lanciare IOException.");
+            Files.write(file, new byte[64]);
+            assertThrows(IOException.class, () -> MerkleTree.load(file),
+                    "Un file non valido dovrebbe lanciare IOException.");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testForEachLeafProof() {
+        for (int width : new int[] { 1, 2, 7, 13, 64, 3000 }) {
+            HashLinkedList<Integer> list = new HashLinkedList<>();
+            for (int i = 0; i < width; i++) {
+                list.addAtTail(i);
+            }
+            MerkleTree<Integer> tree = new MerkleTree<>(list);
+            CompactMerkleProof[] sequential = new CompactMerkleProof[width];
+            tree.forEachLeafProof((proof, index) -> sequential[index] = proof);
+            CompactMerkleProof[] parallel = new CompactMerkleProof[width];
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                tree.forEachLeafProof((proof, index) -> parallel[index] = proof, pool);
+            } finally {
+                pool.shutdown();
+            }
+            for (int i = 0; i < width; i++) {
+                CompactMerkleProof expected = tree.getCompactMerkleProof(Integer.valueOf(i));
+                assertEquals(expected, sequential[i], "La prova della foglia " + i + " su " + width + " non corrisponde.");
+                assertEquals(expected, parallel[i],
+                        "La prova parallela della foglia " + i + " su " + width + " non corrisponde.");
+            }
+        }
+    }
+
+    @Test
+    void testExportProofs() throws IOException {
+        HashLinkedList<Integer> list = new HashLinkedList<>(HashFunction.SHA256);
+        for (int i = 0; i < 5000; i++) {
+            list.addAtTail(i);
+        }
+        MerkleTree<Integer> tree = new MerkleTree<>(list);
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        tree.exportProofs(sequential);
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            tree.exportProofs(parallel, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals(sequential.toByteArray(), parallel.toByteArray(),
+                "L'esportazione parallela dovrebbe produrre gli stessi byte.");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(sequential.toByteArray()));
+        assertEquals(5000, in.readInt(), "Lo stream dovrebbe contenere una prova per foglia.");
+        for (int i = 0; i < 5000; i++) {
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            CompactMerkleProof proof = CompactMerkleProof.decode(encoded, HashFunction.SHA256, Funnels.object());
+            assertTrue(proof.proveValidityOfData(i), "La prova esportata della foglia " + i + " dovrebbe essere valida.");
+        }
+        assertEquals(-1, in.read(), "Lo stream non dovrebbe contenere altro.");
+        assertThrows(IllegalArgumentException.class, () -> tree.exportProofs(null),
+                "Uno stream null dovrebbe lanciare IllegalArgumentException.");
+    }
+
+    @Test
+    void testVanEmdeBoasLayout() throws IOException {
+        for (int width : new int[] { 1, 2, 3, 5, 16, 17, 100, 1025, 3000 }) {
+            HashLinkedList<Integer> list = new HashLinkedList<>();
+            for (int i = 0; i < width; i++) {
+                list.addAtTail(i);
+            }
+            MerkleTree<Integer> levels = new MerkleTree<>(list);
+            MerkleTree<Integer> veb = new MerkleTree<>(list, MerkleTree.StorageMode.HEAP,
+                    MerkleTree.NodeLayout.VAN_EMDE_BOAS, null);
+            assertEquals(MerkleTree.NodeLayout.VAN_EMDE_BOAS, veb.getNodeLayout(), "Il layout non corrisponde.");
+            assertEquals(levels.getRoot().getHash(), veb.getRoot().getHash(),
+                    "Il layout non dovrebbe cambiare la radice (" + width + " foglie).");
+            assertTrue(levels.validateTree(veb), "Gli alberi dovrebbero essere uguali (" + width + " foglie).");
+            for (int i = 0; i < width; i += 7) {
+                assertEquals(levels.getCompactMerkleProof(Integer.valueOf(i)),
+                        veb.getCompactMerkleProof(Integer.valueOf(i)),
+                        "Il layout non dovrebbe cambiare la prova della foglia " + i + ".");
+                assertEquals(i, veb.getIndexOfData(veb.getRoot(), i), "Il dato " + i + " dovrebbe essere nella foglia " + i + ".");
+            }
+        }
+
+        // modifiche e aggiunte oltre la capacità iniziale, fuori dallo heap
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        HashLinkedList<Integer> expectedList = new HashLinkedList<>();
+        for (int i = 0; i < 600; i++) {
+            list.addAtTail(i);
+            expectedList.addAtTail(i == 10 ? 1000 : i);
+        }
+        for (int i = 600; i < 1100; i++) {
+            expectedList.addAtTail(i);
+        }
+        MerkleTree<Integer> expected = new MerkleTree<>(expectedList);
+        Path file = Files.createTempFile("merkle-veb", ".bin");
+        try (MerkleTree<Integer> veb = new MerkleTree<>(list, MerkleTree.StorageMode.OFF_HEAP,
+                MerkleTree.NodeLayout.VAN_EMDE_BOAS, ForkJoinPool.commonPool())) {
+            veb.updateLeaf(10, 1000);
+            for (int i = 600; i < 1100; i++) {
+                veb.append(i);
+            }
+            assertEquals(expected.getRoot().getHash(), veb.getRoot().getHash(),
+                    "Modifiche e aggiunte dovrebbero produrre la stessa radice.");
+            assertEquals(Set.of(), expected.findInvalidDataIndices(veb), "Non dovrebbero esserci dati diversi.");
+            veb.save(file);
+            try (MerkleTree<Integer> loaded = MerkleTree.load(file)) {
+                assertEquals(MerkleTree.NodeLayout.LEVEL_ORDER, loaded.getNodeLayout(),
+                        "Un albero caricato dovrebbe usare il layout del file.");
+                assertTrue(expected.validateTree(loaded), "L'albero caricato dovrebbe essere uguale.");
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testVanEmdeBoasSlots() {
+        for (int levels = 1; levels <= 12; levels++) {
+            long nodes = (1L << levels) - 1;
+            boolean[] used = new boolean[(int) nodes];
+            for (int depth = 0; depth < levels; depth++) {
+                for (long index = 0; index < (1L << depth); index++) {
+                    long slot = MerkleTree.vanEmdeBoasSlot(depth, index, levels);
+                    assertTrue(slot >= 0 && slot < nodes, "Posizione fuori dalla memoria: " + slot);
+                    assertFalse(used[(int) slot], "Posizione assegnata due volte: " + slot);
+                    used[(int) slot] = true;
+                }
+            }
+        }
+        // 4 livelli: la radice e i suoi figli, poi i quattro sottoalberi di 3 nodi
+        assertEquals(0, MerkleTree.vanEmdeBoasSlot(0, 0, 4), "La radice dovrebbe essere la prima.");
+        assertEquals(2, MerkleTree.vanEmdeBoasSlot(1, 1, 4), "Il figlio destro della radice non corrisponde.");
+        assertEquals(6, MerkleTree.vanEmdeBoasSlot(2, 1, 4), "Il secondo sottoalbero inferiore non corrisponde.");
+        assertEquals(8, MerkleTree.vanEmdeBoasSlot(3, 3, 4), "La quarta foglia non corrisponde.");
+    }
+
+    @Test
+    void testManyEqualLeaves() {
+        HashLinkedList<Integer> list = new HashLinkedList<>();
+        for (int i = 0; i < 160000; i++) {
+            list.addAtTail(7);
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            MerkleTree<Integer> tree = new MerkleTree<>(list);
+            assertEquals(160000, tree.getIndicesOfData(7).size(), "Tutte le foglie dovrebbero contenere il dato.");
+            // un nodo esterno all'albero costringe a costruire l'indice dei nodi interni
+            MerkleNode left = tree.getRoot().getLeft().getLeft();
+            MerkleNode copy = new MerkleNode(left.getHash());
+            assertTrue(tree.validateBranch(copy), "Il branch dovrebbe essere trovato.");
+            KaryMerkleTree<Integer> kary = new KaryMerkleTree<>(list, 16);
+            assertEquals(0, kary.getIndexOfData(7), "La prima foglia dovrebbe contenere il dato.");
+        }, "Le foglie uguali non dovrebbero rendere quadratica la costruzione.");
+    }
 }
@@ -0,0 +1,302 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ricalcola la radice di un albero di Merkle a partire da un insieme di nodi
+ * noti, chiedendo i digest mancanti a una {@link SiblingSource}. È la base
+ * comune delle prove che riguardano più nodi contemporaneamente: chi genera la
+ * prova e chi la verifica eseguono lo stesso cammino, e quindi richiedono i
+ * nodi fratelli nello stesso ordine.
+ *
+ * <p>
+ * L'albero ha la forma di {@link MerkleTree}: il livello {@code l} di un
+ * albero con {@code width} foglie ha {@code ceil(width / 2^l)} nodi, e un nodo
+ * senza fratello destro viene combinato con la stringa vuota. I livelli
+ * vengono percorsi dal basso verso l'alto e, in ogni livello, i nodi noti da
+ * sinistra a destra.
+ */
+final class MerkleWalk {
+
+    /**
+     * Fornisce i digest dei nodi fratelli che non si possono calcolare dai
+     * nodi noti.
+     */
+    @FunctionalInterface
+    interface SiblingSource {
+        /**
+         * Restituisce il digest del nodo indicato.
+         *
+         * @param level
+         *                     il livello del nodo.
+         * @param position
+         *                     la posizione del nodo nel livello.
+         * @return il digest del nodo, oppure null se non è disponibile.
+         */
+        Digest sibling(int level, long position);
+    }
+
+    /**
+     * Un nodo noto dell'albero.
+     */
+    static final class Node {
+        final int level;
+
+        final long position;
+
+        final Digest digest;
+
+        Node(int level, long position, Digest digest) {
+            this.level = level;
+            this.position = position;
+            this.digest = digest;
+        }
+    }
+
+    private MerkleWalk() {
+    }
+
+    /**
+     * Restituisce il numero di livelli di un albero con il numero di foglie
+     * indicato.
+     *
+     * @param width
+     *                  il numero di foglie, positivo.
+     * @return il numero di livelli, foglie comprese.
+     */
+    static int levels(long width) {
+        int levels = 1;
+        for (long w = width; w > 1; w = (w + 1) / 2) {
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * Restituisce i nodi che formano la scomposizione delle prime
+     * {@code width} foglie in sottoalberi completi, da sinistra a destra:
+     * uno per ogni bit a 1 di {@code width}, dal più significativo.
+     *
+     * @param width
+     *                  il numero di foglie.
+     * @return livello e posizione di ciascun sottoalbero, codificati come
+     *         {@code (livello << 32) | posizione}.
+     */
+    static List<long[]> peaks(long width) {
+        List<long[]> peaks = new ArrayList<>();
+        long start = 0;
+        for (int level = 62; level >= 0; level--) {
+            if (((width >>> level) & 1) == 1) {
+                peaks.add(new long[] { level, start >>> level });
+                start += 1L << level;
+            }
+        }
+        return peaks;
+    }
+
+    /**
+     * Ricalcola la radice di un albero con {@code width} foglie a partire dai
+     * nodi noti. Se la funzione di hash è null non viene calcolato alcun
+     * digest: il cammino serve solo a stabilire quali fratelli richiedere.
+     *
+     * @param width
+     *                         il numero di foglie dell'albero.
+     * @param known
+     *                         i nodi noti, in qualsiasi ordine.
+     * @param hashFunction
+     *                         la funzione di hash, oppure null.
+     * @param source
+     *                         la sorgente dei fratelli mancanti.
+     * @return il digest della radice, oppure null se la sorgente non fornisce
+     *         un fratello, se i nodi noti non sono coerenti tra loro o se la
+     *         funzione di hash è null.
+     * @throws IllegalArgumentException
+     *                                      se un nodo noto non appartiene
+     *                                      all'albero.
+     */
+    static Digest computeRoot(long width, List<Node> known, HashFunction hashFunction,
+            SiblingSource source) {
+        int levels = levels(width);
+        List<List<Node>> byLevel = new ArrayList<>();
+        for (int level = 0; level < levels; level++) {
+            byLevel.add(new ArrayList<>());
+        }
+        for (Node node : known) {
+            if (node.level < 0 || node.level >= levels || node.position < 0
+                    || node.position >= levelWidth(width, node.level))
+                throw new IllegalArgumentException("The node is not part of the tree");
+            byLevel.get(node.level).add(node);
+        }
+
+        // i digest possono essere null se non viene calcolato nulla
+        TreeMap<Long, Digest> current = new TreeMap<>();
+        boolean consistent = true;
+        byte[] buffer = hashFunction == null ? null : new byte[3 * hashFunction.getDigestLength()];
+        for (int level = 0; level < levels; level++) {
+            for (Node node : byLevel.get(level)) {
+                consistent &= put(current, node.position, node.digest);
+            }
+            if (level == levels - 1) {
+                break;
+            }
+            long levelWidth = levelWidth(width, level);
+            TreeMap<Long, Digest> next = new TreeMap<>();
+            while (!current.isEmpty()) {
+                Map.Entry<Long, Digest> entry = current.pollFirstEntry();
+                long position = entry.getKey();
+                Digest left;
+                Digest right;
+                if ((position & 1) == 0) {
+                    left = entry.getValue();
+                    if (current.containsKey(position + 1)) {
+                        right = current.remove(position + 1);
+                    } else if (position + 1 >= levelWidth) {
+                        right = null;
+                    } else {
+                        right = source.sibling(level, position + 1);
+                        if (right == null) {
+                            return null;
+                        }
+                    }
+                } else {
+                    left = source.sibling(level, position - 1);
+                    if (left == null) {
+                        return null;
+                    }
+                    right = entry.getValue();
+                }
+                consistent &= put(next, position >>> 1, combine(hashFunction, left, right, buffer));
+            }
+            current = next;
+        }
+        if (!consistent || hashFunction == null) {
+            return null;
+        }
+        return current.get(0L);
+    }
+
+    /**
+     * Ricalcola la radice di un albero con {@code width} foglie a partire dai
+     * digest delle foglie consecutive da {@code from} (inclusa) a {@code to}
+     * (esclusa), come {@link #computeRoot(long, List, HashFunction, SiblingSource)}
+     * ma senza strutture di appoggio: in ogni livello i nodi noti sono
+     * consecutivi, e servono al più il fratello sinistro del primo e quello
+     * destro dell'ultimo, richiesti in quest'ordine. I nodi di ciascun livello
+     * vengono calcolati sovrascrivendo quelli del livello inferiore.
+     *
+     * @param width
+     *                         il numero di foglie dell'albero.
+     * @param from
+     *                         la prima foglia dell'intervallo.
+     * @param to
+     *                         la foglia successiva all'ultima dell'intervallo.
+     * @param nodes
+     *                         i digest delle foglie dell'intervallo, uno dopo
+     *                         l'altro, oppure null se la funzione di hash è
+     *                         null.
+     * @param hashFunction
+     *                         la funzione di hash, oppure null per stabilire
+     *                         solo quali fratelli richiedere.
+     * @param source
+     *                         la sorgente dei fratelli.
+     * @return il digest della radice, oppure null se la sorgente non fornisce
+     *         un fratello o se la funzione di hash è null.
+     */
+    static Digest computeRangeRoot(long width, long from, long to, byte[] nodes, HashFunction hashFunction,
+            SiblingSource source) {
+        int levels = levels(width);
+        int digestLength = hashFunction == null ? 0 : hashFunction.getDigestLength();
+        byte[] buffer = new byte[2 * digestLength];
+        long lo = from;
+        long last = to - 1;
+        for (int level = 0; level < levels - 1; level++) {
+            long levelWidth = levelWidth(width, level);
+            Digest leftSibling = null;
+            Digest rightSibling = null;
+            if ((lo & 1) == 1) {
+                leftSibling = source.sibling(level, lo - 1);
+                if (leftSibling == null) {
+                    return null;
+                }
+            }
+            if ((last & 1) == 0 && last + 1 < levelWidth) {
+                rightSibling = source.sibling(level, last + 1);
+                if (rightSibling == null) {
+                    return null;
+                }
+            }
+            if (hashFunction != null) {
+                if (leftSibling != null) {
+                    leftSibling.copyTo(buffer, 0);
+                }
+                if (rightSibling != null) {
+                    rightSibling.copyTo(buffer, digestLength);
+                }
+                // il genitore j si scrive al posto del nodo j, che non serve
+                // più: i suoi figli occupano le posizioni 2j - 1 e successive
+                for (long parent = lo >>> 1, j = 0; parent <= last >>> 1; parent++, j++) {
+                    long left = 2 * parent;
+                    long right = left + 1;
+                    byte[] leftArray = left < lo ? buffer : nodes;
+                    int leftOffset = left < lo ? 0 : (int) (left - lo) * digestLength;
+                    byte[] rightArray;
+                    int rightOffset;
+                    if (right <= last) {
+                        rightArray = nodes;
+                        rightOffset = (int) (right - lo) * digestLength;
+                    } else {
+                        // fratello destro del confine, oppure nodo senza fratello
+                        rightArray = rightSibling != null ? buffer : null;
+                        rightOffset = digestLength;
+                    }
+                    hashFunction.combine(leftArray, leftOffset, rightArray, rightOffset, nodes,
+                            (int) j * digestLength);
+                }
+            }
+            lo >>>= 1;
+            last >>>= 1;
+        }
+        return hashFunction == null ? null : Digest.of(nodes, 0, digestLength);
+    }
+
+    /**
+     * Restituisce il numero di nodi del livello indicato di un albero con
+     * {@code width} foglie.
+     */
+    static long levelWidth(long width, int level) {
+        long complete = width >>> level;
+        return (width & ((1L << level) - 1)) != 0 ? complete + 1 : complete;
+    }
+
+    /**
+     * Inserisce un nodo nel livello; se è già presente, i due digest devono
+     * coincidere.
+     */
+    private static boolean put(TreeMap<Long, Digest> level, long position, Digest digest) {
+        if (!level.containsKey(position)) {
+            level.put(position, digest);
+            return true;
+        }
+        Digest existing = level.get(position);
+        return existing == null || digest == null || existing.equals(digest);
+    }
+
+    private static Digest combine(HashFunction hashFunction, Digest left, Digest right, byte[] buffer) {
+        if (hashFunction == null) {
+            return null;
+        }
+        int length = hashFunction.getDigestLength();
+        if (left.length() != length || (right != null && right.length() != length)) {
+            throw new IllegalArgumentException("The digest has the wrong length");
+        }
+        left.copyTo(buffer, 0);
+        if (right != null) {
+            right.copyTo(buffer, length);
+        }
+        hashFunction.combine(buffer, 0, right != null ? buffer : null, length, buffer, 2 * length);
+        return Digest.of(buffer, 2 * length, length);
+    }
+}
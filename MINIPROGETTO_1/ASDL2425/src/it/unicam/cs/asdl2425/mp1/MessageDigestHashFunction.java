@@ -0,0 +1,72 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Funzione di hash basata su un algoritmo {@link MessageDigest} della JDK. Il
+ * {@code MessageDigest} viene creato una sola volta per ogni calcolatore, e i
+ * calcolatori sono riutilizzati per thread da {@link HashFunction#hasher()}.
+ */
+final class MessageDigestHashFunction extends HashFunction {
+
+    MessageDigestHashFunction(String algorithm, int digestLength) {
+        super(algorithm, digestLength);
+    }
+
+    @Override
+    public Hasher newHasher() {
+        try {
+            return new MessageDigestHasher(MessageDigest.getInstance(getName()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(getName() + " algorithm not found", e);
+        }
+    }
+
+    /**
+     * Calcolatore che delega a un {@link MessageDigest}.
+     */
+    private static final class MessageDigestHasher extends Hasher {
+        private final MessageDigest md;
+
+        private MessageDigestHasher(MessageDigest md) {
+            this.md = md;
+        }
+
+        @Override
+        public Hasher putByte(byte b) {
+            md.update(b);
+            return this;
+        }
+
+        @Override
+        public Hasher putBytes(byte[] bytes, int offset, int length) {
+            md.update(bytes, offset, length);
+            return this;
+        }
+
+        @Override
+        public Hasher putBytes(ByteBuffer buffer) {
+            // MessageDigest legge direttamente anche i buffer diretti
+            md.update(buffer);
+            return this;
+        }
+
+        @Override
+        public int getDigestLength() {
+            return md.getDigestLength();
+        }
+
+        @Override
+        protected void doFinish(byte[] out, int offset) {
+            try {
+                md.digest(out, offset, md.getDigestLength());
+            } catch (DigestException e) {
+                md.reset();
+                throw new IllegalArgumentException("The output buffer is too small", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Funzione di hash non crittografica MurmurHash3, variante x64 a 128 bit con
+ * seme 0. Il digest è formato dai due valori a 64 bit dell'algoritmo scritti in
+ * little-endian, nello stesso ordine usato dalle implementazioni di
+ * riferimento.
+ *
+ * <p>
+ * Non offre alcuna resistenza a collisioni costruite ad arte: va usata solo per
+ * controlli di integrità interni.
+ */
+final class Murmur3HashFunction extends HashFunction {
+
+    private static final VarHandle LONG_LE = MethodHandles
+            .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    Murmur3HashFunction() {
+        super("Murmur3-128", 16);
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new Murmur3Hasher();
+    }
+
+    /**
+     * Calcolatore incrementale di MurmurHash3: elabora blocchi di 16 byte e
+     * conserva in un buffer i byte di un blocco non ancora completo.
+     */
+    private static final class Murmur3Hasher extends Hasher {
+        private final byte[] block = new byte[16];
+
+        private int blockLength;
+
+        private long h1;
+
+        private long h2;
+
+        private long totalLength;
+
+        @Override
+        public Hasher putByte(byte b) {
+            block[blockLength++] = b;
+            if (blockLength == 16) {
+                mixBlock(block, 0);
+                blockLength = 0;
+            }
+            totalLength++;
+            return this;
+        }
+
+        @Override
+        public Hasher putBytes(byte[] bytes, int offset, int length) {
+            if (offset < 0 || length < 0 || offset + length > bytes.length)
+                throw new IndexOutOfBoundsException();
+            totalLength += length;
+            int end = offset + length;
+            // Completiamo prima l'eventuale blocco parziale
+            if (blockLength > 0) {
+                int n = Math.min(16 - blockLength, length);
+                System.arraycopy(bytes, offset, block, blockLength, n);
+                blockLength += n;
+                offset += n;
+                if (blockLength < 16) {
+                    return this;
+                }
+                mixBlock(block, 0);
+                blockLength = 0;
+            }
+            // Elaboriamo i blocchi completi direttamente dall'array di input
+            for (; offset + 16 <= end; offset += 16) {
+                mixBlock(bytes, offset);
+            }
+            blockLength = end - offset;
+            System.arraycopy(bytes, offset, block, 0, blockLength);
+            return this;
+        }
+
+        @Override
+        public Hasher putBytes(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                return super.putBytes(buffer);
+            }
+            // Buffer diretto: completiamo il blocco parziale byte per byte,
+            // poi leggiamo i blocchi completi direttamente dal buffer
+            while (blockLength > 0 && buffer.hasRemaining()) {
+                putByte(buffer.get());
+            }
+            boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+            while (buffer.remaining() >= 16) {
+                long k1 = buffer.getLong();
+                long k2 = buffer.getLong();
+                if (bigEndian) {
+                    k1 = Long.reverseBytes(k1);
+                    k2 = Long.reverseBytes(k2);
+                }
+                mixBlock(k1, k2);
+                totalLength += 16;
+            }
+            while (buffer.hasRemaining()) {
+                putByte(buffer.get());
+            }
+            return this;
+        }
+
+        @Override
+        public int getDigestLength() {
+            return 16;
+        }
+
+        @Override
+        protected void doFinish(byte[] out, int offset) {
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = blockLength - 1; i >= 8; i--) {
+                k2 = (k2 << 8) | (block[i] & 0xffL);
+            }
+            for (int i = Math.min(blockLength, 8) - 1; i >= 0; i--) {
+                k1 = (k1 << 8) | (block[i] & 0xffL);
+            }
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+
+            h1 ^= totalLength;
+            h2 ^= totalLength;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+
+            LONG_LE.set(out, offset, h1);
+            LONG_LE.set(out, offset + 8, h2);
+
+            // Riportiamo il calcolatore allo stato iniziale
+            h1 = 0;
+            h2 = 0;
+            blockLength = 0;
+            totalLength = 0;
+        }
+
+        private void mixBlock(byte[] bytes, int offset) {
+            mixBlock((long) LONG_LE.get(bytes, offset), (long) LONG_LE.get(bytes, offset + 8));
+        }
+
+        private void mixBlock(long k1, long k2) {
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            return k1 * C2;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            return k2 * C1;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Memoria dei digest di un {@link MerkleTree} o di un
+ * {@link MerkleMountainRange} al di fuori dello heap, basata su buffer
+ * diretti. I digest sono distribuiti su più blocchi di al più
+ * {@value #MAX_CHUNK_BYTES} byte, così da superare il limite di 2 GB di un
+ * singolo buffer: un albero con centinaia di milioni di foglie occupa nello
+ * heap solo i riferimenti ai blocchi e non aumenta il lavoro del garbage
+ * collector.
+ *
+ * <p>
+ * La memoria va rilasciata esplicitamente con {@link #close()}, che libera
+ * subito i buffer diretti e rimuove le mappature dei file tramite
+ * {@code sun.misc.Unsafe.invokeCleaner} (modulo {@code jdk.unsupported}),
+ * senza attendere il garbage collector; se il metodo non è disponibile la
+ * memoria viene liberata dal garbage collector. Ogni accesso avviene sotto il
+ * lock di lettura di uno {@link StampedLock} e la chiusura sotto quello di
+ * scrittura: la chiusura attende quindi gli accessi in corso, anche di altri
+ * thread, e quelli successivi lanciano un'{@link IllegalStateException}
+ * invece di toccare memoria già liberata.
+ *
+ * <p>
+ * I blocchi possono anche essere regioni di un file mappate in memoria in
+ * sola lettura, create con {@link #map(FileChannel, long, int, long)}: i
+ * digest vengono letti dal file solo quando servono, e il sistema operativo
+ * ne conserva in memoria soltanto le pagine usate.
+ */
+final class OffHeapMerkleStorage extends MerkleStorage {
+
+    /**
+     * Dimensione massima in byte di ciascun blocco.
+     */
+    static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    /**
+     * {@code sun.misc.Unsafe.invokeCleaner}, legato all'istanza di
+     * {@code Unsafe}, oppure null se non è disponibile.
+     */
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    /**
+     * Numero di digest contenuti in ciascun blocco.
+     */
+    private final int slotsPerChunk;
+
+    /**
+     * Numero totale di posizioni.
+     */
+    private final long capacity;
+
+    /**
+     * I blocchi di memoria; null dopo la chiusura.
+     */
+    private ByteBuffer[] chunks;
+
+    /**
+     * Protegge i blocchi dalla chiusura durante gli accessi.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Se i blocchi sono in sola lettura.
+     */
+    private final boolean readOnly;
+
+    /**
+     * Costruisce una memoria con il numero di posizioni indicato.
+     *
+     * @param digestLength
+     *                         la lunghezza in byte di ciascun digest.
+     * @param capacity
+     *                         il numero di posizioni.
+     * @throws IllegalArgumentException
+     *                                      se la capacità è negativa.
+     */
+    OffHeapMerkleStorage(int digestLength, long capacity) {
+        this(digestLength, capacity, MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * Costruisce una memoria con il numero di posizioni indicato e blocchi di
+     * al più {@code chunkBytes} byte.
+     */
+    OffHeapMerkleStorage(int digestLength, long capacity, int chunkBytes) {
+        this(digestLength, capacity, slotsPerChunk(digestLength, capacity, chunkBytes), false);
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkSlots(i) * digestLength);
+        }
+    }
+
+    private OffHeapMerkleStorage(int digestLength, long capacity, int slotsPerChunk, boolean readOnly) {
+        super(digestLength);
+        this.slotsPerChunk = slotsPerChunk;
+        this.capacity = capacity;
+        this.readOnly = readOnly;
+        this.chunks = new ByteBuffer[Math.toIntExact((capacity + slotsPerChunk - 1) / slotsPerChunk)];
+    }
+
+    /**
+     * Crea una memoria in sola lettura mappando la regione del file che
+     * inizia in posizione {@code position} e contiene {@code capacity} digest
+     * consecutivi. Il canale può essere chiuso subito dopo: le regioni
+     * mappate restano valide finché la memoria non viene chiusa.
+     *
+     * @param channel
+     *                         il canale del file, aperto in lettura.
+     * @param position
+     *                         la posizione del primo digest nel file.
+     * @param digestLength
+     *                         la lunghezza in byte di ciascun digest.
+     * @param capacity
+     *                         il numero di digest.
+     * @return la memoria mappata.
+     * @throws IOException
+     *                         se la mappatura non riesce.
+     */
+    static OffHeapMerkleStorage map(FileChannel channel, long position, int digestLength, long capacity)
+            throws IOException {
+        return map(channel, position, digestLength, capacity, MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * Crea una memoria in sola lettura come
+     * {@link #map(FileChannel, long, int, long)}, con blocchi di al più
+     * {@code chunkBytes} byte.
+     */
+    static OffHeapMerkleStorage map(FileChannel channel, long position, int digestLength, long capacity,
+            int chunkBytes) throws IOException {
+        OffHeapMerkleStorage storage = new OffHeapMerkleStorage(digestLength, capacity,
+                slotsPerChunk(digestLength, capacity, chunkBytes), true);
+        long chunkLength = (long) storage.slotsPerChunk * digestLength;
+        for (int i = 0; i < storage.chunks.length; i++) {
+            storage.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + i * chunkLength,
+                    (long) storage.chunkSlots(i) * digestLength);
+        }
+        return storage;
+    }
+
+    @Override
+    long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    void read(long slot, byte[] dst, int offset) {
+        long stamp = lock.readLock();
+        try {
+            chunk(slot).get(offsetInChunk(slot), dst, offset, getDigestLength());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    void write(long slot, byte[] src, int offset) {
+        long stamp = lock.readLock();
+        try {
+            chunk(slot).put(offsetInChunk(slot), src, offset, getDigestLength());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    boolean matches(long slot, Digest digest) {
+        if (digest.length() != getDigestLength())
+            return false;
+        long stamp = lock.readLock();
+        try {
+            ByteBuffer chunk = chunk(slot);
+            int from = offsetInChunk(slot);
+            for (int i = 0; i < getDigestLength(); i++) {
+                if (chunk.get(from + i) != digest.getByte(i)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    void close() {
+        ByteBuffer[] released;
+        // attende che finiscano gli accessi in corso
+        long stamp = lock.writeLock();
+        try {
+            released = chunks;
+            chunks = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (released == null || INVOKE_CLEANER == null) {
+            // già chiusa, oppure i buffer verranno liberati dal loro cleaner
+            return;
+        }
+        for (ByteBuffer chunk : released) {
+            try {
+                INVOKE_CLEANER.invokeExact(chunk);
+            } catch (Throwable e) {
+                // il buffer verrà liberato dal garbage collector
+            }
+        }
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static int slotsPerChunk(int digestLength, long capacity, int chunkBytes) {
+        if (digestLength <= 0)
+            throw new IllegalArgumentException("The digest length must be positive");
+        if (capacity < 0)
+            throw new IllegalArgumentException("The capacity cannot be negative");
+        if (chunkBytes < digestLength)
+            throw new IllegalArgumentException("The chunk size is smaller than a digest");
+        return chunkBytes / digestLength;
+    }
+
+    /**
+     * Restituisce il numero di digest del blocco indicato.
+     */
+    private int chunkSlots(int chunk) {
+        return (int) Math.min(slotsPerChunk, capacity - (long) chunk * slotsPerChunk);
+    }
+
+    /**
+     * Restituisce il blocco che contiene la posizione; va invocato tenendo il
+     * lock di lettura.
+     */
+    private ByteBuffer chunk(long slot) {
+        if (chunks == null)
+            throw new IllegalStateException("The tree storage has been closed");
+        return chunks[(int) (slot / slotsPerChunk)];
+    }
+
+    private int offsetInChunk(long slot) {
+        return (int) (slot % slotsPerChunk) * getDigestLength();
+    }
+}
@@ -0,0 +1,155 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per la classe {@link OffHeapMerkleStorage}. Questa classe
+ * verifica la lettura e la scrittura dei digest al di fuori dello heap.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testReadWriteAcrossChunks()}: Verifica che i digest vengano
+ * letti e scritti correttamente anche quando sono distribuiti su più
+ * blocchi.</li>
+ *
+ * <li>{@link #testSameDigest()}: Verifica il confronto tra digest di memorie
+ * diverse.</li>
+ *
+ * <li>{@link #testClose()}: Verifica che la chiusura possa essere ripetuta e
+ * che dopo la chiusura ogni accesso lanci un'eccezione.</li>
+ *
+ * <li>{@link #testCloseDuringReads()}: Verifica che la chiusura durante
+ * letture concorrenti faccia fallire le letture successive con
+ * un'eccezione.</li>
+ *
+ * <li>{@link #testMap()}: Verifica la lettura dei digest da un file mappato
+ * in memoria su più blocchi e che la memoria mappata sia in sola
+ * lettura.</li>
+ * </ul>
+ */
+class OffHeapMerkleStorageTest {
+
+    @Test
+    void testReadWriteAcrossChunks() {
+        // Blocchi da 3 digest: 10 posizioni richiedono 4 blocchi
+        OffHeapMerkleStorage storage = new OffHeapMerkleStorage(16, 10, 3 * 16 + 5);
+        assertEquals(10, storage.getCapacity(), "La capacità dovrebbe essere 10.");
+        for (int i = 0; i < 10; i++) {
+            storage.write(i, HashUtil.dataToDigest(i).toByteArray(), 0);
+        }
+        byte[] buffer = new byte[17];
+        for (int i = 0; i < 10; i++) {
+            Digest expected = HashUtil.dataToDigest(i);
+            assertEquals(expected, storage.getDigest(i), "Il digest in posizione " + i + " non corrisponde.");
+            assertTrue(storage.matches(i, expected), "Il digest in posizione " + i + " dovrebbe coincidere.");
+            storage.read(i, buffer, 1);
+            assertTrue(expected.matches(buffer, 1), "La copia del digest in posizione " + i + " non corrisponde.");
+        }
+        assertFalse(storage.matches(0, HashUtil.dataToDigest(1)), "Digest diversi non dovrebbero coincidere.");
+        assertFalse(storage.matches(0, HashUtil.dataToDigest(0, HashFunction.SHA256)),
+                "Digest di lunghezza diversa non dovrebbero coincidere.");
+    }
+
+    @Test
+    void testSameDigest() {
+        OffHeapMerkleStorage offHeap = new OffHeapMerkleStorage(16, 2);
+        HeapMerkleStorage heap = new HeapMerkleStorage(16, 2);
+        offHeap.write(0, HashUtil.dataToDigest("a").toByteArray(), 0);
+        offHeap.write(1, HashUtil.dataToDigest("b").toByteArray(), 0);
+        heap.write(1, HashUtil.dataToDigest("a").toByteArray(), 0);
+        assertTrue(offHeap.sameDigest(0, heap, 1), "I digest dovrebbero coincidere.");
+        assertTrue(heap.sameDigest(1, offHeap, 0), "I digest dovrebbero coincidere.");
+        assertFalse(offHeap.sameDigest(1, heap, 1), "I digest non dovrebbero coincidere.");
+    }
+
+    @Test
+    void testClose() {
+        OffHeapMerkleStorage storage = new OffHeapMerkleStorage(16, 4);
+        storage.close();
+        storage.close();
+        assertThrows(IllegalStateException.class, () -> storage.getDigest(0),
+                "Dopo la chiusura la lettura dovrebbe lanciare IllegalStateException.");
+        assertThrows(IllegalStateException.class, () -> storage.write(0, new byte[16], 0),
+                "Dopo la chiusura la scrittura dovrebbe lanciare IllegalStateException.");
+    }
+
+    @Test
+    void testCloseDuringReads() throws Exception {
+        OffHeapMerkleStorage storage = new OffHeapMerkleStorage(16, 1024);
+        Digest digest = HashUtil.dataToDigest("a");
+        for (int i = 0; i < 1024; i++) {
+            storage.write(i, digest.toByteArray(), 0);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                readers.add(executor.submit(() -> {
+                    try {
+                        for (long i = 0;; i++) {
+                            if (!storage.matches(i % 1024, digest)) {
+                                return false;
+                            }
+                        }
+                    } catch (IllegalStateException e) {
+                        return true;
+                    }
+                }));
+            }
+            Thread.sleep(20);
+            storage.close();
+            for (Future<Boolean> reader : readers) {
+                assertTrue(reader.get(10, TimeUnit.SECONDS),
+                        "Le letture dovrebbero vedere i digest scritti e poi fallire con IllegalStateException.");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testMap() throws IOException {
+        Path file = Files.createTempFile("storage", ".bin");
+        try {
+            // 7 byte di intestazione seguiti da 10 digest
+            ByteBuffer content = ByteBuffer.allocate(7 + 10 * 16);
+            content.put(new byte[7]);
+            for (int i = 0; i < 10; i++) {
+                content.put(HashUtil.dataToDigest(i).toByteArray());
+            }
+            Files.write(file, content.array());
+            OffHeapMerkleStorage storage;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                storage = OffHeapMerkleStorage.map(channel, 7, 16, 10, 3 * 16);
+            }
+            assertTrue(storage.isReadOnly(), "La memoria mappata dovrebbe essere in sola lettura.");
+            assertFalse(new OffHeapMerkleStorage(16, 1).isReadOnly(), "La memoria diretta dovrebbe essere modificabile.");
+            for (int i = 0; i < 10; i++) {
+                assertEquals(HashUtil.dataToDigest(i), storage.getDigest(i),
+                        "Il digest in posizione " + i + " non corrisponde.");
+            }
+            assertThrows(RuntimeException.class, () -> storage.write(0, new byte[16], 0),
+                    "La scrittura di una memoria mappata dovrebbe fallire.");
+            // la mappatura viene rimossa subito, quindi il file può essere
+            // cancellato anche dove i file mappati sono bloccati
+            storage.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prova di inclusione o di assenza di una chiave in un
+ * {@link SparseMerkleTree}. La prova segue il cammino della chiave dalla
+ * radice fino al primo sottoalbero con al più una chiave, che può essere:
+ *
+ * <ul>
+ * <li>la foglia della chiave stessa: la prova dimostra che la chiave è
+ * associata al valore della foglia;</li>
+ * <li>la foglia di un'altra chiave con gli stessi bit iniziali: dato che un
+ * sottoalbero con una sola chiave non contiene altro, la prova dimostra che
+ * la chiave è assente;</li>
+ * <li>un sottoalbero vuoto: anche in questo caso la chiave è assente.</li>
+ * </ul>
+ *
+ * Per ogni livello del cammino la prova contiene il digest del fratello,
+ * dalla radice verso il basso, oppure null se il fratello è un sottoalbero
+ * vuoto, il cui digest predefinito viene ricalcolato dal verificatore. La
+ * verifica richiede una combinazione di digest per livello del cammino.
+ */
+public class SparseMerkleProof {
+
+    private final HashFunction hashFunction;
+
+    private final Digest root;
+
+    private final Digest key;
+
+    /**
+     * Chiave della foglia in cui termina il cammino, oppure null se termina
+     * in un sottoalbero vuoto.
+     */
+    private final Digest leafKey;
+
+    /**
+     * Valore della foglia in cui termina il cammino, oppure null se termina
+     * in un sottoalbero vuoto.
+     */
+    private final Digest leafValue;
+
+    private final List<Digest> siblings;
+
+    /**
+     * Costruisce una prova a partire dalle sue parti, ad esempio dopo averla
+     * ricevuta da un altro nodo.
+     *
+     * @param hashFunction
+     *                         la funzione di hash dell'albero.
+     * @param root
+     *                         il digest della radice dell'albero.
+     * @param key
+     *                         il digest della chiave di cui si dimostra
+     *                         l'inclusione o l'assenza.
+     * @param leafKey
+     *                         la chiave della foglia in cui termina il
+     *                         cammino, oppure null se termina in un
+     *                         sottoalbero vuoto.
+     * @param leafValue
+     *                         il valore della foglia in cui termina il
+     *                         cammino, oppure null se termina in un
+     *                         sottoalbero vuoto.
+     * @param siblings
+     *                         i digest dei fratelli dalla radice verso il
+     *                         basso, con null per i sottoalberi vuoti.
+     * @throws IllegalArgumentException
+     *                                      se la funzione di hash, la radice,
+     *                                      la chiave o i fratelli sono null, se
+     *                                      solo uno tra chiave e valore della
+     *                                      foglia è null, se il cammino è più
+     *                                      lungo dei bit della chiave o se un
+     *                                      digest ha una lunghezza diversa da
+     *                                      quella della funzione di hash.
+     */
+    public SparseMerkleProof(HashFunction hashFunction, Digest root, Digest key, Digest leafKey, Digest leafValue,
+            List<Digest> siblings) {
+        if (hashFunction == null || root == null || key == null || siblings == null)
+            throw new IllegalArgumentException("The arguments cannot be null");
+        if ((leafKey == null) != (leafValue == null))
+            throw new IllegalArgumentException("The leaf key and value must be both present or both absent");
+        int digestLength = hashFunction.getDigestLength();
+        if (root.length() != digestLength || key.length() != digestLength
+                || (leafKey != null && (leafKey.length() != digestLength || leafValue.length() != digestLength)))
+            throw new IllegalArgumentException("The proof contains an invalid digest");
+        if (siblings.size() > 8 * digestLength)
+            throw new IllegalArgumentException("The path is longer than the key");
+        for (Digest sibling : siblings) {
+            if (sibling != null && sibling.length() != digestLength)
+                throw new IllegalArgumentException("The proof contains an invalid digest");
+        }
+        this.hashFunction = hashFunction;
+        this.root = root;
+        this.key = key;
+        this.leafKey = leafKey;
+        this.leafValue = leafValue;
+        this.siblings = Collections.unmodifiableList(new ArrayList<>(siblings));
+    }
+
+    /**
+     * Restituisce la funzione di hash dell'albero.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce il digest della radice per cui la prova è stata costruita.
+     *
+     * @return il digest della radice.
+     */
+    public Digest getRootDigest() {
+        return root;
+    }
+
+    /**
+     * Restituisce il digest della chiave della prova.
+     *
+     * @return il digest della chiave.
+     */
+    public Digest getKey() {
+        return key;
+    }
+
+    /**
+     * Indica se la prova dimostra l'inclusione della chiave, invece della sua
+     * assenza.
+     *
+     * @return true se il cammino termina nella foglia della chiave.
+     */
+    public boolean isInclusion() {
+        return key.equals(leafKey);
+    }
+
+    /**
+     * Restituisce il digest del valore associato alla chiave, se la prova è
+     * di inclusione.
+     *
+     * @return il digest del valore, oppure null se la prova è di assenza.
+     */
+    public Digest getValueDigest() {
+        return isInclusion() ? leafValue : null;
+    }
+
+    /**
+     * Restituisce i digest dei fratelli dalla radice verso il basso, con null
+     * per i sottoalberi vuoti, in una lista non modificabile.
+     *
+     * @return i digest dei fratelli.
+     */
+    public List<Digest> getSiblings() {
+        return siblings;
+    }
+
+    /**
+     * Verifica che la chiave sia associata al valore indicato.
+     *
+     * @param key
+     *                  il digest della chiave.
+     * @param value
+     *                  il digest del valore.
+     * @return true se la prova è di inclusione per la chiave e il valore ed è
+     *         valida; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la chiave o il valore sono null.
+     */
+    public boolean verifyInclusion(Digest key, Digest value) {
+        if (key == null || value == null)
+            throw new IllegalArgumentException("The key and the value cannot be null");
+        return isInclusion() && this.key.equals(key) && leafValue.equals(value) && verify();
+    }
+
+    /**
+     * Verifica che la chiave sia assente dall'albero.
+     *
+     * @param key
+     *                il digest della chiave.
+     * @return true se la prova è di assenza per la chiave ed è valida; false
+     *         altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la chiave è null.
+     */
+    public boolean verifyExclusion(Digest key) {
+        if (key == null)
+            throw new IllegalArgumentException("The key cannot be null");
+        return !isInclusion() && this.key.equals(key) && verify();
+    }
+
+    /**
+     * Ricalcola la radice dal fondo del cammino e la confronta con quella
+     * della prova.
+     *
+     * @return true se la prova è coerente con la sua radice; false
+     *         altrimenti.
+     */
+    public boolean verify() {
+        int digestLength = hashFunction.getDigestLength();
+        int bits = 8 * digestLength;
+        int depth = siblings.size();
+        byte[] keyBytes = key.toByteArray();
+        byte[] defaults = SparseMerkleTree.defaults(hashFunction);
+        // nodo corrente seguito dal fratello
+        byte[] buffer = new byte[2 * digestLength];
+        if (leafKey == null) {
+            System.arraycopy(defaults, (bits - depth) * digestLength, buffer, 0, digestLength);
+        } else {
+            byte[] leafBytes = leafKey.toByteArray();
+            // la foglia deve trovarsi sul cammino della chiave
+            for (int i = 0; i < depth; i++) {
+                if (SparseMerkleTree.bit(leafBytes, i) != SparseMerkleTree.bit(keyBytes, i))
+                    return false;
+            }
+            SparseMerkleTree.leafHash(hashFunction, leafBytes, leafValue.toByteArray(), buffer, 0);
+        }
+        for (int i = depth - 1; i >= 0; i--) {
+            Digest sibling = siblings.get(i);
+            byte[] siblingBytes = sibling == null ? defaults : buffer;
+            int siblingOffset = sibling == null ? (bits - i - 1) * digestLength : digestLength;
+            if (sibling != null) {
+                sibling.copyTo(buffer, digestLength);
+            }
+            if (SparseMerkleTree.bit(keyBytes, i) == 0) {
+                hashFunction.combine(buffer, 0, siblingBytes, siblingOffset, buffer, 0);
+            } else {
+                hashFunction.combine(siblingBytes, siblingOffset, buffer, 0, buffer, 0);
+            }
+        }
+        return root.matches(buffer, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "SparseMerkleProof [" + (isInclusion() ? "inclusion" : "exclusion") + " of " + key + ", "
+                + siblings.size() + " levels]";
+    }
+}
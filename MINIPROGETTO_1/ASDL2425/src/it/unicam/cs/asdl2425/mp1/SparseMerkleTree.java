@@ -0,0 +1,438 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Un albero di Merkle sparso che associa valori a chiavi. Ogni chiave è
+ * identificata dal suo digest, che ne determina la posizione tra le
+ * {@code 2^b} foglie di un albero binario, dove {@code b} è il numero di bit
+ * del digest: 128 per MD5 e MurmurHash3, 256 per SHA-256. Il bit
+ * {@code i} del digest, a partire dal bit più significativo del primo byte,
+ * sceglie il figlio sinistro (0) o destro (1) alla profondità {@code i}.
+ *
+ * <p>
+ * Le foglie non vengono mai materializzate. Il digest di un sottoalbero
+ * dipende solo dalle chiavi che contiene:
+ *
+ * <ul>
+ * <li>un sottoalbero vuoto di altezza {@code h} ha il digest predefinito
+ * {@code D(h)}, con {@code D(0)} hash della sequenza vuota e
+ * {@code D(h) = H(D(h-1) + D(h-1))}, calcolati una volta per ogni funzione di
+ * hash;</li>
+ * <li>un sottoalbero con una sola chiave ha il digest della sua foglia,
+ * {@code H(0x00 || chiave || valore)} sui byte grezzi, qualunque sia la sua
+ * altezza;</li>
+ * <li>un sottoalbero con almeno due chiavi ha il digest dei due figli
+ * combinati come in {@link MerkleTree}, concatenandone le rappresentazioni
+ * esadecimali.</li>
+ * </ul>
+ *
+ * Il byte iniziale 0x00, che non compare mai in una rappresentazione
+ * esadecimale, impedisce di far passare un nodo interno per una foglia. La
+ * profondità dei nodi è quindi quella a cui le chiavi si separano, in media
+ * logaritmica nel numero di chiavi: inserimenti, aggiornamenti e prove
+ * costano {@code O(log n)} combinazioni di hash invece di {@code b}, e la
+ * radice di un albero vuoto è {@code D(b)}.
+ *
+ * <p>
+ * Le prove ({@link SparseMerkleProof}) dimostrano sia che una chiave è
+ * associata a un valore sia che una chiave è assente. Le modifiche non sono
+ * thread-safe.
+ *
+ * @param <K>
+ *                il tipo delle chiavi.
+ * @param <V>
+ *                il tipo dei valori.
+ */
+public class SparseMerkleTree<K, V> {
+
+    /**
+     * Digest predefiniti dei sottoalberi vuoti per ciascuna funzione di hash.
+     */
+    private static final ConcurrentHashMap<HashFunction, byte[]> DEFAULTS = new ConcurrentHashMap<>();
+
+    private final HashFunction hashFunction;
+
+    private final Funnel<? super K> keyFunnel;
+
+    private final Funnel<? super V> valueFunnel;
+
+    /**
+     * Digest predefiniti dei sottoalberi vuoti, uno dopo l'altro per altezza
+     * crescente.
+     */
+    private final byte[] defaults;
+
+    /**
+     * Numero di bit delle chiavi, ovvero l'altezza dell'albero.
+     */
+    private final int keyBits;
+
+    /**
+     * La radice, oppure null se l'albero è vuoto.
+     */
+    private Node root;
+
+    private int size;
+
+    /**
+     * Nodo dell'albero: una foglia, con chiave e valore, oppure un nodo
+     * interno con almeno due chiavi nei suoi sottoalberi.
+     */
+    private static final class Node {
+
+        private final byte[] hash;
+
+        private final byte[] key;
+
+        private final byte[] value;
+
+        private Node left;
+
+        private Node right;
+
+        Node(byte[] hash, byte[] key, byte[] value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean isLeaf() {
+            return key != null;
+        }
+    }
+
+    /**
+     * Costruisce un albero vuoto che usa MD5 e il funnel di default per
+     * chiavi e valori.
+     */
+    public SparseMerkleTree() {
+        this(HashFunction.MD5);
+    }
+
+    /**
+     * Costruisce un albero vuoto che usa la funzione di hash indicata e il
+     * funnel di default per chiavi e valori.
+     *
+     * @param hashFunction
+     *                         la funzione di hash.
+     * @throws IllegalArgumentException
+     *                                      se la funzione di hash è null.
+     */
+    public SparseMerkleTree(HashFunction hashFunction) {
+        this(hashFunction, Funnels.object(), Funnels.object());
+    }
+
+    /**
+     * Costruisce un albero vuoto.
+     *
+     * @param hashFunction
+     *                         la funzione di hash.
+     * @param keyFunnel
+     *                         il funnel delle chiavi.
+     * @param valueFunnel
+     *                         il funnel dei valori.
+     * @throws IllegalArgumentException
+     *                                      se uno degli argomenti è null.
+     */
+    public SparseMerkleTree(HashFunction hashFunction, Funnel<? super K> keyFunnel, Funnel<? super V> valueFunnel) {
+        if (hashFunction == null || keyFunnel == null || valueFunnel == null)
+            throw new IllegalArgumentException("The hash function and the funnels cannot be null");
+        this.hashFunction = hashFunction;
+        this.keyFunnel = keyFunnel;
+        this.valueFunnel = valueFunnel;
+        this.defaults = defaults(hashFunction);
+        this.keyBits = 8 * hashFunction.getDigestLength();
+    }
+
+    /**
+     * Restituisce la funzione di hash dell'albero.
+     *
+     * @return la funzione di hash.
+     */
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Restituisce il numero di bit delle chiavi.
+     *
+     * @return il numero di bit delle chiavi.
+     */
+    public int getKeyBits() {
+        return keyBits;
+    }
+
+    /**
+     * Restituisce il numero di chiavi presenti.
+     *
+     * @return il numero di chiavi.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Restituisce il digest della radice.
+     *
+     * @return il digest della radice.
+     */
+    public Digest getRootDigest() {
+        return root == null ? defaultDigest(defaults, keyBits, hashFunction.getDigestLength())
+                : Digest.of(root.hash);
+    }
+
+    /**
+     * Calcola il digest di una chiave, che ne determina la posizione
+     * nell'albero.
+     *
+     * @param key
+     *                la chiave.
+     * @return il digest della chiave.
+     * @throws IllegalArgumentException
+     *                                      se la chiave è null.
+     */
+    public Digest keyDigest(K key) {
+        if (key == null)
+            throw new IllegalArgumentException("The key cannot be null");
+        return HashUtil.hash(key, keyFunnel, hashFunction);
+    }
+
+    /**
+     * Associa il valore alla chiave, sostituendo quello precedente.
+     *
+     * @param key
+     *                  la chiave.
+     * @param value
+     *                  il valore.
+     * @return il digest del valore precedente, oppure null se la chiave non
+     *         era presente.
+     * @throws IllegalArgumentException
+     *                                      se la chiave o il valore sono null.
+     */
+    public Digest put(K key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("The value cannot be null");
+        return putDigest(keyDigest(key), HashUtil.hash(value, valueFunnel, hashFunction));
+    }
+
+    /**
+     * Associa il digest di un valore al digest di una chiave, sostituendo
+     * quello precedente.
+     *
+     * @param keyDigest
+     *                        il digest della chiave.
+     * @param valueDigest
+     *                        il digest del valore.
+     * @return il digest del valore precedente, oppure null se la chiave non
+     *         era presente.
+     * @throws IllegalArgumentException
+     *                                      se uno dei digest è null o ha una
+     *                                      lunghezza diversa da quella della
+     *                                      funzione di hash.
+     */
+    public Digest putDigest(Digest keyDigest, Digest valueDigest) {
+        checkDigest(keyDigest);
+        checkDigest(valueDigest);
+        byte[] key = keyDigest.toByteArray();
+        byte[] value = valueDigest.toByteArray();
+        // cerco l'eventuale valore precedente prima di modificare il cammino
+        Node node = root;
+        for (int depth = 0; node != null && !node.isLeaf(); depth++) {
+            node = bit(key, depth) == 0 ? node.left : node.right;
+        }
+        Digest previous = node != null && Digest.of(node.key).equals(keyDigest) ? Digest.of(node.value) : null;
+        root = insert(root, 0, key, value);
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    /**
+     * Restituisce il digest del valore associato alla chiave.
+     *
+     * @param key
+     *                la chiave.
+     * @return il digest del valore, oppure null se la chiave non è presente.
+     * @throws IllegalArgumentException
+     *                                      se la chiave è null.
+     */
+    public Digest getValueDigest(K key) {
+        byte[] digest = keyDigest(key).toByteArray();
+        Node node = root;
+        for (int depth = 0; node != null && !node.isLeaf(); depth++) {
+            node = bit(digest, depth) == 0 ? node.left : node.right;
+        }
+        return node != null && Digest.of(node.key).matches(digest, 0) ? Digest.of(node.value) : null;
+    }
+
+    /**
+     * Verifica se la chiave è presente.
+     *
+     * @param key
+     *                la chiave.
+     * @return true se la chiave è presente; false altrimenti.
+     * @throws IllegalArgumentException
+     *                                      se la chiave è null.
+     */
+    public boolean containsKey(K key) {
+        return getValueDigest(key) != null;
+    }
+
+    /**
+     * Restituisce la prova di inclusione della chiave, se presente, oppure la
+     * prova della sua assenza.
+     *
+     * @param key
+     *                la chiave.
+     * @return la prova per la chiave.
+     * @throws IllegalArgumentException
+     *                                      se la chiave è null.
+     */
+    public SparseMerkleProof getProof(K key) {
+        return getProofForDigest(keyDigest(key));
+    }
+
+    /**
+     * Restituisce la prova di inclusione del digest di una chiave, se
+     * presente, oppure la prova della sua assenza.
+     *
+     * @param keyDigest
+     *                      il digest della chiave.
+     * @return la prova per la chiave.
+     * @throws IllegalArgumentException
+     *                                      se il digest è null o ha una
+     *                                      lunghezza diversa da quella della
+     *                                      funzione di hash.
+     */
+    public SparseMerkleProof getProofForDigest(Digest keyDigest) {
+        checkDigest(keyDigest);
+        byte[] key = keyDigest.toByteArray();
+        List<Digest> siblings = new ArrayList<>();
+        Node node = root;
+        for (int depth = 0; node != null && !node.isLeaf(); depth++) {
+            Node sibling = bit(key, depth) == 0 ? node.right : node.left;
+            // i sottoalberi vuoti sono rappresentati da null
+            siblings.add(sibling == null ? null : Digest.of(sibling.hash));
+            node = bit(key, depth) == 0 ? node.left : node.right;
+        }
+        // il cammino termina in un sottoalbero vuoto o in una foglia, che se
+        // ha un'altra chiave dimostra l'assenza di quella cercata
+        return new SparseMerkleProof(hashFunction, getRootDigest(), keyDigest,
+                node == null ? null : Digest.of(node.key), node == null ? null : Digest.of(node.value), siblings);
+    }
+
+    /**
+     * Restituisce i digest predefiniti dei sottoalberi vuoti per la funzione
+     * di hash indicata, uno dopo l'altro per altezza da 0 al numero di bit
+     * dei digest. L'array restituito è condiviso e non deve essere
+     * modificato.
+     */
+    static byte[] defaults(HashFunction hashFunction) {
+        return DEFAULTS.computeIfAbsent(hashFunction, function -> {
+            int digestLength = function.getDigestLength();
+            int bits = 8 * digestLength;
+            byte[] table = new byte[(bits + 1) * digestLength];
+            function.hash(new byte[0], 0, 0, table, 0);
+            for (int height = 1; height <= bits; height++) {
+                int child = (height - 1) * digestLength;
+                function.combine(table, child, table, child, table, height * digestLength);
+            }
+            return table;
+        });
+    }
+
+    /**
+     * Restituisce il digest predefinito di un sottoalbero vuoto di altezza
+     * {@code height}.
+     */
+    static Digest defaultDigest(byte[] defaults, int height, int digestLength) {
+        return Digest.of(defaults, height * digestLength, digestLength);
+    }
+
+    /**
+     * Calcola il digest della foglia di una chiave, {@code H(0x00 || chiave
+     * || valore)}.
+     */
+    static void leafHash(HashFunction hashFunction, byte[] key, byte[] value, byte[] out, int outOffset) {
+        hashFunction.hasher().putByte((byte) 0).putBytes(key).putBytes(value).finish(out, outOffset);
+    }
+
+    /**
+     * Restituisce il bit della chiave che sceglie il figlio alla profondità
+     * indicata.
+     */
+    static int bit(byte[] key, int depth) {
+        return (key[depth >>> 3] >>> (7 - (depth & 7))) & 1;
+    }
+
+    private void checkDigest(Digest digest) {
+        if (digest == null || digest.length() != hashFunction.getDigestLength())
+            throw new IllegalArgumentException("The digest must be a non-null digest of the hash function");
+    }
+
+    /**
+     * Inserisce o aggiorna la chiave nel sottoalbero del nodo indicato, alla
+     * profondità {@code depth}, e restituisce la nuova radice del sottoalbero.
+     */
+    private Node insert(Node node, int depth, byte[] key, byte[] value) {
+        if (node == null) {
+            return leaf(key, value);
+        }
+        if (node.isLeaf()) {
+            if (Arrays.equals(node.key, key)) {
+                return leaf(key, value);
+            }
+            return split(node, leaf(key, value), depth);
+        }
+        if (bit(key, depth) == 0) {
+            node.left = insert(node.left, depth + 1, key, value);
+        } else {
+            node.right = insert(node.right, depth + 1, key, value);
+        }
+        rehash(node, depth);
+        return node;
+    }
+
+    /**
+     * Crea i nodi interni necessari a separare due foglie con chiavi diverse
+     * che si trovano nello stesso sottoalbero alla profondità {@code depth}.
+     */
+    private Node split(Node first, Node second, int depth) {
+        Node node = new Node(new byte[hashFunction.getDigestLength()], null, null);
+        int firstBit = bit(first.key, depth);
+        if (firstBit != bit(second.key, depth)) {
+            node.left = firstBit == 0 ? first : second;
+            node.right = firstBit == 0 ? second : first;
+        } else if (firstBit == 0) {
+            node.left = split(first, second, depth + 1);
+        } else {
+            node.right = split(first, second, depth + 1);
+        }
+        rehash(node, depth);
+        return node;
+    }
+
+    private Node leaf(byte[] key, byte[] value) {
+        Node leaf = new Node(new byte[hashFunction.getDigestLength()], key, value);
+        leafHash(hashFunction, key, value, leaf.hash, 0);
+        return leaf;
+    }
+
+    /**
+     * Ricalcola il digest di un nodo interno alla profondità indicata dai
+     * digest dei figli, usando quello predefinito per un figlio vuoto.
+     */
+    private void rehash(Node node, int depth) {
+        int digestLength = hashFunction.getDigestLength();
+        int childDefault = (keyBits - depth - 1) * digestLength;
+        byte[] left = node.left == null ? defaults : node.left.hash;
+        byte[] right = node.right == null ? defaults : node.right.hash;
+        hashFunction.combine(left, node.left == null ? childDefault : 0, right,
+                node.right == null ? childDefault : 0, node.hash, 0);
+    }
+}
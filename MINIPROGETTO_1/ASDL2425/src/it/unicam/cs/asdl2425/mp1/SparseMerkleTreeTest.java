@@ -0,0 +1,174 @@
+package it.unicam.cs.asdl2425.mp1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe di test per le classi {@link SparseMerkleTree} e
+ * {@link SparseMerkleProof}. Questa classe verifica inserimenti,
+ * aggiornamenti e prove di inclusione e di assenza delle chiavi.
+ * Di seguito, l'elenco dei test inclusi con una breve descrizione:
+ *
+ * <ul>
+ * <li>{@link #testEmptyTree()}: Verifica che la radice di un albero vuoto sia
+ * il digest predefinito di un albero di 128 o 256 livelli e che ogni chiave
+ * risulti assente.</li>
+ *
+ * <li>{@link #testInclusionAndExclusion()}: Verifica che le prove di tutte le
+ * chiavi presenti e di molte chiavi assenti siano valide e che il loro cammino
+ * sia logaritmico nel numero di chiavi.</li>
+ *
+ * <li>{@link #testUpdates()}: Verifica che la radice dipenda solo dalle
+ * coppie presenti e non dall'ordine degli inserimenti, e che gli
+ * aggiornamenti restituiscano il valore precedente.</li>
+ *
+ * <li>{@link #testTamperedProof()}: Verifica che prove alterate o usate per
+ * un'altra chiave o un altro valore vengano respinte.</li>
+ *
+ * <li>{@link #testInvalidArguments()}: Verifica che vengano lanciate le
+ * eccezioni previste per argomenti non validi.</li>
+ * </ul>
+ */
+class SparseMerkleTreeTest {
+
+    @Test
+    void testEmptyTree() {
+        for (HashFunction hashFunction : new HashFunction[] { HashFunction.MD5, HashFunction.SHA256 }) {
+            SparseMerkleTree<String, String> tree = new SparseMerkleTree<>(hashFunction);
+            int digestLength = hashFunction.getDigestLength();
+            assertEquals(8 * digestLength, tree.getKeyBits(), "I bit delle chiavi non corrispondono.");
+            byte[] expected = hashFunction.hash(new byte[0]);
+            byte[] buffer = new byte[2 * digestLength];
+            for (int level = 0; level < tree.getKeyBits(); level++) {
+                System.arraycopy(expected, 0, buffer, 0, digestLength);
+                System.arraycopy(expected, 0, buffer, digestLength, digestLength);
+                expected = hashFunction.hash(HashUtil.toHex(buffer, 0, 2 * digestLength).getBytes());
+            }
+            assertEquals(Digest.of(expected), tree.getRootDigest(),
+                    "La radice dell'albero vuoto dovrebbe essere il digest predefinito.");
+            SparseMerkleProof proof = tree.getProof("chiave");
+            assertTrue(proof.getSiblings().isEmpty(), "La prova di un albero vuoto non ha fratelli.");
+            assertTrue(proof.verifyExclusion(tree.keyDigest("chiave")), "La chiave dovrebbe essere assente.");
+            assertEquals(0, tree.getSize(), "L'albero dovrebbe essere vuoto.");
+        }
+    }
+
+    @Test
+    void testInclusionAndExclusion() {
+        for (HashFunction hashFunction : new HashFunction[] { HashFunction.MD5, HashFunction.SHA256 }) {
+            SparseMerkleTree<Integer, String> tree = new SparseMerkleTree<>(hashFunction);
+            for (int i = 0; i < 1000; i++) {
+                assertNull(tree.put(i, "valore " + i), "La chiave " + i + " non era presente.");
+            }
+            assertEquals(1000, tree.getSize(), "L'albero dovrebbe contenere 1000 chiavi.");
+            for (int i = 0; i < 1000; i++) {
+                SparseMerkleProof proof = tree.getProof(i);
+                Digest value = HashUtil.hash("valore " + i, Funnels.object(), hashFunction);
+                assertTrue(proof.isInclusion(), "La prova della chiave " + i + " dovrebbe essere di inclusione.");
+                assertTrue(proof.verifyInclusion(tree.keyDigest(i), value),
+                        "La prova della chiave " + i + " dovrebbe essere valida.");
+                assertEquals(value, tree.getValueDigest(i), "Il valore della chiave " + i + " non corrisponde.");
+                assertTrue(proof.getSiblings().size() < 40, "Il cammino dovrebbe essere logaritmico.");
+            }
+            for (int i = 1000; i < 3000; i++) {
+                SparseMerkleProof proof = tree.getProof(i);
+                assertFalse(tree.containsKey(i), "La chiave " + i + " non dovrebbe essere presente.");
+                assertNull(proof.getValueDigest(), "Una prova di assenza non ha valore.");
+                assertTrue(proof.verifyExclusion(tree.keyDigest(i)),
+                        "La prova di assenza della chiave " + i + " dovrebbe essere valida.");
+            }
+        }
+    }
+
+    @Test
+    void testUpdates() {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) keys.add(i);
+        SparseMerkleTree<Integer, Integer> first = new SparseMerkleTree<>();
+        for (int key : keys) first.put(key, key * 2);
+        Collections.shuffle(keys, new Random(7));
+        SparseMerkleTree<Integer, Integer> second = new SparseMerkleTree<>();
+        for (int key : keys) second.put(key, -1);
+        for (int key : keys) {
+            assertEquals(HashUtil.dataToDigest(-1), second.put(key, key * 2),
+                    "L'aggiornamento dovrebbe restituire il valore precedente.");
+        }
+        assertEquals(300, second.getSize(), "Gli aggiornamenti non dovrebbero aggiungere chiavi.");
+        assertEquals(first.getRootDigest(), second.getRootDigest(),
+                "La radice non dovrebbe dipendere dall'ordine degli inserimenti.");
+
+        SparseMerkleProof before = first.getProof(42);
+        first.put(42, 0);
+        assertNotEquals(second.getRootDigest(), first.getRootDigest(), "Un aggiornamento dovrebbe cambiare la radice.");
+        assertTrue(first.getProof(42).verifyInclusion(first.keyDigest(42), HashUtil.dataToDigest(0)),
+                "La nuova prova dovrebbe contenere il nuovo valore.");
+        assertFalse(before.getRootDigest().equals(first.getRootDigest()),
+                "La vecchia prova si riferisce alla vecchia radice.");
+        first.put(42, 84);
+        assertEquals(second.getRootDigest(), first.getRootDigest(), "Il valore originale dovrebbe ripristinare la radice.");
+
+        SparseMerkleTree<String, String> single = new SparseMerkleTree<>(HashFunction.SHA256);
+        single.put("chiave", "valore");
+        byte[] leaf = new byte[32];
+        SparseMerkleTree.leafHash(HashFunction.SHA256, single.keyDigest("chiave").toByteArray(),
+                HashUtil.hash("valore", Funnels.object(), HashFunction.SHA256).toByteArray(), leaf, 0);
+        assertEquals(Digest.of(leaf), single.getRootDigest(),
+                "Con una sola chiave la radice dovrebbe essere la sua foglia.");
+    }
+
+    @Test
+    void testTamperedProof() {
+        SparseMerkleTree<Integer, Integer> tree = new SparseMerkleTree<>();
+        for (int i = 0; i < 64; i++) tree.put(i, i);
+        Digest key = tree.keyDigest(5);
+        SparseMerkleProof proof = tree.getProof(5);
+        assertTrue(proof.verifyInclusion(key, HashUtil.dataToDigest(5)), "La prova dovrebbe essere valida.");
+        assertFalse(proof.verifyInclusion(key, HashUtil.dataToDigest(6)), "Un altro valore non è valido.");
+        assertFalse(proof.verifyInclusion(tree.keyDigest(6), HashUtil.dataToDigest(5)), "Un'altra chiave non è valida.");
+        assertFalse(proof.verifyExclusion(key), "Una prova di inclusione non dimostra l'assenza.");
+
+        List<Digest> siblings = new ArrayList<>(proof.getSiblings());
+        assertFalse(new SparseMerkleProof(HashFunction.MD5, proof.getRootDigest(), key, null, null, siblings)
+                .verifyExclusion(key), "Non si può dimostrare l'assenza di una chiave presente.");
+        int last = siblings.size() - 1;
+        siblings.set(last, siblings.get(last) == null ? HashUtil.dataToDigest("alterato") : null);
+        assertFalse(new SparseMerkleProof(HashFunction.MD5, proof.getRootDigest(), key, key, HashUtil.dataToDigest(5),
+                siblings).verify(), "Una prova alterata non è valida.");
+        assertFalse(new SparseMerkleProof(HashFunction.MD5, proof.getRootDigest(), key, key, HashUtil.dataToDigest(5),
+                proof.getSiblings().subList(1, proof.getSiblings().size())).verify(),
+                "Una prova troncata non è valida.");
+
+        // una foglia fuori dal cammino della chiave non ne dimostra l'assenza
+        SparseMerkleProof other = tree.getProof(9);
+        assertFalse(new SparseMerkleProof(HashFunction.MD5, other.getRootDigest(), key, tree.keyDigest(9),
+                HashUtil.dataToDigest(9), other.getSiblings()).verifyExclusion(key),
+                "Una foglia di un altro cammino non dimostra l'assenza.");
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new SparseMerkleTree<String, String>(null),
+                "Una funzione di hash null dovrebbe lanciare IllegalArgumentException.");
+        SparseMerkleTree<String, String> tree = new SparseMerkleTree<>();
+        assertThrows(IllegalArgumentException.class, () -> tree.put(null, "valore"),
+                "Una chiave null dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> tree.put("chiave", null),
+                "Un valore null dovrebbe lanciare IllegalArgumentException.");
+        Digest sha = HashFunction.SHA256.hashToDigest(new byte[0]);
+        assertThrows(IllegalArgumentException.class, () -> tree.putDigest(sha, sha),
+                "Un digest di lunghezza diversa dovrebbe lanciare IllegalArgumentException.");
+        Digest key = tree.keyDigest("chiave");
+        assertThrows(IllegalArgumentException.class, () -> new SparseMerkleProof(HashFunction.MD5,
+                tree.getRootDigest(), key, key, null, Collections.emptyList()),
+                "Una foglia senza valore dovrebbe lanciare IllegalArgumentException.");
+        assertThrows(IllegalArgumentException.class, () -> new SparseMerkleProof(HashFunction.MD5,
+                tree.getRootDigest(), key, null, null, Collections.nCopies(129, null)),
+                "Un cammino troppo lungo dovrebbe lanciare IllegalArgumentException.");
+    }
+}
@@ -0,0 +1,47 @@
+package it.unicam.cs.asdl2425.mp1;
+
+/**
+ * Dati di prova condivisi dalle classi di test: liste e alberi di Merkle le
+ * cui foglie sono gli interi da 0 a {@code width - 1}, nell'ordine.
+ */
+final class TestTrees {
+
+    private TestTrees() {
+    }
+
+    /**
+     * Restituisce una lista con gli interi da 0 a {@code width - 1}, con la
+     * funzione di hash di default.
+     */
+    static HashLinkedList<Integer> listOf(int width) {
+        return listOf(width, HashFunction.MD5);
+    }
+
+    /**
+     * Restituisce una lista con gli interi da 0 a {@code width - 1}, con la
+     * funzione di hash indicata.
+     */
+    static HashLinkedList<Integer> listOf(int width, HashFunction hashFunction) {
+        HashLinkedList<Integer> list = new HashLinkedList<>(hashFunction);
+        for (int i = 0; i < width; i++) {
+            list.addAtTail(i);
+        }
+        return list;
+    }
+
+    /**
+     * Restituisce un albero sugli interi da 0 a {@code width - 1}, con la
+     * funzione di hash di default.
+     */
+    static MerkleTree<Integer> treeOf(int width) {
+        return new MerkleTree<>(listOf(width));
+    }
+
+    /**
+     * Restituisce un albero sugli interi da 0 a {@code width - 1}, con la
+     * funzione di hash indicata.
+     */
+    static MerkleTree<Integer> treeOf(int width, HashFunction hashFunction) {
+        return new MerkleTree<>(listOf(width, hashFunction));
+    }
+}